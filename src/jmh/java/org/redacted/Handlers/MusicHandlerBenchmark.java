@@ -0,0 +1,140 @@
+package org.redacted.Handlers;
+
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayer;
+import com.sedmelluq.discord.lavaplayer.track.playback.*;
+import net.dv8tion.jda.api.audio.AudioSendHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * MusicHandlerBenchmark Class
+ * Measures what sending one 20ms frame of a stream allocates, from the frame leaving the
+ * decoder to JDA reading it through {@link AudioSendHandler#canProvide()} and
+ * {@link AudioSendHandler#provide20MsAudio()}. Each operation hands the player's frame buffer
+ * one Opus frame the way LavaPlayer's encoder does, through a reused mutable frame, then takes
+ * it back out through the send handler.
+ * <p>
+ * "allocating" is the path MusicHandler replaced: LavaPlayer's default frame buffer, which copies
+ * every frame into a new one, read with {@code provide()} and wrapped in a new ByteBuffer.
+ * "reusing" is MusicHandler over the NonAllocatingAudioFrameBuffer the player manager is set up with.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhArgs="MusicHandlerBenchmark -prof gc"}. gc.alloc.rate.norm
+ * is the bytes allocated per frame; a stream sends 50 frames a second, so multiply by 50 for the
+ * bytes per second per stream.
+ *
+ * @author Derrick Eberlein
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MusicHandlerBenchmark {
+
+    /** The size of a 20ms Opus frame at about 128kbps. */
+    private static final int OPUS_FRAME_BYTES = 320;
+    private static final int BUFFER_DURATION_MILLIS = 5000;
+
+    @Param({"allocating", "reusing"})
+    public String path;
+
+    private DefaultAudioPlayerManager manager;
+    private AudioFrameBuffer frameBuffer;
+    private AudioSendHandler handler;
+    private final MutableAudioFrame decoded = new MutableAudioFrame();
+    private long timecode;
+
+    @Setup
+    public void setUp() {
+        AudioDataFormat format = StandardAudioDataFormats.DISCORD_OPUS;
+        AudioFrameBufferFactory factory = path.equals("allocating") ? AllocatingAudioFrameBuffer::new : NonAllocatingAudioFrameBuffer::new;
+        frameBuffer = factory.create(BUFFER_DURATION_MILLIS, format, new AtomicBoolean());
+
+        manager = new DefaultAudioPlayerManager();
+        BufferedPlayer player = new BufferedPlayer(manager, frameBuffer);
+        handler = path.equals("allocating") ? new AllocatingSendHandler(player) : new MusicHandler(player, null);
+
+        byte[] opus = new byte[OPUS_FRAME_BYTES];
+        for (int i = 0; i < opus.length; i++) {
+            opus[i] = (byte) i;
+        }
+        decoded.setBuffer(ByteBuffer.allocate(format.maximumChunkSize()));
+        decoded.setFormat(format);
+        decoded.setVolume(100);
+        decoded.store(opus, 0, opus.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public void sendFrame(Blackhole blackhole) throws InterruptedException {
+        decoded.setTimecode(timecode += 20);
+        frameBuffer.consume(decoded);
+
+        if (!handler.canProvide()) throw new IllegalStateException("No frame to send");
+        blackhole.consume(handler.provide20MsAudio());
+    }
+
+    /**
+     * A player whose frames come straight from a frame buffer the benchmark fills, instead of
+     * from a playing track, so only the handing over of frames is measured.
+     */
+    private static final class BufferedPlayer extends DefaultAudioPlayer {
+        private final AudioFrameBuffer frames;
+
+        private BufferedPlayer(DefaultAudioPlayerManager manager, AudioFrameBuffer frames) {
+            super(manager);
+            this.frames = frames;
+        }
+
+        @Override
+        public AudioFrame provide() {
+            return frames.provide();
+        }
+
+        @Override
+        public boolean provide(MutableAudioFrame targetFrame) {
+            return frames.provide(targetFrame);
+        }
+    }
+
+    /**
+     * The send handler as MusicHandler was before it reused its frame: a new frame from the
+     * player and a new ByteBuffer around its data every 20ms.
+     */
+    private static final class AllocatingSendHandler implements AudioSendHandler {
+        private final DefaultAudioPlayer audioPlayer;
+        private AudioFrame lastFrame;
+
+        private AllocatingSendHandler(DefaultAudioPlayer audioPlayer) {
+            this.audioPlayer = audioPlayer;
+        }
+
+        @Override
+        public boolean canProvide() {
+            lastFrame = audioPlayer.provide();
+            return lastFrame != null;
+        }
+
+        @Override
+        public ByteBuffer provide20MsAudio() {
+            return ByteBuffer.wrap(lastFrame.getData());
+        }
+
+        @Override
+        public boolean isOpus() {
+            return true;
+        }
+    }
+}
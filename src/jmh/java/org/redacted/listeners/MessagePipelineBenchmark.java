@@ -0,0 +1,151 @@
+package org.redacted.listeners;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * MessagePipelineBenchmark Class
+ * Replays a stream of received messages through the {@link MessagePipeline} and through the
+ * filters the six listeners it replaced each ran on every message, to compare what a message
+ * costs before any handler does real work. The stream is generated from a fixed seed to look
+ * like a busy node: {@value #GUILDS} guilds, 2% direct messages, 10% bot and webhook authors,
+ * 3% "-ticket" commands and the rest chat, some of it in routed introduction channels and
+ * ticket submission channels.
+ * <p>
+ * Every handler is a no-op, so "pipeline" is classification, dispatch and the per-handler
+ * latency histograms, and "listeners" is the old guild, author, channel and content checks.
+ * Neither counts JDA calling each registered listener for every gateway event, which the
+ * listeners paid six times over. Scores are per message.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhArgs="MessagePipelineBenchmark"}.
+ *
+ * @author Derrick Eberlein
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessagePipelineBenchmark {
+
+    private static final int MESSAGES = 20_000;
+    private static final int GUILDS = 500;
+    private static final int CHANNELS_PER_GUILD = 20;
+    private static final String SUBMIT_CHANNEL_NAME = "submit-ticket";
+    private static final Pattern TICKET_OPEN_PATTERN = Pattern.compile("^-ticket open (.+)$", Pattern.CASE_INSENSITIVE);
+    private static final String[] CHAT = {
+            "good morning everyone", "lol", "has anyone seen the new patch notes?", "gg",
+            "I'll be on later tonight", "https://example.com/clip", "-", "same", "brb", "what time is the event"
+    };
+    private static final String[] TICKETS = {
+            "-ticket open cannot access the rules channel", "-ticket close resolved", "-ticket adduser <@123>", "-ticket removeuser <@123>"
+    };
+
+    private RecordedMessage[] stream;
+    private GuildEventRouter router;
+    private MessagePipeline pipeline;
+    private final Map<Object, Object> sessions = new ConcurrentHashMap<>();
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        router = new GuildEventRouter();
+        GuildEventRouter.ChannelHandler introductions = new GuildEventRouter.ChannelHandler() { };
+        for (long guild = 1; guild <= GUILDS; guild++) {
+            // The first channel of every guild is its introduction channel
+            router.register(guild, channelId(guild, 0), introductions);
+        }
+
+        pipeline = new MessagePipeline(router);
+        MessagePipeline.Handler handler = (context, event) -> this.blackhole.consume(context);
+        pipeline.onPrefix("ticket-open", "-ticket open", MessagePipeline.USERS, handler);
+        pipeline.onPrefix("ticket-close", "-ticket close", MessagePipeline.USERS, handler);
+        pipeline.onPrefix("ticket-adduser", "-ticket adduser", MessagePipeline.USERS, handler);
+        pipeline.onPrefix("ticket-removeuser", "-ticket removeuser", MessagePipeline.USERS, handler);
+        pipeline.onEveryMessage("message-scheduler", MessagePipeline.USERS, handler);
+        pipeline.onEveryMessage("activity-reward", MessagePipeline.USERS, handler);
+
+        Random random = new Random(22);
+        stream = new RecordedMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            long guild = 1 + random.nextInt(GUILDS);
+            int channel = random.nextInt(CHANNELS_PER_GUILD);
+            double kind = random.nextDouble();
+            MessagePipeline.AuthorKind author = kind < 0.08 ? MessagePipeline.AuthorKind.BOT
+                    : kind < 0.10 ? MessagePipeline.AuthorKind.WEBHOOK : MessagePipeline.AuthorKind.USER;
+            String content = random.nextDouble() < 0.03 ? TICKETS[random.nextInt(TICKETS.length)] : CHAT[random.nextInt(CHAT.length)];
+            // Direct messages have no guild
+            boolean fromGuild = random.nextDouble() >= 0.02;
+            String channelName = channel == 1 ? SUBMIT_CHANNEL_NAME : "general-" + channel;
+            stream[i] = new RecordedMessage(fromGuild, guild, channelId(guild, channel), channelName, author, content);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        router.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void pipeline() {
+        for (RecordedMessage message : stream) {
+            // What onMessageReceived checks before dispatching: every handler wants only people's messages
+            if (!message.fromGuild || message.author != MessagePipeline.AuthorKind.USER) continue;
+            pipeline.dispatch(message.guildId, message.channelId, message.author, message.content, null);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void listeners() {
+        for (RecordedMessage message : stream) {
+            boolean bot = message.author != MessagePipeline.AuthorKind.USER;
+
+            // GuildEventRouter
+            GuildEventRouter.ChannelHandler channelHandler = router.handlerFor(message.channelId);
+            if (channelHandler != null) blackhole.consume(channelHandler);
+
+            // MessageListener
+            if (message.fromGuild && !bot) blackhole.consume(message);
+
+            // MessageSchedulerListener
+            if (!sessions.isEmpty()) blackhole.consume(sessions);
+
+            // TicketListener
+            if (!bot && message.fromGuild && message.channelName.equalsIgnoreCase(SUBMIT_CHANNEL_NAME)
+                    && TICKET_OPEN_PATTERN.matcher(message.content).matches()) {
+                blackhole.consume(message);
+            }
+
+            // TicketCloseHandler
+            String[] close = message.content.split(" ", 3);
+            if (close[0].equalsIgnoreCase("-ticket") && close[1].equalsIgnoreCase("close")) blackhole.consume(close);
+
+            // TicketAddUserHandler and TicketRemoveUserHandler
+            String[] add = message.content.split(" ");
+            if (add[0].equalsIgnoreCase("-ticket") && add.length >= 3 && add[1].equalsIgnoreCase("adduser")) blackhole.consume(add);
+            String[] remove = message.content.split(" ");
+            if (remove[0].equalsIgnoreCase("-ticket") && remove.length >= 3 && remove[1].equalsIgnoreCase("removeuser")) blackhole.consume(remove);
+        }
+    }
+
+    private static long channelId(long guild, int channel) {
+        return guild * CHANNELS_PER_GUILD + channel;
+    }
+
+    /**
+     * A received message, reduced to what the pipeline and the old listeners look at.
+     */
+    private record RecordedMessage(boolean fromGuild, long guildId, long channelId, String channelName,
+                                   MessagePipeline.AuthorKind author, String content) {
+    }
+}
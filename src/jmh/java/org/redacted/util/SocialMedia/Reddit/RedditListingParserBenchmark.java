@@ -0,0 +1,134 @@
+package org.redacted.util.SocialMedia.Reddit;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedditListingParserBenchmark Class
+ * Compares reading the media URLs of a listing with {@link RedditListingParser} against the
+ * tree-based parse it replaced, which buffered the whole body as with {@code body().string()}
+ * and built a Gson {@link JsonObject} of it. Both read the same bytes through a reader, as they
+ * would off a response.
+ * <p>
+ * By default the listing is the hand-written sample the parser tests use, four short posts
+ * repeated up to the size of a real listing, which asks for 50. Numbers from it only show how
+ * the two parses compare on that shape. To measure a real listing, save the body of a
+ * {@code /r/<subreddit>/hot.json?limit=50} response and pass its path as the listing parameter;
+ * its posts are then used as they are, repeated or cut only to reach the posts parameter.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhArgs="RedditListingParserBenchmark -prof gc"} to see the
+ * bytes allocated per listing next to the time taken, adding
+ * {@code -p listing=/path/to/hot.json -p posts=50} for a saved listing.
+ *
+ * @author Derrick Eberlein
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedditListingParserBenchmark {
+
+    @Param({"4", "50"})
+    public int posts;
+
+    /** A saved listing response to read instead of the sample, or empty for the sample. */
+    @Param({""})
+    public String listing;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonObject response;
+        try (Reader reader = listing.isEmpty() ? fixture("listing.json") : Files.newBufferedReader(Path.of(listing))) {
+            response = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        JsonArray read = response.getAsJsonObject("data").getAsJsonArray("children");
+        JsonArray children = new JsonArray();
+        for (int i = 0; i < posts; i++) {
+            children.add(read.get(i % read.size()).deepCopy());
+        }
+        response.getAsJsonObject("data").add("children", children);
+        body = response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<String> streaming() throws IOException {
+        try (Reader reader = body()) {
+            return RedditListingParser.readMediaUrls(reader);
+        }
+    }
+
+    @Benchmark
+    public List<String> tree() throws IOException {
+        String responseData;
+        try (Reader reader = body()) {
+            responseData = readAll(reader);
+        }
+        JsonReader reader = new JsonReader(new StringReader(responseData));
+        reader.setLenient(true);
+
+        JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
+        JsonArray children = jsonObject.getAsJsonObject("data").getAsJsonArray("children");
+
+        List<String> mediaUrls = new ArrayList<>();
+        for (int i = 0; i < children.size(); i++) {
+            JsonObject postData = children.get(i).getAsJsonObject().getAsJsonObject("data");
+            String mediaUrl = extractMediaUrl(postData);
+            if (mediaUrl != null) {
+                mediaUrls.add(mediaUrl);
+            }
+        }
+        return mediaUrls;
+    }
+
+    /**
+     * The media URL of a post as the tree-based parse read it, guarded against a null url or
+     * media, which the sample has and the old parse would have failed on.
+     */
+    private static String extractMediaUrl(JsonObject mediaData) {
+        if (mediaData.has("url") && !mediaData.get("url").isJsonNull()) {
+            return mediaData.get("url").getAsString();
+        } else if (mediaData.has("media")) {
+            JsonElement media = mediaData.get("media");
+            if (media.isJsonObject() && media.getAsJsonObject().has("reddit_video")) {
+                return media.getAsJsonObject().getAsJsonObject("reddit_video").get("fallback_url").getAsString();
+            }
+        }
+        return null;
+    }
+
+    private Reader body() {
+        return new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+    }
+
+    private static Reader fixture(String name) {
+        InputStream stream = RedditListingParserBenchmark.class.getResourceAsStream("/reddit/" + name);
+        if (stream == null) throw new IllegalStateException("missing fixture " + name);
+        return new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,262 @@
+package org.redacted.Commands;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.interactions.commands.SlashCommandInteraction;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
+import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * AutoDeferInteraction Class
+ * Wraps a slash command interaction so the CommandEngine can defer it for a command that is slow
+ * to answer. Discord drops an interaction that is not answered within three seconds, but once it
+ * has been deferred the command's own reply would be refused by JDA, as the interaction has
+ * already been acknowledged. The wrapper hands the command a reply action that records what it
+ * is given instead, and turns it into an edit of the deferred message when it is queued, so
+ * commands answer with {@code event.reply(...)} whether the engine deferred them or not.
+ * <p>
+ * JDA builds most replies, such as {@code replyEmbeds}, in default methods that call
+ * {@code deferReply()}. Those run against the wrapper, so their deferral comes back to it.
+ * <p>
+ * JDA's body for {@code reply(MessageCreateData)} needs JDA's own action, so the wrapper
+ * records that reply itself, whether it is made through the event or the interaction.
+ *
+ * @author Derrick Eberlein
+ */
+final class AutoDeferInteraction implements InvocationHandler {
+
+    private final SlashCommandInteraction interaction;
+    private final SlashCommandInteraction proxy;
+    private boolean answered;
+    private boolean deferred;
+    private boolean originalUsed;
+
+    /**
+     * Constructs an AutoDeferInteraction.
+     *
+     * @param interaction the interaction to wrap.
+     */
+    AutoDeferInteraction(SlashCommandInteraction interaction) {
+        this.interaction = interaction;
+        this.proxy = (SlashCommandInteraction) Proxy.newProxyInstance(SlashCommandInteraction.class.getClassLoader(),
+                new Class<?>[]{SlashCommandInteraction.class}, this);
+    }
+
+    /**
+     * Create the event the command is run with, whose replies go through this wrapper.
+     *
+     * @param event the event JDA fired.
+     * @return an event over the wrapped interaction.
+     */
+    SlashCommandInteractionEvent wrap(SlashCommandInteractionEvent event) {
+        return new SlashCommandInteractionEvent(event.getJDA(), event.getResponseNumber(), proxy) {
+            @NotNull
+            @Override
+            public ReplyCallbackAction reply(@NotNull MessageCreateData message) {
+                // The event's default body would not reach the wrapper, so hand the reply to it
+                return proxy.reply(message);
+            }
+        };
+    }
+
+    /**
+     * Defer the reply if the command has not started answering yet.
+     */
+    synchronized void deferIfSilent() {
+        if (answered || deferred || interaction.isAcknowledged()) return;
+        deferred = true;
+        interaction.deferReply().queue(null,
+                failure -> System.err.println("Failed to defer /" + interaction.getName() + ": " + failure.getMessage()));
+    }
+
+    /**
+     * Tell the user a command failed, in whichever way the interaction can still be answered.
+     *
+     * @param error the error embed, shown only to the user.
+     */
+    void fail(MessageEmbed error) {
+        Consumer<Throwable> log = failure ->
+                System.err.println("Failed to report an error for /" + interaction.getName() + ": " + failure.getMessage());
+        boolean engineDeferred;
+        synchronized (this) {
+            if (!answered && !deferred && !interaction.isAcknowledged()) {
+                answered = true;
+                interaction.replyEmbeds(error).setEphemeral(true).queue(null, log);
+                return;
+            }
+            engineDeferred = deferred;
+        }
+        if (engineDeferred) {
+            send(MessageCreateData.fromEmbeds(error), true).queue(null, log);
+        } else {
+            interaction.getHook().sendMessageEmbeds(error).setEphemeral(true).queue(null, log);
+        }
+    }
+
+    @Override
+    public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        if (method.getName().equals("deferReply")) {
+            synchronized (this) {
+                if (!deferred) {
+                    answered = true;
+                    return call(interaction, method, args);
+                }
+            }
+            ReplyCallbackAction action = new RecordedReply().proxy;
+            return args != null && args.length == 1 ? action.setEphemeral((Boolean) args[0]) : action;
+        }
+        if (method.getName().equals("reply") && method.getParameterTypes()[0] == MessageCreateData.class) {
+            // JDA's own body for this one needs JDA's action, so a deferred reply is recorded here instead
+            synchronized (this) {
+                if (!deferred) {
+                    answered = true;
+                    return call(interaction, method, args);
+                }
+            }
+            return new RecordedReply().proxy.applyData((MessageCreateData) args[0]);
+        }
+        if (method.getName().equals("replyModal")) {
+            synchronized (this) {
+                answered = true;
+            }
+        }
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> target == args[0];
+                case "hashCode" -> System.identityHashCode(target);
+                case "toString" -> "AutoDefer(" + interaction + ")";
+                default -> call(interaction, method, args);
+            };
+        }
+        if (method.isDefault()) {
+            // Run against the wrapper, so the deferReply() the method makes its reply with comes back here
+            return InvocationHandler.invokeDefault(target, method, args);
+        }
+        return call(interaction, method, args);
+    }
+
+    /**
+     * Send a reply the command made after the interaction was deferred. The first one replaces
+     * the deferred message, unless it is ephemeral: an existing message cannot be made ephemeral,
+     * so it is sent as a follow-up and the deferred message deleted.
+     *
+     * @param data the reply.
+     * @param ephemeral whether only the user sees it.
+     * @return the action sending it.
+     */
+    private RestAction<InteractionHook> send(MessageCreateData data, boolean ephemeral) {
+        InteractionHook hook = interaction.getHook();
+        boolean first;
+        synchronized (this) {
+            first = !originalUsed;
+            originalUsed = true;
+        }
+        if (first && !ephemeral) {
+            return hook.editOriginal(MessageEditData.fromCreateData(data)).map(message -> hook);
+        }
+
+        RestAction<Message> sent = hook.sendMessage(data).setEphemeral(ephemeral);
+        if (first) {
+            sent = sent.onSuccess(message -> hook.deleteOriginal().queue(null, failure -> { }));
+        }
+        return sent.map(message -> hook);
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A reply action handed to a command after the interaction was deferred. What the command
+     * sets is kept in a message builder until the action is queued.
+     */
+    private final class RecordedReply implements InvocationHandler {
+        private final MessageCreateBuilder builder = new MessageCreateBuilder();
+        private final ReplyCallbackAction proxy = (ReplyCallbackAction) Proxy.newProxyInstance(
+                ReplyCallbackAction.class.getClassLoader(), new Class<?>[]{ReplyCallbackAction.class}, this);
+        private boolean ephemeral;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            int arity = args == null ? 0 : args.length;
+            switch (method.getName()) {
+                case "setEphemeral" -> {
+                    ephemeral = (Boolean) args[0];
+                    return target;
+                }
+                case "isEphemeral" -> {
+                    return ephemeral;
+                }
+                case "getJDA" -> {
+                    return interaction.getJDA();
+                }
+                case "setCheck", "addCheck", "timeout", "deadline", "closeResources" -> {
+                    return target;
+                }
+                case "queue" -> {
+                    if (arity == 2) {
+                        Consumer<? super InteractionHook> success = (Consumer<? super InteractionHook>) args[0];
+                        if (!builder.isEmpty()) {
+                            send().queue(success, (Consumer<? super Throwable>) args[1]);
+                        } else if (success != null) {
+                            success.accept(interaction.getHook());
+                        }
+                        return null;
+                    }
+                }
+                case "complete" -> {
+                    if (arity == 1) return builder.isEmpty() ? interaction.getHook() : send().complete();
+                }
+                case "submit" -> {
+                    if (arity == 1) return builder.isEmpty() ? CompletableFuture.completedFuture(interaction.getHook()) : send().submit();
+                }
+                case "equals" -> {
+                    return target == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(target);
+                }
+                case "toString" -> {
+                    return "RecordedReply(" + interaction.getName() + ")";
+                }
+                default -> {
+                }
+            }
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(target, method, args);
+            }
+
+            Method setter = MessageCreateBuilder.class.getMethod(method.getName(), method.getParameterTypes());
+            Object result = call(builder, setter, args);
+            return result == builder ? target : result;
+        }
+
+        /**
+         * Send what was recorded. Only called once something was set: an action nothing was set
+         * on was a plain deferral, which has already been made, so it completes with the hook.
+         *
+         * @return the action sending the reply.
+         */
+        private RestAction<InteractionHook> send() {
+            return AutoDeferInteraction.this.send(builder.build(), ephemeral);
+        }
+    }
+}
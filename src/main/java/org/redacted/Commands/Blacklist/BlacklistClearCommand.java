@@ -1,11 +1,11 @@
 package org.redacted.Commands.Blacklist;
 
-import com.mongodb.client.MongoCollection;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import org.bson.Document;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Redacted;
 
 import java.util.HashMap;
@@ -54,7 +54,7 @@ public class BlacklistClearCommand extends Command {
             long requestTime = confirmationRequests.get(userId);
             if (System.currentTimeMillis() - requestTime < CONFIRMATION_TIMEOUT) {
                 // Clear the guild-specific blacklist
-                MongoCollection<Document> blacklistCollection = bot.database.getGuildCollection(guildId, "blacklist");
+                GuildCollection<Document> blacklistCollection = bot.database.getGuildCollection(guildId, "blacklist");
                 long deletedCount = blacklistCollection.deleteMany(new Document()).getDeletedCount();
 
                 if (deletedCount > 0) {
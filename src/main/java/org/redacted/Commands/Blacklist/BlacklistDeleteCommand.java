@@ -1,6 +1,5 @@
 package org.redacted.Commands.Blacklist;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.result.DeleteResult;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -9,6 +8,7 @@ import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.bson.Document;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Redacted;
 
 import java.util.Objects;
@@ -58,7 +58,7 @@ public class BlacklistDeleteCommand extends Command {
         String platform = Objects.requireNonNull(event.getOption("platform")).getAsString();
 
         long guildId = Objects.requireNonNull(event.getGuild()).getIdLong();
-        MongoCollection<Document> blacklistCollection = bot.database.getGuildCollection(guildId, "blacklist");
+        GuildCollection<Document> blacklistCollection = bot.database.getGuildCollection(guildId, "blacklist");
 
         Document query = new Document("firstname", firstName)
                 .append("lastname", lastName)
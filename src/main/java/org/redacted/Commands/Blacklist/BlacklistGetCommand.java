@@ -1,12 +1,12 @@
 package org.redacted.Commands.Blacklist;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import org.bson.Document;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Redacted;
 
 import java.util.ArrayList;
@@ -45,7 +45,7 @@ public class BlacklistGetCommand extends Command {
     @Override
     public void execute(SlashCommandInteractionEvent event) {
         long guildId = Objects.requireNonNull(event.getGuild()).getIdLong();
-        MongoCollection<Document> blacklistCollection = bot.database.getGuildCollection(guildId, "blacklist");
+        GuildCollection<Document> blacklistCollection = bot.database.getGuildCollection(guildId, "blacklist");
 
         MongoCursor<Document> cursor = blacklistCollection.find().iterator();
         List<String> blacklistEntries = new ArrayList<>();
@@ -2,6 +2,7 @@ package org.redacted.Commands;
 
 import lombok.Getter;
 import lombok.Setter;
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Role;
@@ -58,6 +59,14 @@ public class BotCommands extends ListenerAdapter {
     /** Map of command names to command objects */
     public static final Map<String, Command> commandsMap = new HashMap<>();
     private static boolean commandsRegistered = false;  // Static flag to ensure commands are registered only once
+    /** The command data, built once every command has been created */
+    private static volatile List<CommandData> commandData;
+    /** Runs commands off the event thread, shared by every instance */
+    @Getter
+    private static CommandEngine engine;
+
+    /** Uploads the commands to Discord when they have changed */
+    private final CommandRegistrar registrar;
 
     /**
      * Adds commands to a global list and registers them as event listener.
@@ -65,8 +74,11 @@ public class BotCommands extends ListenerAdapter {
      * @param bot An instance of Redacted.
      */
     public BotCommands(Redacted bot) {
+        this.registrar = CommandRegistrar.fromConfig(bot.database, bot.getConfig(), BotCommands::unpackCommandData,
+                bot.getThreadPool());
 
         if (!commandsRegistered) {
+            engine = CommandEngine.fromConfig(bot.getConfig());
             GoogleSearchService googleSearchService = new GoogleSearchService();
             mapCommand(
                     // Role ColorChanger commands
@@ -175,41 +187,60 @@ public class BotCommands extends ListenerAdapter {
     }
 
     /**
-     * Registers all commands for a specific guild.
+     * Registers the global commands once a shard is ready, if they have changed.
+     *
+     * @param shard The ready shard.
+     */
+    public void registerGlobalCommands(JDA shard) {
+        registrar.registerGlobal(shard);
+    }
+
+    /**
+     * Registers all commands for a specific guild, if they have changed since they were last registered there.
      * This method should be called when the bot is ready or when a guild is joined.
      *
      * @param guild The guild to register commands for.
      */
     public void registerCommandsForGuild(Guild guild) {
-        // Ensure commands are registered only once
-        System.out.println("Registering commands for guild: " + guild.getName());
-
-        // Register slash commands for the specific guild
-        guild.updateCommands().addCommands(unpackCommandData()).queue(
-                succ -> System.out.println("Commands registered successfully for guild: " + guild.getName()),
-                fail -> System.out.println("Failed to register commands for guild: " + guild.getName())
-        );
+        registrar.registerForGuild(guild);
+    }
+
+    /**
+     * Forgets the commands registered for a guild the bot has left, so they are uploaded again if it rejoins.
+     *
+     * @param guildId The ID of the guild that was left.
+     */
+    public void forgetGuild(long guildId) {
+        registrar.forgetGuild(guildId);
     }
 
     /**
      * Unpacks the command data into a list of CommandData for registration.
+     * The list is built the first time it is asked for and shared after that.
      *
      * @return List of CommandData to be registered with JDA.
      */
     public static List<CommandData> unpackCommandData() {
-        List<CommandData> commandData = new ArrayList<>();
-        for (Command command : commands) {
-            SlashCommandData slashCommand = Commands.slash(command.name, command.description).addOptions(command.args);
-            if (command.permission != null) {
-                slashCommand.setDefaultPermissions(DefaultMemberPermissions.enabledFor(Permission.MANAGE_CHANNEL, Permission.MODERATE_MEMBERS));
-            }
-            if (!command.subCommands.isEmpty()) {
-                slashCommand.addSubcommands(command.subCommands);
-            }
-            commandData.add(slashCommand);
+        List<CommandData> built = commandData;
+        if (built != null) return built;
 
+        synchronized (BotCommands.class) {
+            if (commandData == null) {
+                List<CommandData> data = new ArrayList<>();
+                for (Command command : commands) {
+                    SlashCommandData slashCommand = Commands.slash(command.name, command.description).addOptions(command.args);
+                    if (command.permission != null) {
+                        slashCommand.setDefaultPermissions(DefaultMemberPermissions.enabledFor(Permission.MANAGE_CHANNEL, Permission.MODERATE_MEMBERS));
+                    }
+                    if (!command.subCommands.isEmpty()) {
+                        slashCommand.addSubcommands(command.subCommands);
+                    }
+                    data.add(slashCommand);
+                }
+                commandData = List.copyOf(data);
+            }
+            return commandData;
         }
-        return commandData;
     }
 
     /**
@@ -235,8 +266,8 @@ public class BotCommands extends ListenerAdapter {
                     return;
                 }
             }
-            // Run command
-            cmd.execute(event);
+            // Run command off the event thread
+            engine.submit(cmd, event);
         } else {
             System.out.println("Command not found: " + event.getName());
         }
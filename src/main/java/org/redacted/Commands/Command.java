@@ -24,6 +24,8 @@ public abstract class Command {
     public List<SubcommandData> subCommands;
     public Permission permission; //Permission user needs to execute this command
     public Permission botPermission; //Permission bot needs to execute this command
+    public long timeoutSeconds; //Seconds the command may run before it is stopped, 0 for the engine's default
+    public int maxConcurrent; //Runs of the command allowed at once, 0 for the engine's default
 
     /**
      * Constructor for the Command class.
@@ -0,0 +1,278 @@
+package org.redacted.Commands;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import org.redacted.util.LatencyHistogram;
+import org.redacted.util.embeds.EmbedUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CommandEngine Class
+ * Runs slash commands off the JDA event thread, so a command blocked on the database, an HTTP
+ * call or a {@code complete()} no longer holds up every other event of its shard. Commands run on
+ * virtual threads, or on a fixed pool of COMMAND_THREADS threads when that is set.
+ * <p>
+ * Around every command the engine:
+ * <ul>
+ *     <li>defers the reply once COMMAND_DEFER_MS have passed without one, so Discord does not
+ *     drop the interaction while the command is still working. The command replies as usual
+ *     and its reply replaces the deferred one.</li>
+ *     <li>stops it after its timeout, {@link Command#timeoutSeconds} or COMMAND_TIMEOUT_SECONDS,
+ *     by interrupting its thread and telling the user it took too long.</li>
+ *     <li>turns it away while {@link Command#maxConcurrent} or COMMAND_MAX_CONCURRENT runs of it
+ *     are already going. A run that ignores being interrupted keeps its place until it returns.</li>
+ *     <li>records its latency, failures, timeouts and rejections under its name, which are
+ *     logged every {@value #REPORT_MINUTES} minutes.</li>
+ * </ul>
+ * The latency is how long {@code execute} took to return, so work a command queues and
+ * finishes later is not counted.
+ *
+ * @author Derrick Eberlein
+ */
+public final class CommandEngine {
+
+    private static final long DEFAULT_DEFER_MS = 2000;
+    private static final long DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_MAX_CONCURRENT = 16;
+    private static final long REPORT_MINUTES = 10;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final long deferMillis;
+    private final long timeoutSeconds;
+    private final int maxConcurrent;
+    private final Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a CommandEngine and starts logging its commands' statistics.
+     *
+     * @param threads the size of the pool commands run on, or 0 to run each on its own virtual thread.
+     * @param deferMillis how long a command may go without replying before it is deferred, or 0 to never defer.
+     * @param timeoutSeconds how long a command may run when it does not set its own timeout.
+     * @param maxConcurrent how many runs of a command may go at once when it does not set its own cap.
+     */
+    public CommandEngine(int threads, long deferMillis, long timeoutSeconds, int maxConcurrent) {
+        if (threads > 0) {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "command-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("command-", 1).factory());
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "command-engine-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deferMillis = deferMillis;
+        this.timeoutSeconds = timeoutSeconds;
+        this.maxConcurrent = maxConcurrent;
+
+        timer.scheduleAtFixedRate(this::report, REPORT_MINUTES, REPORT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Creates a CommandEngine configured by the COMMAND_THREADS, COMMAND_DEFER_MS,
+     * COMMAND_TIMEOUT_SECONDS and COMMAND_MAX_CONCURRENT variables.
+     *
+     * @param config the environment configuration.
+     * @return the engine.
+     */
+    public static CommandEngine fromConfig(Dotenv config) {
+        int threads = (int) readLong(config, "COMMAND_THREADS", 0);
+        long deferMillis = readLong(config, "COMMAND_DEFER_MS", DEFAULT_DEFER_MS);
+        long timeoutSeconds = Math.max(1, readLong(config, "COMMAND_TIMEOUT_SECONDS", DEFAULT_TIMEOUT_SECONDS));
+        int maxConcurrent = (int) Math.max(1, readLong(config, "COMMAND_MAX_CONCURRENT", DEFAULT_MAX_CONCURRENT));
+        return new CommandEngine(threads, deferMillis, timeoutSeconds, maxConcurrent);
+    }
+
+    /**
+     * Run a command for an interaction. Returns at once; the command runs on the engine's threads.
+     *
+     * @param command the command.
+     * @param event the interaction event.
+     */
+    public void submit(Command command, SlashCommandInteractionEvent event) {
+        Metrics commandMetrics = metrics.computeIfAbsent(command.name,
+                name -> new Metrics(command.maxConcurrent > 0 ? command.maxConcurrent : maxConcurrent));
+        if (!commandMetrics.slots.tryAcquire()) {
+            commandMetrics.rejected.increment();
+            String text = "Too many people are using `/" + command.name + "` right now, please try again in a moment.";
+            event.replyEmbeds(EmbedUtils.createError(text)).setEphemeral(true).queue();
+            return;
+        }
+
+        Invocation invocation = new Invocation(command, commandMetrics, new AutoDeferInteraction(event.getInteraction()));
+        SlashCommandInteractionEvent wrapped = invocation.interaction.wrap(event);
+        if (deferMillis > 0) {
+            invocation.defer = timer.schedule(invocation.interaction::deferIfSilent, deferMillis, TimeUnit.MILLISECONDS);
+        }
+        long timeout = command.timeoutSeconds > 0 ? command.timeoutSeconds : timeoutSeconds;
+        invocation.timeout = timer.schedule(invocation::timeOut, timeout, TimeUnit.SECONDS);
+
+        try {
+            invocation.task = executor.submit(() -> invocation.run(wrapped));
+        } catch (RejectedExecutionException e) {
+            invocation.end();
+            commandMetrics.slots.release();
+            System.err.println("Command engine refused /" + command.name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the statistics of every command run since startup.
+     *
+     * @return the statistics of each command, by name.
+     */
+    public List<CommandStats> getStats() {
+        List<CommandStats> stats = new ArrayList<>(metrics.size());
+        metrics.forEach((name, commandMetrics) -> stats.add(new CommandStats(name, commandMetrics.failures.sum(),
+                commandMetrics.timeouts.sum(), commandMetrics.rejected.sum(), commandMetrics.latency.snapshot())));
+        stats.sort((a, b) -> a.name().compareTo(b.name()));
+        return stats;
+    }
+
+    /**
+     * Stop accepting commands and interrupt the ones running.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private void report() {
+        for (CommandStats stats : getStats()) {
+            System.out.println("Command " + stats);
+        }
+    }
+
+    private static long readLong(Dotenv config, String key, long fallback) {
+        String value = config.get(key);
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + key + " '" + value + "', using " + fallback);
+            return fallback;
+        }
+    }
+
+    /**
+     * The statistics of a command.
+     *
+     * @param name the command's name.
+     * @param failures the runs that threw or timed out.
+     * @param timeouts the runs stopped for taking too long.
+     * @param rejected the runs turned away because too many were already going.
+     * @param latency its latency histogram.
+     */
+    public record CommandStats(String name, long failures, long timeouts, long rejected, LatencyHistogram.Snapshot latency) {
+
+        @Override
+        public String toString() {
+            return "/" + name + ": " + latency + ", failures=" + failures + ", timeouts=" + timeouts + ", rejected=" + rejected;
+        }
+    }
+
+    /**
+     * The running totals of a command, and the slots its runs take.
+     */
+    private static final class Metrics {
+        private final Semaphore slots;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        private Metrics(int maxConcurrent) {
+            this.slots = new Semaphore(maxConcurrent);
+        }
+    }
+
+    /**
+     * A single run of a command. It ends either when the command returns or when it times out,
+     * whichever comes first, and only that one records it. Its slot is given back when the command
+     * returns, or by the timeout if the command never got to start.
+     */
+    private static final class Invocation {
+        private final Command command;
+        private final Metrics metrics;
+        private final AutoDeferInteraction interaction;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile Future<?> task;
+        private volatile ScheduledFuture<?> defer;
+        private volatile ScheduledFuture<?> timeout;
+
+        private Invocation(Command command, Metrics metrics, AutoDeferInteraction interaction) {
+            this.command = command;
+            this.metrics = metrics;
+            this.interaction = interaction;
+        }
+
+        private void run(SlashCommandInteractionEvent event) {
+            // A run that timed out while still queued has already given its slot back
+            if (!started.compareAndSet(false, true)) return;
+            try {
+                command.execute(event);
+                end();
+            } catch (RuntimeException e) {
+                if (end()) {
+                    metrics.failures.increment();
+                    System.err.println("Command /" + command.name + " failed: " + e);
+                    interaction.fail(EmbedUtils.createError("Something went wrong running this command."));
+                }
+            } finally {
+                metrics.slots.release();
+            }
+        }
+
+        private void timeOut() {
+            if (!end()) return;
+            if (started.compareAndSet(false, true)) {
+                // Still queued, so run will never get to give its slot back
+                metrics.slots.release();
+            }
+            Future<?> running = task;
+            if (running != null) running.cancel(true);
+            metrics.failures.increment();
+            metrics.timeouts.increment();
+            System.err.println("Command /" + command.name + " timed out");
+            interaction.fail(EmbedUtils.createError("This command took too long and was stopped."));
+        }
+
+        /**
+         * End the run, if it has not ended already.
+         *
+         * @return true if this call ended it.
+         */
+        private boolean end() {
+            if (!ended.compareAndSet(false, true)) return false;
+            metrics.latency.record(System.nanoTime() - start);
+            ScheduledFuture<?> pending = defer;
+            if (pending != null) pending.cancel(false);
+            pending = timeout;
+            if (pending != null) pending.cancel(false);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.redacted.Commands;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import io.github.cdimascio.dotenv.Dotenv;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.requests.restaction.CommandListUpdateAction;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import net.dv8tion.jda.api.utils.data.SerializableData;
+import org.bson.Document;
+import org.redacted.Database.Database;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * CommandRegistrar Class
+ * Uploads the bot's slash commands to Discord only when they have changed. Each scope the
+ * commands can be registered in, globally or for one guild, has the hash of the command tree
+ * last uploaded to it stored in the command_registrations collection, and an upload whose hash
+ * matches the stored one is skipped. The hash is taken over the commands' JSON with its keys
+ * sorted, so it only changes when a command does.
+ * <p>
+ * The COMMAND_SCOPE variable picks where commands live. In "guild" mode, the default, every
+ * guild gets its own copy. In "global" mode they are registered once for the whole application,
+ * and guilds are cleared of the copies they were given before, so no command shows up twice.
+ * <p>
+ * The stored hashes are loaded once, on the storage executor, when the registrar is created,
+ * and every write to the collection is made there too, so registering never waits on the
+ * database on a gateway or callback thread.
+ *
+ * @author Derrick Eberlein
+ */
+public final class CommandRegistrar {
+
+    private static final String GLOBAL_SCOPE = "global";
+    private static final String EMPTY_HASH = hash(List.of());
+
+    private final MongoCollection<Document> collection;
+    private final Mode mode;
+    private final Supplier<List<CommandData>> commands;
+    private final Executor storage;
+    private final AtomicBoolean globalChecked = new AtomicBoolean();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder skips = new LongAdder();
+    /** The hashes registered in every scope, by scope, once they have been loaded */
+    private final CompletableFuture<Map<String, String>> registered;
+    private volatile String hash;
+
+    /**
+     * Constructs a CommandRegistrar.
+     *
+     * @param database the database the registered hashes are stored in.
+     * @param mode where commands are registered.
+     * @param commands supplies the commands to register, once they have all been created.
+     * @param storage runs the database work.
+     */
+    public CommandRegistrar(Database database, Mode mode, Supplier<List<CommandData>> commands, Executor storage) {
+        this(database.getCommandRegistrationCollection(), mode, commands, storage);
+    }
+
+    /**
+     * Constructs a CommandRegistrar storing its hashes in the given collection.
+     *
+     * @param collection the collection the registered hashes are stored in.
+     * @param mode where commands are registered.
+     * @param commands supplies the commands to register, once they have all been created.
+     * @param storage runs the database work.
+     */
+    CommandRegistrar(MongoCollection<Document> collection, Mode mode, Supplier<List<CommandData>> commands, Executor storage) {
+        this.collection = collection;
+        this.mode = mode;
+        this.commands = commands;
+        this.storage = storage;
+        this.registered = CompletableFuture.supplyAsync(this::load, storage);
+    }
+
+    /**
+     * Creates a CommandRegistrar in the mode the COMMAND_SCOPE variable names.
+     *
+     * @param database the database the registered hashes are stored in.
+     * @param config the environment configuration.
+     * @param commands supplies the commands to register, once they have all been created.
+     * @param storage runs the database work.
+     * @return the registrar.
+     */
+    public static CommandRegistrar fromConfig(Database database, Dotenv config, Supplier<List<CommandData>> commands,
+                                              Executor storage) {
+        String value = config.get("COMMAND_SCOPE");
+        Mode mode = value != null && value.trim().equalsIgnoreCase(GLOBAL_SCOPE) ? Mode.GLOBAL : Mode.GUILD;
+        return new CommandRegistrar(database, mode, commands, storage);
+    }
+
+    /**
+     * Register the application's global commands if they have changed. Only the first shard to
+     * call this does anything, as global commands are shared by every shard. If the upload
+     * fails, the next shard to call this tries again.
+     *
+     * @param shard a ready shard.
+     */
+    public void registerGlobal(JDA shard) {
+        if (!globalChecked.compareAndSet(false, true)) return;
+        List<CommandData> wanted = mode == Mode.GLOBAL ? commands.get() : List.of();
+        sync(GLOBAL_SCOPE, wanted, shard::updateCommands, "global commands", () -> globalChecked.set(false));
+    }
+
+    /**
+     * Register a guild's commands if they have changed. In global mode the guild is left with none.
+     *
+     * @param guild the guild.
+     */
+    public void registerForGuild(Guild guild) {
+        List<CommandData> wanted = mode == Mode.GUILD ? commands.get() : List.of();
+        sync(guildScope(guild.getIdLong()), wanted, guild::updateCommands, "commands for guild " + guild.getName(), () -> {});
+    }
+
+    /**
+     * Forget the commands registered in a guild the bot has left. Discord drops a guild's
+     * commands when the bot leaves it, so they are uploaded again if it ever comes back.
+     * The stored hash is deleted on the storage executor.
+     *
+     * @param guildId the guild that was left.
+     */
+    public void forgetGuild(long guildId) {
+        String scope = guildScope(guildId);
+        registered.thenAcceptAsync(hashes -> {
+            hashes.remove(scope);
+            try {
+                collection.deleteOne(Filters.eq("scope", scope));
+            } catch (MongoException e) {
+                System.err.println("Failed to forget command hash for " + scope + ": " + e.getMessage());
+            }
+        }, storage);
+    }
+
+    /**
+     * Get the number of uploads made and skipped because nothing had changed.
+     *
+     * @return a snapshot of the registration statistics.
+     */
+    public RegistrationStats getStats() {
+        return new RegistrationStats(mode, uploads.sum(), skips.sum());
+    }
+
+    private void sync(String scope, List<CommandData> wanted, Supplier<CommandListUpdateAction> update, String description,
+                      Runnable onFailure) {
+        String wantedHash = wanted.isEmpty() ? EMPTY_HASH : treeHash();
+        // Runs straight away once the hashes are loaded, and on the storage executor when they are until then
+        registered.thenAccept(hashes -> {
+            if (wantedHash.equals(hashes.get(scope))) {
+                skips.increment();
+                return;
+            }
+
+            update.get().addCommands(wanted).queue(
+                    success -> {
+                        uploads.increment();
+                        hashes.put(scope, wantedHash);
+                        storage.execute(() -> store(scope, wantedHash));
+                        System.out.println("Registered " + wanted.size() + " " + description);
+                    },
+                    failure -> {
+                        System.err.println("Failed to register " + description + ": " + failure.getMessage());
+                        onFailure.run();
+                    }
+            );
+        }).exceptionally(error -> {
+            System.err.println("Failed to register " + description + ": " + error.getMessage());
+            return null;
+        });
+    }
+
+    private static String guildScope(long guildId) {
+        return "guild:" + guildId;
+    }
+
+    private String treeHash() {
+        String current = hash;
+        if (current == null) {
+            current = hash(commands.get());
+            hash = current;
+        }
+        return current;
+    }
+
+    /**
+     * Load the hashes registered in every scope. Blocks on the database.
+     *
+     * @return the hashes by scope, empty if they could not be loaded.
+     */
+    private Map<String, String> load() {
+        Map<String, String> loaded = new ConcurrentHashMap<>();
+        try {
+            for (Document document : collection.find()) {
+                String scope = document.getString("scope");
+                String stored = document.getString("hash");
+                if (scope != null && stored != null) loaded.put(scope, stored);
+            }
+        } catch (MongoException e) {
+            System.err.println("Failed to load registered command hashes, registering everywhere: " + e.getMessage());
+        }
+        return loaded;
+    }
+
+    private void store(String scope, String storedHash) {
+        try {
+            collection.replaceOne(Filters.eq("scope", scope),
+                    new Document("scope", scope).append("hash", storedHash).append("registeredAt", new Date()),
+                    new ReplaceOptions().upsert(true));
+        } catch (MongoException e) {
+            System.err.println("Failed to store command hash for " + scope + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hash a command tree. Keys are sorted at every level, so the hash does not depend on the
+     * order a command's JSON happens to be built in.
+     *
+     * @param commands the commands.
+     * @return the hex-encoded SHA-256 of the tree.
+     */
+    static String hash(List<CommandData> commands) {
+        StringBuilder canonical = new StringBuilder();
+        List<Object> tree = new ArrayList<>(commands.size());
+        for (CommandData command : commands) {
+            tree.add(command.toData());
+        }
+        canonicalize(tree, canonical);
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void canonicalize(Object value, StringBuilder out) {
+        // JDA keeps nested objects and arrays as they were put, so unwrap them first
+        if (value instanceof SerializableData data) value = data.toData();
+        if (value instanceof DataObject object) value = object.toMap();
+        if (value instanceof DataArray array) value = array.toList();
+
+        if (value instanceof Map<?, ?> map) {
+            TreeMap<String, Object> sorted = new TreeMap<>();
+            map.forEach((key, entry) -> sorted.put(String.valueOf(key), entry));
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                if (!first) out.append(',');
+                first = false;
+                quote(entry.getKey(), out);
+                out.append(':');
+                canonicalize(entry.getValue(), out);
+            }
+            out.append('}');
+        } else if (value instanceof Collection<?> list) {
+            out.append('[');
+            boolean first = true;
+            for (Object entry : list) {
+                if (!first) out.append(',');
+                first = false;
+                canonicalize(entry, out);
+            }
+            out.append(']');
+        } else if (value instanceof String string) {
+            quote(string, out);
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static void quote(String string, StringBuilder out) {
+        out.append('"').append(string.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    }
+
+    /**
+     * Where commands are registered.
+     */
+    public enum Mode {
+        /** A copy for every guild. */
+        GUILD,
+        /** Once for the whole application. */
+        GLOBAL
+    }
+
+    /**
+     * A snapshot of the registration statistics.
+     *
+     * @param mode where commands are registered.
+     * @param uploaded command lists uploaded since startup.
+     * @param unchanged uploads skipped because the scope already had the same commands.
+     */
+    public record RegistrationStats(Mode mode, long uploaded, long unchanged) {
+    }
+}
@@ -9,8 +9,8 @@ import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
 import org.redacted.Database.Data.GuildData;
-import org.redacted.Database.cache.Economy;
 import org.redacted.Handlers.economy.EconomyHandler;
+import org.redacted.Handlers.economy.EconomySnapshot;
 import org.redacted.Redacted;
 import org.redacted.util.embeds.EmbedColor;
 
@@ -50,20 +50,10 @@ public class BalanceCommand extends Command {
 
         // Get balance and bank values
         EconomyHandler economyHandler = GuildData.get(Objects.requireNonNull(event.getGuild()), bot).getEconomyHandler();
-        Economy profile = economyHandler.getProfile(user.getIdLong());
-        Long balance;
-        Long bank;
-        long total;
-        if (profile != null) {
-            balance = profile.getBalance();
-            if (balance == null) balance = 0L;
-            bank = profile.getBank();
-            if (bank == null) bank = 0L;
-        } else {
-            balance = 0L;
-            bank = 0L;
-        }
-        total = balance + bank;
+        EconomySnapshot snapshot = economyHandler.getSnapshot(user.getIdLong());
+        long balance = snapshot.balance();
+        long bank = snapshot.bank();
+        long total = snapshot.networth();
 
         // Send embed message
         String currency = economyHandler.getCurrency();
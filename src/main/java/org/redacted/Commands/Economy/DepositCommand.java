@@ -73,7 +73,15 @@ public class DepositCommand extends Command {
         } else {
             amount = balance;
         }
-        economyHandler.deposit(user.getIdLong(), amount);
+        try {
+            economyHandler.deposit(user.getIdLong(), amount);
+        } catch (IllegalArgumentException e) {
+            // Balance changed since it was read
+            embed.setDescription(EmbedUtils.RED_X + " You no longer have enough money to deposit that much!");
+            embed.setColor(EmbedColor.ERROR.color);
+            event.replyEmbeds(embed.build()).setEphemeral(true).queue();
+            return;
+        }
 
         // Send embed message
         String value = currency + " " + EconomyHandler.FORMATTER.format(amount);
@@ -8,8 +8,8 @@ import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
 import org.redacted.Database.Data.GuildData;
-import org.redacted.Database.cache.Economy;
 import org.redacted.Handlers.economy.EconomyHandler;
+import org.redacted.Handlers.economy.LeaderboardIndex;
 import org.redacted.Redacted;
 import org.redacted.listeners.ButtonListener;
 import org.redacted.util.embeds.EmbedColor;
@@ -62,7 +62,7 @@ public class LeaderboardCommand extends Command {
     private void displayLeaderboard(SlashCommandInteractionEvent event) {
         event.deferReply().queue(hook -> {
             EconomyHandler economyHandler = GuildData.get(Objects.requireNonNull(event.getGuild()), bot).getEconomyHandler();
-            List<Economy> leaderboard = economyHandler.getLeaderboardAsList();
+            List<LeaderboardIndex.Entry> leaderboard = economyHandler.getLeaderboardPage(0, Integer.MAX_VALUE);
 
             List<MessageEmbed> embeds = buildLeaderboardMenu(leaderboard, event, economyHandler);
             if (embeds.isEmpty()) {
@@ -87,7 +87,7 @@ public class LeaderboardCommand extends Command {
      * @param event the command interaction event.
      * @return a list of MessageEmbed objects for pagination.
      */
-    private List<MessageEmbed> buildLeaderboardMenu(List<Economy> leaderboard, SlashCommandInteractionEvent event, EconomyHandler economyHandler) {
+    private List<MessageEmbed> buildLeaderboardMenu(List<LeaderboardIndex.Entry> leaderboard, SlashCommandInteractionEvent event, EconomyHandler economyHandler) {
         List<MessageEmbed> embeds = new ArrayList<>();
         EmbedBuilder embed = new EmbedBuilder();
         embed.setTitle("🏆  Economy Leaderboard");
@@ -95,15 +95,11 @@ public class LeaderboardCommand extends Command {
 
         int counter = 0;
         int rank = 1;
-        for (Economy profile : leaderboard) {
-            if (profile.getUser() == null) continue; // Still good to skip null user IDs
-
-            Member member = event.getGuild().getMemberById(profile.getUser());
+        for (LeaderboardIndex.Entry entry : leaderboard) {
+            Member member = event.getGuild().getMemberById(entry.user());
             String userName = member != null ? member.getEffectiveName() : "\uD83D\uDEAB Left the server";
 
-            long balance = profile.getBalance() != null ? profile.getBalance() : 0;
-            long bank = profile.getBank() != null ? profile.getBank() : 0;
-            long total = balance + bank;
+            long total = entry.networth();
 
             embed.appendDescription("**" + rank + ". " + userName + "**\n" +
                     "Balance: " + economyHandler.getCurrency() + " " + EconomyHandler.FORMATTER.format(total) + "\n\n");
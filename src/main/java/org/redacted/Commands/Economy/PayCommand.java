@@ -67,9 +67,9 @@ public class PayCommand extends Command {
         EconomyHandler economyHandler = GuildData.get(Objects.requireNonNull(event.getGuild()), bot).getEconomyHandler();
         String currency = economyHandler.getCurrency();
 
-        // Check that user has necessary funds
-        long balance = economyHandler.getBalance(user.getIdLong());
-        if (amount > balance) {
+        // Pay target, the funds check happens atomically with the debit
+        if (!economyHandler.pay(user.getIdLong(), target.getIdLong(), amount)) {
+            long balance = economyHandler.getBalance(user.getIdLong());
             String value = currency + " " + EconomyHandler.FORMATTER.format(balance);
             String text = "You don't have that much money to give. You currently have " + value + " on hand.";
             embed.setDescription(EmbedUtils.RED_X + text);
@@ -77,9 +77,6 @@ public class PayCommand extends Command {
             event.replyEmbeds(embed.build()).setEphemeral(true).queue();
             return;
         }
-
-        // Pay target
-        economyHandler.pay(user.getIdLong(), target.getIdLong(), amount);
         String value = currency + " " + EconomyHandler.FORMATTER.format(amount);
 
         // Send embed message
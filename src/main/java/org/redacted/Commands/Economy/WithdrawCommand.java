@@ -73,7 +73,15 @@ public class WithdrawCommand extends Command {
         } else {
             amount = bank;
         }
-        economyHandler.withdraw(user.getIdLong(), amount);
+        try {
+            economyHandler.withdraw(user.getIdLong(), amount);
+        } catch (IllegalArgumentException e) {
+            // Bank changed since it was read
+            embed.setDescription(EmbedUtils.RED_X + " You no longer have enough money in your bank to withdraw that much!");
+            embed.setColor(EmbedColor.ERROR.color);
+            event.replyEmbeds(embed.build()).setEphemeral(true).queue();
+            return;
+        }
 
         // Send embed message
         String value = currency + " " + EconomyHandler.FORMATTER.format(amount);
@@ -1,13 +1,11 @@
 package org.redacted.Commands.Fun;
 
-import io.github.cdimascio.dotenv.Dotenv;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
 import org.redacted.Redacted;
 import org.redacted.util.SocialMedia.Reddit.RedditClient;
-import org.redacted.util.SocialMedia.Reddit.RedditOAuth;
 import org.redacted.util.SocialMedia.Reddit.RedditTokenManager;
 import org.redacted.util.embeds.EmbedColor;
 
@@ -25,7 +23,7 @@ import java.util.Random;
  * @author Derrick Eberlein
  */
 public class AnimeCommand extends Command {
-    private RedditClient redditClient;
+    private final RedditClient redditClient;
     private final Redacted bot;
     private static final int MAX_ATTEMPTS = 10;
     private static final String[] SUBREDDITS = {
@@ -39,7 +37,7 @@ public class AnimeCommand extends Command {
 
     /**
      * Constructor for the AnimeCommand.
-     * Initializes the command with its name, description, category, and Reddit API credentials.
+     * Initializes the command with its name, description, category, and the bot's shared Reddit token.
      *
      * @param bot The Redacted bot instance.
      */
@@ -47,25 +45,18 @@ public class AnimeCommand extends Command {
         super(bot);
         this.bot = bot;
         System.out.println("Initializing AnimeCommand...");
-        Dotenv config = bot.getConfig();
-
-        String clientID = config.get("REDDIT_CLIENT_ID");
-        String secretID = config.get("REDDIT_SECRET_ID");
-        String username = config.get("REDDIT_USERNAME");
-        String password = config.get("REDDIT_PASSWORD");
 
         // Initialize category to subreddit mapping
         categoryToSubreddits = new HashMap<>();
         categoryToSubreddits.put("anime", List.of(SUBREDDITS));
 
-        // Get Reddit API Token
-        RedditOAuth redditOAuth = new RedditOAuth(bot.httpClient, bot.gson);
-
         this.name = "anime";
         this.description = "Get a random anime image! :3";
         this.category = Category.FUN;
 
-        this.redditTokenManager = new RedditTokenManager(bot.getDatabase(), redditOAuth, clientID, secretID, username, password);
+        // Share the bot's Reddit token
+        this.redditTokenManager = bot.getRedditTokenManager();
+        this.redditClient = bot.getRedditClient();
     }
 
     /**
@@ -102,16 +93,6 @@ public class AnimeCommand extends Command {
         // Set Attempt Variable
         int attempt = 0;
 
-        String token = redditTokenManager.getValidToken();
-        // Initialize the RedditClient with your access token
-        if (token!= null) {
-            System.out.println("Initializing RedditClient...");
-            this.redditClient = new RedditClient(bot.httpClient, redditTokenManager);
-            System.out.println("RedditClient initialized with token");
-        } else {
-            System.out.println("Token was null, RedditClient not initialized");
-        }
-
         //Call Image Fetching Function
         fetchAndSendMedia(event, category, includeVideos, attempt);
     }
@@ -127,13 +108,6 @@ public class AnimeCommand extends Command {
      * @param attempt The current attempt number for fetching media, used to limit retries.
      */
     private void fetchAndSendMedia(SlashCommandInteractionEvent event, String category, boolean includeVideos, int attempt) {
-        // Get Reddit Token Variables and Initialize Config
-        Dotenv config = bot.getConfig();
-        String clientID = config.get("REDDIT_CLIENT_ID");
-        String secretID = config.get("REDDIT_SECRET_ID");
-        String username = config.get("REDDIT_USERNAME");
-        String password = config.get("REDDIT_PASSWORD");
-
         // Check to make sure Reddit Token isn't expired before running command.
         String token = redditTokenManager.getValidToken();
 
@@ -1,7 +1,6 @@
 package org.redacted.Commands.Fun.Gamba;
 
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -69,14 +68,13 @@ public class BlackJackCommand extends Command {
         // Charge player for bet
         long bet = Objects.requireNonNull(event.getOption("bet")).getAsLong();
         EconomyHandler economyHandler = GuildData.get(Objects.requireNonNull(event.getGuild()), bot).getEconomyHandler();
-        long balance = economyHandler.getBalance(user.getIdLong());
-        if (balance < bet) {
+        if (!economyHandler.tryRemoveMoney(user.getIdLong(), bet)) {
+            long balance = economyHandler.getBalance(user.getIdLong());
             String currency = economyHandler.getCurrency() + " **" + balance + "**";
             String text = "You don't have enough money for this bet. You currently have " + currency + " in cash.";
             event.replyEmbeds(EmbedUtils.createError(text)).setEphemeral(true).queue();
             return;
         }
-        economyHandler.removeMoney(user.getIdLong(), bet);
 
         // Create and shuffle draw deck
         Stack<Cards> deck = decks.get(userID);
@@ -213,12 +211,13 @@ public class BlackJackCommand extends Command {
     /**
      * Draws a card from the deck and updates score.
      *
+     * @param economyHandler the economy of the guild the game is played in.
      * @param user the user playing blackjack.
      * @param bet the amount of money the player bet with.
      * @param uuid the UUID for the embed buttons.
      * @return a MessageEmbed with the updated game status.
      */
-    public static MessageEmbed hit(Guild guild, User user, long bet, String uuid, Redacted bot) {
+    public static MessageEmbed hit(EconomyHandler economyHandler, User user, long bet, String uuid) {
         // Update game stats
         games.get(user.getId()).hit();
         Blackjack game = games.get(user.getId());
@@ -226,7 +225,6 @@ public class BlackJackCommand extends Command {
 
         // Send updated embed
         EmbedBuilder embed;
-        EconomyHandler economyHandler = GuildData.get(guild, bot).getEconomyHandler();
         String currency = economyHandler.getCurrency();
         if (score >= 21) {
             if (score > 21) {
@@ -263,12 +261,13 @@ public class BlackJackCommand extends Command {
     /**
      * Ends the game and reveals dealer cards.
      *
+     * @param economyHandler the economy of the guild the game is played in.
      * @param user the user playing blackjack.
      * @param bet the amount of money the player bet with.
      * @param uuid the UUID for the embed buttons.
      * @return a MessageEmbed with the updated game status.
      */
-    public static MessageEmbed stand(Guild guild, User user, long bet, String uuid, Redacted bot) {
+    public static MessageEmbed stand(EconomyHandler economyHandler, User user, long bet, String uuid) {
         // Get player stats
         Blackjack game = games.get(user.getId());
         int score = calculateValue(game.playerHand());
@@ -278,7 +277,6 @@ public class BlackJackCommand extends Command {
         int dealerScore = calculateValue(dealerHand);
 
         // Send updated embed
-        EconomyHandler economyHandler = GuildData.get(guild, bot).getEconomyHandler();
         String currency = economyHandler.getCurrency();
         EmbedBuilder embed = getResultEmbed(user, dealerHand, score, dealerScore);
         if (dealerScore > score) {
@@ -1,36 +1,37 @@
 package org.redacted.Commands.Fun;
 
-import io.github.cdimascio.dotenv.Dotenv;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
+import net.dv8tion.jda.api.requests.RestAction;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
 import org.redacted.Redacted;
-import org.redacted.util.SocialMedia.Reddit.RedditClient;
-import org.redacted.util.SocialMedia.Reddit.RedditOAuth;
+import org.redacted.util.SocialMedia.Reddit.MediaPool;
 import org.redacted.util.SocialMedia.Reddit.RedditTokenManager;
 import org.redacted.util.embeds.EmbedColor;
 
-import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Command that fetches NSFW images from Reddit based on specified categories.
- * Utilizes the RedditClient to interact with the Reddit API and fetch media.
- * Supports both images and videos, with a maximum of 10 attempts to find valid media.
+ * Media is taken from a MediaPool that fetches and validates posts from Reddit in the background.
+ * Supports both images and videos.
  *
  * @author Derrick Eberlein
  */
 public class NSFWCommand extends Command {
-    private RedditClient redditClient;
     private final Redacted bot;
-    private static final int MAX_ATTEMPTS = 10;
     private final RedditTokenManager redditTokenManager;
+    private final MediaPool mediaPool;
 
     // Mapping of categories to subreddits
     private final Map<String, List<String>> categoryToSubreddits;
@@ -45,11 +46,6 @@ public class NSFWCommand extends Command {
         super(bot);
         this.bot = bot;
         System.out.println("Initializing NSFWCommand...");
-        Dotenv config = bot.getConfig();
-        String clientID = config.get("REDDIT_CLIENT_ID");
-        String secretID = config.get("REDDIT_SECRET_ID");
-        String username = config.get("REDDIT_USERNAME");
-        String password = config.get("REDDIT_PASSWORD");
 
         // Initialize category to subreddit mapping
         categoryToSubreddits = new HashMap<>();
@@ -69,9 +65,9 @@ public class NSFWCommand extends Command {
         categoryToSubreddits.put("black", List.of("BlackGirlsCentral", "UofBlack", "BlackPornMatters", "BlackHentai", "BlackTitties"));
         categoryToSubreddits.put("white", List.of("WhiteGirls", "thickwhitegirls", "CurvyWhiteGirls", "PhatAssWhiteGirl"));
 
-        // Get Reddit API Token
-        RedditOAuth redditOAuth = new RedditOAuth(bot.httpClient, bot.gson);
-        this.redditTokenManager = new RedditTokenManager(bot.getDatabase(), redditOAuth, clientID, secretID, username, password);
+        // Share the bot's Reddit token
+        this.redditTokenManager = bot.getRedditTokenManager();
+        this.mediaPool = new MediaPool(bot.getRedditClient());
 
         this.name = "nsfw";
         this.description = "Get an nsfw image [18+ only].";
@@ -98,19 +94,21 @@ public class NSFWCommand extends Command {
     }
 
     /**
-     * Returns a random subreddit based on the specified category.
+     * Returns the subreddits of a category in random order, so the first one is a random pick
+     * and the rest are the ones to fall back on while its pool is being refilled.
      * If the category is not found or has no subreddits, defaults to "nsfw".
      *
-     * @param category The category for which to get a subreddit.
-     * @return A random subreddit from the specified category.
+     * @param category The category for which to get subreddits.
+     * @return The category's subreddits in random order.
      */
-    private String getRandomSubreddit(String category) {
+    private List<String> getShuffledSubreddits(String category) {
         List<String> subreddits = categoryToSubreddits.get(category);
         if (subreddits == null || subreddits.isEmpty()) {
-            return "nsfw"; // Fallback to a default subreddit
+            return List.of("nsfw"); // Fallback to a default subreddit
         }
-        Random random = new Random();
-        return subreddits.get(random.nextInt(subreddits.size()));
+        List<String> shuffled = new ArrayList<>(subreddits);
+        Collections.shuffle(shuffled);
+        return shuffled;
     }
 
     /**
@@ -122,16 +120,10 @@ public class NSFWCommand extends Command {
      */
     @Override
     public void execute(SlashCommandInteractionEvent event) {
-        // Get Reddit Token Variables and Initialize Config
+        // Check to make sure Reddit Token isn't expired before running command.
         String token = redditTokenManager.getValidToken();
-
-        // Initialize the RedditClient with your access token
-        if (token != null) {
-            System.out.println("Initializing RedditClient...");
-            this.redditClient = new RedditClient(bot.httpClient, redditTokenManager);
-            System.out.println("RedditClient initialized with token");
-        } else {
-            System.out.println("Token was null, RedditClient not initialized");
+        if (token == null) {
+            System.out.println("Token was null, cannot fetch NSFW media");
         }
 
         OptionMapping categoryOption = event.getOption("category");
@@ -148,226 +140,93 @@ public class NSFWCommand extends Command {
             return;
         }
 
-        // Set Attempt Count for fetching NSFW Image
-        int attempt = 0;
-
-        if (token != null) {
-            fetchAndSendMedia(event, category, includeVideos, attempt);
+        if (token == null) {
+            event.getHook().sendMessage("RedditToken Refresh failed, contact Bot Administrator for support.").queue();
+            return;
         }
+        fetchAndSendMedia(event, category, includeVideos);
     }
 
     /**
-     * Executes the NSFW command in a specific text channel with a given category.
-     * This method is used for the LoopNSFWCommand to fetch and send media in a loop.
+     * Sends a random NSFW media (image or video) from the media pool of the specified category.
+     * Only waits on Reddit if none of the category's subreddits has media buffered.
      *
-     * @param channelId The TextChannel where the media will be sent.
-     * @param category  The category of NSFW content to fetch.
+     * @param event The SlashCommandInteractionEvent containing the command interaction data.
+     * @param category The category of NSFW content to fetch.
+     * @param includeVideos Whether to include videos in the results.
      */
-    public void executeCategory(TextChannel channelId, String category) {
-        // Set Int Attempts before it stops trying to find Images for LoopNSFW command
-        int attempt = 0;
-
-        // Call Loop Command
-        fetchAndSendMediaLoop(channelId, category, attempt);
+    private void fetchAndSendMedia(SlashCommandInteractionEvent event, String category, boolean includeVideos) {
+        takeMedia(category, event.getChannel().getIdLong(), includeVideos).whenComplete((media, error) -> {
+            if (error != null) {
+                System.err.println("Failed finding NSFW media for category " + category + ": " + error.getMessage());
+                event.getHook().sendMessage("Failed finding Images after multiple attempts, please try again later.").setEphemeral(true).queue();
+                return;
+            }
+            sendMedia(media, text -> event.getHook().sendMessage(text), embed -> event.getHook().sendMessageEmbeds(embed));
+        });
     }
 
     /**
-     * Fetches and sends a random NSFW media (image or video) from Reddit based on the specified category.
-     * Handles retries and ensures valid media is sent.
+     * Takes a random NSFW media from the media pool of the specified category that the channel
+     * has not been sent recently. Used by the NSFWLoopEngine to fetch media ahead of its posts.
      *
-     * @param event The SlashCommandInteractionEvent containing the command interaction data.
      * @param category The category of NSFW content to fetch.
+     * @param channelId The channel the media is for.
      * @param includeVideos Whether to include videos in the results.
-     * @param attempt The current attempt number for fetching media.
+     * @return A future completed with the media, or failed if none could be found.
      */
-    private void fetchAndSendMedia(SlashCommandInteractionEvent event, String category, boolean includeVideos, int attempt) {
-        // Ensure RedditClient is initialized
-        ensureRedditClientInitialized();
-
-        if (attempt >= MAX_ATTEMPTS) {
-            event.getHook().sendMessage("Failed finding Images after multiple attempts, please try again later.").setEphemeral(true).queue();
-            String stringID = event.getChannel().getId();
-            LoopNSFWCommand.stopLoop(stringID);
-            return;
-        }
-
-        String subreddit = getRandomSubreddit(category);
-
-        String mediaUrl = null;
-        boolean validMedia = false;
-
-        // Try fetching a valid media URL with a maximum of 10 attempts
-        while (!validMedia && attempt < 10) {
-            attempt++;
-            try {
-                mediaUrl = redditClient.getRandomImageNSFW(subreddit);
-                if (mediaUrl == null) {
-                    event.getHook().sendMessage("No media could be fetched. Try again later.").queue();
-                    return;
-                }
-                System.out.println("Attempt " + attempt + ": Media URL -> " + mediaUrl);
-
-                // Skip full validation for Reddit galleries (.json endpoints)
-                if (mediaUrl.contains("gallery") || mediaUrl.endsWith(".json")) {
-                    validMedia = true;
-                } else {
-                    validMedia = redditClient.isValidMediaUrl(mediaUrl, includeVideos);
-                }
-
-            } catch (IOException e) {
-                System.err.println("Error during media fetch attempt " + attempt + ": " + e.getMessage());
-                e.printStackTrace();
-                // Optional: continue silently or break depending on your tolerance
-            }
-        }
-
-        assert mediaUrl != null;
-        if (mediaUrl.contains("redgifs.com/ifr")) {
-            mediaUrl = mediaUrl.replace("ifr", "watch");
-        }
-
-        if (mediaUrl.endsWith(".mp4") || mediaUrl.contains("v.redd.it") || mediaUrl.contains("redgifs.com/watch") || mediaUrl.contains("www.youtube.com/") || mediaUrl.contains("youtu.be") || mediaUrl.contains("xhamster") || mediaUrl.contains("redtube") || mediaUrl.contains("pornhub") || mediaUrl.contains("video")) {
-            if (includeVideos) {
-                String message = String.format("**Here's a random NSFW video from r/%s:**\n%s", subreddit, mediaUrl);
-                event.getHook().sendMessage(message).queue();
-            } else {
-                System.out.println("Video found, but videos are not allowed.");
-                fetchAndSendMedia(event, category, false, attempt);
-            }
-        } else if (mediaUrl.endsWith(".gif")) {
-            EmbedBuilder embed = new EmbedBuilder()
-                    .setColor(EmbedColor.DEFAULT.color)
-                    .setTitle("Here's a random NSFW gif from r/" + subreddit)
-                    .setImage(mediaUrl);
-            event.getHook().sendMessageEmbeds(embed.build()).queue();
-        } else if (mediaUrl.contains("reddit.com/gallery")) {
-            List<String> galleryUrls = redditClient.getGalleryImages(mediaUrl);
-            if (galleryUrls.isEmpty()) {
-                fetchAndSendMedia(event, category, includeVideos, attempt + 1); // Retry with a new media URL
-                return;
-            }
-            EmbedBuilder embed = new EmbedBuilder()
-                    .setColor(EmbedColor.DEFAULT.color)
-                    .setTitle("Here's a random NSFW gallery from r/" + subreddit)
-                    .setImage(galleryUrls.get(0))
-                    .setFooter("Page 1/" + galleryUrls.size());
-
-            event.getHook().sendMessageEmbeds(embed.build()).queue(message -> {
-                bot.getGalleryManager().addGallery(message.getIdLong(), galleryUrls);
-                bot.getGalleryManager().addButtons(message, galleryUrls.size());
-            });
-        } else {
-            EmbedBuilder embed = new EmbedBuilder()
-                    .setColor(EmbedColor.DEFAULT.color)
-                    .setTitle("Here's a random NSFW image from r/" + subreddit)
-                    .setImage(mediaUrl);
-            event.getHook().sendMessageEmbeds(embed.build()).queue();
-        }
+    public CompletableFuture<MediaPool.Media> takeMedia(String category, long channelId, boolean includeVideos) {
+        return mediaPool.take(getShuffledSubreddits(category), channelId, includeVideos);
     }
 
     /**
-     * Fetches and sends a random NSFW media (image or video) in a loop.
-     * This method is used for the LoopNSFWCommand to continuously fetch and send media.
+     * Sends a media post to a text channel.
      *
      * @param channel The TextChannel where the media will be sent.
-     * @param category The category of NSFW content to fetch.
-     * @param attempt The current attempt number for fetching media.
+     * @param media The media to send.
      */
-    private void fetchAndSendMediaLoop(TextChannel channel, String category, int attempt) {
-        // Ensure RedditClient is initialized
-        ensureRedditClientInitialized();
-
-        // Check to make sure Reddit Token isn't expired before running command.
-        String token = redditTokenManager.getValidToken();
-
-        if (token == null) {
-            channel.sendMessage("RedditToken Refresh failed, contact Bot Administrator for support.").queue();
-            return;
-        }
-
-        if (attempt >= MAX_ATTEMPTS) {
-            channel.sendMessage("Failed finding Images after multiple attempts, please try again later.").queue();
-            String stringID = channel.getId();
-            LoopNSFWCommand.stopLoop(stringID);
-            return;
-        }
-
-        String subreddit = getRandomSubreddit(category);
-
-        String mediaUrl = null;
-        boolean validMedia = false;
-
-        while (!validMedia && attempt < 10) {
-            attempt++;
-            try {
-                mediaUrl = redditClient.getRandomImageNSFW(subreddit);
-                if (mediaUrl == null) {
-                    channel.sendMessage("No media could be fetched. Try again later.").queue();
-                    return;
-                }
-
-                System.out.println("Attempt " + attempt + ": Media URL -> " + mediaUrl);
-
-                // Accept Reddit JSON gallery endpoint directly
-                if (mediaUrl.contains("gallery") || mediaUrl.endsWith(".json")) {
-                    validMedia = true;
-                } else {
-                    validMedia = redditClient.isValidMediaUrl(mediaUrl, true);
-                }
-
-            } catch (IOException e) {
-                System.err.println("Error during media fetch attempt " + attempt + ": " + e.getMessage());
-                e.printStackTrace();
-            }
-        }
-
-        assert mediaUrl != null;
-        if (mediaUrl.contains("redgifs.com/ifr")) {
-            mediaUrl = mediaUrl.replace("ifr", "watch");
-        }
-
-        if (mediaUrl.endsWith(".mp4") || mediaUrl.contains("v.redd.it") || mediaUrl.contains("redgifs.com/watch") || mediaUrl.contains("www.youtube.com/") || mediaUrl.contains("youtu.be") || mediaUrl.contains("xhamster") || mediaUrl.contains("redtube") || mediaUrl.contains("pornhub") || mediaUrl.contains("video")) {
-            String message = String.format("**Here's a random NSFW video from r/%s:**\n%s", subreddit, mediaUrl);
-            channel.sendMessage(message).queue();
-        } else if (mediaUrl.endsWith(".gif")) {
-            EmbedBuilder embed = new EmbedBuilder()
-                    .setColor(EmbedColor.DEFAULT.color)
-                    .setTitle("Here's a random NSFW gif from r/" + subreddit)
-                    .setImage(mediaUrl);
-            channel.sendMessageEmbeds(embed.build()).queue();
-        } else if (mediaUrl.contains("reddit.com/gallery")) {
-            List<String> galleryUrls = redditClient.getGalleryImages(mediaUrl);
-            if (galleryUrls.isEmpty()) {
-                fetchAndSendMediaLoop(channel, category, attempt + 1); // Retry with a new media URL
-                return;
-            }
-            EmbedBuilder embed = new EmbedBuilder()
-                    .setColor(EmbedColor.DEFAULT.color)
-                    .setTitle("Here's a random NSFW gallery from r/" + subreddit)
-                    .setImage(galleryUrls.get(0))
-                    .setFooter("Page 1/" + galleryUrls.size());
-
-            channel.sendMessageEmbeds(embed.build()).queue(message -> {
-                bot.getGalleryManager().addGallery(message.getIdLong(), galleryUrls);
-                bot.getGalleryManager().addButtons(message, galleryUrls.size());
-            });
-        } else {
-            EmbedBuilder embed = new EmbedBuilder()
-                    .setColor(EmbedColor.DEFAULT.color)
-                    .setTitle("Here's a random NSFW image from r/" + subreddit)
-                    .setImage(mediaUrl);
-            channel.sendMessageEmbeds(embed.build()).queue();
-        }
+    public void sendMedia(TextChannel channel, MediaPool.Media media) {
+        sendMedia(media, channel::sendMessage, channel::sendMessageEmbeds);
     }
 
     /**
-     * Ensures that the RedditClient is initialized.
-     * This method is called lazily to avoid unnecessary initialization if the client is not used.
+     * Sends a media post as a link for videos or as an embed for everything else.
+     * Galleries are sent with buttons to page through their images.
+     *
+     * @param media The media to send.
+     * @param sendText Sends a plain message.
+     * @param sendEmbed Sends an embed.
      */
-    private void ensureRedditClientInitialized() {
-        if (redditClient == null) {
-            this.redditClient = new RedditClient(bot.httpClient, redditTokenManager);
-            System.out.println("RedditClient lazily initialized");
+    private void sendMedia(MediaPool.Media media, Function<String, RestAction<Message>> sendText, Function<MessageEmbed, RestAction<Message>> sendEmbed) {
+        String subreddit = media.subreddit();
+        switch (media.kind()) {
+            case VIDEO -> sendText.apply(String.format("**Here's a random NSFW video from r/%s:**\n%s", subreddit, media.url())).queue();
+            case GIF -> {
+                EmbedBuilder embed = new EmbedBuilder()
+                        .setColor(EmbedColor.DEFAULT.color)
+                        .setTitle("Here's a random NSFW gif from r/" + subreddit)
+                        .setImage(media.url());
+                sendEmbed.apply(embed.build()).queue();
+            }
+            case GALLERY -> {
+                List<String> galleryUrls = media.gallery();
+                EmbedBuilder embed = new EmbedBuilder()
+                        .setColor(EmbedColor.DEFAULT.color)
+                        .setTitle("Here's a random NSFW gallery from r/" + subreddit)
+                        .setImage(galleryUrls.get(0))
+                        .setFooter("Page 1/" + galleryUrls.size());
+                sendEmbed.apply(embed.build()).queue(message -> {
+                    bot.getGalleryManager().addGallery(message.getIdLong(), galleryUrls);
+                    bot.getGalleryManager().addButtons(message, galleryUrls.size());
+                });
+            }
+            default -> {
+                EmbedBuilder embed = new EmbedBuilder()
+                        .setColor(EmbedColor.DEFAULT.color)
+                        .setTitle("Here's a random NSFW image from r/" + subreddit)
+                        .setImage(media.url());
+                sendEmbed.apply(embed.build()).queue();
+            }
         }
     }
 }
\ No newline at end of file
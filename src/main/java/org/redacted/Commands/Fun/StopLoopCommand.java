@@ -11,8 +11,8 @@ import org.redacted.Redacted;
 import java.util.Objects;
 
 /**
- * Command that stops NSFW loops in the current channel or all channels.
- * Utilizes the LoopNSFWCommand to manage the looping tasks.
+ * Command that stops NSFW loops in the current channel or in every channel of the guild.
+ * Utilizes the NSFWLoopEngine to manage the looping tasks.
  *
  * @author Derrick Eberlein
  */
@@ -27,15 +27,15 @@ public class StopLoopCommand extends Command {
     public StopLoopCommand(Redacted bot) {
         super(bot);
         this.name = "stoploop";
-        this.description = "Stop NSFW loops in this channel or all channels.";
+        this.description = "Stop NSFW loops in this channel or in every channel of this server.";
         this.permission = Permission.MANAGE_SERVER;
         this.category = Category.FUN;
-        this.args.add(new OptionData(OptionType.BOOLEAN, "all", "Set to true to stop all NSFW loops. Default is just this channel."));
+        this.args.add(new OptionData(OptionType.BOOLEAN, "all", "Set to true to stop every NSFW loop in this server. Default is just this channel."));
     }
 
     /**
      * Executes the stop loop command.
-     * Stops the NSFW loop in the current channel or all channels based on the provided option.
+     * Stops the NSFW loop in the current channel, or every loop in the guild, based on the provided option.
      *
      * @param event The SlashCommandInteractionEvent containing the command interaction data.
      */
@@ -43,11 +43,10 @@ public class StopLoopCommand extends Command {
     public void execute(SlashCommandInteractionEvent event) {
         boolean stopAll = event.getOption("all") != null && Objects.requireNonNull(event.getOption("all")).getAsBoolean();
         if (stopAll) {
-            LoopNSFWCommand.stopAllLoops();
-            event.reply("Stopped all NSFW loops across all channels.").setEphemeral(true).queue();
+            int stopped = bot.getNsfwLoopEngine().stopAll(Objects.requireNonNull(event.getGuild()).getIdLong());
+            event.reply("Stopped " + stopped + " NSFW loop" + (stopped == 1 ? "" : "s") + " in this server.").setEphemeral(true).queue();
         } else {
-            String channelId = event.getChannel().getId();
-            if (LoopNSFWCommand.stopLoop(channelId)) {
+            if (bot.getNsfwLoopEngine().stop(event.getChannel().getIdLong())) {
                 event.reply("Stopped NSFW loop in this channel.").setEphemeral(true).queue();
             } else {
                 event.reply("No active NSFW loop was running in this channel.").setEphemeral(true).queue();
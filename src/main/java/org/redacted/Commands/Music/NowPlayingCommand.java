@@ -46,7 +46,7 @@ public class NowPlayingCommand extends Command {
         }
 
         // Get currently playing track
-        AudioTrack nowPlaying = !music.getQueue().isEmpty() ? music.getQueue().getFirst() : null;
+        AudioTrack nowPlaying = music.getCurrentTrack();
         if (nowPlaying == null) {
             String text = ":sound: Not currently playing any music!";
             event.replyEmbeds(EmbedUtils.createDefault(text)).queue();
@@ -9,6 +9,11 @@ import org.redacted.Handlers.MusicHandler;
 import org.redacted.Redacted;
 import org.redacted.listeners.MusicListener;
 import org.redacted.util.embeds.EmbedUtils;
+import org.redacted.util.musicPlayer.VoiceCapacityGovernor;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Command that plays a song from YouTube, Spotify, or Apple Music.
@@ -49,14 +54,6 @@ public class PlayCommand extends Command {
                 ? event.getOption("query").getAsString()
                 : null;
 
-        // Initialize music handler
-        MusicHandler music = bot.musicListener.getMusic(event, true);
-        if (music == null) {
-            event.replyEmbeds(EmbedUtils.createError("Music service is not available. Please try again later."))
-                    .setEphemeral(true).queue();
-            return;
-        }
-
         // Validate input
         if (query == null || query.isBlank()) {
             event.replyEmbeds(EmbedUtils.createError("Please provide a song name or link."))
@@ -69,20 +66,71 @@ public class PlayCommand extends Command {
             query = "ytsearch:" + query;
         }
 
-        // Defer quickly so we free the JDA event thread
-        event.deferReply().queue();
-
         MusicListener musicListener = bot.getMusicListener();
         if (musicListener == null) {
             System.out.println("MusicListener is null in PlayCommand");
-            event.getHook().editOriginal("Music service is not available. Please try again later.").queue();
+            event.replyEmbeds(EmbedUtils.createError("Music service is not available. Please try again later."))
+                    .setEphemeral(true).queue();
+            return;
+        }
+
+        // A new session on a saturated node waits in line for a free slot
+        long guildId = Objects.requireNonNull(event.getGuild()).getIdLong();
+        VoiceCapacityGovernor governor = musicListener.getGovernor();
+        if (musicListener.inChannel(Objects.requireNonNull(event.getMember())) && !governor.tryAcquire(guildId)) {
+            final String q = query;
+            event.deferReply().queue();
+            CompletableFuture<Boolean> admitted = governor.acquire(guildId);
+            if (!admitted.isDone()) {
+                event.getHook().editOriginal(":hourglass: | The music player is at capacity, you are number `"
+                        + governor.positionOf(guildId) + "` in line...").queue();
+            }
+            admitted.thenAccept(ok -> {
+                if (!ok) {
+                    event.getHook().editOriginal("The music player is at capacity right now, please try again in a few minutes.").queue();
+                    return;
+                }
+                boolean submitted = submit(event, () -> {
+                    if (musicListener.join(event) == null) {
+                        governor.release(guildId);
+                        event.getHook().editOriginal("Please connect to a voice channel first!").queue();
+                        return;
+                    }
+                    musicListener.addTrackAsync(event, q, event.getUser().getId());
+                });
+                if (!submitted) governor.release(guildId);
+            });
+            return;
+        }
+
+        // Initialize music handler
+        MusicHandler music = musicListener.getMusic(event, true);
+        if (music == null) {
             return;
         }
 
+        // Defer quickly so we free the JDA event thread
+        event.deferReply().queue();
+
         final String q = query;
         // Offload everything else
-        MusicListener.MUSIC_EXECUTOR.submit(() ->
-                musicListener.addTrackAsync(event, q, event.getUser().getId())
-        );
+        submit(event, () -> musicListener.addTrackAsync(event, q, event.getUser().getId()));
+    }
+
+    /**
+     * Runs a task on the music executor, telling the user if it is too busy to take it.
+     *
+     * @param event The deferred command event.
+     * @param task  The task to run.
+     * @return true if the task was accepted.
+     */
+    private boolean submit(SlashCommandInteractionEvent event, Runnable task) {
+        try {
+            MusicListener.MUSIC_EXECUTOR.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            event.getHook().editOriginal("The music player is busy, please try again in a moment.").queue();
+            return false;
+        }
     }
 }
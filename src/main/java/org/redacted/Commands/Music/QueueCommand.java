@@ -18,7 +18,7 @@ import org.redacted.util.embeds.EmbedColor;
 import org.redacted.util.embeds.EmbedUtils;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -52,7 +52,7 @@ public class QueueCommand extends Command {
         MusicHandler music = GuildData.get(event.getGuild(), bot).musicHandler;
 
         // Check if queue is null or empty
-        if (music == null || music.getQueue().isEmpty()) {
+        if (music == null || music.isQueueEmpty()) {
             String text = ":sound: There are no songs in the queue!";
             event.replyEmbeds(EmbedUtils.createDefault(text)).queue();
             return;
@@ -61,7 +61,7 @@ public class QueueCommand extends Command {
         // Defer reply to give bot more time to build embeds if queue is large
         event.deferReply().queue(hook -> {
             // Create embeds and send to channel
-            List<MessageEmbed> embeds = buildQueueEmbeds(music.getQueue(), music.getQueue().size());
+            List<MessageEmbed> embeds = buildQueueEmbeds(music.getQueueView(), music.getQueueSize());
 
             if (embeds.isEmpty()) {
                 hook.sendMessageEmbeds(
@@ -81,11 +81,11 @@ public class QueueCommand extends Command {
     /**
      * Builds a beautiful paginated embed out of the music queue.
      *
-     * @param queue     Iterator of the music queue.
+     * @param queue     View of the music queue.
      * @param queueSize Number of elements in queue.
      * @return MessageEmbed of the music queue.
      */
-    private @NotNull List<MessageEmbed> buildQueueEmbeds(@NotNull LinkedList<AudioTrack> queue, int queueSize) {
+    private @NotNull List<MessageEmbed> buildQueueEmbeds(@NotNull Collection<AudioTrack> queue, int queueSize) {
         int count = 0;
         StringBuilder description = new StringBuilder();
         List<MessageEmbed> embeds = new ArrayList<>();
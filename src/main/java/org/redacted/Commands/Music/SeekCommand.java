@@ -10,6 +10,8 @@ import org.redacted.Redacted;
 import org.redacted.listeners.MusicListener;
 import org.redacted.util.embeds.EmbedUtils;
 
+import java.util.Objects;
+
 /**
  * Command that jumps to a specified position in the current track.
  *
@@ -60,7 +62,7 @@ public class SeekCommand extends Command {
             }
 
             // Make sure pos is not longer than track
-            if (pos >= music.getQueue().getFirst().getDuration()) {
+            if (pos >= Objects.requireNonNull(music.getCurrentTrack()).getDuration()) {
                 String text = "The timestamp cannot be longer than the song!";
                 event.replyEmbeds(EmbedUtils.createError(text)).setEphemeral(true).queue();
                 return;
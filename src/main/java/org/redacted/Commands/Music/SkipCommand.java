@@ -39,7 +39,7 @@ public class SkipCommand extends Command {
 
         music.skipTrack();
         ReplyCallbackAction action = event.reply(":fast_forward: Skipping...");
-        if (music.getQueue().size() == 1) {
+        if (music.getQueueSize() == 1) {
             action = action.addEmbeds(EmbedUtils.createDefault(":sound: The music queue is now empty!"));
         }
         action.queue();
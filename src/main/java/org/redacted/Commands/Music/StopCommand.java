@@ -41,6 +41,7 @@ public class StopCommand extends Command {
         } else {
             musicHandler.disconnect();
             event.getGuild().getAudioManager().closeAudioConnection();
+            bot.getMusicListener().getGovernor().release(event.getGuild().getIdLong());
             String text = ":stop_button: Stopped the music player.";
             event.replyEmbeds(EmbedUtils.createDefault(text)).queue();
         }
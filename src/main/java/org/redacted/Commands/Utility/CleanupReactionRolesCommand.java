@@ -1,6 +1,5 @@
 package org.redacted.Commands.Utility;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.ReplaceOptions;
@@ -11,6 +10,7 @@ import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Redacted;
 
@@ -39,6 +39,8 @@ public class CleanupReactionRolesCommand extends Command {
         this.description = "Removes old legacy reaction role mappings from saved embeds.";
         this.category = Category.UTILITY;
         this.permission = Permission.MANAGE_ROLES;
+        this.timeoutSeconds = 120; // Scans every saved embed of the guild
+        this.maxConcurrent = 1;
 
         this.args.add(new OptionData(
                 OptionType.STRING,
@@ -65,7 +67,7 @@ public class CleanupReactionRolesCommand extends Command {
                 ? event.getOption("messageid").getAsString()
                 : null;
 
-        MongoCollection<SavedEmbed> collection =
+        GuildCollection<SavedEmbed> collection =
                 GuildData.getDatabase().getSavedEmbedsCollection(event.getGuild().getIdLong());
 
         if (messageId != null && !messageId.isBlank()) {
@@ -81,11 +83,11 @@ public class CleanupReactionRolesCommand extends Command {
      * and removes any that do not follow the new normalized format.
      *
      * @param event The SlashCommandInteractionEvent containing the command interaction data.
-     * @param collection The MongoCollection of SavedEmbed objects for the guild.
+     * @param collection The GuildCollection of SavedEmbed objects for the guild.
      * @param messageId The ID of the saved embed message to clean.
      */
     private void cleanSingleMessage(SlashCommandInteractionEvent event,
-                                    MongoCollection<SavedEmbed> collection,
+                                    GuildCollection<SavedEmbed> collection,
                                     String messageId) {
 
         SavedEmbed embed = collection.find(Filters.eq("messageId", messageId)).first();
@@ -136,10 +138,10 @@ public class CleanupReactionRolesCommand extends Command {
      * how many were updated, and how many old mappings were removed in total.
      *
      * @param event The SlashCommandInteractionEvent containing the command interaction data.
-     * @param collection The MongoCollection of SavedEmbed objects for the guild.
+     * @param collection The GuildCollection of SavedEmbed objects for the guild.
      */
     private void cleanAllMessages(SlashCommandInteractionEvent event,
-                                  MongoCollection<SavedEmbed> collection) {
+                                  GuildCollection<SavedEmbed> collection) {
 
         int embedsScanned = 0;
         int embedsUpdated = 0;
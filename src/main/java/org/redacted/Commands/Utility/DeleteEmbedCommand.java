@@ -1,6 +1,5 @@
 package org.redacted.Commands.Utility;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
@@ -12,6 +11,7 @@ import org.bson.conversions.Bson;
 import org.redacted.Commands.Command;
 import org.redacted.Commands.Category;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Redacted;
 
@@ -53,7 +53,7 @@ public class DeleteEmbedCommand extends Command {
         String messageId = event.getOption("messageid").getAsString();
 
         Guild guild = event.getGuild();
-        MongoCollection<SavedEmbed> collection = GuildData
+        GuildCollection<SavedEmbed> collection = GuildData
                 .getDatabase()
                 .getSavedEmbedsCollection(guild.getIdLong());
 
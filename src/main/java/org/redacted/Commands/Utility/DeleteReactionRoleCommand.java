@@ -1,6 +1,5 @@
 package org.redacted.Commands.Utility;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Updates;
 import net.dv8tion.jda.api.Permission;
@@ -12,6 +11,7 @@ import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Redacted;
 
@@ -65,7 +65,7 @@ public class DeleteReactionRoleCommand extends Command {
         String messageId = event.getOption("messageid").getAsString().trim();
         String emojiInput = event.getOption("emoji").getAsString().trim();
 
-        MongoCollection<SavedEmbed> collection =
+        GuildCollection<SavedEmbed> collection =
                 GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
 
         SavedEmbed embed = collection.find(Filters.eq("messageId", messageId)).first();
@@ -63,6 +63,7 @@ public class DeleteScheduledMessageCommand extends Command {
                 .getDeletedCount();
 
         if (deletedCount > 0) {
+            bot.getMessageScheduler().cancel(objectId);
             event.reply("Scheduled message with ID " + messageId + " has been successfully deleted.").setEphemeral(true).queue();
         } else {
             event.reply("No scheduled message found with the provided ID " + messageId + ".").setEphemeral(true).queue();
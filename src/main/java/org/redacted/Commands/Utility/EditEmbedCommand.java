@@ -1,6 +1,5 @@
 package org.redacted.Commands.Utility;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
@@ -17,6 +16,7 @@ import org.jetbrains.annotations.NotNull;
 import org.redacted.Commands.Category;
 import org.redacted.Commands.Command;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Redacted;
 import org.redacted.listeners.ButtonListener;
@@ -77,7 +77,7 @@ public class EditEmbedCommand extends Command {
             return;
         }
 
-        MongoCollection<SavedEmbed> collection = GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
+        GuildCollection<SavedEmbed> collection = GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
         SavedEmbed saved = collection.find(Filters.eq("messageId", messageId)).first();
 
         if (saved == null) {
@@ -1,6 +1,5 @@
 package org.redacted.Commands.Utility;
 
-import com.mongodb.client.MongoCollection;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
@@ -8,6 +7,7 @@ import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEve
 import org.redacted.Commands.Command;
 import org.redacted.Commands.Category;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Redacted;
 
@@ -48,7 +48,7 @@ public class ListEmbeddedMessagesCommand extends Command {
     @Override
     public void execute(SlashCommandInteractionEvent event) {
         Guild guild = event.getGuild();
-        MongoCollection<SavedEmbed> collection = GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
+        GuildCollection<SavedEmbed> collection = GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
 
         List<SavedEmbed> embeds = collection.find().into(new java.util.ArrayList<>());
 
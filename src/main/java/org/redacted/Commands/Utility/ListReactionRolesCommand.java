@@ -1,6 +1,5 @@
 package org.redacted.Commands.Utility;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
@@ -11,6 +10,7 @@ import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.redacted.Commands.Command;
 import org.redacted.Commands.Category;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Redacted;
 
@@ -59,7 +59,7 @@ public class ListReactionRolesCommand extends Command {
             return;
         }
 
-        MongoCollection<SavedEmbed> collection =
+        GuildCollection<SavedEmbed> collection =
                 GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
 
         SavedEmbed embed = collection.find(Filters.eq("messageId", messageId)).first();
@@ -33,14 +33,14 @@ public class MessageSchedulerCommand extends Command {
     /**
      * Executes the MessageSchedulerCommand.
      * This method handles the interaction when the command is invoked.
-     * It initializes the MessageSchedulerListener to start listening for user input.
+     * It opens a session in the MessageSchedulerListener to start listening for user input.
      *
      * @param event The SlashCommandInteractionEvent containing the command interaction data.
      */
     @Override
     public void execute(SlashCommandInteractionEvent event) {
-        // Pass the event to the MessageSchedulerListener
-        MessageSchedulerListener listener = new MessageSchedulerListener(bot, bot.database);
+        // Open a scheduling session for this user in the shared MessageSchedulerListener
+        MessageSchedulerListener listener = bot.getMessageSchedulerListener();
         event.reply("Let's get started with scheduling your message!").queue();
         listener.startListening(event.getChannel().asTextChannel(), event.getUser());
     }
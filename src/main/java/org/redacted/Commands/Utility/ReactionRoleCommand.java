@@ -1,6 +1,5 @@
 package org.redacted.Commands.Utility;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Updates;
 import net.dv8tion.jda.api.Permission;
@@ -13,6 +12,7 @@ import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.redacted.Commands.Command;
 import org.redacted.Commands.Category;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Redacted;
 import org.redacted.Roles.getRolesByName;
@@ -71,7 +71,7 @@ public class ReactionRoleCommand extends Command {
             return;
         }
 
-        MongoCollection<SavedEmbed> collection = GuildData
+        GuildCollection<SavedEmbed> collection = GuildData
                 .getDatabase()
                 .getSavedEmbedsCollection(guild.getIdLong());
 
@@ -1,8 +1,8 @@
 package org.redacted.Database.Data;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
+import io.github.cdimascio.dotenv.Dotenv;
 import lombok.Getter;
 import lombok.Setter;
 import net.dv8tion.jda.api.entities.Guild;
@@ -10,6 +10,7 @@ import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.jetbrains.annotations.NotNull;
 import org.redacted.Database.Database;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.cache.Config;
 import org.redacted.Database.cache.Economy;
 import org.redacted.Database.models.SavedEmbed;
@@ -19,9 +20,10 @@ import org.redacted.Handlers.SuggestionHandler;
 import org.redacted.Handlers.economy.EconomyHandler;
 import org.redacted.Redacted;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collection;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * GuildData class holds all the data related to a specific guild (server) in Discord.
@@ -32,9 +34,12 @@ import java.util.Objects;
  */
 @Getter
 @Setter
-public class GuildData {
+public final class GuildData {
 
-    private static final Map<Long, GuildData> guilds = new HashMap<>();
+    public static final int DEFAULT_LOADER_THREADS = 4;
+
+    @Getter
+    private static GuildDataCache cache = new GuildDataCache(DEFAULT_LOADER_THREADS);
     @Getter
     private static Database database;
     private Config config;
@@ -88,7 +93,7 @@ public class GuildData {
         }
 
         // Now that config is initialized, initialize the EconomyHandler
-        this.economyHandler = new EconomyHandler(guild, this);
+        this.economyHandler = new EconomyHandler(guild, this, bot.getEconomyLedger(), bot.getCooldownStore());
 
         // Initialize other handlers with the correct parameters
         this.suggestionHandler = new SuggestionHandler(guild, bot, database);
@@ -104,53 +109,151 @@ public class GuildData {
      * @param db The Database instance to be used for guild data operations.
      */
     public static void init(Database db) {
+        init(db, DEFAULT_LOADER_THREADS);
+    }
+
+    /**
+     * Initializes the GuildData class with the provided database instance, loading guilds on
+     * GUILD_LOAD_THREADS threads. A missing, non-numeric or non-positive value is logged and
+     * replaced by {@value #DEFAULT_LOADER_THREADS}.
+     *
+     * @param db The Database instance to be used for guild data operations.
+     * @param config The environment configuration.
+     */
+    public static void init(Database db, Dotenv config) {
+        int loaderThreads = DEFAULT_LOADER_THREADS;
+        String value = config.get("GUILD_LOAD_THREADS");
+        if (value != null && !value.isBlank()) {
+            try {
+                int parsed = Integer.parseInt(value.trim());
+                if (parsed > 0) {
+                    loaderThreads = parsed;
+                } else {
+                    System.err.println("Invalid GUILD_LOAD_THREADS '" + value + "', using " + DEFAULT_LOADER_THREADS);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid GUILD_LOAD_THREADS '" + value + "', using " + DEFAULT_LOADER_THREADS);
+            }
+        }
+        init(db, loaderThreads);
+    }
+
+    /**
+     * Initializes the GuildData class with the provided database instance.
+     * This method should be called once during the bot's startup to set up the database connection.
+     *
+     * @param db The Database instance to be used for guild data operations.
+     * @param loaderThreads The number of guilds that may be loaded from the database at the same time.
+     */
+    public static void init(Database db, int loaderThreads) {
         database = db;
+        cache = new GuildDataCache(loaderThreads);
     }
 
     /**
-     * Retrieves the GuildData instance for a given guild, creating it if it doesn't exist.
+     * Retrieves the GuildData instance for a given guild, loading it if it isn't cached yet.
+     * This is {@link #load(Guild, Redacted)} followed by a join, so every caller blocks until the
+     * guild has loaded, which takes database round trips the first time a guild is used. It is
+     * meant for commands, which run on the CommandEngine's threads, and other background work.
+     * Code running on a gateway or JDA callback thread should use
+     * {@link #whenLoaded(Guild, Redacted, Consumer)} or {@link #load(Guild, Redacted)} instead.
      *
      * @param guild The guild for which to retrieve the GuildData.
      * @param bot   The Redacted bot instance.
      * @return The GuildData instance for the specified guild.
      */
     public static GuildData get(@NotNull Guild guild, Redacted bot) {
-        return guilds.computeIfAbsent(Objects.requireNonNull(guild).getIdLong(), id -> new GuildData(guild, bot)); // Pass bot instance here
+        return load(guild, bot).join();
+    }
+
+    /**
+     * Retrieves the GuildData instance for a given guild without blocking.
+     * The guild is loaded on a background thread if it isn't cached yet.
+     *
+     * @param guild The guild for which to retrieve the GuildData.
+     * @param bot   The Redacted bot instance.
+     * @return A future completed with the GuildData for the specified guild.
+     */
+    public static CompletableFuture<GuildData> load(@NotNull Guild guild, Redacted bot) {
+        return cache.load(Objects.requireNonNull(guild), bot);
+    }
+
+    /**
+     * Runs an action with the GuildData of a guild once it has loaded, without blocking the caller.
+     * The action runs on the bot's thread pool, so it may use the database. Failures are logged.
+     *
+     * @param guild  The guild whose GuildData the action needs.
+     * @param bot    The Redacted bot instance.
+     * @param action The action to run.
+     */
+    public static void whenLoaded(@NotNull Guild guild, Redacted bot, Consumer<GuildData> action) {
+        load(guild, bot).thenAcceptAsync(action, bot.getThreadPool()).exceptionally(error -> {
+            System.err.println("Failed to handle an event for guild " + guild.getIdLong() + ": " + error.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Loads the GuildData of many guilds in parallel.
+     *
+     * @param guilds The guilds to load.
+     * @param bot    The Redacted bot instance.
+     * @return A future completed once every guild has loaded or failed.
+     */
+    public static CompletableFuture<Void> warmUp(Collection<Guild> guilds, Redacted bot) {
+        return cache.warmUp(guilds, bot);
+    }
+
+    /**
+     * Drops the GuildData of a guild the bot is no longer in.
+     *
+     * @param guildId The ID of the guild to evict.
+     */
+    public static void evict(long guildId) {
+        cache.evict(guildId);
+    }
+
+    /**
+     * Releases the state held for this guild.
+     * Called when the guild is evicted from the cache.
+     */
+    public void close() {
+        economyHandler.close();
     }
 
     /**
      * Retrieves the collection for suggestions in this guild.
      *
-     * @return MongoCollection of suggestions for this guild.
+     * @return GuildCollection of suggestions for this guild.
      */
-    public MongoCollection<Document> getBlacklistCollection() {
+    public GuildCollection<Document> getBlacklistCollection() {
         return database.getGuildCollection(guildId, "blacklist");
     }
 
     /**
      * Retrieves the collection for scheduled messages in this guild.
      *
-     * @return MongoCollection of scheduled messages for this guild.
+     * @return GuildCollection of scheduled messages for this guild.
      */
-    public MongoCollection<Document> getScheduledMessagesCollection() {
+    public GuildCollection<Document> getScheduledMessagesCollection() {
         return database.getGuildCollection(guildId, "scheduled_messages");
     }
 
     /**
      * Retrieves the collection for sticky messages in this guild.
      *
-     * @return MongoCollection of sticky messages for this guild.
+     * @return GuildCollection of sticky messages for this guild.
      */
-    public MongoCollection<Document> getStickyMessagesCollection() {
+    public GuildCollection<Document> getStickyMessagesCollection() {
         return database.getGuildCollection(guildId, "sticky_messages");
     }
 
     /**
      * Retrieves the collection for user intro messages in this guild.
      *
-     * @return MongoCollection of user intro messages for this guild.
+     * @return GuildCollection of user intro messages for this guild.
      */
-    public MongoCollection<Document> getUserIntroMessagesCollection() {
+    public GuildCollection<Document> getUserIntroMessagesCollection() {
         return database.getGuildCollection(guildId, "user_intro_messages");
     }
 
@@ -166,9 +269,9 @@ public class GuildData {
     /**
      * Retrieves the economy collection for this guild.
      *
-     * @return MongoCollection of Economy documents for this guild.
+     * @return GuildCollection of Economy documents for this guild.
      */
-    public MongoCollection<Economy> getEconomyCollection() {
+    public GuildCollection<Economy> getEconomyCollection() {
         // Use withDocumentClass to get the correct type of Economy instead of Document.
         return database.getGuildCollection(guildId, "economy").withDocumentClass(Economy.class);
     }
@@ -204,9 +307,9 @@ public class GuildData {
     /**
      * Retrieves the collection for saved embeds in this guild.
      *
-     * @return MongoCollection of SavedEmbed documents for this guild.
+     * @return GuildCollection of SavedEmbed documents for this guild.
      */
-    public MongoCollection<SavedEmbed> getSavedEmbedsCollection() {
+    public GuildCollection<SavedEmbed> getSavedEmbedsCollection() {
         return database.getGuildCollection(guildId, "saved_embeds")
                 .withDocumentClass(SavedEmbed.class);
     }
@@ -215,9 +318,9 @@ public class GuildData {
      * Get the collection for storing blacklisted users in a guild.
      *
      * @param guildId The ID of the guild.
-     * @return The MongoCollection for blacklisted users.
+     * @return The GuildCollection for blacklisted users.
      */
-    public MongoCollection<Document> getMuteCollection(long guildId) {
+    public GuildCollection<Document> getMuteCollection(long guildId) {
         return database.getGuildCollection(guildId, "mutes");
     }
 
@@ -0,0 +1,176 @@
+package org.redacted.Database.Data;
+
+import net.dv8tion.jda.api.entities.Guild;
+import org.redacted.Redacted;
+
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GuildDataCache Class
+ * Holds the GuildData of every guild the bot is in. Each guild is loaded at most once,
+ * on a bounded pool of loader threads, and callers get a future for it instead of
+ * waiting on the database themselves, so gateway threads are never blocked by a load.
+ * A load that fails is forgotten so the next request tries again.
+ *
+ * @author Derrick Eberlein
+ */
+public class GuildDataCache {
+
+    private final ConcurrentHashMap<Long, CompletableFuture<GuildData>> guilds = new ConcurrentHashMap<>();
+    private final ExecutorService loader;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+    private final AtomicLong maxLoadTime = new AtomicLong();
+
+    /**
+     * Constructs a GuildDataCache.
+     *
+     * @param loaderThreads the number of guilds that may be loaded at the same time.
+     */
+    public GuildDataCache(int loaderThreads) {
+        this.loader = Executors.newFixedThreadPool(Math.max(1, loaderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "guild-data-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get a guild's data, loading it in the background if it is not cached yet.
+     *
+     * @param guild the guild to load.
+     * @param bot the Redacted bot instance.
+     * @return a future completed with the guild's data.
+     */
+    public CompletableFuture<GuildData> load(Guild guild, Redacted bot) {
+        long guildId = guild.getIdLong();
+        CompletableFuture<GuildData> cached = guilds.get(guildId);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<GuildData> created = new CompletableFuture<>();
+        CompletableFuture<GuildData> existing = guilds.putIfAbsent(guildId, created);
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+
+        misses.increment();
+        loader.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                GuildData data = new GuildData(guild, bot);
+                recordLoad(System.nanoTime() - start);
+                created.complete(data);
+            } catch (Throwable e) {
+                failures.increment();
+                guilds.remove(guildId, created);
+                System.err.println("Failed to load data for guild " + guildId + ": " + e.getMessage());
+                created.completeExceptionally(e);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Get a guild's data only if it has finished loading.
+     *
+     * @param guildId the guild to look up.
+     * @return the guild's data, or null if it is not loaded.
+     */
+    public GuildData getIfLoaded(long guildId) {
+        CompletableFuture<GuildData> cached = guilds.get(guildId);
+        if (cached == null || !cached.isDone() || cached.isCompletedExceptionally()) return null;
+        return cached.join();
+    }
+
+    /**
+     * Load many guilds in parallel, bounded by the loader pool.
+     *
+     * @param toLoad the guilds to load.
+     * @param bot the Redacted bot instance.
+     * @return a future completed once every guild has loaded or failed.
+     */
+    public CompletableFuture<Void> warmUp(Collection<Guild> toLoad, Redacted bot) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<?>[] loads = toLoad.stream()
+                .map(guild -> load(guild, bot).exceptionally(error -> null))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(loads).thenRun(() ->
+                System.out.println("Warmed up " + loads.length + " guilds in " + (System.currentTimeMillis() - start) + "ms (" + getStats() + ")"));
+    }
+
+    /**
+     * Drop a guild's data and release what it holds, e.g. after the bot leaves the guild.
+     *
+     * @param guildId the guild to evict.
+     */
+    public void evict(long guildId) {
+        CompletableFuture<GuildData> removed = guilds.remove(guildId);
+        if (removed == null) return;
+        evictions.increment();
+        removed.thenAccept(GuildData::close);
+    }
+
+    /**
+     * Get the number of guilds cached, including those still loading.
+     *
+     * @return the number of cached guilds.
+     */
+    public int size() {
+        return guilds.size();
+    }
+
+    /**
+     * Get the cache's hit, miss and load-time counters.
+     *
+     * @return a snapshot of the cache statistics.
+     */
+    public CacheStats getStats() {
+        long loads = misses.sum() - failures.sum();
+        return new CacheStats(
+                guilds.size(),
+                hits.sum(),
+                misses.sum(),
+                failures.sum(),
+                evictions.sum(),
+                loads > 0 ? TimeUnit.NANOSECONDS.toMillis(loadTime.sum() / loads) : 0,
+                TimeUnit.NANOSECONDS.toMillis(maxLoadTime.get())
+        );
+    }
+
+    private void recordLoad(long nanos) {
+        loadTime.add(nanos);
+        maxLoadTime.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * A snapshot of the cache statistics.
+     *
+     * @param size guilds currently cached.
+     * @param hits lookups served from the cache.
+     * @param misses lookups that started a load.
+     * @param failures loads that failed.
+     * @param evictions guilds evicted.
+     * @param averageLoadMillis average time to load a guild.
+     * @param maxLoadMillis longest time to load a guild.
+     */
+    public record CacheStats(int size, long hits, long misses, long failures, long evictions,
+                             long averageLoadMillis, long maxLoadMillis) {
+
+        @Override
+        public String toString() {
+            return "size=" + size + ", hits=" + hits + ", misses=" + misses + ", failures=" + failures
+                    + ", evictions=" + evictions + ", avgLoad=" + averageLoadMillis + "ms, maxLoad=" + maxLoadMillis + "ms";
+        }
+    }
+}
@@ -7,7 +7,9 @@ import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
 import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.PojoCodecProvider;
@@ -20,7 +22,13 @@ import org.redacted.Database.models.Ticket;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
@@ -31,17 +39,59 @@ import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
  * @author Derrick Eberlein
  */
 public class Database {
+
+    /** Field that tags each document with its guild in the consolidated layout. */
+    public static final String GUILD_SCOPE_FIELD = "_guild";
+
+    /** Every per-guild collection and the indexes it needs. */
+    static final Map<String, List<Bson>> GUILD_INDEXES = new LinkedHashMap<>();
+
+    static {
+        GUILD_INDEXES.put("blacklist", List.of(Indexes.descending("userId")));
+        GUILD_INDEXES.put("scheduled_messages", List.of(Indexes.descending("time")));
+        GUILD_INDEXES.put("sticky_messages", List.of(Indexes.descending("channelId")));
+        GUILD_INDEXES.put("user_intro_messages", List.of(Indexes.descending("userId")));
+        GUILD_INDEXES.put("greetings", List.of(Indexes.descending("guild")));
+        GUILD_INDEXES.put("economy", List.of(Indexes.ascending("user")));
+        GUILD_INDEXES.put("nsfwCleanToggle", List.of(Indexes.ascending("guildId", "nsfwCleanToggle")));
+        GUILD_INDEXES.put("saved_embeds", List.of(Indexes.descending("messageId")));
+        GUILD_INDEXES.put("tickets", List.of(Indexes.ascending("ticketId"), Indexes.ascending("status")));
+        GUILD_INDEXES.put("config", List.of(Indexes.descending("guildId")));
+        GUILD_INDEXES.put("mutes", List.of(Indexes.ascending("guildId", "userId")));
+        GUILD_INDEXES.put("calendar_events", List.of(Indexes.descending("discordEventId")));
+        GUILD_INDEXES.put("suggestions", List.of());
+        GUILD_INDEXES.put("nsfw_loops", List.of(Indexes.ascending("channelId")));
+        GUILD_INDEXES.put("music_queue", List.of());
+    }
+
     private final MongoDatabase database;
+    private final StorageLayout layout;
+    private final IndexRegistry indexRegistry;
     public @NotNull MongoCollection<Config> config;
     public @NotNull MongoCollection<Document> redditTokenCollection;
+    public @NotNull MongoCollection<Document> cooldownCollection;
+    public @NotNull MongoCollection<Document> galleryCollection;
+    public @NotNull MongoCollection<Document> spotifyTrackCollection;
+    public @NotNull MongoCollection<Document> bootstrapRecordCollection;
+    public @NotNull MongoCollection<Document> commandRegistrationCollection;
+
+    /**
+     * Constructor for the Database class using the per-guild storage layout.
+     *
+     * @param uri The MongoDB connection URI.
+     */
+    public Database(String uri) {
+        this(uri, StorageLayout.PER_GUILD);
+    }
 
     /**
      * Constructor for the Database class.
      * Initializes the MongoDB connection and sets up the necessary collections and indexes.
      *
      * @param uri The MongoDB connection URI.
+     * @param layout How guild data is laid out across collections.
      */
-    public Database(String uri) {
+    public Database(String uri, StorageLayout layout) {
         // Setup MongoDB database with URI.
         CodecRegistry pojoCodecRegistry = fromProviders(PojoCodecProvider.builder().automatic(true).build());
         CodecRegistry codecRegistry = fromRegistries(MongoClientSettings.getDefaultCodecRegistry(), pojoCodecRegistry);
@@ -51,14 +101,44 @@ public class Database {
                 .build();
         MongoClient mongoClient = MongoClients.create(clientSettings);
         this.database = mongoClient.getDatabase("Redacted");
+        this.layout = layout;
+        this.indexRegistry = new IndexRegistry(database);
 
         // Initialize collections if they don't exist.
         config = database.getCollection("config", Config.class);
         redditTokenCollection = database.getCollection("reddit_tokens");
+        cooldownCollection = database.getCollection("economy_cooldowns");
+        galleryCollection = database.getCollection("galleries");
+        spotifyTrackCollection = database.getCollection("spotify_tracks");
+        bootstrapRecordCollection = database.getCollection("bootstrap_records");
+        commandRegistrationCollection = database.getCollection("command_registrations");
 
         // Create indexes
         Bson guildIndex = Indexes.descending("guild");
         config.createIndex(guildIndex);
+
+        // Cooldowns are looked up per user and removed by Mongo once they expire
+        cooldownCollection.createIndex(Indexes.ascending("guild", "user", "type"), new IndexOptions().unique(true));
+        cooldownCollection.createIndex(Indexes.ascending("expiresAt"), new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+
+        // Persisted galleries are removed by Mongo once nobody has paged through them for a while
+        galleryCollection.createIndex(Indexes.ascending("expiresAt"), new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+
+        // Spotify tracks are resolved to YouTube again after a while, in case the video was taken down
+        spotifyTrackCollection.createIndex(Indexes.ascending("resolvedAt"), new IndexOptions().expireAfter(30L, TimeUnit.DAYS));
+
+        // Each guild's setup record is looked up by guild when the bot starts. The collection is
+        // kept out of the guild_ prefix, which is reserved for per-guild collections
+        bootstrapRecordCollection.createIndex(Indexes.ascending("guildId"), new IndexOptions().unique(true));
+
+        // Each scope commands are registered in has a single hash of what was last uploaded to it
+        commandRegistrationCollection.createIndex(Indexes.ascending("scope"), new IndexOptions().unique(true));
+
+        // Consolidated collections are shared by every guild, so their indexes only need creating once
+        if (layout == StorageLayout.CONSOLIDATED) {
+            indexRegistry.ensureConsolidated();
+        }
+        System.out.println("Using " + layout + " storage layout");
     }
 
     /**
@@ -67,68 +147,143 @@ public class Database {
      *
      * @param guildId The ID of the guild for which to retrieve the collection.
      * @param collectionName The name of the collection to retrieve (e.g., "blacklist", "scheduled_messages").
-     * @return The MongoCollection for the specified guild and collection name.
+     * @return The guild's documents of the collection.
      */
-    public MongoCollection<Document> getGuildCollection(long guildId, String collectionName) {
-        return database.getCollection("guild_" + guildId + "_" + collectionName);
+    public GuildCollection<Document> getGuildCollection(long guildId, String collectionName) {
+        if (layout == StorageLayout.CONSOLIDATED) {
+            return GuildCollection.shared(database.getCollection(consolidatedCollectionName(collectionName)), guildId);
+        }
+        // A guild's collection may not exist yet, so it is indexed when it is first written to
+        return GuildCollection.of(database.getCollection(perGuildCollectionName(guildId, collectionName)),
+                () -> indexRegistry.ensureCollection(guildId, collectionName));
+    }
+
+    /**
+     * Get the name of a guild's collection in the per-guild layout.
+     *
+     * @param guildId The ID of the guild.
+     * @param collectionName The name of the collection (e.g., "blacklist").
+     * @return The full collection name.
+     */
+    public static String perGuildCollectionName(long guildId, String collectionName) {
+        return "guild_" + guildId + "_" + collectionName;
+    }
+
+    /**
+     * Get the name of the shared collection for an entity type in the consolidated layout.
+     *
+     * @param collectionName The name of the collection (e.g., "blacklist").
+     * @return The full collection name.
+     */
+    public static String consolidatedCollectionName(String collectionName) {
+        return "guild_" + collectionName;
+    }
+
+    /**
+     * Find which of the given guilds have a document tagged with their own ID in one of their collections.
+     * In the consolidated layout this is one query for every guild; in the per-guild layout each
+     * guild's collection has to be asked on its own.
+     *
+     * @param collectionName The name of the collection (e.g., "blacklist").
+     * @param guildField The field the documents are tagged with their guild's ID in (e.g., "guildId").
+     * @param guildIds The guilds to check.
+     * @return The guilds that have such a document.
+     */
+    public Set<Long> findGuildsWithDocument(String collectionName, String guildField, Collection<Long> guildIds) {
+        Set<Long> found = new HashSet<>();
+        if (guildIds.isEmpty()) return found;
+
+        if (layout == StorageLayout.CONSOLIDATED) {
+            database.getCollection(consolidatedCollectionName(collectionName))
+                    .distinct(GUILD_SCOPE_FIELD, Filters.and(Filters.in(GUILD_SCOPE_FIELD, guildIds), Filters.in(guildField, guildIds)), Long.class)
+                    .into(found);
+            return found;
+        }
+        for (long guildId : guildIds) {
+            if (getGuildCollection(guildId, collectionName).find(Filters.eq(guildField, guildId)).limit(1).first() != null) {
+                found.add(guildId);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find which of the given guilds have a document matching a filter in one of their collections.
+     * In the consolidated layout this is one query for every guild; in the per-guild layout only
+     * the guilds that have the collection at all are asked.
+     *
+     * @param collectionName The name of the collection (e.g., "music_queue").
+     * @param filter The filter a document has to match.
+     * @param guildIds The guilds to check.
+     * @return The guilds that have such a document.
+     */
+    public Set<Long> findGuildsMatching(String collectionName, Bson filter, Collection<Long> guildIds) {
+        Set<Long> found = new HashSet<>();
+        if (guildIds.isEmpty()) return found;
+
+        if (layout == StorageLayout.CONSOLIDATED) {
+            database.getCollection(consolidatedCollectionName(collectionName))
+                    .distinct(GUILD_SCOPE_FIELD, Filters.and(Filters.in(GUILD_SCOPE_FIELD, guildIds), filter), Long.class)
+                    .into(found);
+            return found;
+        }
+        Set<String> existing = database.listCollectionNames().into(new HashSet<>());
+        for (long guildId : guildIds) {
+            if (!existing.contains(perGuildCollectionName(guildId, collectionName))) continue;
+            if (getGuildCollection(guildId, collectionName).find(filter).limit(1).first() != null) {
+                found.add(guildId);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the storage layout this database was opened with.
+     *
+     * @return The active storage layout.
+     */
+    public StorageLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Get the underlying MongoDB database, used by the layout migration.
+     *
+     * @return The MongoDatabase.
+     */
+    MongoDatabase getMongoDatabase() {
+        return database;
+    }
+
+    /**
+     * Get the registry that keeps guild collections indexed.
+     *
+     * @return The IndexRegistry.
+     */
+    public IndexRegistry getIndexRegistry() {
+        return indexRegistry;
     }
 
     /**
      * Set up collections for a guild.
-     * This method initializes the necessary collections for a guild and creates indexes for efficient querying.
-     * It should be called when a new guild is added to ensure that all required collections are created and indexed.
+     * Missing indexes of the guild's existing collections are created in the background by the
+     * index registry, and once a guild has been checked this does no database work at all, so it
+     * is safe to call on every guild load. Collections that do not exist yet are left to be created
+     * by their first write.
      *
      * @param guildId The ID of the guild for which to set up collections.
      */
     public void setupCollectionsForGuild(long guildId) {
-        MongoCollection<Document> blacklist = getGuildCollection(guildId, "blacklist");
-        MongoCollection<Document> scheduledMessages = getGuildCollection(guildId, "scheduled_messages");
-        MongoCollection<Document> stickyMessages = getGuildCollection(guildId, "sticky_messages");
-        MongoCollection<Document> userIntroMessages = getGuildCollection(guildId, "user_intro_messages");
-        MongoCollection<Greetings> greetings = getGuildCollection(guildId, "greetings").withDocumentClass(Greetings.class);
-        MongoCollection<Document> economy = getGuildCollection(guildId, "economy");
-
-        // Create a NSFW Clean Toggle
-        MongoCollection<Document> nsfwCleanToggle = getGuildCollection(guildId, "nsfwCleanToggle");
-
-        // Create a collection for saved embeds
-        MongoCollection<Document> savedEmbeds = getGuildCollection(guildId, "saved_embeds");
-
-        // ✅ Add ticket collection
-        MongoCollection<Document> tickets = getGuildCollection(guildId, "tickets");
-
-        // Add a config collection for guild
-        MongoCollection<Document> config = getGuildCollection(guildId, "config");
-
-        // Add a Muted Users collection
-        MongoCollection<Document> mutes = getGuildCollection(guildId, "mutes");
-
-        // Add Google Calendar events collection
-        MongoCollection<Document> calendarEvents = getGuildCollection(guildId, "calendar_events");
-
-        // Setup indexes for each collection as needed
-        blacklist.createIndex(Indexes.descending("userId"));
-        scheduledMessages.createIndex(Indexes.descending("time"));
-        stickyMessages.createIndex(Indexes.descending("channelId"));
-        userIntroMessages.createIndex(Indexes.descending("userId"));
-        greetings.createIndex(Indexes.descending("guild"));
-        economy.createIndex(Indexes.descending("economy"));
-        savedEmbeds.createIndex(Indexes.descending("messageId"));
-        calendarEvents.createIndex(Indexes.descending("discordEventId"));
-        mutes.createIndex(Indexes.ascending("guildId", "userId"));
-        nsfwCleanToggle.createIndex(Indexes.ascending("guildId", "nsfwCleanToggle"));
-
-        // Set up index for config collection if necessary
-        config.createIndex(Indexes.descending("guildId"));
-
-        // ✅ Add useful indexes for ticket lookup and status filtering
-        tickets.createIndex(Indexes.ascending("ticketId"));
-        tickets.createIndex(Indexes.ascending("status"));
+        // Consolidated collections are indexed once at startup
+        if (layout == StorageLayout.CONSOLIDATED) return;
+
+        indexRegistry.ensureGuild(guildId);
     }
 
     /**
      * Store a Reddit token (global).
-     * This method saves the Reddit token and its expiration time in the database.
+     * This method replaces the stored Reddit token and its expiration time in a single write,
+     * so there is never a moment without a stored token.
      *
      * @param token The Reddit token to store.
      * @param expiration The expiration time of the Reddit token.
@@ -136,7 +291,7 @@ public class Database {
     public void storeRedditToken(String token, Instant expiration) {
         Document document = new Document("token", token)
                 .append("expiration", expiration);
-        redditTokenCollection.insertOne(document);
+        redditTokenCollection.replaceOne(new Document(), document, new ReplaceOptions().upsert(true));
     }
 
     /**
@@ -164,7 +319,7 @@ public class Database {
      * @param guildId The ID of the guild for which to retrieve the calendar event collection.
      * @return The MongoCollection for calendar events in the specified guild.
      */
-    public MongoCollection<Document> getCalendarEventCollection(long guildId) {
+    public GuildCollection<Document> getCalendarEventCollection(long guildId) {
         return getGuildCollection(guildId, "calendar_events");
     }
 
@@ -175,7 +330,7 @@ public class Database {
      * @return The Config object for the guild, or null if not found.
      */
     public Config getConfigForGuild(long guildId) {
-        MongoCollection<Document> configCollection = getGuildCollection(guildId, "config");
+        GuildCollection<Document> configCollection = getGuildCollection(guildId, "config");
 
         System.out.println("Querying config for guild ID: " + guildId);
         Document configDocument = configCollection.find(Filters.eq("guildId", guildId)).first();
@@ -201,7 +356,7 @@ public class Database {
      * @param guildId The ID of the guild.
      * @return The MongoCollection for saved embeds.
      */
-    public MongoCollection<SavedEmbed> getSavedEmbedsCollection(long guildId) {
+    public GuildCollection<SavedEmbed> getSavedEmbedsCollection(long guildId) {
         return getGuildCollection(guildId, "saved_embeds").withDocumentClass(SavedEmbed.class);
     }
 
@@ -214,7 +369,7 @@ public class Database {
      */
     public void updateConfig(long guildId, Bson update) {
         // Get the collection where the config for the guild is stored
-        MongoCollection<Document> configCollection = getGuildCollection(guildId, "config");
+        GuildCollection<Document> configCollection = getGuildCollection(guildId, "config");
 
         // Create a filter to find the config document for the specified guild
         Bson filter = Filters.eq("guildId", guildId);
@@ -231,7 +386,7 @@ public class Database {
      * @param config  The Config object containing the configuration details.
      */
     public void insertConfig(long guildId, Config config) {
-        MongoCollection<Document> configCollection = getGuildCollection(guildId, "config");
+        GuildCollection<Document> configCollection = getGuildCollection(guildId, "config");
 
         Document configDocument = new Document("guildId", config.getGuildId())
                 .append("currency", config.getCurrency())
@@ -262,7 +417,7 @@ public class Database {
      * @return A list of Document objects representing the scheduled messages.
      */
     public List<Document> getScheduledMessages(long guildId) {
-        MongoCollection<Document> scheduledMessages = getGuildCollection(guildId, "scheduled_messages");
+        GuildCollection<Document> scheduledMessages = getGuildCollection(guildId, "scheduled_messages");
         return scheduledMessages.find().into(new ArrayList<>());
     }
 
@@ -273,7 +428,7 @@ public class Database {
      * @param guildId The ID of the guild to initialize greetings for.
      */
     public void initializeGreetingsForGuild(long guildId) {
-        MongoCollection<Greetings> greetings = getGuildCollection(guildId, "greetings").withDocumentClass(Greetings.class);
+        GuildCollection<Greetings> greetings = getGuildCollection(guildId, "greetings").withDocumentClass(Greetings.class);
         if (getGreetings(guildId) == null) {
             Greetings greetingsObj = new Greetings(guildId);
             greetings.insertOne(greetingsObj);
@@ -288,7 +443,7 @@ public class Database {
      * @return The Greetings object containing the greetings configuration, or null if not found.
      */
     public Greetings getGreetings(long guildId) {
-        MongoCollection<Greetings> greetings = getGuildCollection(guildId, "greetings").withDocumentClass(Greetings.class);
+        GuildCollection<Greetings> greetings = getGuildCollection(guildId, "greetings").withDocumentClass(Greetings.class);
         return greetings.find(new Document("guild", guildId)).first();
     }
 
@@ -302,6 +457,54 @@ public class Database {
         return config;
     }
 
+    /**
+     * Get the collection for economy command cooldowns.
+     * Documents expire through a TTL index on "expiresAt".
+     *
+     * @return The MongoCollection for economy cooldowns across all guilds.
+     */
+    public MongoCollection<Document> getCooldownCollection() {
+        return cooldownCollection;
+    }
+
+    /**
+     * Get the collection for persisted image galleries, keyed by message ID.
+     * Documents expire through a TTL index on "expiresAt".
+     *
+     * @return The MongoCollection for galleries across all guilds.
+     */
+    public MongoCollection<Document> getGalleryCollection() {
+        return galleryCollection;
+    }
+
+    /**
+     * Get the collection mapping Spotify track IDs to the YouTube videos they were resolved to.
+     * Documents expire through a TTL index on "resolvedAt".
+     *
+     * @return The MongoCollection for resolved Spotify tracks across all guilds.
+     */
+    public MongoCollection<Document> getSpotifyTrackCollection() {
+        return spotifyTrackCollection;
+    }
+
+    /**
+     * Get the collection recording which guilds have had their channels, roles and data set up, keyed by guild ID.
+     *
+     * @return The MongoCollection for bootstrap records across all guilds.
+     */
+    public MongoCollection<Document> getBootstrapRecordCollection() {
+        return bootstrapRecordCollection;
+    }
+
+    /**
+     * Get the collection holding the hash of the commands last registered in each scope, keyed by scope.
+     *
+     * @return The MongoCollection for command registrations across all guilds.
+     */
+    public MongoCollection<Document> getCommandRegistrationCollection() {
+        return commandRegistrationCollection;
+    }
+
     /**
      * Get the collection for managing tickets in a guild.
      * This method retrieves the MongoDB collection for tickets associated with a specific guild.
@@ -309,7 +512,7 @@ public class Database {
      * @param guildId The ID of the guild for which to retrieve the ticket collection.
      * @return The MongoCollection for tickets in the specified guild.
      */
-    public MongoCollection<Ticket> getTicketCollection(long guildId) {
+    public GuildCollection<Ticket> getTicketCollection(long guildId) {
         return getGuildCollection(guildId, "tickets").withDocumentClass(Ticket.class);
     }
 }
@@ -0,0 +1,213 @@
+package org.redacted.Database;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt64;
+import org.bson.codecs.Codec;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GuildCollection Class
+ * One guild's documents of a collection, with the operations the bot uses on them. In the
+ * per-guild layout the collection belongs to the guild and every call goes straight through.
+ * In the consolidated layout every filter is narrowed to the guild's _guild field, every
+ * aggregation starts with a match on it, and every inserted or replacing document is tagged
+ * with it. Upserts need no tag, as Mongo copies the _guild equality of the filter into the
+ * inserted document.
+ * <p>
+ * A per-guild collection can be given a hook that runs before every write that may create a
+ * document, and so the collection itself, which lets its indexes be made before it first exists.
+ *
+ * @author Derrick Eberlein
+ */
+public final class GuildCollection<T> {
+
+    private static final EncoderContext COLLECTIBLE = EncoderContext.builder().isEncodingCollectibleDocument(true).build();
+
+    private final MongoCollection<T> collection;
+    private final long guildId;
+    /** The filter matching the guild's documents, or null when the collection is the guild's own. */
+    private final Bson scope;
+    /** Runs before every write that may create a document */
+    private final Runnable onCreate;
+
+    private GuildCollection(MongoCollection<T> collection, long guildId, Bson scope, Runnable onCreate) {
+        this.collection = collection;
+        this.guildId = guildId;
+        this.scope = scope;
+        this.onCreate = onCreate;
+    }
+
+    /**
+     * A collection that belongs to one guild, as in the per-guild layout.
+     *
+     * @param collection the guild's collection.
+     * @return the collection, passed through unchanged.
+     */
+    public static <T> GuildCollection<T> of(MongoCollection<T> collection) {
+        return of(collection, () -> {});
+    }
+
+    /**
+     * A collection that belongs to one guild, with a hook run before every write that may create a document.
+     *
+     * @param collection the guild's collection.
+     * @param onCreate runs before inserts and upserts.
+     * @return the collection, passed through unchanged.
+     */
+    public static <T> GuildCollection<T> of(MongoCollection<T> collection, Runnable onCreate) {
+        return new GuildCollection<>(collection, 0, null, onCreate);
+    }
+
+    /**
+     * One guild's documents of a collection shared by every guild, as in the consolidated layout.
+     *
+     * @param collection the shared collection.
+     * @param guildId the guild whose documents are used.
+     * @return the guild's slice of the collection.
+     */
+    public static <T> GuildCollection<T> shared(MongoCollection<T> collection, long guildId) {
+        return new GuildCollection<>(collection, guildId, Filters.eq(Database.GUILD_SCOPE_FIELD, guildId), () -> {});
+    }
+
+    /**
+     * The same documents, decoded as another class.
+     *
+     * @param documentClass the class to decode documents as.
+     * @return a view of the same documents.
+     */
+    public <N> GuildCollection<N> withDocumentClass(Class<N> documentClass) {
+        return new GuildCollection<>(collection.withDocumentClass(documentClass), guildId, scope, onCreate);
+    }
+
+    // Each operation is the MongoCollection method of the same name, on the guild's documents only
+
+    public long countDocuments() {
+        return scope == null ? collection.countDocuments() : collection.countDocuments(scope);
+    }
+
+    public long countDocuments(Bson filter) {
+        return collection.countDocuments(scoped(filter));
+    }
+
+    public FindIterable<T> find() {
+        return scope == null ? collection.find() : collection.find(scope);
+    }
+
+    public FindIterable<T> find(Bson filter) {
+        return collection.find(scoped(filter));
+    }
+
+    public AggregateIterable<T> aggregate(List<? extends Bson> pipeline) {
+        if (scope == null) return collection.aggregate(pipeline);
+
+        List<Bson> scoped = new ArrayList<>(pipeline.size() + 1);
+        scoped.add(Aggregates.match(scope));
+        scoped.addAll(pipeline);
+        return collection.aggregate(scoped);
+    }
+
+    public InsertOneResult insertOne(T document) {
+        onCreate.run();
+        if (scope == null) return collection.insertOne(document);
+        return raw().insertOne(tag(document, true));
+    }
+
+    public UpdateResult replaceOne(Bson filter, T replacement) {
+        return replaceOne(filter, replacement, new ReplaceOptions());
+    }
+
+    public UpdateResult replaceOne(Bson filter, T replacement, ReplaceOptions options) {
+        if (options.isUpsert()) onCreate.run();
+        if (scope == null) return collection.replaceOne(filter, replacement, options);
+        return raw().replaceOne(scoped(filter), tag(replacement, false), options);
+    }
+
+    public UpdateResult updateOne(Bson filter, Bson update) {
+        return collection.updateOne(scoped(filter), update);
+    }
+
+    public UpdateResult updateOne(Bson filter, Bson update, UpdateOptions options) {
+        if (options.isUpsert()) onCreate.run();
+        return collection.updateOne(scoped(filter), update, options);
+    }
+
+    public UpdateResult updateMany(Bson filter, Bson update) {
+        return collection.updateMany(scoped(filter), update);
+    }
+
+    public T findOneAndUpdate(Bson filter, Bson update, FindOneAndUpdateOptions options) {
+        if (options.isUpsert()) onCreate.run();
+        return collection.findOneAndUpdate(scoped(filter), update, options);
+    }
+
+    public DeleteResult deleteOne(Bson filter) {
+        return collection.deleteOne(scoped(filter));
+    }
+
+    public DeleteResult deleteMany(Bson filter) {
+        return collection.deleteMany(scoped(filter));
+    }
+
+    /**
+     * Write updates in bulk. Only updates are accepted, as nothing tags the documents of
+     * other write models.
+     *
+     * @param requests the updates.
+     * @param options the bulk write options.
+     * @return the result of the write.
+     */
+    public BulkWriteResult bulkWrite(List<UpdateOneModel<T>> requests, BulkWriteOptions options) {
+        if (requests.stream().anyMatch(update -> update.getOptions().isUpsert())) onCreate.run();
+        if (scope == null) return collection.bulkWrite(requests, options);
+
+        List<UpdateOneModel<T>> scoped = new ArrayList<>(requests.size());
+        for (UpdateOneModel<T> update : requests) {
+            scoped.add(update.getUpdate() != null
+                    ? new UpdateOneModel<>(scoped(update.getFilter()), update.getUpdate(), update.getOptions())
+                    : new UpdateOneModel<>(scoped(update.getFilter()), update.getUpdatePipeline(), update.getOptions()));
+        }
+        return collection.bulkWrite(scoped, options);
+    }
+
+    private Bson scoped(Bson filter) {
+        return scope == null ? filter : Filters.and(scope, filter);
+    }
+
+    private MongoCollection<BsonDocument> raw() {
+        return collection.withDocumentClass(BsonDocument.class);
+    }
+
+    /**
+     * Encode a document with the collection's codec and tag it with the guild.
+     *
+     * @param document the document, of any class the collection's codecs can encode.
+     * @param insert whether it is being inserted, in which case it is given an ID first, as the driver
+     *               would, so the caller's document carries the ID it was stored under.
+     * @return the tagged encoding.
+     */
+    @SuppressWarnings("unchecked")
+    private BsonDocument tag(T document, boolean insert) {
+        Codec<T> codec = (Codec<T>) collection.getCodecRegistry().get(document.getClass());
+        if (insert && codec instanceof CollectibleCodec<T> collectible) {
+            document = collectible.generateIdIfAbsentFromDocument(document);
+        }
+        BsonDocument bson = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(bson), document, COLLECTIBLE);
+        bson.put(Database.GUILD_SCOPE_FIELD, new BsonInt64(guildId));
+        return bson;
+    }
+}
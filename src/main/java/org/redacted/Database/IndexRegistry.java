@@ -0,0 +1,223 @@
+package org.redacted.Database;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.Indexes;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IndexRegistry Class
+ * Makes sure every guild collection carries the indexes it needs without doing any index
+ * work on the path that loads a guild. The indexes that already exist are listed once at
+ * startup, after which only the missing ones are created, in the background. Once a guild
+ * has been checked the outcome is cached, so checking it again costs nothing.
+ * <p>
+ * Creating an index creates its collection, so a guild's collections are only indexed when
+ * they exist. One that does not exist yet is indexed when it is first written to, which
+ * {@link GuildCollection} reports through {@link #ensureCollection(long, String)}.
+ *
+ * @author Derrick Eberlein
+ */
+public class IndexRegistry {
+
+    private final MongoDatabase database;
+    private final ExecutorService executor;
+    private final CompletableFuture<Map<String, Set<String>>> existing;
+    private final ConcurrentHashMap<Long, CompletableFuture<Void>> guilds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> written = new ConcurrentHashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private volatile CompletableFuture<Void> consolidated;
+    /** Whether the existing collections could be listed, and so which ones exist is known */
+    private volatile boolean listed;
+
+    /**
+     * Constructs an IndexRegistry and starts listing the existing indexes in the background.
+     *
+     * @param database the database whose indexes are managed.
+     */
+    public IndexRegistry(MongoDatabase database) {
+        this.database = database;
+        this.executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "index-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.existing = CompletableFuture.supplyAsync(this::listIndexes, executor);
+    }
+
+    /**
+     * Make sure those of a guild's per-guild collections that exist are indexed.
+     * Returns immediately, and does nothing once the guild has been checked.
+     *
+     * @param guildId the guild to check.
+     * @return a future completed once the guild's indexes exist.
+     */
+    public CompletableFuture<Void> ensureGuild(long guildId) {
+        CompletableFuture<Void> outcome = guilds.get(guildId);
+        if (outcome != null) return outcome;
+
+        return guilds.computeIfAbsent(guildId, id -> {
+            Map<String, List<Bson>> wanted = new LinkedHashMap<>();
+            Database.GUILD_INDEXES.forEach((name, indexes) -> wanted.put(Database.perGuildCollectionName(id, name), indexes));
+            return ensure(wanted, true, "guild " + id).whenComplete((ignored, error) -> {
+                // Forget failures so the next load of the guild tries again
+                if (error != null) guilds.remove(id);
+            });
+        });
+    }
+
+    /**
+     * Make sure one of a guild's per-guild collections is indexed, creating it if it does not
+     * exist yet. Called before the writes that may create the collection, so it is indexed from
+     * its first document on. Returns immediately, and does nothing once the collection has been checked.
+     *
+     * @param guildId the guild the collection belongs to.
+     * @param collectionName the name of the collection (e.g., "nsfw_loops").
+     * @return a future completed once the collection's indexes exist.
+     */
+    public CompletableFuture<Void> ensureCollection(long guildId, String collectionName) {
+        List<Bson> indexes = Database.GUILD_INDEXES.get(collectionName);
+        if (indexes == null || indexes.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        String name = Database.perGuildCollectionName(guildId, collectionName);
+        CompletableFuture<Void> outcome = written.get(name);
+        if (outcome != null) return outcome;
+
+        return written.computeIfAbsent(name, key -> ensure(Map.of(key, indexes), false, key)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) written.remove(key);
+                }));
+    }
+
+    /**
+     * Make sure the shared collections of the consolidated layout are indexed,
+     * each index prefixed by the guild so any per-guild query is served by a single index range.
+     *
+     * @return a future completed once the indexes exist.
+     */
+    public synchronized CompletableFuture<Void> ensureConsolidated() {
+        if (consolidated == null) {
+            Map<String, List<Bson>> wanted = new LinkedHashMap<>();
+            Database.GUILD_INDEXES.forEach((name, indexes) -> {
+                List<Bson> scoped = new ArrayList<>();
+                scoped.add(Indexes.ascending(Database.GUILD_SCOPE_FIELD));
+                for (Bson index : indexes) {
+                    scoped.add(Indexes.compoundIndex(Indexes.ascending(Database.GUILD_SCOPE_FIELD), index));
+                }
+                wanted.put(Database.consolidatedCollectionName(name), scoped);
+            });
+            consolidated = ensure(wanted, false, "consolidated collections").whenComplete((ignored, error) -> {
+                if (error != null) {
+                    synchronized (this) {
+                        consolidated = null;
+                    }
+                }
+            });
+        }
+        return consolidated;
+    }
+
+    /**
+     * Check whether a guild's indexes are known to exist.
+     *
+     * @param guildId the guild to check.
+     * @return true if the guild has been checked successfully.
+     */
+    public boolean isReady(long guildId) {
+        CompletableFuture<Void> outcome = guilds.get(guildId);
+        return outcome != null && outcome.isDone() && !outcome.isCompletedExceptionally();
+    }
+
+    /**
+     * Get the number of indexes this registry has created since startup.
+     *
+     * @return the number of created indexes.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Create whichever of the wanted indexes do not exist yet, once the existing indexes are known.
+     * If onlyExisting is set, collections that did not exist at startup are left alone rather than created.
+     */
+    private CompletableFuture<Void> ensure(Map<String, List<Bson>> wanted, boolean onlyExisting, String owner) {
+        return existing.thenAcceptAsync(indexes -> {
+            int count = 0;
+            for (Map.Entry<String, List<Bson>> entry : wanted.entrySet()) {
+                if (onlyExisting && listed && !indexes.containsKey(entry.getKey())) continue;
+                Set<String> present = indexes.computeIfAbsent(entry.getKey(), name -> ConcurrentHashMap.newKeySet());
+                List<IndexModel> missing = new ArrayList<>();
+                List<String> missingKeys = new ArrayList<>();
+                for (Bson index : entry.getValue()) {
+                    String key = keyOf(index.toBsonDocument());
+                    if (!present.contains(key)) {
+                        missing.add(new IndexModel(index));
+                        missingKeys.add(key);
+                    }
+                }
+                if (missing.isEmpty()) continue;
+
+                // One round trip creates every missing index of the collection
+                database.getCollection(entry.getKey()).createIndexes(missing);
+                present.addAll(missingKeys);
+                count += missing.size();
+            }
+            if (count > 0) {
+                created.addAndGet(count);
+                System.out.println("Created " + count + " missing indexes for " + owner);
+            }
+        }, executor).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            System.err.println("Failed to create indexes for " + owner + ": " + cause.getMessage());
+            throw new CompletionException(cause);
+        });
+    }
+
+    /**
+     * List the indexes of every guild collection that exists, keyed by collection name.
+     */
+    private Map<String, Set<String>> listIndexes() {
+        long start = System.currentTimeMillis();
+        Map<String, Set<String>> indexes = new ConcurrentHashMap<>();
+        try {
+            for (String name : database.listCollectionNames()) {
+                if (!name.startsWith("guild_")) continue;
+                Set<String> keys = ConcurrentHashMap.newKeySet();
+                for (Document index : database.getCollection(name).listIndexes()) {
+                    keys.add(keyOf(index.get("key", Document.class).toBsonDocument()));
+                }
+                indexes.put(name, keys);
+            }
+            listed = true;
+        } catch (MongoException e) {
+            // Fall back to creating every index, which Mongo treats as a no-op for the ones that exist,
+            // at the cost of creating any collection that does not
+            System.err.println("Failed to list existing indexes: " + e.getMessage());
+        }
+        System.out.println("Listed indexes of " + indexes.size() + " guild collections in " + (System.currentTimeMillis() - start) + "ms");
+        return indexes;
+    }
+
+    /**
+     * Normalize an index key document, e.g. { userId: -1 } becomes "userId:-1",
+     * so keys read back from the server match the ones built locally.
+     */
+    private static String keyOf(BsonDocument key) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (Map.Entry<String, BsonValue> field : key.entrySet()) {
+            BsonValue value = field.getValue();
+            String direction = value.isNumber() ? String.valueOf((int) Math.signum(value.asNumber().doubleValue())) : value.toString();
+            joiner.add(field.getKey() + ":" + direction);
+        }
+        return joiner.toString();
+    }
+}
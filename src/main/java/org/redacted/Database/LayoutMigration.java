@@ -0,0 +1,141 @@
+package org.redacted.Database;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import io.github.cdimascio.dotenv.Dotenv;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LayoutMigration Class
+ * Copies every per-guild collection (guild_&lt;id&gt;_&lt;name&gt;) into its consolidated
+ * collection (guild_&lt;name&gt;), tagging each document with its guild. Documents keep their
+ * _id and are only ever inserted: a document already present in the consolidated collection
+ * is left as it is, so a run never overwrites data written in the consolidated layout. The
+ * per-guild collections are left untouched.
+ * <p>
+ * This is an offline migration: nothing keeps the two layouts in step while the bot runs, so
+ * anything written to the per-guild collections after a run is not carried over. Cut over by
+ * stopping the bot, running the migration, switching DATABASE_LAYOUT to CONSOLIDATED and
+ * starting the bot again. A run after the bot has written in the new layout would bring back
+ * documents deleted there since, such as one-shot scheduled messages that already fired.
+ *
+ * @author Derrick Eberlein
+ */
+public class LayoutMigration {
+
+    private static final Pattern PER_GUILD_NAME = Pattern.compile("^guild_(\\d+)_(.+)$");
+    private static final int BATCH_SIZE = 1000;
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final Database database;
+
+    /**
+     * Constructs a LayoutMigration for the given database.
+     *
+     * @param database the database to migrate.
+     */
+    public LayoutMigration(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Copy every per-guild collection into the consolidated layout.
+     *
+     * @return the number of documents copied per consolidated collection.
+     */
+    public Map<String, Long> run() {
+        Map<String, Long> copied = new LinkedHashMap<>();
+        for (String name : database.getMongoDatabase().listCollectionNames()) {
+            Matcher matcher = PER_GUILD_NAME.matcher(name);
+            if (!matcher.matches()) continue;
+
+            long guildId = Long.parseLong(matcher.group(1));
+            String collectionName = matcher.group(2);
+            long count = copy(name, guildId, collectionName);
+            copied.merge(Database.consolidatedCollectionName(collectionName), count, Long::sum);
+        }
+        return copied;
+    }
+
+    /**
+     * Copy one per-guild collection into its consolidated collection.
+     *
+     * @param source the full name of the per-guild collection.
+     * @param guildId the guild the collection belongs to.
+     * @param collectionName the entity name of the collection.
+     * @return the number of documents copied.
+     */
+    public long copy(String source, long guildId, String collectionName) {
+        MongoCollection<Document> from = database.getMongoDatabase().getCollection(source);
+        MongoCollection<Document> to = database.getMongoDatabase().getCollection(Database.consolidatedCollectionName(collectionName));
+
+        long copied = 0;
+        List<WriteModel<Document>> batch = new ArrayList<>(BATCH_SIZE);
+        try (MongoCursor<Document> cursor = from.find().batchSize(BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                Object id = document.remove("_id");
+                document.put(Database.GUILD_SCOPE_FIELD, guildId);
+                batch.add(new UpdateOneModel<>(Filters.eq("_id", id), new Document("$setOnInsert", document), UPSERT));
+                if (batch.size() >= BATCH_SIZE) {
+                    copied += write(to, batch, source);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            copied += write(to, batch, source);
+        }
+
+        long expected = from.countDocuments();
+        long actual = to.countDocuments(Filters.eq(Database.GUILD_SCOPE_FIELD, guildId));
+        if (actual < expected) {
+            System.err.println("Migrated " + source + " is missing " + (expected - actual) + " documents");
+        }
+        System.out.println("Migrated " + copied + " documents from " + source + " to " + to.getNamespace().getCollectionName());
+        return copied;
+    }
+
+    /**
+     * Write a batch, continuing past documents that fail so one bad document does not stop the migration.
+     * Only documents that were newly inserted are counted as copied.
+     */
+    private long write(MongoCollection<Document> to, List<WriteModel<Document>> batch, String source) {
+        try {
+            return to.bulkWrite(batch, UNORDERED).getUpserts().size();
+        } catch (MongoBulkWriteException e) {
+            System.err.println("Failed to migrate " + e.getWriteErrors().size() + " documents from " + source + ": " + e.getWriteErrors().get(0).getMessage());
+            return e.getWriteResult().getUpserts().size();
+        }
+    }
+
+    /**
+     * Run the migration against the database configured in the environment.
+     *
+     * @param args unused.
+     */
+    public static void main(String[] args) {
+        Dotenv config = Dotenv.configure().ignoreIfMissing().load();
+        Database database = new Database(config.get("DATABASE"), StorageLayout.CONSOLIDATED);
+
+        long start = System.currentTimeMillis();
+        Map<String, Long> copied = new LayoutMigration(database).run();
+        copied.forEach((collection, count) -> System.out.println(collection + ": " + count + " documents"));
+        System.out.println("Layout migration finished in " + (System.currentTimeMillis() - start) + "ms");
+        System.exit(0);
+    }
+}
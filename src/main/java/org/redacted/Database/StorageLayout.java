@@ -0,0 +1,38 @@
+package org.redacted.Database;
+
+/**
+ * StorageLayout Enum
+ * Selects how guild data is laid out in MongoDB.
+ *
+ * @author Derrick Eberlein
+ */
+public enum StorageLayout {
+
+    /**
+     * One set of collections per guild, named guild_&lt;id&gt;_&lt;name&gt;.
+     */
+    PER_GUILD,
+
+    /**
+     * One collection per entity type shared by every guild, named guild_&lt;name&gt;,
+     * with each document tagged by guild and every index prefixed by it. Existing data is
+     * moved over by {@link LayoutMigration} while the bot is stopped.
+     */
+    CONSOLIDATED;
+
+    /**
+     * Parse a layout from the DATABASE_LAYOUT setting.
+     *
+     * @param value the configured value, may be null.
+     * @return the matching layout, or PER_GUILD if the value is missing or unknown.
+     */
+    public static StorageLayout fromConfig(String value) {
+        if (value == null || value.isBlank()) return PER_GUILD;
+        try {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown DATABASE_LAYOUT '" + value + "', using " + PER_GUILD);
+            return PER_GUILD;
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package org.redacted.Handlers;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Updates;
 import lombok.Getter;
 import net.dv8tion.jda.api.entities.Guild;
 import org.bson.conversions.Bson;
 import org.redacted.Database.Database;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.cache.Greetings;
 
 /**
@@ -21,7 +21,7 @@ import org.redacted.Database.cache.Greetings;
 public class GreetingHandler {
 
     private final Guild guild;
-    private final MongoCollection<Greetings> greetingsCollection;
+    private final GuildCollection<Greetings> greetingsCollection;
     private final Bson filter;
     private Greetings greetings;
 
@@ -1,6 +1,5 @@
 package org.redacted.Handlers;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.ReplaceOptions;
 import net.dv8tion.jda.api.entities.Guild;
@@ -12,6 +11,7 @@ import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import org.bson.Document;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Redacted;
 import org.redacted.Roles.getRolesByName;
 import org.redacted.util.SocialMedia.SocialMediaUtils;
@@ -38,8 +38,8 @@ public class IntroductionHandler {
     private final String staffChannelId;
     private final String memberRoleId;
     private final String flagRoleId;
-    private final MongoCollection<Document> userIntroMessagesCollection;
-    private final MongoCollection<Document> blacklistCollection;
+    private final GuildCollection<Document> userIntroMessagesCollection;
+    private final GuildCollection<Document> blacklistCollection;
     private final ConcurrentMap<String, String> userIntroMessages;
     public static final ConcurrentMap<String, Boolean> staffDeletedMessages = new ConcurrentHashMap<>();
 
@@ -552,43 +552,45 @@ public class IntroductionHandler {
         TextChannel staffChannel = event.getGuild().getTextChannelById(staffChannelId);
         String messageId = event.getMessageId();
 
-        // Skip handling deletion for bot-generated messages
-        GuildData guildData = GuildData.get(event.getGuild(), bot);
-        Document stickyMessageDoc = guildData.getStickyMessagesCollection().find(new Document("messageId", Long.parseLong(messageId))).first();
-        if (stickyMessageDoc != null && stickyMessageDoc.getBoolean("isBotGenerated", false)) {
-            return; // Ignore bot-generated sticky messages
-        }
-
-        if (staffDeletedMessages.containsKey(messageId)) {
-            staffDeletedMessages.remove(messageId);
-            return;
-        }
+        // The sticky message lookup reads the database, so it runs off the gateway thread
+        GuildData.whenLoaded(event.getGuild(), bot, guildData -> {
+            // Skip handling deletion for bot-generated messages
+            Document stickyMessageDoc = guildData.getStickyMessagesCollection().find(new Document("messageId", Long.parseLong(messageId))).first();
+            if (stickyMessageDoc != null && stickyMessageDoc.getBoolean("isBotGenerated", false)) {
+                return; // Ignore bot-generated sticky messages
+            }
 
-        String userId = userIntroMessages.get(messageId);
-        if (userId != null) {
-            userIntroMessages.remove(messageId);
-            removeUserIntroMessage(messageId);
-            Member member = event.getGuild().getMemberById(userId);
-            Role adminRole = new getRolesByName().getRoleByName(event.getGuild(), "Admin");
-            if (adminRole != null && member != null) {
-                Objects.requireNonNull(staffChannel).sendMessage(
-                        String.format("%s User %s has deleted their introduction.",
-                                adminRole.getAsMention(), member.getAsMention())
-                ).queue();
+            if (staffDeletedMessages.containsKey(messageId)) {
+                staffDeletedMessages.remove(messageId);
+                return;
             }
 
-            // Remove member Role from User
-            Role memberRole = event.getGuild().getRoleById(memberRoleId);
-            event.getGuild().removeRoleFromMember(Objects.requireNonNull(member), Objects.requireNonNull(memberRole)).queue();
+            String userId = userIntroMessages.get(messageId);
+            if (userId != null) {
+                userIntroMessages.remove(messageId);
+                removeUserIntroMessage(messageId);
+                Member member = event.getGuild().getMemberById(userId);
+                Role adminRole = new getRolesByName().getRoleByName(event.getGuild(), "Admin");
+                if (adminRole != null && member != null) {
+                    Objects.requireNonNull(staffChannel).sendMessage(
+                            String.format("%s User %s has deleted their introduction.",
+                                    adminRole.getAsMention(), member.getAsMention())
+                    ).queue();
+                }
 
-            // Send DM to User telling them they lost access to server
-            // due to deleting their introduction, and to redo it if they want access again.
-            member.getUser().openPrivateChannel().queue(channel ->
-                    channel.sendMessage("You deleted your introduction, if you want access to the server again, repost your introduction.").queue());
+                // Remove member Role from User
+                Role memberRole = event.getGuild().getRoleById(memberRoleId);
+                event.getGuild().removeRoleFromMember(Objects.requireNonNull(member), Objects.requireNonNull(memberRole)).queue();
 
-            // Optionally kick the member if desired
-            // event.getGuild().kick(member).queue();
-        }
+                // Send DM to User telling them they lost access to server
+                // due to deleting their introduction, and to redo it if they want access again.
+                member.getUser().openPrivateChannel().queue(channel ->
+                        channel.sendMessage("You deleted your introduction, if you want access to the server again, repost your introduction.").queue());
+
+                // Optionally kick the member if desired
+                // event.getGuild().kick(member).queue();
+            }
+        });
     }
 
     /**
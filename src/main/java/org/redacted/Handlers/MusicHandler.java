@@ -1,11 +1,13 @@
 package org.redacted.Handlers;
 
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
-import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import net.dv8tion.jda.api.EmbedBuilder;
@@ -16,9 +18,11 @@ import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.redacted.listeners.MusicListener;
+import org.redacted.util.musicPlayer.QueueLog;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.redacted.util.embeds.EmbedColor;
 import org.redacted.util.embeds.EmbedUtils;
@@ -33,12 +37,25 @@ import java.nio.ByteBuffer;
 @Setter
 @Getter
 public class MusicHandler implements AudioSendHandler {
-    /** Thread-safe queue of music tracks in FIFO order. */
+    /** Thread-safe queue of music tracks in FIFO order. Read through the queue view and pages, never copied. */
+    @Getter(AccessLevel.NONE)
     private final @NotNull Deque<AudioTrack> queue;
 
+    /** Stores the queue so it can be resumed after a restart, or null to keep it in memory only. */
+    private final @Nullable QueueLog queueLog;
+
     /** LavaPlayer essentials. */
     public final @NotNull AudioPlayer audioPlayer;
-    private AudioFrame lastFrame;
+
+    /**
+     * The frame the player writes each 20ms of audio into and the buffer behind it. Both are
+     * reused for every frame, so sending audio allocates nothing however many guilds are playing.
+     */
+    private final ByteBuffer frameBuffer = ByteBuffer.allocateDirect(StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize());
+    private final MutableAudioFrame frame = new MutableAudioFrame();
+
+    /** Frames the playing track had not decoded in time to be sent. */
+    private final LongAdder underruns = new LongAdder();
 
     /** The text channel in which the bot sends music-related messages. */
     private TextChannel logChannel;
@@ -52,14 +69,23 @@ public class MusicHandler implements AudioSendHandler {
      * Constructor for the MusicHandler.
      *
      * @param audioPlayer the audio player to use for music playback.
+     * @param queueLog the log the queue is stored in, or null to keep it in memory only.
      */
-    public MusicHandler(@NotNull AudioPlayer audioPlayer) {
+    public MusicHandler(@NotNull AudioPlayer audioPlayer, @Nullable QueueLog queueLog) {
         this.audioPlayer = audioPlayer;
+        this.queueLog = queueLog;
+        this.frame.setBuffer(frameBuffer);
         this.queue = new ConcurrentLinkedDeque<>();
         this.isLoop = false;
         this.isSkip = false;
         TrackScheduler scheduler = new TrackScheduler(this);
         audioPlayer.addListener(scheduler);
+        if (queueLog != null) {
+            queueLog.track(() -> {
+                AudioTrack playing = audioPlayer.getPlayingTrack();
+                return playing == null ? -1 : playing.getPosition();
+            });
+        }
     }
 
     /**
@@ -68,12 +94,45 @@ public class MusicHandler implements AudioSendHandler {
      * @param track audio track to be queued.
      */
     public void enqueue(AudioTrack track) {
-        queue.addLast(track);
+        synchronized (queue) {
+            queue.addLast(track);
+            if (queueLog != null) queueLog.append(track);
+        }
         if (audioPlayer.getPlayingTrack() == null) {
             audioPlayer.playTrack(queue.peekFirst());
         }
     }
 
+    /**
+     * Restore a queue that was stored before a restart and start playing it. The first track
+     * should already be set to the position it was stopped at. Nothing is restored if tracks
+     * have been queued since, as the queue they started has replaced the stored one.
+     *
+     * @param tracks the tracks to restore, the one that was playing first.
+     * @return true if the tracks were restored.
+     */
+    public boolean restore(List<AudioTrack> tracks) {
+        if (tracks.isEmpty()) return false;
+        synchronized (queue) {
+            if (!queue.isEmpty()) return false;
+            queue.addAll(tracks);
+            if (queueLog != null) queueLog.rewrite(queue);
+        }
+        resume();
+        return true;
+    }
+
+    /**
+     * Play the track at the front of the queue if nothing is playing, for instance once the
+     * voice connection is back after the player stopped a track it could not send.
+     */
+    public void resume() {
+        AudioTrack head = queue.peekFirst();
+        if (head != null && audioPlayer.getPlayingTrack() == null) {
+            audioPlayer.playTrack(head);
+        }
+    }
+
     /**
      * Pause audio player.
      */
@@ -100,7 +159,10 @@ public class MusicHandler implements AudioSendHandler {
      */
     public void disconnect() {
         playChannel = null;
-        queue.clear();
+        synchronized (queue) {
+            queue.clear();
+            if (queueLog != null) queueLog.clear();
+        }
         audioPlayer.stopTrack();
     }
 
@@ -155,8 +217,11 @@ public class MusicHandler implements AudioSendHandler {
         }
 
         // Remove them from the deque
-        for (AudioTrack t : toRemove) {
-            queue.remove(t);
+        synchronized (queue) {
+            for (AudioTrack t : toRemove) {
+                queue.remove(t);
+            }
+            if (queueLog != null) queueLog.rewrite(queue);
         }
 
         // Skip the current track to play the next one
@@ -176,12 +241,59 @@ public class MusicHandler implements AudioSendHandler {
     }
 
     /**
-     * Get the audio player queue.
+     * Get a read-only view of the queue. The view is not a copy: it follows the queue as it
+     * changes and iterating it never fails, even while tracks are added or removed.
+     *
+     * @return the queued tracks, the playing one first.
+     */
+    public @NotNull Collection<AudioTrack> getQueueView() {
+        return Collections.unmodifiableCollection(queue);
+    }
+
+    /**
+     * Get a page of the queue without copying the rest of it.
+     *
+     * @param offset the index of the first track of the page, the playing track being 0.
+     * @param limit the most tracks on the page.
+     * @return the tracks on the page.
+     */
+    public @NotNull List<AudioTrack> getQueuePage(int offset, int limit) {
+        List<AudioTrack> page = new ArrayList<>(Math.max(0, Math.min(limit, 32)));
+        Iterator<AudioTrack> iterator = queue.iterator();
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+
+    /**
+     * Get the track at the front of the queue, which is the playing one.
+     *
+     * @return the current track, or null if the queue is empty.
+     */
+    public @Nullable AudioTrack getCurrentTrack() {
+        return queue.peekFirst();
+    }
+
+    /**
+     * Get the number of tracks in the queue, including the playing one.
+     *
+     * @return the queue size.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Check whether the queue is empty.
      *
-     * @return list of tracks in queue. Returns copy to avoid external modification.
+     * @return true if nothing is queued or playing.
      */
-    public @NotNull LinkedList<AudioTrack> getQueue() {
-        return new LinkedList<>(queue);
+    public boolean isQueueEmpty() {
+        return queue.isEmpty();
     }
 
     /**
@@ -216,8 +328,11 @@ public class MusicHandler implements AudioSendHandler {
      */
     @Override
     public boolean canProvide() {
-        lastFrame = audioPlayer.provide();
-        return lastFrame != null;
+        if (audioPlayer.provide(frame)) return true;
+        if (audioPlayer.getPlayingTrack() != null && !audioPlayer.isPaused()) {
+            underruns.increment();
+        }
+        return false;
     }
 
     /**
@@ -233,12 +348,12 @@ public class MusicHandler implements AudioSendHandler {
     /**
      * Provides the audio data in 20ms chunks.
      *
-     * @return ByteBuffer containing the audio data for the current frame.
+     * @return ByteBuffer containing the audio data for the current frame, reused for every frame.
      */
     @Nullable
     @Override
     public ByteBuffer provide20MsAudio() {
-        return ByteBuffer.wrap(lastFrame.getData());
+        return frameBuffer.flip();
     }
 
     /**
@@ -277,6 +392,15 @@ public class MusicHandler implements AudioSendHandler {
          */
         @Override
         public void onTrackEnd(@NotNull AudioPlayer player, @NotNull AudioTrack track, @NotNull AudioTrackEndReason endReason) {
+            if (endReason == AudioTrackEndReason.CLEANUP) {
+                // Nothing took frames for too long, most likely the voice connection dropped.
+                // Keep the track where it stopped, it is played again once voice is back.
+                AudioTrack resumed = track.makeClone();
+                resumed.setPosition(track.getPosition());
+                handler.queue.pollFirst();
+                handler.queue.addFirst(resumed);
+                return;
+            }
             if (handler.isLoop() && !handler.isSkip) {
                 handler.queue.pollFirst();                  // remove old head
                 handler.queue.addFirst(track.makeClone());  // push clone
@@ -284,7 +408,10 @@ public class MusicHandler implements AudioSendHandler {
                 return;
             }
             handler.isSkip = false;
-            handler.queue.pollFirst(); // remove the finished one
+            synchronized (handler.queue) {
+                handler.queue.pollFirst(); // remove the finished one
+                if (handler.queueLog != null) handler.queueLog.removeFirst();
+            }
             if (endReason.mayStartNext) {
                 AudioTrack next = handler.queue.peekFirst();
                 if (next != null) player.playTrack(next);
@@ -316,7 +443,10 @@ public class MusicHandler implements AudioSendHandler {
         public void onTrackStuck(@NotNull AudioPlayer player, AudioTrack track, long thresholdMs) {
             String msg = "Track got stuck, attempting to fix...";
             handler.logChannel.sendMessageEmbeds(EmbedUtils.createError(msg)).queue();
-            handler.queue.remove(track);
+            synchronized (handler.queue) {
+                handler.queue.remove(track);
+                if (handler.queueLog != null) handler.queueLog.rewrite(handler.queue);
+            }
             player.stopTrack();
             player.playTrack(handler.queue.getFirst());
         }
@@ -348,7 +478,7 @@ public class MusicHandler implements AudioSendHandler {
                 .setTitle("Now Playing")
                 .setDescription("[" + track.getInfo().title + "](" + track.getInfo().uri + ")")
                 .addField("Duration", "`"+duration+"`", true)
-                .addField("Queue", "`"+(handler.queue.size()-1)+"`", true)
+                .addField("Queue", "`"+(handler.getQueueSize()-1)+"`", true)
                 .addField("Volume", "`"+handler.audioPlayer.getVolume()+"%`", true)
                 .addField("Requester", userMention, true)
                 .addField("Link", "[`Click Here`]("+track.getInfo().uri+")", true)
@@ -0,0 +1,406 @@
+package org.redacted.Handlers;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import io.github.cdimascio.dotenv.Dotenv;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import org.bson.Document;
+import org.redacted.Commands.BotCommands;
+import org.redacted.Commands.Fun.NSFWCommand;
+import org.redacted.Database.GuildCollection;
+import org.redacted.Redacted;
+import org.redacted.util.SocialMedia.Reddit.MediaPool;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * NSFWLoopEngine Class
+ * Runs every NSFW loop started with /loopnsfw from a single engine thread. Fetching media and
+ * posting it are kept apart: each loop keeps a small queue of media fetched ahead of time, so a
+ * slow Reddit response only delays that loop's next refill and never a post, in that channel or
+ * any other. Posts are handed out round robin across the channels that are due, spaced by a
+ * little random jitter and held to a global posts-per-second budget (NSFW_LOOP_POSTS_PER_SECOND),
+ * so a burst of loops coming due at once is spread out fairly rather than posted together.
+ * <p>
+ * Active loops are stored in each guild's nsfw_loops collection and restored on startup. Those
+ * writes run in order on a thread of their own, so a slow database never holds up the engine.
+ *
+ * @author Derrick Eberlein
+ */
+public final class NSFWLoopEngine {
+
+    private static final String COLLECTION = "nsfw_loops";
+    private static final long TICK_MILLIS = 250;
+    private static final long POST_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long MAX_JITTER_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long FETCH_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final int QUEUE_CAPACITY = 2;
+    private static final int MAX_MISSES = 3;
+    private static final double DEFAULT_POSTS_PER_SECOND = 1;
+
+    private final Redacted bot;
+    private final ScheduledExecutorService engine;
+    private final ExecutorService storage;
+    private final ConcurrentHashMap<Long, Loop> loops = new ConcurrentHashMap<>();
+
+    // Only touched on the engine thread
+    private final ArrayDeque<Loop> rotation = new ArrayDeque<>();
+    private final PostBudget budget;
+
+    /**
+     * Constructs an NSFWLoopEngine and starts its thread.
+     *
+     * @param bot the Redacted bot instance.
+     * @param postsPerSecond the most posts all loops together may make per second.
+     */
+    public NSFWLoopEngine(Redacted bot, double postsPerSecond) {
+        this.bot = bot;
+        this.budget = new PostBudget(postsPerSecond > 0 ? postsPerSecond : DEFAULT_POSTS_PER_SECOND, System.currentTimeMillis());
+        this.engine = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nsfw-loop-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.storage = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nsfw-loop-storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.engine.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an NSFWLoopEngine with the posts-per-second budget from the NSFW_LOOP_POSTS_PER_SECOND variable.
+     *
+     * @param bot the Redacted bot instance.
+     * @param config the environment configuration.
+     * @return the engine.
+     */
+    public static NSFWLoopEngine fromConfig(Redacted bot, Dotenv config) {
+        String value = config.get("NSFW_LOOP_POSTS_PER_SECOND");
+        double postsPerSecond = DEFAULT_POSTS_PER_SECOND;
+        if (value != null && !value.isBlank()) {
+            try {
+                postsPerSecond = Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid NSFW_LOOP_POSTS_PER_SECOND '" + value + "', using " + DEFAULT_POSTS_PER_SECOND);
+            }
+        }
+        return new NSFWLoopEngine(bot, postsPerSecond);
+    }
+
+    /**
+     * Start a loop in a channel and store it so it survives a restart.
+     * The first post is made as soon as media for it has been fetched.
+     *
+     * @param channel the channel to post in.
+     * @param category the NSFW category to post from.
+     * @return false if the channel is already looping.
+     */
+    public boolean start(TextChannel channel, String category) {
+        Loop loop = new Loop(channel.getGuild().getIdLong(), channel.getIdLong(), category);
+        if (loops.putIfAbsent(loop.channelId, loop) != null) {
+            return false;
+        }
+
+        storage.execute(() -> {
+            try {
+                collection(loop.guildId).replaceOne(
+                        Filters.eq("channelId", channel.getId()),
+                        new Document("channelId", channel.getId()).append("category", category).append("startedAt", new Date()),
+                        new ReplaceOptions().upsert(true));
+            } catch (MongoException e) {
+                // The loop still runs, it just won't be restored after a restart
+                System.err.println("Failed to store NSFW loop for channel " + channel.getId() + ": " + e.getMessage());
+            }
+        });
+        engine.execute(() -> register(loop, System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Stop the loop in a channel and forget it.
+     *
+     * @param channelId the channel to stop.
+     * @return true if the channel was looping.
+     */
+    public boolean stop(long channelId) {
+        Loop loop = loops.remove(channelId);
+        if (loop == null) return false;
+        forget(loop);
+        return true;
+    }
+
+    /**
+     * Stop every loop in a guild.
+     *
+     * @param guildId the guild whose loops are stopped.
+     * @return the number of loops stopped.
+     */
+    public int stopAll(long guildId) {
+        int stopped = 0;
+        for (Loop loop : List.copyOf(loops.values())) {
+            if (loop.guildId == guildId && loops.remove(loop.channelId, loop)) {
+                forget(loop);
+                stopped++;
+            }
+        }
+        return stopped;
+    }
+
+    /**
+     * Check if a channel is looping.
+     *
+     * @param channelId the channel to check.
+     * @return true if a loop is running in the channel.
+     */
+    public boolean isLooping(long channelId) {
+        return loops.containsKey(channelId);
+    }
+
+    /**
+     * Restore a guild's stored loops. Loops whose channel no longer exists or is no longer
+     * NSFW are deleted. Restored loops make their first post at a random point within one
+     * interval, so a restart does not make every loop post at once. The stored loops are read
+     * on the storage thread, so this returns straight away.
+     *
+     * @param guildId the guild to load.
+     */
+    public void load(long guildId) {
+        storage.execute(() -> {
+            try {
+                restore(guildId);
+            } catch (MongoException e) {
+                System.err.println("Failed to restore NSFW loops for guild " + guildId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void restore(long guildId) {
+        int restored = 0;
+        long now = System.currentTimeMillis();
+        for (Document document : collection(guildId).find()) {
+            String channelId = document.getString("channelId");
+            String category = document.getString("category");
+            TextChannel channel = channelId == null ? null : bot.getShardManager().getTextChannelById(channelId);
+            if (channel == null || !channel.isNSFW() || category == null) {
+                collection(guildId).deleteOne(Filters.eq("_id", document.getObjectId("_id")));
+                continue;
+            }
+
+            Loop loop = new Loop(guildId, channel.getIdLong(), category);
+            if (loops.putIfAbsent(loop.channelId, loop) == null) {
+                long firstPost = now + ThreadLocalRandom.current().nextLong(POST_INTERVAL_MILLIS);
+                engine.execute(() -> register(loop, firstPost));
+                restored++;
+            }
+        }
+        if (restored > 0) {
+            System.out.println("Restored " + restored + " NSFW loops for guild " + guildId);
+        }
+    }
+
+    /**
+     * Stop the engine thread. Stored loops are kept and restored on the next start, and
+     * writes already queued for the database are still made.
+     */
+    public void shutdown() {
+        engine.shutdown();
+        storage.shutdown();
+    }
+
+    private void register(Loop loop, long firstPost) {
+        if (loops.get(loop.channelId) != loop) return;
+        loop.nextPostAt = firstPost;
+        rotation.addLast(loop);
+    }
+
+    private void forget(Loop loop) {
+        loop.stopped = true;
+        engine.execute(() -> rotation.remove(loop));
+        // Called on the engine thread too, so the delete is left to the storage thread
+        storage.execute(() -> {
+            try {
+                collection(loop.guildId).deleteOne(Filters.eq("channelId", String.valueOf(loop.channelId)));
+            } catch (MongoException e) {
+                System.err.println("Failed to delete NSFW loop for channel " + loop.channelId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Top up every loop's queue, then post for the due loops in rotation order while the
+     * budget allows. Loops that posted go to the back of the rotation, loops that were due but
+     * ran out of budget keep their place and go first on the next tick.
+     */
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            budget.refill(now);
+
+            List<Loop> waiting = new ArrayList<>(rotation.size());
+            List<Loop> posted = new ArrayList<>();
+            while (!rotation.isEmpty()) {
+                Loop loop = rotation.pollFirst();
+                if (loop.stopped) continue;
+                fetchIfNeeded(loop, now);
+                if (budget.hasPost() && loop.nextPostAt <= now && post(loop, now)) {
+                    budget.take();
+                    posted.add(loop);
+                } else {
+                    waiting.add(loop);
+                }
+            }
+            rotation.addAll(waiting);
+            rotation.addAll(posted);
+        } catch (Exception e) {
+            System.err.println("NSFW loop engine tick failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fetch media ahead of time while the loop's queue has room. Completions are handed back
+     * to the engine thread, so the fetch itself never holds the engine up.
+     */
+    private void fetchIfNeeded(Loop loop, long now) {
+        if (loop.fetching || loop.queue.size() >= QUEUE_CAPACITY || now < loop.nextFetchAt) return;
+        NSFWCommand nsfwCommand = (NSFWCommand) BotCommands.commandsMap.get("nsfw");
+        if (nsfwCommand == null) return;
+
+        loop.fetching = true;
+        nsfwCommand.takeMedia(loop.category, loop.channelId, true).whenComplete((media, error) -> engine.execute(() -> {
+            loop.fetching = false;
+            if (loop.stopped) return;
+            if (error == null) {
+                loop.misses = 0;
+                loop.queue.addLast(media);
+                return;
+            }
+
+            loop.misses++;
+            System.err.println("Failed finding NSFW media for loop in channel " + loop.channelId + ": " + error.getMessage());
+            if (loop.misses >= MAX_MISSES && loop.queue.isEmpty()) {
+                TextChannel channel = bot.getShardManager().getTextChannelById(loop.channelId);
+                if (channel != null) {
+                    channel.sendMessage("Failed finding Images after multiple attempts, please try again later.").queue();
+                }
+                stop(loop.channelId);
+            } else {
+                loop.nextFetchAt = System.currentTimeMillis() + FETCH_BACKOFF_MILLIS * loop.misses;
+            }
+        }));
+    }
+
+    /**
+     * Post the loop's next queued media, if it has any that hasn't expired.
+     *
+     * @return true if something was posted.
+     */
+    private boolean post(Loop loop, long now) {
+        MediaPool.Media media = loop.queue.pollFirst();
+        while (media != null && media.isExpired(now)) {
+            media = loop.queue.pollFirst();
+        }
+        if (media == null) return false;
+
+        TextChannel channel = bot.getShardManager().getTextChannelById(loop.channelId);
+        NSFWCommand nsfwCommand = (NSFWCommand) BotCommands.commandsMap.get("nsfw");
+        if (channel == null) {
+            System.out.println("NSFW loop channel " + loop.channelId + " no longer exists, stopping its loop");
+            stop(loop.channelId);
+            return false;
+        }
+        if (!channel.isNSFW()) {
+            // The channel was made SFW after the loop started
+            System.out.println("NSFW loop channel " + loop.channelId + " is no longer NSFW, stopping its loop");
+            stop(loop.channelId);
+            return false;
+        }
+        if (nsfwCommand == null) {
+            loop.queue.addFirst(media);
+            return false;
+        }
+
+        nsfwCommand.sendMedia(channel, media);
+        loop.nextPostAt = now + POST_INTERVAL_MILLIS + ThreadLocalRandom.current().nextLong(MAX_JITTER_MILLIS);
+        return true;
+    }
+
+    private GuildCollection<Document> collection(long guildId) {
+        return bot.getDatabase().getGuildCollection(guildId, COLLECTION);
+    }
+
+    /**
+     * The posts-per-second budget shared by every loop, a token bucket holding up to a second's
+     * worth of posts, and never less than one. Only touched on the engine thread.
+     */
+    static final class PostBudget {
+        private final double postsPerSecond;
+        private final double capacity;
+        private double tokens;
+        private long updatedAt;
+
+        /**
+         * Constructs a full PostBudget.
+         *
+         * @param postsPerSecond the rate posts are allowed at.
+         * @param now the current time in milliseconds.
+         */
+        PostBudget(double postsPerSecond, long now) {
+            this.postsPerSecond = postsPerSecond;
+            this.capacity = Math.max(1, postsPerSecond);
+            this.tokens = capacity;
+            this.updatedAt = now;
+        }
+
+        /**
+         * Add the posts allowed since the last refill, up to the capacity.
+         *
+         * @param now the current time in milliseconds.
+         */
+        void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) / 1000.0 * postsPerSecond);
+            updatedAt = now;
+        }
+
+        /**
+         * Check whether a post may be made.
+         *
+         * @return true if a whole post is left in the budget.
+         */
+        boolean hasPost() {
+            // Allow for the rounding of many small refills, which would otherwise hold a post back a tick
+            return tokens >= 1 - 1e-9;
+        }
+
+        /**
+         * Spend a post.
+         */
+        void take() {
+            tokens = Math.max(0, tokens - 1);
+        }
+    }
+
+    /**
+     * A loop in a single channel. Apart from its identity, only touched on the engine thread.
+     */
+    private static final class Loop {
+        private final long guildId;
+        private final long channelId;
+        private final String category;
+        private final ArrayDeque<MediaPool.Media> queue = new ArrayDeque<>(QUEUE_CAPACITY);
+        private long nextPostAt;
+        private long nextFetchAt;
+        private boolean fetching;
+        private int misses;
+        private volatile boolean stopped;
+
+        private Loop(long guildId, long channelId, String category) {
+            this.guildId = guildId;
+            this.channelId = channelId;
+            this.category = category;
+        }
+    }
+}
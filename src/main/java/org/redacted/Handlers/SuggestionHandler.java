@@ -1,6 +1,5 @@
 package org.redacted.Handlers;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Updates;
 import net.dv8tion.jda.api.EmbedBuilder;
@@ -14,6 +13,7 @@ import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import org.redacted.Database.Data.GuildData;
 import org.redacted.Database.Database;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.cache.Suggestion;
 import org.redacted.Redacted;
 import org.redacted.util.embeds.EmbedUtils;
@@ -33,7 +33,7 @@ public class SuggestionHandler {
 
     private final Redacted bot;
     private final Guild guild;
-    private final MongoCollection<Suggestion> suggestionsCollection;
+    private final GuildCollection<Suggestion> suggestionsCollection;
     private Suggestion suggestions;
 
     /**
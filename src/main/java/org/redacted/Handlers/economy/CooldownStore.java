@@ -0,0 +1,168 @@
+package org.redacted.Handlers.economy;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * CooldownStore Class
+ * Keeps economy command cooldowns for every guild. Active cooldowns live in a
+ * concurrent map whose reads never lock, and every cooldown is written through to a
+ * Mongo collection with a TTL index so it survives restarts. Until a guild's running
+ * cooldowns have been loaded back, a cooldown missing from memory is read from the
+ * collection; after that, memory is the whole answer. Expired cooldowns are evicted from
+ * memory as soon as they are seen and by a periodic sweep, and Mongo removes them
+ * through the TTL index, so an expired cooldown takes no space anywhere.
+ *
+ * @author Derrick Eberlein
+ */
+public class CooldownStore {
+
+    private static final long SWEEP_INTERVAL = 60000;
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+    private final MongoCollection<Document> collection;
+    private final ConcurrentHashMap<CooldownKey, Long> active = new ConcurrentHashMap<>();
+    /** Guilds whose running cooldowns are all held in memory. */
+    private final Set<Long> loadedGuilds = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Constructs a CooldownStore backed by the given collection.
+     * The collection is expected to carry a TTL index on "expiresAt".
+     *
+     * @param collection the collection cooldowns are persisted to.
+     */
+    public CooldownStore(MongoCollection<Document> collection) {
+        this.collection = collection;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "economy-cooldowns");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Load the cooldowns of a guild that are still running from the database in the background.
+     * Until the load succeeds, cooldowns of the guild missing from memory are read from the database.
+     *
+     * @param guildID the guild to load.
+     */
+    public void load(long guildID) {
+        executor.execute(() -> {
+            try {
+                long now = System.currentTimeMillis();
+                Bson filter = Filters.and(Filters.eq("guild", guildID), Filters.gt("expiresAt", new Date(now)));
+                int loaded = 0;
+                for (Document document : collection.find(filter)) {
+                    EconomyHandler.TIMEOUT_TYPE type = EconomyHandler.TIMEOUT_TYPE.valueOf(document.getString("type"));
+                    long expiresAt = document.getDate("expiresAt").getTime();
+                    active.merge(new CooldownKey(guildID, document.getLong("user"), type), expiresAt, Math::max);
+                    loaded++;
+                }
+                loadedGuilds.add(guildID);
+                if (loaded > 0) {
+                    System.out.println("Loaded " + loaded + " economy cooldowns for guild " + guildID);
+                }
+            } catch (MongoException | IllegalArgumentException e) {
+                System.err.println("Failed to load economy cooldowns for guild " + guildID + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Start a cooldown for a user.
+     *
+     * @param guildID the guild the user belongs to.
+     * @param userID the user to put on cooldown.
+     * @param type the economy command the cooldown applies to.
+     * @param expiresAt the time in millis the cooldown ends.
+     */
+    public void set(long guildID, long userID, EconomyHandler.TIMEOUT_TYPE type, long expiresAt) {
+        active.put(new CooldownKey(guildID, userID, type), expiresAt);
+        executor.execute(() -> {
+            try {
+                Bson filter = Filters.and(Filters.eq("guild", guildID), Filters.eq("user", userID), Filters.eq("type", type.name()));
+                Document document = new Document("guild", guildID)
+                        .append("user", userID)
+                        .append("type", type.name())
+                        .append("expiresAt", new Date(expiresAt));
+                collection.replaceOne(filter, document, UPSERT);
+            } catch (MongoException e) {
+                System.err.println("Failed to persist economy cooldown for user " + userID + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Get the time a user's cooldown ends. While the guild's cooldowns are still loading, one
+     * not held in memory is looked up in the database, so a cooldown still running from before
+     * a restart is seen; once they have loaded this never leaves memory.
+     *
+     * @param guildID the guild the user belongs to.
+     * @param userID the user to check.
+     * @param type the economy command to check.
+     * @return the time in millis the cooldown ends, or null if the user is not on cooldown.
+     */
+    public Long get(long guildID, long userID, EconomyHandler.TIMEOUT_TYPE type) {
+        CooldownKey key = new CooldownKey(guildID, userID, type);
+        long now = System.currentTimeMillis();
+        Long expiresAt = active.get(key);
+        if (expiresAt != null) {
+            if (expiresAt > now) return expiresAt;
+            active.remove(key, expiresAt);
+        }
+        if (loadedGuilds.contains(guildID)) return null;
+
+        Long stored = read(guildID, userID, type, now);
+        if (stored == null) return null;
+        return active.merge(key, stored, Math::max);
+    }
+
+    /**
+     * Read a cooldown that is still running from the database.
+     *
+     * @return the time in millis the cooldown ends, or null if there is none or it cannot be read.
+     */
+    private Long read(long guildID, long userID, EconomyHandler.TIMEOUT_TYPE type, long now) {
+        try {
+            Bson filter = Filters.and(Filters.eq("guild", guildID), Filters.eq("user", userID),
+                    Filters.eq("type", type.name()), Filters.gt("expiresAt", new Date(now)));
+            Document document = collection.find(filter).first();
+            return document == null ? null : document.getDate("expiresAt").getTime();
+        } catch (MongoException e) {
+            System.err.println("Failed to read economy cooldown for user " + userID + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the number of cooldowns currently held in memory.
+     *
+     * @return the number of active cooldowns.
+     */
+    public int size() {
+        return active.size();
+    }
+
+    /**
+     * Drop every expired cooldown from memory.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        active.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    /**
+     * Identifies one cooldown of one user in one guild.
+     */
+    private record CooldownKey(long guild, long user, EconomyHandler.TIMEOUT_TYPE type) { }
+}
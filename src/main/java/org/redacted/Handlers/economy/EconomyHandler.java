@@ -27,20 +27,24 @@ import java.util.concurrent.ThreadLocalRandom;
  * @author Derrick Eberlein
  */
 @Getter
-public class EconomyHandler {
+public final class EconomyHandler {
 
     public static final String DEFAULT_CURRENCY = "\uD83E\uDE99";
     public static final long WORK_TIMEOUT = 14400000;
+    public static final long CRIME_TIMEOUT = 14400000;
     public static final long ROB_TIMEOUT = 86400000;
     public static final DecimalFormat FORMATTER = new DecimalFormat("#,###");
 
+    // Only the fields needed for balance calculations, skips the inventory
+    private static final Bson PROFILE_PROJECTION = Projections.include("guild", "user", "balance", "bank");
 
-    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
-    private final Map<Long, UserTimeout> timeouts;
+    private final CooldownStore cooldowns;
     private static final EconomyLocalization responses = new EconomyLocalization();
 
     private final Guild guild;
     private final GuildData guildData; // Add reference to GuildData
+    private final EconomyLedger ledger;
+    private final LeaderboardIndex leaderboardIndex;
     private String currency;
 
     /**
@@ -48,10 +52,14 @@ public class EconomyHandler {
      *
      * @param guild the guild this handler is for.
      * @param guildData the GuildData instance containing economy data.
+     * @param ledger the write-behind ledger that batches balance changes.
+     * @param cooldowns the shared store for economy command cooldowns.
      */
-    public EconomyHandler(Guild guild, GuildData guildData) {
+    public EconomyHandler(Guild guild, GuildData guildData, EconomyLedger ledger, CooldownStore cooldowns) {
         this.guild = guild;
         this.guildData = guildData;
+        this.ledger = ledger;
+        this.cooldowns = cooldowns;
 
         // Retrieve config and ensure it is not null
         Config config = guildData.getConfig();
@@ -74,8 +82,11 @@ public class EconomyHandler {
             guildData.updateConfig(Updates.set("currency", DEFAULT_CURRENCY));
         }
 
-        // Initialize the timeouts map
-        this.timeouts = new HashMap<>();
+        // Restore cooldowns that were still running when the guild was last loaded
+        cooldowns.load(guild.getIdLong());
+
+        // Build the in-memory leaderboard from the aggregation in the background
+        this.leaderboardIndex = new LeaderboardIndex(guild.getIdLong(), this::getLeaderboardAsList);
     }
 
     /**
@@ -111,16 +122,13 @@ public class EconomyHandler {
             addMoney(userID, amount);
             reply = responses.getCrimeSuccessResponse(amount, getCurrency());
         } else {
-            // Crime failed
-            amount = calculateFine(userID); // Calculate the fine (e.g., 20%-40% of the balance)
-
-            // Get the current cash balance (non-banked money) of the user
-            long currentBalance = getBalance(userID);
+            // Crime failed, read the profile once for both the fine and the cash check
+            EconomySnapshot snapshot = getSnapshot(userID);
+            amount = calculateFine(snapshot); // Calculate the fine (e.g., 20%-40% of the balance)
 
-            if (currentBalance > 0) {
-                // Deduct money only up to the available balance
-                long amountToDeduct = Math.min(amount, currentBalance);
-                removeMoney(userID, amountToDeduct); // Deduct the calculated fine
+            // Deduct money only up to the available cash balance (non-banked money)
+            long amountToDeduct = Math.min(amount, snapshot.balance());
+            if (amountToDeduct > 0 && tryRemoveMoney(userID, amountToDeduct)) {
                 reply = responses.getCrimeFailResponse(amountToDeduct, getCurrency());
             } else {
                 // User has no cash on hand, return special response
@@ -134,65 +142,74 @@ public class EconomyHandler {
 
     /**
      * Deposit money from balance into the bank.
+     * The balance check and the transfer happen in one conditional update.
      *
      * @param userID the ID of the user to deposit for.
      * @param amount the amount to deposit.
+     * @throws IllegalArgumentException if the user does not have enough balance.
      */
     public void deposit(long userID, long amount) {
-        long currentBalance = getBalance(userID);
-
-        // Ensure the user has enough balance to deposit
-        if (currentBalance < amount) {
+        if (!debit(userID, "balance", amount, -amount, amount)) {
             throw new IllegalArgumentException("Not enough balance to deposit.");
         }
-
-        // Update the user's balance and bank in the database
-        Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
-        Bson updateBalance = Updates.inc("balance", -amount);  // Decrease balance
-        Bson updateBank = Updates.inc("bank", amount);         // Increase bank
-        guildData.getEconomyCollection().updateOne(filter, Updates.combine(updateBalance, updateBank), UPSERT);
     }
 
     /**
      * Withdraw money from the bank into balance.
+     * The bank check and the transfer happen in one conditional update.
      *
      * @param userID the ID of the user to withdraw for.
      * @param amount the amount to withdraw.
+     * @throws IllegalArgumentException if the user does not have enough in the bank.
      */
     public void withdraw(long userID, long amount) {
-        long currentBank = getBank(userID);
-
-        // Ensure the user has enough in the bank to withdraw
-        if (currentBank < amount) {
+        if (!debit(userID, "bank", amount, amount, -amount)) {
             throw new IllegalArgumentException("Not enough funds in the bank to withdraw.");
         }
-
-        // Update the user's balance and bank in the database
-        Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
-        Bson updateBalance = Updates.inc("balance", amount);   // Increase balance
-        Bson updateBank = Updates.inc("bank", -amount);        // Decrease bank
-        guildData.getEconomyCollection().updateOne(filter, Updates.combine(updateBalance, updateBank), UPSERT);
     }
 
 
     /**
-     * Add money to this user's account
+     * Add money to this user's account.
+     * The change is buffered in the ledger and written to the database in batches.
      *
      * @param amount the amount of money to add.
      */
     public void addMoney(long userID, long amount) {
-        Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
-        guildData.getEconomyCollection().updateOne(filter, Updates.inc("balance", amount), UPSERT);
+        leaderboardIndex.apply(userID, amount, () -> ledger.record(guild.getIdLong(), userID, amount, 0));
     }
 
     /**
-     * Remove money to this user's account
+     * Remove money to this user's account.
+     * The change is buffered in the ledger and written to the database in batches.
      *
      * @param amount the amount of money to remove.
      */
     public void removeMoney(long userID, long amount) {
-        Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
-        guildData.getEconomyCollection().updateOne(filter, Updates.inc("balance", -amount), UPSERT);
+        leaderboardIndex.apply(userID, -amount, () -> ledger.record(guild.getIdLong(), userID, -amount, 0));
+    }
+
+    /**
+     * Remove money from this user's cash balance only if they have at least that much.
+     * The check and the debit are a single findOneAndUpdate, so two commands racing on
+     * the same user cannot both spend the same money.
+     *
+     * @param userID the ID of the user to charge.
+     * @param amount the amount of money to remove.
+     * @return true if the money was removed, false if the user did not have enough.
+     */
+    public boolean tryRemoveMoney(long userID, long amount) {
+        return debit(userID, "balance", amount, -amount, 0);
+    }
+
+    /**
+     * Run a guarded debit through the ledger and keep the leaderboard in step with the result.
+     *
+     * @return true if the debit was applied.
+     */
+    private boolean debit(long userID, String guardField, long amount, long balanceDelta, long bankDelta) {
+        return leaderboardIndex.applyIf(userID, balanceDelta + bankDelta, () ->
+                ledger.debit(guild.getIdLong(), userID, guardField, amount, balanceDelta, bankDelta, PROFILE_PROJECTION) != null);
     }
 
     /**
@@ -202,10 +219,7 @@ public class EconomyHandler {
      * @return the integer value of user's cash balance.
      */
     public long getBalance(long userID) {
-        Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
-        Economy profile = guildData.getEconomyCollection().find(filter).first();
-        if (profile == null) return 0;
-        return profile.getBalance() != null ? profile.getBalance() : 0;
+        return getSnapshot(userID).balance();
     }
 
     /**
@@ -215,10 +229,7 @@ public class EconomyHandler {
      * @return the integer value of user's bank balance.
      */
     public long getBank(long userID) {
-        Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
-        Economy profile = guildData.getEconomyCollection().find(filter).first();
-        if (profile == null) return 0;
-        return profile.getBank() != null ? profile.getBank() : 0;
+        return getSnapshot(userID).bank();
     }
 
     /**
@@ -228,20 +239,32 @@ public class EconomyHandler {
      * @return the integer value of user's networth.
      */
     public long getNetworth(long userID) {
-        long balance = getBalance(userID);
-        long bank = getBank(userID);
-        return balance + bank;
+        return getSnapshot(userID).networth();
     }
 
     /**
-     * Get a user's current bank balance.
+     * Get a snapshot of a user's balances with a single projected query.
+     * Commands should take one snapshot and use it for every calculation they make.
      *
-     * @param userID the ID of the user to get bank balance from.
-     * @return the integer value of user's bank balance.
+     * @param userID the ID of the user to read.
+     * @return the user's balances, including changes the ledger has not flushed yet.
+     */
+    public EconomySnapshot getSnapshot(long userID) {
+        Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
+        Economy profile = ledger.read(guild.getIdLong(), userID,
+                () -> guildData.getEconomyCollection().find(filter).projection(PROFILE_PROJECTION).first());
+        return EconomySnapshot.of(userID, profile);
+    }
+
+    /**
+     * Get a user's economy profile, including changes the ledger has not flushed yet.
+     *
+     * @param userID the ID of the user to get the profile for.
+     * @return the user's economy profile, or null if they have none.
      */
     public Economy getProfile(long userID) {
         Bson filter = Filters.and(Filters.eq("user", userID), Filters.eq("guild", guild.getIdLong()));
-        return guildData.getEconomyCollection().find(filter).first();
+        return ledger.read(guild.getIdLong(), userID, () -> guildData.getEconomyCollection().find(filter).first());
     }
 
     /**
@@ -251,17 +274,7 @@ public class EconomyHandler {
      * @param type the economy command to timeout.
      */
     private void setTimeout(long userID, TIMEOUT_TYPE type) {
-        long time = System.currentTimeMillis() + WORK_TIMEOUT;
-        UserTimeout userTimeout = timeouts.get(userID);
-        if (userTimeout == null) {
-            userTimeout = new UserTimeout(userID);
-        }
-        switch(type) {
-            case WORK -> userTimeout.setWorkTimeout(time);
-            case CRIME -> userTimeout.setCrimeTimeout(time);
-            case ROB -> userTimeout.setRobTimeout(System.currentTimeMillis() + ROB_TIMEOUT);
-        }
-        timeouts.put(userID, userTimeout);
+        cooldowns.set(guild.getIdLong(), userID, type, System.currentTimeMillis() + type.getDuration());
     }
 
     /**
@@ -272,17 +285,7 @@ public class EconomyHandler {
      * @return time in millis till timeout is up. Null if not set.
      */
     public @Nullable Long getTimeout(long userID, TIMEOUT_TYPE type) {
-        UserTimeout userTimeout = timeouts.get(userID);
-        if (userTimeout == null) {
-            return null;
-        }
-        Long timeout = null;
-        switch(type) {
-            case WORK -> timeout = userTimeout.getWorkTimeout();
-            case CRIME -> timeout = userTimeout.getCrimeTimeout();
-            case ROB -> timeout = userTimeout.getRobTimeout();
-        }
-        return timeout;
+        return cooldowns.get(guild.getIdLong(), userID, type);
     }
 
     /**
@@ -303,9 +306,13 @@ public class EconomyHandler {
      * @return an EconomyReply object with a response and success boolean.
      */
     public EconomyReply rob(long userID, long targetID) {
+        // One read per user feeds every calculation below
+        EconomySnapshot user = getSnapshot(userID);
+        EconomySnapshot target = getSnapshot(targetID);
+
         // Calculate probability of failure (your networth / (their cash + your networth))
-        long userNetworth = getNetworth(userID);
-        long targetCash = getBalance(targetID);
+        long userNetworth = user.networth();
+        long targetCash = target.balance();
         double failChance = (double) userNetworth / (targetCash + userNetworth);
         if (failChance < 0.20) {
             failChance = 0.20;
@@ -320,14 +327,17 @@ public class EconomyHandler {
         // Attempt robbery
         setTimeout(userID, TIMEOUT_TYPE.ROB);
         if (ThreadLocalRandom.current().nextDouble() > failChance) {
-            // Rob successful
-            pay(targetID, userID, amountStolen);
+            // Rob successful, unless the target spent their cash in the meantime
+            if (!pay(targetID, userID, amountStolen)) {
+                String response = "<@" + targetID + "> no longer has that much cash on hand, you got away with nothing.";
+                return new EconomyReply(response, 1, false);
+            }
             String value = getCurrency() + " " + EconomyHandler.FORMATTER.format(amountStolen);
             String response = EmbedUtils.GREEN_TICK + " You robbed " + value + " from <@" + targetID + ">";
             return new EconomyReply(response, 1, true);
         }
         // Rob failed (20-40% fine of net worth)
-        long fine = calculateFine(userID);
+        long fine = calculateFine(user);
         removeMoney(userID, fine);
         String value = getCurrency() + " " + EconomyHandler.FORMATTER.format(fine);
         String response = "You were caught attempting to rob <@"+targetID+">, and have been fined " + value + ".";
@@ -336,25 +346,30 @@ public class EconomyHandler {
 
     /**
      * Transfer money from one user to another.
+     * The sender is only debited if they still have enough cash.
      *
      * @param userID the user to transfer money from.
      * @param targetID the user to transfer money to.
      * @param amount the amount of money to transfer.
+     * @return true if the transfer happened, false if the sender did not have enough cash.
      */
-    public void pay(long userID, long targetID, long amount) {
-        removeMoney(userID, amount);
+    public boolean pay(long userID, long targetID, long amount) {
+        if (!tryRemoveMoney(userID, amount)) {
+            return false;
+        }
         addMoney(targetID, amount);
+        return true;
     }
 
     /**
      * Calculate fine for commands like /crime and /rob
      * Default fine is 20-40% of user's networth.
      *
-     * @param userID the user to calculate fine for.
+     * @param snapshot the balances of the user to calculate fine for.
      * @return the calculated fine amount.
      */
-    private long calculateFine(long userID) {
-        long networth = getNetworth(userID);
+    private long calculateFine(EconomySnapshot snapshot) {
+        long networth = snapshot.networth();
         long fine = 0;
         if (networth > 0) {
             double percent = (ThreadLocalRandom.current().nextInt(20) + 20) * 0.01;
@@ -365,17 +380,25 @@ public class EconomyHandler {
 
     /**
      * Gets the rank of the specified user in their guild based on balance and bank.
+     * Served from the in-memory leaderboard index in O(log n).
      *
      * @param userID the ID of the user to get rank for.
      * @return integer ranking on this server.
      */
     public int getRank(long userID) {
-        int rank = 1;
-        for (Economy profile : getLeaderboard()) {
-            if (profile.getUser() == userID) return rank;
-            rank++;
-        }
-        return guild.getMemberCount();
+        int rank = leaderboardIndex.rank(userID);
+        return rank > 0 ? rank : guild.getMemberCount();
+    }
+
+    /**
+     * Get a page of the leaderboard from the in-memory index.
+     *
+     * @param offset number of entries to skip.
+     * @param limit maximum number of entries to return.
+     * @return the entries sorted by net worth in descending order.
+     */
+    public List<LeaderboardIndex.Entry> getLeaderboardPage(int offset, int limit) {
+        return leaderboardIndex.page(offset, limit);
     }
 
     /**
@@ -403,6 +426,8 @@ public class EconomyHandler {
      * @return iterable of user economy data sorted in descending order.
      */
     public AggregateIterable<Economy> getLeaderboard() {
+        // The aggregation reads the collection directly, so write out buffered changes first
+        ledger.flush(guild.getIdLong());
         return guildData.getEconomyCollection().aggregate(
                 Arrays.asList(
                         Aggregates.match(Filters.eq("guild", guild.getIdLong())),
@@ -447,9 +472,25 @@ public class EconomyHandler {
     }
 
     /**
-     * The different types of timeouts
+     * Release this guild's economy state, writing out any buffered balance changes.
+     * Called when the guild's data is evicted.
      */
+    public void close() {
+        leaderboardIndex.close();
+        ledger.flush(guild.getIdLong());
+    }
+
+    /**
+     * The different types of timeouts, each with its own cooldown length
+     */
+    @Getter
     public enum TIMEOUT_TYPE {
-        WORK, CRIME, ROB
+        WORK(WORK_TIMEOUT), CRIME(CRIME_TIMEOUT), ROB(ROB_TIMEOUT);
+
+        private final long duration;
+
+        TIMEOUT_TYPE(long duration) {
+            this.duration = duration;
+        }
     }
 }
@@ -0,0 +1,510 @@
+package org.redacted.Handlers.economy;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.*;
+import io.github.cdimascio.dotenv.Dotenv;
+import org.bson.conversions.Bson;
+import org.redacted.Database.Database;
+import org.redacted.Database.GuildCollection;
+import org.redacted.Database.cache.Economy;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * EconomyLedger Class
+ * Write-behind ledger for economy balance changes. Balance and bank deltas are
+ * accumulated in memory per user and flushed to each guild's economy collection
+ * in batches through bulkWrite, either on a fixed interval or once enough users
+ * have pending changes. Reads merge unflushed deltas so balances are never stale.
+ * A change the database rejects outright is logged and dropped, so it cannot hold
+ * back the rest of its guild.
+ *
+ * @author Derrick Eberlein
+ */
+public final class EconomyLedger {
+
+    public static final long DEFAULT_FLUSH_INTERVAL = 5000;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long LAG_WARNING_THRESHOLD = 30000;
+    private static final int READ_ATTEMPTS = 3;
+
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final LongFunction<GuildCollection<Economy>> collections;
+    private final int batchSize;
+
+    private final ConcurrentHashMap<LedgerKey, Delta> pending = new ConcurrentHashMap<>();
+    private final Map<LedgerKey, Delta> inFlight = new HashMap<>();
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    /** Bumped under the write lock whenever a write may have changed the database */
+    private final AtomicLong writeEpoch = new AtomicLong();
+    private volatile boolean closed;
+
+    // Lag and throughput metrics
+    private final LongAdder recordedDeltas = new LongAdder();
+    private final LongAdder flushedWrites = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder droppedDeltas = new LongAdder();
+    private final AtomicLong lastFlushAt = new AtomicLong();
+    private final AtomicLong lastFlushDuration = new AtomicLong();
+    private final AtomicLong lastFlushLag = new AtomicLong();
+    private final AtomicLong maxFlushLag = new AtomicLong();
+
+    /**
+     * Constructs an EconomyLedger and starts its periodic flush task.
+     *
+     * @param database the database holding the per-guild economy collections.
+     * @param flushInterval time in millis between periodic flushes.
+     * @param batchSize number of users with pending changes that triggers an early flush.
+     */
+    public EconomyLedger(Database database, long flushInterval, int batchSize) {
+        this(guildID -> database.getGuildCollection(guildID, "economy").withDocumentClass(Economy.class), flushInterval, batchSize);
+    }
+
+    /**
+     * Constructs an EconomyLedger over the given economy collections and starts its periodic flush task.
+     *
+     * @param collections resolves a guild's economy collection.
+     * @param flushInterval time in millis between periodic flushes.
+     * @param batchSize number of users with pending changes that triggers an early flush.
+     */
+    EconomyLedger(LongFunction<GuildCollection<Economy>> collections, long flushInterval, int batchSize) {
+        this.collections = collections;
+        this.batchSize = batchSize;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "economy-ledger-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an EconomyLedger using the ECONOMY_FLUSH_INTERVAL_MS and ECONOMY_FLUSH_BATCH_SIZE
+     * settings, falling back to the defaults when they are missing or invalid.
+     *
+     * @param database the database holding the per-guild economy collections.
+     * @param config the bot configuration.
+     * @return a started EconomyLedger.
+     */
+    public static EconomyLedger fromConfig(Database database, Dotenv config) {
+        long interval = parseSetting(config.get("ECONOMY_FLUSH_INTERVAL_MS"), DEFAULT_FLUSH_INTERVAL);
+        int batch = (int) parseSetting(config.get("ECONOMY_FLUSH_BATCH_SIZE"), DEFAULT_BATCH_SIZE);
+        System.out.println("Economy ledger flushing every " + interval + "ms or " + batch + " pending users");
+        return new EconomyLedger(database, interval, batch);
+    }
+
+    /**
+     * Record a change to a user's cash and bank balances.
+     * The change is applied to the database on the next flush.
+     *
+     * @param guildID the guild the user belongs to.
+     * @param userID the user whose balances change.
+     * @param balanceDelta the amount to add to the cash balance (may be negative).
+     * @param bankDelta the amount to add to the bank balance (may be negative).
+     */
+    public void record(long guildID, long userID, long balanceDelta, long bankDelta) {
+        if (balanceDelta == 0 && bankDelta == 0) return;
+        if (closed) {
+            // Ledger is shutting down, write straight through so nothing is lost
+            writeThrough(guildID, userID, new Delta(balanceDelta, bankDelta, System.currentTimeMillis()));
+            return;
+        }
+
+        pending.merge(new LedgerKey(guildID, userID), new Delta(balanceDelta, bankDelta, System.currentTimeMillis()), Delta::plus);
+        recordedDeltas.increment();
+
+        if (pending.size() >= batchSize && flushQueued.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushQueued.set(false);
+                flushSafely();
+            });
+        }
+    }
+
+    /**
+     * Load a user's profile and merge any deltas that have not been flushed yet.
+     * The load runs without holding the ledger's lock, so a flush never waits on it. If a
+     * write lands while it runs, the loaded profile may or may not include the written
+     * deltas, so it is loaded again; after a few such attempts the load is made under the
+     * read lock instead.
+     *
+     * @param guildID the guild the user belongs to.
+     * @param userID the user to load.
+     * @param loader loads the persisted profile, may return null.
+     * @return the profile including unflushed changes, or null if the user has no data at all.
+     */
+    public Economy read(long guildID, long userID, Supplier<Economy> loader) {
+        LedgerKey key = new LedgerKey(guildID, userID);
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            long epoch = writeEpoch.get();
+            Economy profile = loader.get();
+            flushLock.readLock().lock();
+            try {
+                if (writeEpoch.get() == epoch) return merge(guildID, userID, profile, key);
+            } finally {
+                flushLock.readLock().unlock();
+            }
+        }
+
+        flushLock.readLock().lock();
+        try {
+            return merge(guildID, userID, loader.get(), key);
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merge a user's unflushed deltas into a loaded profile. Must be called while holding the read lock.
+     */
+    private Economy merge(long guildID, long userID, Economy profile, LedgerKey key) {
+        Delta delta = Delta.combine(pending.get(key), inFlight.get(key));
+        if (delta == null) return profile;
+
+        if (profile == null) {
+            profile = new Economy(guildID);
+            profile.setUser(userID);
+        }
+        long balance = profile.getBalance() != null ? profile.getBalance() : 0;
+        profile.setBalance(balance + delta.balance());
+        if (delta.bank() != 0 || profile.getBank() != null) {
+            long bank = profile.getBank() != null ? profile.getBank() : 0;
+            profile.setBank(bank + delta.bank());
+        }
+        return profile;
+    }
+
+    /**
+     * Flush all pending deltas to the database.
+     */
+    public void flush() {
+        flushMatching(null);
+    }
+
+    /**
+     * Flush pending deltas for a single guild, e.g. before running an aggregation
+     * that reads the economy collection directly.
+     *
+     * @param guildID the guild to flush.
+     */
+    public void flush(long guildID) {
+        flushMatching(guildID);
+    }
+
+    /**
+     * Flush pending deltas for a single user so a direct database operation sees them.
+     *
+     * @param guildID the guild the user belongs to.
+     * @param userID the user to flush.
+     */
+    public void flush(long guildID, long userID) {
+        LedgerKey key = new LedgerKey(guildID, userID);
+        if (!pending.containsKey(key)) {
+            flushLock.readLock().lock();
+            try {
+                if (!inFlight.containsKey(key)) return;
+            } finally {
+                flushLock.readLock().unlock();
+            }
+        }
+        flushLock.writeLock().lock();
+        try {
+            Delta delta = pending.remove(key);
+            if (delta != null) inFlight.merge(key, delta, Delta::plus);
+            writeInFlight(key);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Atomically apply a debit if the guarded field still holds at least the given amount.
+     * Any buffered changes for the user are written first so the guard sees the true value.
+     * The conditional update itself runs without the ledger's lock, so flushes, reads and
+     * records for other users never wait on it: the guard in the filter makes it an optimistic
+     * compare-and-set in the database, which fails rather than overdraws when a concurrent debit,
+     * in this process or another, got there first. It leaves nothing in the ledger, so readers
+     * cannot count it twice and need not retry around it.
+     *
+     * @param guildID the guild the user belongs to.
+     * @param userID the user to debit.
+     * @param guardField the field that must hold at least {@code amount} ("balance" or "bank").
+     * @param amount the minimum value the guarded field must hold.
+     * @param balanceDelta the change to apply to the cash balance.
+     * @param bankDelta the change to apply to the bank balance.
+     * @param projection the fields to return for the updated profile.
+     * @return the updated profile including unflushed changes, or null if the guard failed.
+     */
+    public Economy debit(long guildID, long userID, String guardField, long amount,
+                         long balanceDelta, long bankDelta, Bson projection) {
+        LedgerKey key = new LedgerKey(guildID, userID);
+        flush(guildID, userID);
+        flushLock.readLock().lock();
+        try {
+            if (inFlight.containsKey(key)) {
+                System.err.println("Economy debit for user " + userID + " skipped, buffered changes could not be written");
+                return null;
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+
+        Bson filter = Filters.and(filter(key), Filters.gte(guardField, amount));
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .returnDocument(ReturnDocument.AFTER)
+                .projection(projection);
+        Economy profile = collections.apply(guildID).findOneAndUpdate(filter, update(new Delta(balanceDelta, bankDelta, 0)), options);
+        if (profile == null) return null;
+
+        // Changes recorded while the debit ran are still pending, merge them into the result
+        Delta concurrent = pending.get(key);
+        if (concurrent != null) {
+            profile.setBalance((profile.getBalance() != null ? profile.getBalance() : 0) + concurrent.balance());
+            profile.setBank((profile.getBank() != null ? profile.getBank() : 0) + concurrent.bank());
+        }
+        return profile;
+    }
+
+    /**
+     * Stop the periodic flush task and write every remaining delta.
+     * Changes recorded after this call are written straight through.
+     */
+    public void shutdown() {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        System.out.println("Economy ledger shut down: " + getStats());
+    }
+
+    /**
+     * Get a snapshot of the ledger's lag and throughput metrics.
+     *
+     * @return the current ledger statistics.
+     */
+    public LedgerStats getStats() {
+        long now = System.currentTimeMillis();
+        long oldest = now;
+        for (Delta delta : pending.values()) {
+            oldest = Math.min(oldest, delta.firstRecordedAt());
+        }
+        flushLock.readLock().lock();
+        int retrying;
+        try {
+            retrying = inFlight.size();
+            for (Delta delta : inFlight.values()) {
+                oldest = Math.min(oldest, delta.firstRecordedAt());
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        return new LedgerStats(
+                pending.size(),
+                retrying,
+                now - oldest,
+                lastFlushLag.get(),
+                maxFlushLag.get(),
+                lastFlushDuration.get(),
+                lastFlushAt.get(),
+                recordedDeltas.sum(),
+                flushedWrites.sum(),
+                flushCount.sum(),
+                failedFlushes.sum(),
+                droppedDeltas.sum()
+        );
+    }
+
+    /**
+     * Periodic flush entry point, never lets an exception kill the scheduled task.
+     */
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("Economy ledger flush failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Move matching pending deltas into the in-flight set and write them guild by guild.
+     *
+     * @param guildID the guild to flush, or null to flush every guild.
+     */
+    private void flushMatching(Long guildID) {
+        flushLock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            for (LedgerKey key : pending.keySet()) {
+                if (guildID != null && key.guild() != guildID) continue;
+                Delta delta = pending.remove(key);
+                if (delta != null) inFlight.merge(key, delta, Delta::plus);
+            }
+            if (inFlight.isEmpty()) return;
+
+            long oldest = start;
+            Map<Long, List<LedgerKey>> byGuild = new HashMap<>();
+            for (Map.Entry<LedgerKey, Delta> entry : inFlight.entrySet()) {
+                if (guildID != null && entry.getKey().guild() != guildID) continue;
+                byGuild.computeIfAbsent(entry.getKey().guild(), id -> new ArrayList<>()).add(entry.getKey());
+                oldest = Math.min(oldest, entry.getValue().firstRecordedAt());
+            }
+            if (byGuild.isEmpty()) return;
+
+            for (Map.Entry<Long, List<LedgerKey>> entry : byGuild.entrySet()) {
+                writeGuild(entry.getKey(), entry.getValue());
+            }
+
+            long end = System.currentTimeMillis();
+            long lag = end - oldest;
+            flushCount.increment();
+            lastFlushAt.set(end);
+            lastFlushDuration.set(end - start);
+            lastFlushLag.set(lag);
+            maxFlushLag.accumulateAndGet(lag, Math::max);
+            if (lag > LAG_WARNING_THRESHOLD) {
+                System.err.println("Economy ledger is lagging: oldest delta was " + lag + "ms old when flushed");
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write one in-flight delta. Must be called while holding the write lock.
+     *
+     * @param key the user to write.
+     */
+    private void writeInFlight(LedgerKey key) {
+        if (inFlight.containsKey(key)) {
+            writeGuild(key.guild(), List.of(key));
+        }
+    }
+
+    /**
+     * Bulk write in-flight deltas for a guild. The write is unordered, so one rejected
+     * operation does not stop the others: every operation without a write error is applied
+     * and leaves the in-flight set. A rejected delta would be rejected again on every retry,
+     * so it is logged with its amounts and dropped. When the write fails as a whole, every
+     * delta stays in-flight for the next attempt.
+     * Must be called while holding the write lock.
+     *
+     * @param guildID the guild whose collection is written.
+     * @param keys the users to write.
+     */
+    private void writeGuild(long guildID, List<LedgerKey> keys) {
+        List<UpdateOneModel<Economy>> models = new ArrayList<>(keys.size());
+        for (LedgerKey key : keys) {
+            models.add(new UpdateOneModel<>(filter(key), update(inFlight.get(key)), UPSERT));
+        }
+
+        writeEpoch.incrementAndGet();
+        try {
+            collections.apply(guildID).bulkWrite(models, UNORDERED);
+            keys.forEach(inFlight::remove);
+            flushedWrites.add(keys.size());
+        } catch (MongoBulkWriteException e) {
+            failedFlushes.increment();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                LedgerKey key = keys.get(error.getIndex());
+                Delta delta = inFlight.get(key);
+                droppedDeltas.increment();
+                System.err.println("Economy ledger dropped change for user " + key.user() + " in guild " + guildID
+                        + " (balance " + delta.balance() + ", bank " + delta.bank() + "): " + error.getMessage());
+            }
+            keys.forEach(inFlight::remove);
+            flushedWrites.add(keys.size() - e.getWriteErrors().size());
+        } catch (MongoException e) {
+            failedFlushes.increment();
+            System.err.println("Economy ledger flush failed for guild " + guildID + ", will retry: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply a delta directly, used once the ledger has been shut down.
+     */
+    private void writeThrough(long guildID, long userID, Delta delta) {
+        LedgerKey key = new LedgerKey(guildID, userID);
+        collections.apply(guildID).updateOne(filter(key), update(delta), UPSERT);
+    }
+
+    private static Bson filter(LedgerKey key) {
+        return Filters.and(Filters.eq("user", key.user()), Filters.eq("guild", key.guild()));
+    }
+
+    private static Bson update(Delta delta) {
+        List<Bson> updates = new ArrayList<>(2);
+        if (delta.balance() != 0 || delta.bank() == 0) updates.add(Updates.inc("balance", delta.balance()));
+        if (delta.bank() != 0) updates.add(Updates.inc("bank", delta.bank()));
+        return Updates.combine(updates);
+    }
+
+    private static long parseSetting(String value, long fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            long parsed = Long.parseLong(value.trim());
+            return parsed > 0 ? parsed : fallback;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid economy ledger setting '" + value + "', using " + fallback);
+            return fallback;
+        }
+    }
+
+    /**
+     * Identifies a user's economy profile within a guild.
+     */
+    private record LedgerKey(long guild, long user) { }
+
+    /**
+     * An immutable accumulated change to a user's balances.
+     */
+    private record Delta(long balance, long bank, long firstRecordedAt) {
+        Delta plus(Delta other) {
+            return new Delta(balance + other.balance, bank + other.bank, Math.min(firstRecordedAt, other.firstRecordedAt));
+        }
+
+        static Delta combine(Delta a, Delta b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            return a.plus(b);
+        }
+    }
+
+    /**
+     * Snapshot of the ledger's lag and throughput metrics.
+     *
+     * @param pendingUsers users with changes waiting for the next flush.
+     * @param retryingUsers users whose last write failed and will be retried.
+     * @param currentLag age in millis of the oldest unflushed change.
+     * @param lastFlushLag age in millis of the oldest change written by the last flush.
+     * @param maxFlushLag highest flush lag observed since startup.
+     * @param lastFlushDuration time in millis the last flush took.
+     * @param lastFlushAt epoch millis of the last flush.
+     * @param recordedDeltas total changes recorded.
+     * @param flushedWrites total user updates written to the database.
+     * @param flushes total flushes that wrote something.
+     * @param failedFlushes total writes that failed in whole or in part.
+     * @param droppedDeltas total changes the database rejected, which were logged and dropped.
+     */
+    public record LedgerStats(int pendingUsers, int retryingUsers, long currentLag, long lastFlushLag,
+                              long maxFlushLag, long lastFlushDuration, long lastFlushAt, long recordedDeltas,
+                              long flushedWrites, long flushes, long failedFlushes, long droppedDeltas) { }
+}
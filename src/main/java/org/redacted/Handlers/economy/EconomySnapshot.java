@@ -0,0 +1,40 @@
+package org.redacted.Handlers.economy;
+
+import org.redacted.Database.cache.Economy;
+
+/**
+ * EconomySnapshot Record
+ * A point-in-time view of a user's cash and bank balances, read from the database
+ * once per command so every calculation in that command uses the same values.
+ *
+ * @param user the ID of the user.
+ * @param balance the user's cash balance.
+ * @param bank the user's bank balance.
+ *
+ * @author Derrick Eberlein
+ */
+public record EconomySnapshot(long user, long balance, long bank) {
+
+    /**
+     * Builds a snapshot from an economy profile, treating missing values as zero.
+     *
+     * @param user the ID of the user.
+     * @param profile the user's profile, may be null if they have none.
+     * @return the snapshot for the user.
+     */
+    public static EconomySnapshot of(long user, Economy profile) {
+        if (profile == null) return new EconomySnapshot(user, 0, 0);
+        long balance = profile.getBalance() != null ? profile.getBalance() : 0;
+        long bank = profile.getBank() != null ? profile.getBank() : 0;
+        return new EconomySnapshot(user, balance, bank);
+    }
+
+    /**
+     * Get the user's net worth (balance and bank added together).
+     *
+     * @return the user's net worth.
+     */
+    public long networth() {
+        return balance + bank;
+    }
+}
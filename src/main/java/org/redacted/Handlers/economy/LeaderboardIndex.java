@@ -0,0 +1,444 @@
+package org.redacted.Handlers.economy;
+
+import org.redacted.Database.cache.Economy;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * LeaderboardIndex Class
+ * In-memory net worth ranking for a single guild, kept as an order-statistic treap
+ * ordered by net worth (highest first) and then by user ID. Rank lookups are O(log n)
+ * and leaderboard pages are read straight from the tree without touching the database.
+ * The index is rebuilt from the leaderboard aggregation on startup and periodically
+ * checked against it, repairing itself if the two disagree.
+ * <p>
+ * The monitor only guards the tree, never a database call. Writes run before their
+ * change is counted, and a rebuild loads and builds its new tree without the monitor,
+ * then swaps it in. Changes counted while a load runs are journaled, as the load may or
+ * may not have seen them: those users keep the value the live tree tracked for them,
+ * or, while the first build runs, are corrected by a second build straight after.
+ *
+ * @author Derrick Eberlein
+ */
+public final class LeaderboardIndex {
+
+    private static final long VERIFY_INTERVAL_HOURS = 6;
+    private static final long BUILD_WAIT_SECONDS = 10;
+
+    private static final Set<LeaderboardIndex> indexes = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService maintenance = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "leaderboard-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        maintenance.scheduleWithFixedDelay(() -> {
+            for (LeaderboardIndex index : indexes) {
+                try {
+                    index.verify();
+                } catch (Exception e) {
+                    System.err.println("Leaderboard consistency check failed for guild " + index.guildId + ": " + e.getMessage());
+                }
+            }
+        }, VERIFY_INTERVAL_HOURS, VERIFY_INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    private final long guildId;
+    private final Supplier<List<Economy>> loader;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private final CompletableFuture<Void> built = new CompletableFuture<>();
+    private Tree tree = new Tree();
+    private boolean ready;
+    /** Net worth changes counted while a load runs, by user, or null when none is running */
+    private Map<Long, Long> journal;
+
+    /**
+     * Constructs a LeaderboardIndex and schedules its initial build in the background.
+     *
+     * @param guildId the guild this index ranks.
+     * @param loader loads every economy profile of the guild from the database.
+     */
+    public LeaderboardIndex(long guildId, Supplier<List<Economy>> loader) {
+        this.guildId = guildId;
+        this.loader = loader;
+        indexes.add(this);
+        rebuildInBackground();
+    }
+
+    /**
+     * Run a write and then count its net worth change.
+     *
+     * @param user the user whose net worth changes.
+     * @param delta the change in net worth.
+     * @param write the write that persists the change.
+     */
+    public void apply(long user, long delta, Runnable write) {
+        write.run();
+        count(user, delta);
+    }
+
+    /**
+     * Run a write that may not happen, e.g. a guarded debit, and count its net worth
+     * change only if it did.
+     *
+     * @param user the user whose net worth changes.
+     * @param delta the change in net worth if the write happens.
+     * @param write the write to run, returning true if it changed anything.
+     * @return true if the write reported a change.
+     */
+    public boolean applyIf(long user, long delta, BooleanSupplier write) {
+        if (!write.getAsBoolean()) return false;
+        count(user, delta);
+        return true;
+    }
+
+    /**
+     * Get a user's 1-based position on the leaderboard. Waits for the first build if it
+     * has not finished yet.
+     *
+     * @param user the user to rank.
+     * @return the user's rank, or -1 if the user has no economy profile or the index is not built yet.
+     */
+    public int rank(long user) {
+        if (!awaitBuilt()) return -1;
+        synchronized (this) {
+            Long networth = tree.networths.get(user);
+            if (networth == null) return -1;
+            return countBefore(tree.root, networth, user) + 1;
+        }
+    }
+
+    /**
+     * Get a page of the leaderboard. Waits for the first build if it has not finished yet.
+     *
+     * @param offset number of entries to skip.
+     * @param limit maximum number of entries to return.
+     * @return the entries in rank order, or none if the index is not built yet.
+     */
+    public List<Entry> page(int offset, int limit) {
+        if (!awaitBuilt()) return List.of();
+        synchronized (this) {
+            List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(limit, tree.size() - offset)));
+            collect(tree.root, offset, limit, entries);
+            return entries;
+        }
+    }
+
+    /**
+     * Get the whole leaderboard in rank order.
+     *
+     * @return every ranked entry.
+     */
+    public List<Entry> entries() {
+        return page(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the number of ranked users.
+     *
+     * @return the number of users in the index.
+     */
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    /**
+     * Reload the index from the database and swap the result in. Does nothing if a load
+     * is already running.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Economy> profiles = startLoad();
+        if (profiles == null) return;
+        Tree fresh = Tree.of(profiles);
+        synchronized (this) {
+            swapIn(fresh, endLoad());
+        }
+        System.out.println("Built leaderboard index for guild " + guildId + " with " + fresh.size() + " users in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Compare the index against the leaderboard aggregation and swap in the aggregation's
+     * result if they differ. Users whose net worth changed during the load are not compared.
+     *
+     * @return the number of users whose net worth did not match.
+     */
+    public int verify() {
+        synchronized (this) {
+            if (!ready) {
+                rebuildInBackground();
+                return 0;
+            }
+        }
+
+        List<Economy> profiles = startLoad();
+        if (profiles == null) return 0;
+        Tree fresh = Tree.of(profiles);
+        synchronized (this) {
+            Map<Long, Long> changed = endLoad();
+            int mismatches = 0;
+            for (Map.Entry<Long, Long> entry : fresh.networths.entrySet()) {
+                if (changed.containsKey(entry.getKey())) continue;
+                if (!entry.getValue().equals(tree.networths.get(entry.getKey()))) mismatches++;
+            }
+            for (Long user : tree.networths.keySet()) {
+                if (!changed.containsKey(user) && !fresh.networths.containsKey(user)) mismatches++;
+            }
+
+            if (mismatches > 0) {
+                System.err.println("Leaderboard index for guild " + guildId + " was out of sync (" + mismatches + " mismatches), rebuilding");
+                swapIn(fresh, changed);
+            }
+            return mismatches;
+        }
+    }
+
+    /**
+     * Stop maintaining this index.
+     */
+    public void close() {
+        indexes.remove(this);
+    }
+
+    private synchronized void count(long user, long delta) {
+        if (delta == 0) return;
+        if (journal != null) journal.merge(user, delta, Long::sum);
+        if (ready) tree.put(user, tree.networths.getOrDefault(user, 0L) + delta);
+    }
+
+    /**
+     * Start journaling changes and run the loader, without holding the monitor.
+     *
+     * @return the loaded profiles, or null if another load is running.
+     */
+    private List<Economy> startLoad() {
+        if (!loading.compareAndSet(false, true)) return null;
+        synchronized (this) {
+            journal = new HashMap<>();
+        }
+        try {
+            return loader.get();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                endLoad();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stop journaling. Must be called while holding the monitor.
+     *
+     * @return the changes counted while the load ran, by user.
+     */
+    private Map<Long, Long> endLoad() {
+        Map<Long, Long> changed = journal;
+        journal = null;
+        loading.set(false);
+        return changed;
+    }
+
+    /**
+     * Replace the tree with a freshly loaded one. Must be called while holding the monitor.
+     *
+     * @param fresh the loaded tree.
+     * @param changed the changes counted while it loaded.
+     */
+    private void swapIn(Tree fresh, Map<Long, Long> changed) {
+        boolean firstBuild = !ready;
+        for (Map.Entry<Long, Long> entry : changed.entrySet()) {
+            Long live = tree.networths.get(entry.getKey());
+            if (!firstBuild && live != null) {
+                fresh.put(entry.getKey(), live);
+            } else {
+                // The load may already include the change, the second build settles it
+                fresh.put(entry.getKey(), fresh.networths.getOrDefault(entry.getKey(), 0L) + entry.getValue());
+            }
+        }
+        tree = fresh;
+        ready = true;
+        built.complete(null);
+        if (firstBuild && !changed.isEmpty()) {
+            rebuildInBackground();
+        }
+    }
+
+    private void rebuildInBackground() {
+        maintenance.execute(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                System.err.println("Failed to build leaderboard index for guild " + guildId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Wait, without holding the monitor, for the first build to finish.
+     *
+     * @return true if the index is built.
+     */
+    private boolean awaitBuilt() {
+        if (built.isDone()) return true;
+        try {
+            built.get(BUILD_WAIT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            System.err.println("Leaderboard index for guild " + guildId + " is not built yet");
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static long networth(Economy profile) {
+        long balance = profile.getBalance() != null ? profile.getBalance() : 0;
+        long bank = profile.getBank() != null ? profile.getBank() : 0;
+        return balance + bank;
+    }
+
+    // Treap operations, ordered by net worth descending and then user ID ascending
+
+    private static boolean before(long networth, long user, long otherNetworth, long otherUser) {
+        return networth > otherNetworth || (networth == otherNetworth && user < otherUser);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    /**
+     * Split a tree into the nodes ordered before the key and the nodes at or after it.
+     */
+    private static Node[] split(Node node, long networth, long user) {
+        if (node == null) return new Node[]{null, null};
+        if (before(node.networth, node.user, networth, user)) {
+            Node[] parts = split(node.right, networth, user);
+            node.right = parts[0];
+            return new Node[]{update(node), parts[1]};
+        }
+        Node[] parts = split(node.left, networth, user);
+        node.left = parts[1];
+        return new Node[]{parts[0], update(node)};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node remove(Node node, long networth, long user) {
+        if (node == null) return null;
+        if (node.user == user && node.networth == networth) {
+            return merge(node.left, node.right);
+        }
+        if (before(networth, user, node.networth, node.user)) {
+            node.left = remove(node.left, networth, user);
+        } else {
+            node.right = remove(node.right, networth, user);
+        }
+        return update(node);
+    }
+
+    private static int countBefore(Node node, long networth, long user) {
+        int count = 0;
+        while (node != null) {
+            if (before(node.networth, node.user, networth, user)) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static void collect(Node node, int offset, int limit, List<Entry> out) {
+        if (node == null || out.size() >= limit) return;
+        int leftSize = size(node.left);
+        if (offset < leftSize) {
+            collect(node.left, offset, limit, out);
+        }
+        if (out.size() < limit && offset <= leftSize) {
+            out.add(new Entry(node.user, node.networth));
+        }
+        if (out.size() < limit) {
+            collect(node.right, Math.max(0, offset - leftSize - 1), limit, out);
+        }
+    }
+
+    /**
+     * The ranked users, as a treap and a map of each user's net worth.
+     * A tree is built without the monitor and only changed under it once swapped in.
+     */
+    private static final class Tree {
+        private final Map<Long, Long> networths = new HashMap<>();
+        private Node root;
+
+        private static Tree of(List<Economy> profiles) {
+            Tree tree = new Tree();
+            for (Economy profile : profiles) {
+                if (profile.getUser() == null) continue;
+                tree.put(profile.getUser(), networth(profile));
+            }
+            return tree;
+        }
+
+        private void put(long user, long networth) {
+            Long previous = networths.put(user, networth);
+            if (previous != null) {
+                root = remove(root, previous, user);
+            }
+            Node[] parts = split(root, networth, user);
+            root = merge(merge(parts[0], new Node(user, networth)), parts[1]);
+        }
+
+        private int size() {
+            return LeaderboardIndex.size(root);
+        }
+    }
+
+    private static final class Node {
+        private final long user;
+        private final long networth;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size = 1;
+
+        private Node(long user, long networth) {
+            this(user, networth, ThreadLocalRandom.current().nextInt());
+        }
+
+        private Node(long user, long networth, int priority) {
+            this.user = user;
+            this.networth = networth;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * A user's position on the leaderboard.
+     *
+     * @param user the ID of the user.
+     * @param networth the user's net worth.
+     */
+    public record Entry(long user, long networth) { }
+}
@@ -0,0 +1,343 @@
+package org.redacted.Handlers.scheduler;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.redacted.Database.Database;
+import org.redacted.Database.GuildCollection;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * MessageScheduler Class
+ * Sends the messages stored in each guild's scheduled_messages collection when they are due.
+ * Pending messages wait in a {@link TimingWheel} ticking once a second, so scheduling and
+ * cancelling stay O(1) however many messages are pending, and due messages are sent from a
+ * small worker pool that keeps to Discord's per-channel rate limit.
+ * <p>
+ * The stored "time" is always the next time a message fires. Before a message is sent, its
+ * document is moved on to the following occurrence (or deleted if it does not repeat) with
+ * an update conditioned on the time it was loaded with, so every occurrence is sent at most
+ * once, even across restarts. A message whose time passed while the bot was offline is sent
+ * once on startup, in time order, and its schedule resumes at the next occurrence after now.
+ *
+ * @author Derrick Eberlein
+ */
+public final class MessageScheduler {
+
+    private static final long TICK_MILLIS = 1000;
+    private static final String COLLECTION = "scheduled_messages";
+    private static final int WORKER_THREADS = 2;
+    private static final long RETRY_MILLIS = 60000;
+
+    // Discord allows 5 messages per 5 seconds in a channel
+    private static final int CHANNEL_LIMIT = 5;
+    private static final long CHANNEL_WINDOW_MILLIS = 5000;
+
+    private final ShardManager shardManager;
+    private final Database database;
+    private final TimingWheel<ScheduledMessage> wheel = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    private final ConcurrentHashMap<ObjectId, TimingWheel.Timeout<ScheduledMessage>> pending = new ConcurrentHashMap<>();
+    private final Map<String, ArrayDeque<Long>> channelSends = new HashMap<>();
+    private final ScheduledExecutorService clock;
+    private final ExecutorService workers;
+
+    /**
+     * Constructs a MessageScheduler and starts its clock.
+     *
+     * @param shardManager the shard manager used to find destination channels.
+     * @param database the database holding each guild's scheduled messages.
+     */
+    public MessageScheduler(ShardManager shardManager, Database database) {
+        this.shardManager = shardManager;
+        this.database = database;
+        this.clock = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "message-scheduler-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.clock.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Load a guild's scheduled messages and schedule every one that isn't already pending.
+     * Messages that came due while the bot was offline fire on the next tick, oldest first.
+     *
+     * @param guildId the guild to load.
+     */
+    public void load(long guildId) {
+        List<ScheduledMessage> messages = new ArrayList<>();
+        for (Document document : collection(guildId).find()) {
+            ScheduledMessage message = ScheduledMessage.from(guildId, document);
+            if (message != null) messages.add(message);
+        }
+
+        messages.sort(Comparator.comparing(ScheduledMessage::time).thenComparing(ScheduledMessage::id));
+        int overdue = 0;
+        for (ScheduledMessage message : messages) {
+            if (!message.time().isAfter(LocalDateTime.now())) overdue++;
+            schedule(message);
+        }
+        System.out.println("Scheduled " + messages.size() + " messages for guild " + guildId + " (" + overdue + " overdue)");
+    }
+
+    /**
+     * Schedule a message whose document has already been stored.
+     *
+     * @param message the message to schedule.
+     */
+    public void schedule(ScheduledMessage message) {
+        pending.computeIfAbsent(message.id(), id -> wheel.schedule(message, toMillis(message.time())));
+    }
+
+    /**
+     * Stop a pending message from being sent. The stored document is left to the caller.
+     *
+     * @param id the ID of the message's document.
+     * @return true if the message was pending.
+     */
+    public boolean cancel(ObjectId id) {
+        TimingWheel.Timeout<ScheduledMessage> timeout = pending.remove(id);
+        return timeout != null && wheel.cancel(timeout);
+    }
+
+    /**
+     * Get the number of messages waiting to be sent.
+     *
+     * @return the number of pending messages.
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Stop the clock and the workers.
+     */
+    public void shutdown() {
+        clock.shutdown();
+        workers.shutdown();
+    }
+
+    /**
+     * Advance the wheel and hand due messages to the workers, holding back any whose
+     * channel has used up its rate limit until the limit allows them.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        List<ScheduledMessage> due;
+        try {
+            due = wheel.advance(now);
+        } catch (RuntimeException e) {
+            System.err.println("Message scheduler tick failed: " + e.getMessage());
+            return;
+        }
+
+        // The due messages have left the wheel, so one that cannot be handed off is put back
+        // rather than lost along with the rest of the tick
+        for (ScheduledMessage message : due) {
+            try {
+                dispatch(message, now);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to dispatch scheduled message " + message.id().toHexString() + ": " + e.getMessage());
+                pending.put(message.id(), wheel.schedule(message, now + RETRY_MILLIS));
+            }
+        }
+        channelSends.values().removeIf(sends -> sends.isEmpty() || sends.peekLast() <= now - CHANNEL_WINDOW_MILLIS);
+    }
+
+    /**
+     * Hand a due message to the workers, or hold it back until its channel's rate limit allows it.
+     */
+    private void dispatch(ScheduledMessage message, long now) {
+        long allowedAt = reserve(message.channelId(), now);
+        if (allowedAt > now) {
+            pending.put(message.id(), wheel.schedule(message, allowedAt));
+            return;
+        }
+        pending.remove(message.id());
+        workers.execute(() -> fire(message));
+    }
+
+    /**
+     * Reserve a send in a channel's rate limit window. Only called from the clock thread.
+     *
+     * @return the time the send may happen, now if it may happen right away.
+     */
+    private long reserve(String channelId, long now) {
+        ArrayDeque<Long> sends = channelSends.computeIfAbsent(channelId, id -> new ArrayDeque<>());
+        while (!sends.isEmpty() && sends.peekFirst() <= now - CHANNEL_WINDOW_MILLIS) {
+            sends.pollFirst();
+        }
+        if (sends.size() >= CHANNEL_LIMIT) {
+            return sends.peekFirst() + CHANNEL_WINDOW_MILLIS;
+        }
+        sends.addLast(now);
+        return now;
+    }
+
+    /**
+     * Claim the occurrence in the database, send it, and schedule the next one.
+     */
+    private void fire(ScheduledMessage message) {
+        try {
+            LocalDateTime next = message.repeat() > 0 ? message.nextAfter(LocalDateTime.now()) : null;
+            if (!claim(message, next)) {
+                // Deleted, already sent by an earlier run, or a stale copy picked up by a reload
+                // while this message was in flight; the latter must not end its schedule
+                reschedule(message);
+                return;
+            }
+
+            TextChannel channel = shardManager.getTextChannelById(message.channelId());
+            if (channel == null) {
+                System.out.println("Destination channel not found for scheduled message with ID: " + message.id().toHexString());
+            } else {
+                channel.sendMessage(message.format()).queue(
+                        null,
+                        error -> System.err.println("Failed to send scheduled message " + message.id().toHexString() + ": " + error.getMessage())
+                );
+            }
+
+            if (next != null) {
+                schedule(message.withTime(next));
+            }
+        } catch (MongoException e) {
+            // Nothing was claimed, so try this occurrence again shortly
+            System.err.println("Failed to claim scheduled message " + message.id().toHexString() + ": " + e.getMessage());
+            pending.put(message.id(), wheel.schedule(message, System.currentTimeMillis() + RETRY_MILLIS));
+        }
+    }
+
+    /**
+     * Move the stored message on to its next occurrence, or delete it if it does not repeat.
+     * Both are conditioned on the stored time still being the one this occurrence was loaded with.
+     *
+     * @return true if this call claimed the occurrence.
+     */
+    private boolean claim(ScheduledMessage message, LocalDateTime next) {
+        GuildCollection<Document> collection = collection(message.guildId());
+        Bson filter = Filters.and(Filters.eq("_id", message.id()), Filters.eq("time", message.storedTime()));
+        if (next == null) {
+            return collection.deleteOne(filter).getDeletedCount() > 0;
+        }
+        return collection.updateOne(filter, Updates.set("time", next.toString())).getModifiedCount() > 0;
+    }
+
+    /**
+     * Schedule a message again at the time stored for it, if it still exists.
+     */
+    private void reschedule(ScheduledMessage message) {
+        Document document = collection(message.guildId()).find(Filters.eq("_id", message.id())).first();
+        if (document == null) return;
+
+        ScheduledMessage stored = ScheduledMessage.from(message.guildId(), document);
+        if (stored != null) schedule(stored);
+    }
+
+    private GuildCollection<Document> collection(long guildId) {
+        return database.getGuildCollection(guildId, COLLECTION);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * A message stored in a guild's scheduled_messages collection.
+     *
+     * @param id the ID of the message's document.
+     * @param guildId the guild the message belongs to.
+     * @param channelId the channel the message is sent to.
+     * @param title the message title, may be null.
+     * @param content the message content.
+     * @param repeat the repeat interval in seconds, 0 if the message is sent once.
+     * @param time the next time the message is sent.
+     * @param storedTime the stored "time" value this message was read with.
+     */
+    public record ScheduledMessage(ObjectId id, long guildId, String channelId, String title, String content,
+                                   long repeat, LocalDateTime time, String storedTime) {
+
+        /**
+         * Read a message from its document.
+         *
+         * @param guildId the guild the message belongs to.
+         * @param document the stored document.
+         * @return the message, or null if the document cannot be read.
+         */
+        public static ScheduledMessage from(long guildId, Document document) {
+            ObjectId id = document.getObjectId("_id");
+            String storedTime = document.getString("time");
+            LocalDateTime time;
+            try {
+                time = LocalDateTime.parse(storedTime);
+            } catch (DateTimeParseException | NullPointerException e) {
+                System.err.println("Invalid time found in database for message with ID: " + id.toHexString());
+                return null;
+            }
+
+            String repeatStr = document.getString("repeat");
+            long repeat;
+            try {
+                repeat = (repeatStr == null) ? 0 : Long.parseLong(repeatStr);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid repeat interval found in database for message with ID: " + id.toHexString());
+                System.err.println("Setting repeat interval to 0 to prevent repetition.");
+                repeat = 0;
+            }
+
+            return new ScheduledMessage(id, guildId, document.getString("channelId"), document.getString("title"),
+                    document.getString("content"), Math.max(0, repeat), time, storedTime);
+        }
+
+        /**
+         * Get the first occurrence on this message's schedule that is after the given time.
+         *
+         * @param now the time to look after.
+         * @return the next occurrence.
+         */
+        public LocalDateTime nextAfter(LocalDateTime now) {
+            if (time.isAfter(now)) return time.plusSeconds(repeat);
+            long elapsed = Duration.between(time, now).getSeconds();
+            return time.plusSeconds((elapsed / repeat + 1) * repeat);
+        }
+
+        /**
+         * Get a copy of this message moved to another time.
+         *
+         * @param next the new time.
+         * @return the moved message.
+         */
+        public ScheduledMessage withTime(LocalDateTime next) {
+            return new ScheduledMessage(id, guildId, channelId, title, content, repeat, next, next.toString());
+        }
+
+        /**
+         * Format the message with its title in bold above the content.
+         *
+         * @return the text to send.
+         */
+        public String format() {
+            StringBuilder formattedMessage = new StringBuilder();
+            if (title != null) {
+                formattedMessage.append("**").append(title).append("**\n\n");
+            }
+            formattedMessage.append(content);
+            return formattedMessage.toString();
+        }
+    }
+}
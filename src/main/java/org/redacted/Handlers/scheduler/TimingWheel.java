@@ -0,0 +1,231 @@
+package org.redacted.Handlers.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimingWheel Class
+ * A hierarchical timing wheel: five levels of 64 slots, where each level's slot spans a
+ * whole turn of the level below it. Scheduling and cancelling a task are O(1) no matter
+ * how many tasks are pending. A task waits in the coarsest level that fits its deadline
+ * and is moved down a level each time the wheel reaches its slot, so it fires on the
+ * exact tick it is due. With one-second ticks the wheel covers about 34 years; anything
+ * further out waits in an overflow list that is revisited once per full turn.
+ * <p>
+ * The wheel does not keep time itself, its owner calls {@link #advance(long)} regularly.
+ * All methods are synchronized.
+ *
+ * @param <T> the type of task held by the wheel.
+ *
+ * @author Derrick Eberlein
+ */
+public class TimingWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+
+    private final long tickMillis;
+    private final List<Bucket<T>[]> wheels = new ArrayList<>(LEVELS);
+    private final Bucket<T> overflow = new Bucket<>();
+    private long currentTick;
+    private int size;
+
+    /**
+     * Constructs a TimingWheel.
+     *
+     * @param tickMillis the length of one tick in milliseconds, the resolution of the wheel.
+     * @param startMillis the current time in milliseconds.
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            Bucket<T>[] slots = (Bucket<T>[]) new Bucket<?>[SLOTS];
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots[slot] = new Bucket<>();
+            }
+            wheels.add(slots);
+        }
+    }
+
+    /**
+     * Schedule a task. A deadline that has already passed fires on the next tick.
+     *
+     * @param task the task to schedule.
+     * @param deadlineMillis the time in milliseconds the task is due.
+     * @return a handle that can be used to cancel the task.
+     */
+    public synchronized Timeout<T> schedule(T task, long deadlineMillis) {
+        long deadlineTick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(task, deadlineTick);
+        place(timeout, currentTick + 1);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancel a scheduled task.
+     *
+     * @param timeout the handle returned when the task was scheduled.
+     * @return true if the task was pending and is now cancelled.
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket == null) return false;
+        timeout.bucket.remove(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Move the wheel forward to the given time and collect every task that came due.
+     * Tasks are returned in deadline order, and in scheduling order within a tick.
+     *
+     * @param nowMillis the current time in milliseconds.
+     * @return the tasks that are due.
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long nowTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        while (currentTick < nowTick) {
+            long tick = currentTick + 1;
+
+            // Revisit far-future tasks once per full turn of the wheel
+            if ((tick & ((1L << (BITS * LEVELS)) - 1)) == 0) {
+                cascade(overflow, tick);
+            }
+
+            // Move tasks down from coarser levels whose slot starts at this tick, coarsest first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(wheels.get(level)[(int) ((tick >>> (BITS * level)) & MASK)], tick);
+                }
+            }
+
+            Timeout<T> timeout = wheels.get(0)[(int) (tick & MASK)].detachAll();
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.next = null;
+                expired.add(timeout.task);
+                size--;
+                timeout = next;
+            }
+            currentTick = tick;
+        }
+        return expired;
+    }
+
+    /**
+     * Get the number of pending tasks.
+     *
+     * @return the number of tasks in the wheel.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Put a timeout in the finest level whose current turn contains its deadline.
+     * The deadline is never before the reference tick.
+     */
+    private void place(Timeout<T> timeout, long reference) {
+        long tick = timeout.tick;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * (level + 1);
+            if ((tick >>> shift) == (reference >>> shift)) {
+                wheels.get(level)[(int) ((tick >>> (BITS * level)) & MASK)].add(timeout);
+                return;
+            }
+        }
+        overflow.add(timeout);
+    }
+
+    private void cascade(Bucket<T> bucket, long reference) {
+        Timeout<T> timeout = bucket.detachAll();
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            timeout.next = null;
+            place(timeout, reference);
+            timeout = next;
+        }
+    }
+
+    /**
+     * A task waiting in the wheel.
+     *
+     * @param <T> the type of task.
+     */
+    public static final class Timeout<T> {
+        private final T task;
+        private final long tick;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T task, long tick) {
+            this.task = task;
+            this.tick = tick;
+        }
+
+        /**
+         * Get the scheduled task.
+         *
+         * @return the task.
+         */
+        public T getTask() {
+            return task;
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, so a timeout can be removed without searching for it.
+     */
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        private void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        /**
+         * Empty the bucket and return its timeouts as a chain linked through next.
+         */
+        private Timeout<T> detachAll() {
+            Timeout<T> first = head;
+            for (Timeout<T> timeout = head; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+                timeout.prev = null;
+            }
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+}
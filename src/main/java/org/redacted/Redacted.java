@@ -9,12 +9,20 @@ import org.apache.hc.core5.http.ParseException;
 import org.redacted.Commands.BotCommands;
 import org.redacted.Database.Data.GuildData;
 import org.redacted.Database.Database;
+import org.redacted.Database.StorageLayout;
+import org.redacted.Handlers.NSFWLoopEngine;
+import org.redacted.Handlers.economy.CooldownStore;
+import org.redacted.Handlers.economy.EconomyLedger;
+import org.redacted.Handlers.scheduler.MessageScheduler;
 import org.redacted.RedactedStartup.BotInitializer;
 import org.redacted.RedactedStartup.SchedulerManager;
 import org.redacted.RedactedStartup.ShardReadyListener;
 import org.redacted.listeners.MessageSchedulerListener;
 import org.redacted.listeners.MusicListener;
 import org.redacted.util.GalleryManager;
+import org.redacted.util.SocialMedia.Reddit.RedditClient;
+import org.redacted.util.SocialMedia.Reddit.RedditOAuth;
+import org.redacted.util.SocialMedia.Reddit.RedditTokenManager;
 import org.redacted.util.googleCalendar.CalendarAPI;
 import org.redacted.util.musicPlayer.SpotifyAPI;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
@@ -34,17 +42,24 @@ import java.util.concurrent.ScheduledExecutorService;
  * @author Derrick Eberlein
  */
 @Getter
-public class Redacted {
+public final class Redacted {
     public Gson gson;
     public OkHttpClient httpClient;
     public final Dotenv config;
     public final ShardManager shardManager;
     public final Database database;
+    public final EconomyLedger economyLedger;
+    public final CooldownStore cooldownStore;
     public final GalleryManager galleryManager;
     public final ScheduledExecutorService scheduler;
+    public final MessageScheduler messageScheduler;
+    private final RedditTokenManager redditTokenManager;
+    private final RedditClient redditClient;
+    private final NSFWLoopEngine nsfwLoopEngine;
     private final BotCommands botCommands;
     private final CalendarAPI calendarAPI;
     public MusicListener musicListener;
+    private final MessageSchedulerListener messageSchedulerListener;
     private final SpotifyAPI spotifyAPI;
 
     @Getter
@@ -64,28 +79,41 @@ public class Redacted {
         httpClient = new OkHttpClient();
 
         // Initialize the database
-        database = new Database(config.get("DATABASE"));
+        database = new Database(config.get("DATABASE"), StorageLayout.fromConfig(config.get("DATABASE_LAYOUT")));
+
+        // Start the write-behind economy ledger and make sure it is flushed on exit
+        economyLedger = EconomyLedger.fromConfig(database, config);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "redacted-shutdown"));
+        cooldownStore = new CooldownStore(database.getCooldownCollection());
 
         // Initialize Guild Data
         System.out.println("Initializing GuildData...");
-        GuildData.init(database); // Pass the database instance here
+        GuildData.init(database, config);
         System.out.println("GuildData initialized");
 
-        galleryManager = new GalleryManager();
+        galleryManager = GalleryManager.fromConfig(database, config);
         shardManager = BotInitializer.initializeBot(config.get("TOKEN"));
         scheduler = SchedulerManager.initializeScheduler(shardManager, this);
+        messageScheduler = new MessageScheduler(shardManager, database);
+
+        // Create the Reddit token and client shared by every Reddit command
+        redditTokenManager = new RedditTokenManager(database, new RedditOAuth(httpClient, gson),
+                config.get("REDDIT_CLIENT_ID"), config.get("REDDIT_SECRET_ID"), config.get("REDDIT_USERNAME"), config.get("REDDIT_PASSWORD"));
+        redditClient = new RedditClient(httpClient, redditTokenManager);
+        nsfwLoopEngine = NSFWLoopEngine.fromConfig(this, config);
 
         // Initialize bot commands here
         botCommands = new BotCommands(this);
 
-        // Create the MessageSchedulerListener for general use
-        MessageSchedulerListener schedulerListener = new MessageSchedulerListener(this, database);
+        // Create the MessageSchedulerListener, shared by every scheduling session and fed by the MessagePipeline
+        messageSchedulerListener = new MessageSchedulerListener(this, database);
 
         // Initialize the MusicListener
         musicListener = new MusicListener(this);
+        shardManager.addEventListener(musicListener);
 
         // Add the ShardReadyListener to load and reschedule messages after all shards are ready
-        shardManager.addEventListener(new ShardReadyListener(this, schedulerListener, musicListener));
+        shardManager.addEventListener(new ShardReadyListener(this, messageSchedulerListener, musicListener));
 
         // Register other listeners
         BotInitializer.registerListeners(shardManager, this);
@@ -125,5 +153,8 @@ public class Redacted {
      */
     public void shutdown() {
         threadPool.shutdown();
+        if (messageScheduler != null) messageScheduler.shutdown();
+        if (nsfwLoopEngine != null) nsfwLoopEngine.shutdown();
+        economyLedger.shutdown();
     }
 }
\ No newline at end of file
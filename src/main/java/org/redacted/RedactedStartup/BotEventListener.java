@@ -2,56 +2,45 @@ package org.redacted.RedactedStartup;
 
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.session.ReadyEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
-import org.bson.Document;
 import org.redacted.Commands.BotCommands;
 import org.redacted.Database.Data.GuildData;
-import org.redacted.Database.cache.Config;
-import org.redacted.Redacted;
-import org.redacted.Roles.RoleHierarchyManager;
-
-import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
  * BotEventListener Class
  * Handles events related to the bot's lifecycle, such as when it is ready or joins a new guild.
- * Initializes necessary configurations and roles for each guild.
+ * Hands each guild to the GuildBootstrapper, which initializes its configurations and roles.
  *
  * @author Derrick Eberlein
  */
 public class BotEventListener extends ListenerAdapter {
 
-    private final Redacted bot;
-    private final BotCommands botCommands; // Reference to the BotCommands instance
+    private final GuildBootstrapper bootstrapper;
+    private final BotCommands botCommands;
 
     /**
-     * BotEventListener Class
-     * Handles events related to the bot's lifecycle, such as when it is ready or joins a new guild.
-     * Initializes necessary configurations and roles for each guild.
+     * Constructs a BotEventListener.
      *
-     * @author Derrick Eberlein
+     * @param bootstrapper the bootstrapper that sets each guild up.
+     * @param botCommands the commands registered for each guild.
      */
-    public BotEventListener(Redacted bot, BotCommands botCommands) {
-        this.bot = bot;
+    public BotEventListener(GuildBootstrapper bootstrapper, BotCommands botCommands) {
+        this.bootstrapper = bootstrapper;
         this.botCommands = botCommands;
     }
 
     /**
-     * Called when the bot is ready and connected to Discord.
-     * Initializes all guilds the bot is already in.
+     * Called when a shard is ready and connected to Discord.
+     * Sets up all guilds the shard is already in, several at a time.
      *
-     * @param event the ReadyEvent containing information about the bot's readiness
+     * @param event the ReadyEvent containing information about the shard's readiness
      */
     @Override
     public void onReady(ReadyEvent event) {
         System.out.println("Bot is ready and connected as " + event.getJDA().getSelfUser().getName());
-
-        // Initialize for all guilds the bot is already in
-        for (Guild guild : event.getJDA().getGuilds()) {
-            initializeGuild(guild);
-        }
+        bootstrapper.bootstrap(event.getJDA());
     }
 
     /**
@@ -64,100 +53,19 @@ public class BotEventListener extends ListenerAdapter {
     public void onGuildJoin(GuildJoinEvent event) {
         Guild guild = event.getGuild();
         System.out.println("Joined new guild: " + guild.getName());
-
-        // Initialize the newly joined guild
-        initializeGuild(guild);
-    }
-
-    /**
-     * Initializes the guild with necessary configurations, roles, and commands.
-     *
-     * @param guild the Guild to initialize
-     */
-    private void initializeGuild(Guild guild) {
-        // Step 1: Initialize the database for the new guild
-        setupDatabaseForGuild(guild);
-
-        // Step 2: Set up roles for the guild
-        setupRolesForGuild(guild);
-
-        // Step 3: Register commands for the guild using BotCommands
-        botCommands.registerCommandsForGuild(guild);
-
-        System.out.println("Setup completed for guild: " + guild.getName());
-    }
-
-    /**
-     * Sets up the database for the guild, ensuring necessary collections and configurations exist.
-     *
-     * @param guild the Guild to set up
-     */
-    private void setupDatabaseForGuild(Guild guild) {
-        System.out.println("Setting up database for guild: " + guild.getName());
-
-        // Check and create default configuration if it doesn't exist
-        Config guildConfig = bot.database.config.find(new Document("guildId", guild.getIdLong())).first();
-        if (guildConfig == null) {
-            // Create default config for the guild
-            Config defaultConfig = new Config(guild.getIdLong());
-            bot.database.config.insertOne(defaultConfig);
-            System.out.println("Created default configuration for guild: " + guild.getName());
-        } else {
-            System.out.println("Configuration already exists for guild: " + guild.getName());
-        }
-
-        // Check and create a greetings collection entry if it doesn't exist
-        bot.database.initializeGreetingsForGuild(guild.getIdLong());
-
-        // Initialize blacklist collection for the guild if needed
-        Document blacklistEntry = GuildData.get(guild, bot).getBlacklistCollection().find(new Document("guildId", guild.getIdLong())).first();
-        if (blacklistEntry == null) {
-            // Initialize an empty blacklist entry for the guild
-            Document newBlacklistEntry = new Document("guildId", guild.getIdLong()).append("blacklist", new ArrayList<>());
-            GuildData.get(guild, bot).getBlacklistCollection().insertOne(newBlacklistEntry);
-            System.out.println("Initialized blacklist for guild: " + guild.getName());
-        } else {
-            System.out.println("Blacklist already exists for guild: " + guild.getName());
-        }
-
-        // Initialize other necessary collections (user_intro_message, sticky_messages, etc.)
-        Document introMessageEntry = GuildData.get(guild, bot).getUserIntroMessagesCollection().find(new Document("guildId", guild.getIdLong())).first();
-        if (introMessageEntry == null) {
-            Document newIntroMessageEntry = new Document("guildId", guild.getIdLong()).append("messages", new ArrayList<>());
-            GuildData.get(guild, bot).getUserIntroMessagesCollection().insertOne(newIntroMessageEntry);
-            System.out.println("Initialized introduction messages for guild: " + guild.getName());
-        }
-
-        Document stickyMessageEntry = GuildData.get(guild, bot).getStickyMessagesCollection().find(new Document("guildId", guild.getIdLong())).first();
-        if (stickyMessageEntry == null) {
-            Document newStickyMessageEntry = new Document("guildId", guild.getIdLong()).append("stickyMessages", new ArrayList<>());
-            GuildData.get(guild, bot).getStickyMessagesCollection().insertOne(newStickyMessageEntry);
-            System.out.println("Initialized sticky messages for guild: " + guild.getName());
-        }
+        bootstrapper.bootstrap(guild);
     }
 
     /**
-     * Sets up roles for the guild, creating necessary roles and adjusting their hierarchy.
+     * Called when the bot leaves a guild or is removed from it.
+     * Drops the guild's cached data and forgets the commands registered in it.
      *
-     * @param guild the Guild to set up roles for
+     * @param event the GuildLeaveEvent containing information about the guild
      */
-    private void setupRolesForGuild(Guild guild) {
-        System.out.println("Setting up roles for guild: " + guild.getName());
-
-        RoleManager roleManager = new RoleManager();
-
-        // Create or get required roles
-        roleManager.getOrCreateRole(guild, "Member", RoleHierarchyManager.MEMBER_PERMISSIONS, RoleHierarchyManager.MEMBER_COLOR);
-        roleManager.getOrCreateRole(guild, "Flagged", RoleHierarchyManager.NO_PERMISSIONS, RoleHierarchyManager.FLAGGED_COLOR);
-
-        // Adjust role hierarchy
-        RoleHierarchyManager roleHierarchyManager = new RoleHierarchyManager();
-        roleHierarchyManager.adjustRoleHierarchy(guild, Arrays.asList(
-                roleManager.getOrCreateRole(guild, "Admin", RoleHierarchyManager.ALL_PERMISSIONS, RoleHierarchyManager.ADMIN_COLOR),
-                roleManager.getOrCreateRole(guild, "Head DJ", RoleHierarchyManager.HEAD_DJ_PERMISSIONS, RoleHierarchyManager.HEAD_DJ_COLOR),
-                roleManager.getOrCreateRole(guild, "Event Staff", RoleHierarchyManager.EVENT_STAFF_PERMISSIONS, RoleHierarchyManager.EVENT_STAFF_COLOR)
-        ));
-
-        System.out.println("Roles setup completed for guild: " + guild.getName());
+    @Override
+    public void onGuildLeave(GuildLeaveEvent event) {
+        System.out.println("Left guild: " + event.getGuild().getName());
+        GuildData.evict(event.getGuild().getIdLong());
+        botCommands.forgetGuild(event.getGuild().getIdLong());
     }
 }
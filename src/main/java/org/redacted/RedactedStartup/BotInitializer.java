@@ -2,22 +2,14 @@ package org.redacted.RedactedStartup;
 
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
-import net.dv8tion.jda.api.entities.Guild;
-import net.dv8tion.jda.api.entities.Role;
-import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
-import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
 import net.dv8tion.jda.api.sharding.ShardManager;
 import net.dv8tion.jda.api.utils.ChunkingFilter;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
-import org.jetbrains.annotations.NotNull;
 import org.redacted.Commands.BotCommands;
-import org.redacted.Database.Data.GuildData;
 import org.redacted.Redacted;
-import org.redacted.Roles.RoleHierarchyManager;
 import org.redacted.listeners.*;
 import org.redacted.listeners.Ticket.TicketAddUserHandler;
 import org.redacted.listeners.Ticket.TicketCloseHandler;
@@ -25,8 +17,6 @@ import org.redacted.listeners.Ticket.TicketRemoveUserHandler;
 import club.minnced.discord.jdave.interop.JDaveSessionFactory;
 import net.dv8tion.jda.api.audio.AudioModuleConfig;
 
-import java.util.Arrays;
-
 /**
  * BotInitializer Class
  * Initializes the Discord bot with the provided token and registers event listeners.
@@ -71,93 +61,30 @@ public class BotInitializer {
         System.out.println("Initializing listeners for bot");
 
         BotCommands botCommands = new BotCommands(bot); // Create a single instance of BotCommands
+        GuildEventRouter router = new GuildEventRouter(); // Routes each guild's introduction channel to its handler
+        GuildBootstrapper bootstrapper = GuildBootstrapper.fromConfig(bot, botCommands, router, bot.getConfig());
+
+        // Every received message goes through one pipeline, which hands it only to the handlers interested in it
+        MessagePipeline pipeline = new MessagePipeline(router);
+        pipeline.onPrefix("ticket-open", "-ticket open", MessagePipeline.USERS, new TicketListener(bot));
+        pipeline.onPrefix("ticket-close", "-ticket close", MessagePipeline.USERS, new TicketCloseHandler(bot));
+        pipeline.onPrefix("ticket-adduser", "-ticket adduser", MessagePipeline.USERS, new TicketAddUserHandler());
+        pipeline.onPrefix("ticket-removeuser", "-ticket removeuser", MessagePipeline.USERS, new TicketRemoveUserHandler());
+        pipeline.onEveryMessage("message-scheduler", MessagePipeline.USERS, bot.getMessageSchedulerListener());
+        pipeline.onEveryMessage("activity-reward", MessagePipeline.USERS, new MessageListener(bot));
 
         shardManager.addEventListener(
                 new EventListener(), // Register EventListener
                 new GalleryReactionListener(bot), // Register GalleryReactionListener
                 new ButtonListener(bot), // Register ButtonListener
                 new NSFWCleanListener(), // Register NSFWCleanListener
-                new MessageListener(bot), // Register MessageListener
                 new ReactionRoleListener(), // Register ReactionRoleListener
-                new TicketListener(bot), // Register TicketListener
-                new TicketCloseHandler(bot), // Register TicketCloseHandler
-                new TicketAddUserHandler(), // Register TicketAddUserHandler
-                new TicketRemoveUserHandler(), // Register TicketRemoveUserHandler
                 new ReactionListener(bot), // Register ReactionListener
                 new DiscordEventListener(bot), // Register DiscordEventListener
+                router, // Register GuildEventRouter
+                pipeline, // Register MessagePipeline
                 botCommands,  // Register BotCommands as an event listener
-                new BotEventListener(bot, botCommands) // Pass BotCommands to BotEventListener
+                new BotEventListener(bootstrapper, botCommands) // Sets up each guild once its shard is ready
         );
-
-        shardManager.addEventListener(new ListenerAdapter() {
-            @Override
-            public void onGuildReady(@NotNull GuildReadyEvent event) {
-                Guild guild = event.getGuild();
-                if (guild == null) {
-                    System.err.println("Guild is null in onGuildReady event!");
-                    return; // Early exit to avoid NullPointerException
-                }
-
-                // Retry until GuildData/Config is initialized, without a hard retry limit
-                GuildData guildData = waitForGuildDataInitialization(guild, bot);
-
-                if (guildData == null || guildData.getConfig() == null) {
-                    System.err.println("Config for guild " + guild.getIdLong() + " is still not initialized.");
-                    return;
-                }
-
-                ChannelManager channelManager = new ChannelManager();
-                RoleManager roleManager = new RoleManager();
-
-                TextChannel introductionChannel = channelManager.getOrCreateTextChannel(guild, "introductions", "Information");
-                TextChannel moderationChannel = channelManager.getOrCreateTextChannel(guild, "mod-log", "Moderation");
-                TextChannel botCommands = channelManager.getOrCreateTextChannel(guild, "bot-commands", "Moderation");
-                TextChannel botFun = channelManager.getOrCreateTextChannel(guild, "bot-fun", "bot-fun");
-                TextChannel botNotifications = channelManager.getOrCreateTextChannel(guild, "bot-notifications", "bot-fun");
-
-                // Create Member and Flagged Roles
-                Role memberRole = roleManager.getOrCreateRole(guild, "Member", RoleHierarchyManager.MEMBER_PERMISSIONS, RoleHierarchyManager.MEMBER_COLOR);
-                Role flaggedRole = roleManager.getOrCreateRole(guild, "Flagged", RoleHierarchyManager.NO_PERMISSIONS, RoleHierarchyManager.FLAGGED_COLOR);
-
-                // Adjust role positions
-                roleManager.adjustRoleHierarchy(guild, Arrays.asList(
-                        roleManager.getOrCreateRole(guild, "Admin", RoleHierarchyManager.ALL_PERMISSIONS, RoleHierarchyManager.ADMIN_COLOR),
-                        roleManager.getOrCreateRole(guild, "Head DJ", RoleHierarchyManager.HEAD_DJ_PERMISSIONS, RoleHierarchyManager.HEAD_DJ_COLOR),
-                        roleManager.getOrCreateRole(guild, "Event Staff", RoleHierarchyManager.EVENT_STAFF_PERMISSIONS, RoleHierarchyManager.EVENT_STAFF_COLOR)
-                ));
-
-                // Register the IntroductionListener with the retrieved channel IDs and role IDs
-                shardManager.addEventListener(new IntroductionListener(bot, introductionChannel.getId(), moderationChannel.getId(), memberRole.getId(), flaggedRole.getId(), guild));
-                System.out.println("Listeners registered for guild: " + guild.getName());
-            }
-        });
-    }
-
-    /**
-     * Waits for the GuildData and its configuration to be initialized.
-     * This method will retry until the GuildData is available or a timeout occurs.
-     *
-     * @param guild The guild to check for initialization.
-     * @param bot The Redacted bot instance.
-     * @return The initialized GuildData, or null if it fails to initialize within the timeout.
-     */
-    private static GuildData waitForGuildDataInitialization(Guild guild, Redacted bot) {
-        GuildData guildData;
-        long timeout = 5000L; // Maximum wait time in milliseconds
-        long startTime = System.currentTimeMillis();
-        do {
-            guildData = GuildData.get(guild, bot);
-            if (guildData != null && guildData.getConfig() != null) {
-                return guildData;
-            }
-            System.out.println("Waiting for GuildData/Config to initialize for guild: " + guild.getName());
-            try {
-                Thread.sleep(500); // Exponential backoff could be applied if needed
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } while (System.currentTimeMillis() - startTime < timeout);
-
-        return null; // Return null if the initialization fails after the timeout
     }
-}
\ No newline at end of file
+}
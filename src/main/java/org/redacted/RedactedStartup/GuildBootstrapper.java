@@ -0,0 +1,372 @@
+package org.redacted.RedactedStartup;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import io.github.cdimascio.dotenv.Dotenv;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import org.bson.Document;
+import org.redacted.Commands.BotCommands;
+import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.Database;
+import org.redacted.Database.cache.Config;
+import org.redacted.Redacted;
+import org.redacted.Roles.RoleHierarchyManager;
+import org.redacted.listeners.GuildEventRouter;
+import org.redacted.listeners.IntroductionListener;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GuildBootstrapper Class
+ * Sets up every guild a shard is in once the shard is ready: the guild's default data, its roles
+ * and channels, its introduction channel route and its commands.
+ * <p>
+ * Setting a guild up costs several Mongo lookups and a handful of blocking REST calls, so guilds
+ * are set up in parallel on a pool of GUILD_BOOTSTRAP_THREADS threads. The pool is what keeps the
+ * bot within Discord's rate limits: however many guilds a shard has, no more than that many are
+ * sending requests at once, and JDA waits out any route that is limited. A guild whose setup is
+ * recorded in the bootstrap_records collection, and whose roles and channels are all still there, skips
+ * straight to routing its introduction channel without any REST calls or data checks. The
+ * records, and the data the remaining guilds are missing, are looked up with one query per
+ * collection for the whole shard.
+ *
+ * @author Derrick Eberlein
+ */
+public class GuildBootstrapper {
+
+    /** Raised when setup gains steps, so guilds set up before get them too. */
+    private static final int SETUP_VERSION = 1;
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final String[] ROLES = {"Member", "Flagged", "Admin", "Head DJ", "Event Staff"};
+    private static final String[] CHANNELS = {"introductions", "mod-log", "bot-commands", "bot-fun", "bot-notifications"};
+
+    private final Redacted bot;
+    private final BotCommands botCommands;
+    private final GuildEventRouter router;
+    private final ExecutorService workers;
+    private final ConcurrentHashMap<Integer, ShardReport> reports = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a GuildBootstrapper.
+     *
+     * @param bot the Redacted bot instance.
+     * @param botCommands the commands registered for each guild.
+     * @param router the router introduction channels are routed through.
+     * @param threads the most guilds set up at once.
+     */
+    public GuildBootstrapper(Redacted bot, BotCommands botCommands, GuildEventRouter router, int threads) {
+        this.bot = bot;
+        this.botCommands = botCommands;
+        this.router = router;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "guild-bootstrap-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a GuildBootstrapper with as many threads as the GUILD_BOOTSTRAP_THREADS variable asks for.
+     *
+     * @param bot the Redacted bot instance.
+     * @param botCommands the commands registered for each guild.
+     * @param router the router introduction channels are routed through.
+     * @param config the environment configuration.
+     * @return the bootstrapper.
+     */
+    public static GuildBootstrapper fromConfig(Redacted bot, BotCommands botCommands, GuildEventRouter router, Dotenv config) {
+        int threads = DEFAULT_THREADS;
+        String value = config.get("GUILD_BOOTSTRAP_THREADS");
+        if (value != null && !value.isBlank()) {
+            try {
+                threads = Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid GUILD_BOOTSTRAP_THREADS '" + value + "', using " + DEFAULT_THREADS);
+            }
+        }
+        return new GuildBootstrapper(bot, botCommands, router, threads);
+    }
+
+    /**
+     * Set up every guild of a shard that has just become ready, and report how long the shard took.
+     *
+     * @param shard the ready shard.
+     * @return a future completed with the shard's report once every guild has been set up or has failed.
+     */
+    public CompletableFuture<ShardReport> bootstrap(JDA shard) {
+        int shardId = shard.getShardInfo().getShardId();
+        long gatewayMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        long start = System.nanoTime();
+        List<Guild> guilds = List.copyOf(shard.getGuilds());
+        botCommands.registerGlobalCommands(shard);
+
+        return GuildData.warmUp(guilds, bot)
+                .thenApplyAsync(ignored -> plan(guilds), workers)
+                .thenCompose(plan -> {
+                    CompletableFuture<?>[] setups = guilds.stream()
+                            .map(guild -> CompletableFuture.supplyAsync(() -> setUp(guild, plan), workers)
+                                    .exceptionally(error -> {
+                                        System.err.println("Failed to set up guild " + guild.getIdLong() + ": " + error.getMessage());
+                                        return Outcome.FAILED;
+                                    }))
+                            .toArray(CompletableFuture[]::new);
+                    return CompletableFuture.allOf(setups).thenApply(ignored -> {
+                        int setUp = 0, skipped = 0, failed = 0;
+                        for (CompletableFuture<?> setup : setups) {
+                            switch ((Outcome) setup.join()) {
+                                case SET_UP -> setUp++;
+                                case ALREADY_SET_UP -> skipped++;
+                                case FAILED -> failed++;
+                            }
+                        }
+                        ShardReport report = new ShardReport(shardId, guilds.size(), setUp, skipped, failed,
+                                gatewayMillis, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        reports.put(shardId, report);
+                        System.out.println("Shard " + report);
+                        return report;
+                    });
+                })
+                .exceptionally(error -> {
+                    System.err.println("Failed to set up the guilds of shard " + shardId + ": " + error.getMessage());
+                    return new ShardReport(shardId, guilds.size(), 0, 0, guilds.size(),
+                            gatewayMillis, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                });
+    }
+
+    /**
+     * Set up a single guild, e.g. one the bot has just joined.
+     *
+     * @param guild the guild.
+     * @return a future completed once the guild has been set up.
+     */
+    public CompletableFuture<Void> bootstrap(Guild guild) {
+        return GuildData.load(guild, bot)
+                .thenApplyAsync(ignored -> plan(List.of(guild)), workers)
+                .thenAcceptAsync(plan -> setUp(guild, plan), workers)
+                .exceptionally(error -> {
+                    System.err.println("Failed to set up guild " + guild.getIdLong() + ": " + error.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Get the report of every shard that has finished setting its guilds up.
+     *
+     * @return the reports by shard ID.
+     */
+    public Map<Integer, ShardReport> getReports() {
+        return Collections.unmodifiableMap(reports);
+    }
+
+    /**
+     * Look up, for a batch of guilds, which are already set up and which default data the others have.
+     *
+     * @param guilds the guilds.
+     * @return what each guild still needs.
+     */
+    private Plan plan(List<Guild> guilds) {
+        Database database = bot.database;
+        List<Long> ids = guilds.stream().map(Guild::getIdLong).toList();
+
+        Set<Long> done = new HashSet<>();
+        database.getBootstrapRecordCollection()
+                .distinct("guildId", Filters.and(Filters.in("guildId", ids), Filters.gte("version", SETUP_VERSION)), Long.class)
+                .into(done);
+
+        List<Long> pending = ids.stream().filter(id -> !done.contains(id)).toList();
+        Set<Long> withConfig = new HashSet<>();
+        if (!pending.isEmpty()) {
+            database.getConfigCollection().distinct("guildId", Filters.in("guildId", pending), Long.class).into(withConfig);
+        }
+        return new Plan(done, withConfig,
+                database.findGuildsWithDocument("greetings", "guild", pending),
+                database.findGuildsWithDocument("blacklist", "guildId", pending),
+                database.findGuildsWithDocument("user_intro_messages", "guildId", pending),
+                database.findGuildsWithDocument("sticky_messages", "guildId", pending));
+    }
+
+    /**
+     * Set a guild up as far as it still needs, then route its introduction channel and register its commands.
+     *
+     * @param guild the guild.
+     * @param plan what the guild's batch still needs.
+     * @return whether the guild needed setting up.
+     */
+    private Outcome setUp(Guild guild, Plan plan) {
+        long guildId = guild.getIdLong();
+        boolean alreadySetUp = plan.done.contains(guildId) && isIntact(guild);
+
+        if (!alreadySetUp) {
+            setupDatabaseForGuild(guild, plan);
+            setupRolesAndChannelsForGuild(guild);
+            recordSetUp(guildId);
+        }
+
+        routeIntroductions(guild);
+        botCommands.registerCommandsForGuild(guild);
+        return alreadySetUp ? Outcome.ALREADY_SET_UP : Outcome.SET_UP;
+    }
+
+    /**
+     * Check that a guild still has every role and channel setup creates, using only the cache.
+     *
+     * @param guild the guild.
+     * @return true if none has been deleted.
+     */
+    private boolean isIntact(Guild guild) {
+        for (String role : ROLES) {
+            if (guild.getRolesByName(role, true).isEmpty()) return false;
+        }
+        for (String channel : CHANNELS) {
+            if (guild.getTextChannelsByName(channel, true).isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the default data the guild is missing.
+     *
+     * @param guild the guild.
+     * @param plan which data the guild's batch already has.
+     */
+    private void setupDatabaseForGuild(Guild guild, Plan plan) {
+        Database database = bot.database;
+        long guildId = guild.getIdLong();
+
+        if (!plan.withConfig.contains(guildId)) {
+            database.getConfigCollection().insertOne(new Config(guildId));
+            System.out.println("Created default configuration for guild: " + guild.getName());
+        }
+        if (!plan.withGreetings.contains(guildId)) {
+            database.initializeGreetingsForGuild(guildId);
+        }
+        if (!plan.withBlacklist.contains(guildId)) {
+            database.getGuildCollection(guildId, "blacklist").insertOne(new Document("guildId", guildId).append("blacklist", new ArrayList<>()));
+            System.out.println("Initialized blacklist for guild: " + guild.getName());
+        }
+        if (!plan.withIntroMessages.contains(guildId)) {
+            database.getGuildCollection(guildId, "user_intro_messages").insertOne(new Document("guildId", guildId).append("messages", new ArrayList<>()));
+            System.out.println("Initialized introduction messages for guild: " + guild.getName());
+        }
+        if (!plan.withStickyMessages.contains(guildId)) {
+            database.getGuildCollection(guildId, "sticky_messages").insertOne(new Document("guildId", guildId).append("stickyMessages", new ArrayList<>()));
+            System.out.println("Initialized sticky messages for guild: " + guild.getName());
+        }
+    }
+
+    /**
+     * Creates the roles and channels the guild needs and puts the staff roles in order.
+     *
+     * @param guild the guild.
+     */
+    private void setupRolesAndChannelsForGuild(Guild guild) {
+        System.out.println("Setting up roles and channels for guild: " + guild.getName());
+        RoleManager roleManager = new RoleManager();
+        ChannelManager channelManager = new ChannelManager();
+
+        roleManager.getOrCreateRole(guild, "Member", RoleHierarchyManager.MEMBER_PERMISSIONS, RoleHierarchyManager.MEMBER_COLOR);
+        roleManager.getOrCreateRole(guild, "Flagged", RoleHierarchyManager.NO_PERMISSIONS, RoleHierarchyManager.FLAGGED_COLOR);
+        roleManager.adjustRoleHierarchy(guild, Arrays.asList(
+                roleManager.getOrCreateRole(guild, "Admin", RoleHierarchyManager.ALL_PERMISSIONS, RoleHierarchyManager.ADMIN_COLOR),
+                roleManager.getOrCreateRole(guild, "Head DJ", RoleHierarchyManager.HEAD_DJ_PERMISSIONS, RoleHierarchyManager.HEAD_DJ_COLOR),
+                roleManager.getOrCreateRole(guild, "Event Staff", RoleHierarchyManager.EVENT_STAFF_PERMISSIONS, RoleHierarchyManager.EVENT_STAFF_COLOR)
+        ));
+
+        channelManager.getOrCreateTextChannel(guild, "introductions", "Information");
+        channelManager.getOrCreateTextChannel(guild, "mod-log", "Moderation");
+        channelManager.getOrCreateTextChannel(guild, "bot-commands", "Moderation");
+        channelManager.getOrCreateTextChannel(guild, "bot-fun", "bot-fun");
+        channelManager.getOrCreateTextChannel(guild, "bot-notifications", "bot-fun");
+    }
+
+    /**
+     * Record that a guild has been set up, so the next start skips it.
+     *
+     * @param guildId the guild.
+     */
+    private void recordSetUp(long guildId) {
+        Document record = new Document("guildId", guildId).append("version", SETUP_VERSION).append("completedAt", new Date());
+        try {
+            bot.database.getBootstrapRecordCollection().replaceOne(Filters.eq("guildId", guildId), record, new ReplaceOptions().upsert(true));
+        } catch (MongoException e) {
+            System.err.println("Failed to record setup of guild " + guildId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Route the guild's introduction channel to an IntroductionListener with the guild's channel and role IDs.
+     *
+     * @param guild the guild.
+     */
+    private void routeIntroductions(Guild guild) {
+        TextChannel introductionChannel = first(guild.getTextChannelsByName("introductions", true));
+        TextChannel moderationChannel = first(guild.getTextChannelsByName("mod-log", true));
+        Role memberRole = first(guild.getRolesByName("Member", true));
+        Role flaggedRole = first(guild.getRolesByName("Flagged", true));
+        if (introductionChannel == null || moderationChannel == null || memberRole == null || flaggedRole == null) {
+            System.err.println("Introductions are not routed for guild " + guild.getName() + ", its channels or roles are missing");
+            return;
+        }
+
+        router.register(guild.getIdLong(), introductionChannel.getIdLong(),
+                new IntroductionListener(bot, router, introductionChannel.getId(), moderationChannel.getId(), memberRole.getId(), flaggedRole.getId(), guild));
+    }
+
+    private static <T> T first(List<T> list) {
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * How a guild's setup went.
+     */
+    private enum Outcome {
+        SET_UP, ALREADY_SET_UP, FAILED
+    }
+
+    /**
+     * What a batch of guilds still needs.
+     */
+    private record Plan(Set<Long> done, Set<Long> withConfig, Set<Long> withGreetings, Set<Long> withBlacklist,
+                        Set<Long> withIntroMessages, Set<Long> withStickyMessages) {
+    }
+
+    /**
+     * How long a shard took to become ready and set its guilds up.
+     *
+     * @param shardId the shard.
+     * @param guilds the guilds the shard is in.
+     * @param setUp guilds that needed setting up.
+     * @param alreadySetUp guilds that were already set up.
+     * @param failed guilds whose setup failed.
+     * @param gatewayMillis the time from process start until the shard was ready.
+     * @param bootstrapMillis the time from then until every guild was set up.
+     */
+    public record ShardReport(int shardId, int guilds, int setUp, int alreadySetUp, int failed,
+                              long gatewayMillis, long bootstrapMillis) {
+
+        /**
+         * Get the time from process start until the shard's guilds were all set up.
+         *
+         * @return the time to ready in milliseconds.
+         */
+        public long timeToReadyMillis() {
+            return gatewayMillis + bootstrapMillis;
+        }
+
+        @Override
+        public String toString() {
+            return shardId + " ready in " + timeToReadyMillis() + "ms (gateway " + gatewayMillis + "ms, bootstrap "
+                    + bootstrapMillis + "ms): " + guilds + " guilds, " + setUp + " set up, " + alreadySetUp
+                    + " already set up, " + failed + " failed";
+        }
+    }
+}
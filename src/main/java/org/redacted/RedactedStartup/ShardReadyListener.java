@@ -49,13 +49,18 @@ public class ShardReadyListener extends ListenerAdapter {
 
         // Iterate over each guild the bot is part of
         for (Guild guild : event.getJDA().getGuilds()) {
-            // Retrieve the GuildData instance for this guild
-            GuildData guildData = GuildData.get(guild, bot);
-
-            // Load and reschedule messages for this guild
-            schedulerListener.loadAndRescheduleMessages(guildData);
+            // Load and reschedule messages and restore NSFW loops for this guild once its data has loaded.
+            // Both read the database, so they run on the bot's thread pool rather than on whichever
+            // thread completes the load, which is this gateway thread when the guild is already cached
+            GuildData.whenLoaded(guild, bot, guildData -> {
+                schedulerListener.loadAndRescheduleMessages(guildData);
+                bot.getNsfwLoopEngine().load(guild.getIdLong());
+            });
         }
 
+        // Resume music only in the guilds that saved a queue
+        musicListener.resumeSaved(event.getJDA().getGuilds());
+
         // Optionally, remove this listener after it's done its job
         bot.getShardManager().removeEventListener(this);
     }
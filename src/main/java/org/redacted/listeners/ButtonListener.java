@@ -1,6 +1,5 @@
 package org.redacted.listeners;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.components.actionrow.ActionRow;
@@ -26,6 +25,7 @@ import org.redacted.Commands.Fun.Gamba.BlackJackCommand;
 import org.redacted.Commands.Fun.Gamba.PokerCommand;
 import org.redacted.Commands.Fun.Gamba.TexasHoldemGame;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Handlers.economy.EconomyHandler;
 import org.redacted.Redacted;
@@ -298,12 +298,13 @@ public class ButtonListener extends ListenerAdapter {
         event.deferEdit().queue();
 
         if ("yes".equals(choice)) {
-            GuildData data = GuildData.get(Objects.requireNonNull(event.getGuild()), bot);
-            if (systemName.equalsIgnoreCase("Suggestion")) data.getSuggestionHandler().reset();
-            else if (systemName.equalsIgnoreCase("Greeting")) data.getGreetingHandler().reset();
+            GuildData.whenLoaded(Objects.requireNonNull(event.getGuild()), bot, data -> {
+                if (systemName.equalsIgnoreCase("Suggestion")) data.getSuggestionHandler().reset();
+                else if (systemName.equalsIgnoreCase("Greeting")) data.getGreetingHandler().reset();
 
-            MessageEmbed embed = EmbedUtils.createSuccess(systemName + " system was successfully reset!");
-            event.getHook().editOriginalComponents(Collections.emptyList()).setEmbeds(embed).queue();
+                MessageEmbed embed = EmbedUtils.createSuccess(systemName + " system was successfully reset!");
+                event.getHook().editOriginalComponents(Collections.emptyList()).setEmbeds(embed).queue();
+            });
         } else if ("no".equals(choice)) {
             MessageEmbed embed = EmbedUtils.createError(systemName + " system was **NOT** reset!");
             event.getHook().editOriginalComponents(Collections.emptyList()).setEmbeds(embed).queue();
@@ -330,21 +331,28 @@ public class ButtonListener extends ListenerAdapter {
         }
 
         long bet = Long.parseLong(pressedArgs[4]);
-        MessageEmbed embed = null;
+        event.deferEdit().queue();
 
-        if ("hit".equals(pressedArgs[1])) {
-            embed = BlackJackCommand.hit(event.getGuild(), event.getUser(), bet, uuidKey, bot);
-        } else if ("stand".equals(pressedArgs[1])) {
-            embed = BlackJackCommand.stand(event.getGuild(), event.getUser(), bet, uuidKey, bot);
-        }
+        // Play the move once the guild's economy has loaded, off the gateway thread
+        GuildData.whenLoaded(Objects.requireNonNull(event.getGuild()), bot, guildData -> {
+            EconomyHandler economyHandler = guildData.getEconomyHandler();
+            MessageEmbed embed = null;
 
-        List<Button> row = buttons.get(uuidKey);
-        if (row == null) {
-            event.editMessageEmbeds(embed).queue();
-            return;
-        }
+            if ("hit".equals(pressedArgs[1])) {
+                embed = BlackJackCommand.hit(economyHandler, event.getUser(), bet, uuidKey);
+            } else if ("stand".equals(pressedArgs[1])) {
+                embed = BlackJackCommand.stand(economyHandler, event.getUser(), bet, uuidKey);
+            }
+            if (embed == null) return;
 
-        event.editComponents(ActionRow.of(row)).setEmbeds(embed).queue();
+            List<Button> row = buttons.get(uuidKey);
+            if (row == null) {
+                event.getHook().editOriginalEmbeds(embed).queue();
+                return;
+            }
+
+            event.getHook().editOriginalComponents(ActionRow.of(row)).setEmbeds(embed).queue();
+        });
     }
 
     /**
@@ -430,50 +438,49 @@ public class ButtonListener extends ListenerAdapter {
                     return;
                 }
 
-                GuildData guildData = GuildData.get(Objects.requireNonNull(event.getGuild()), bot);
-                EconomyHandler economyHandler = guildData.getEconomyHandler();
+                // Take the bet once the guild's economy has loaded, off the gateway thread
+                GuildData.whenLoaded(Objects.requireNonNull(event.getGuild()), bot, guildData -> {
+                    EconomyHandler economyHandler = guildData.getEconomyHandler();
 
-                long userBalance = economyHandler.getBalance(event.getUser().getIdLong());
-                if (userBalance < userBetAmount) {
-                    event.reply("You don't have enough money to place that bet.").setEphemeral(true).queue();
-                    return;
-                }
-
-                economyHandler.removeMoney(event.getUser().getIdLong(), userBetAmount);
-
-                long botBalance = 1000;
-                long botBetAmount = 0;
-                boolean botRaised = false;
-                String botAction;
+                    if (!economyHandler.tryRemoveMoney(event.getUser().getIdLong(), userBetAmount)) {
+                        event.reply("You don't have enough money to place that bet.").setEphemeral(true).queue();
+                        return;
+                    }
 
-                if (userBetAmount > botBalance / 3) {
-                    botAction = "Bot folds!";
-                    pokerCommand.endGame(event.getUser());
-                } else if (userBetAmount <= botBalance / 3) {
-                    botAction = "Bot calls your bet!";
-                    botBetAmount = userBetAmount;
-                } else {
-                    long raiseAmount = (long) (userBetAmount * (0.1 + Math.random() * 0.2));
-                    botBetAmount = userBetAmount + raiseAmount;
-                    botAction = "Bot raises by " + raiseAmount + "!";
-                    botRaised = true;
-                }
+                    long botBalance = 1000;
+                    long botBetAmount = 0;
+                    boolean botRaised = false;
+                    String botAction;
+
+                    if (userBetAmount > botBalance / 3) {
+                        botAction = "Bot folds!";
+                        pokerCommand.endGame(event.getUser());
+                    } else if (userBetAmount <= botBalance / 3) {
+                        botAction = "Bot calls your bet!";
+                        botBetAmount = userBetAmount;
+                    } else {
+                        long raiseAmount = (long) (userBetAmount * (0.1 + Math.random() * 0.2));
+                        botBetAmount = userBetAmount + raiseAmount;
+                        botAction = "Bot raises by " + raiseAmount + "!";
+                        botRaised = true;
+                    }
 
-                EmbedBuilder embed = game.getGameStatus(event.getUser(), false);
-                embed.addField("Your Bet", String.valueOf(userBetAmount), true);
-                embed.addField("Bot's Bet", String.valueOf(botBetAmount), true);
-                embed.addField("Bot's Action", botAction, false);
-
-                if (botRaised) {
-                    event.replyEmbeds(embed.build())
-                            .setComponents(ActionRow.of(
-                                    Button.primary("poker:call:" + event.getUser().getId(), "Call"),
-                                    Button.danger("poker:fold:" + event.getUser().getId(), "Fold")
-                            ))
-                            .queue();
-                } else {
-                    dealNextPhase(event, game, embed);
-                }
+                    EmbedBuilder embed = game.getGameStatus(event.getUser(), false);
+                    embed.addField("Your Bet", String.valueOf(userBetAmount), true);
+                    embed.addField("Bot's Bet", String.valueOf(botBetAmount), true);
+                    embed.addField("Bot's Action", botAction, false);
+
+                    if (botRaised) {
+                        event.replyEmbeds(embed.build())
+                                .setComponents(ActionRow.of(
+                                        Button.primary("poker:call:" + event.getUser().getId(), "Call"),
+                                        Button.danger("poker:fold:" + event.getUser().getId(), "Fold")
+                                ))
+                                .queue();
+                    } else {
+                        dealNextPhase(event, game, embed);
+                    }
+                });
 
             } catch (NumberFormatException e) {
                 event.reply("Invalid bet amount.").setEphemeral(true).queue();
@@ -641,7 +648,7 @@ public class ButtonListener extends ListenerAdapter {
             draft.original.setThumbnailUrl(draft.thumbnailUrl);
             draft.original.setTimestamp(Instant.now());
 
-            MongoCollection<SavedEmbed> collection = GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
+            GuildCollection<SavedEmbed> collection = GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
             collection.replaceOne(Filters.eq("messageId", messageId), draft.original);
 
             tempEmbeds.remove(uuid);
@@ -2,7 +2,6 @@ package org.redacted.listeners;
 
 import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.EventDateTime;
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.entities.ScheduledEvent;
 import net.dv8tion.jda.api.events.guild.scheduledevent.ScheduledEventCreateEvent;
@@ -10,6 +9,7 @@ import net.dv8tion.jda.api.events.guild.scheduledevent.ScheduledEventDeleteEvent
 import net.dv8tion.jda.api.events.guild.scheduledevent.update.*;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.bson.Document;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Redacted;
 
 import java.io.IOException;
@@ -245,9 +245,9 @@ public class DiscordEventListener extends ListenerAdapter {
      * Retrieves the MongoDB collection for calendar events for a specific guild.
      *
      * @param guildId the ID of the guild
-     * @return the MongoCollection<Document> for calendar events
+     * @return the GuildCollection<Document> for calendar events
      */
-    private MongoCollection<Document> getEventCollection(long guildId) {
+    private GuildCollection<Document> getEventCollection(long guildId) {
         return bot.getDatabase().getCalendarEventCollection(guildId);
     }
 }
\ No newline at end of file
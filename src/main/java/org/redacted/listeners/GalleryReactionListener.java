@@ -3,6 +3,7 @@ package org.redacted.listeners;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.redacted.Redacted;
+import org.redacted.util.GalleryManager;
 
 import java.util.Objects;
 
@@ -39,15 +40,18 @@ public class GalleryReactionListener extends ListenerAdapter {
         long messageId = event.getMessageIdLong();
         String componentId = event.getComponentId();
 
-        if (bot.getGalleryManager().isGalleryMessage(messageId)) {
+        // Only the gallery's own buttons can page it
+        if (!componentId.equals("prev") && !componentId.equals("next")) return;
+
+        // A gallery that has to be loaded from the database is looked up off the gateway thread
+        GalleryManager galleryManager = bot.getGalleryManager();
+        galleryManager.isGalleryMessage(messageId).thenAccept(isGallery -> {
+            if (!isGallery) return;
             event.deferEdit().queue(hook -> {
-                bot.getGalleryManager().handleReaction(event.getChannel(), messageId, componentId);
-                bot.getGalleryManager().updateButtons(
-                        event.getMessage(),
-                        bot.getGalleryManager().currentPage.get(messageId),
-                        bot.getGalleryManager().galleries.get(messageId).size()
-                );
+                GalleryManager.Page page = galleryManager.handleReaction(event.getChannel(), messageId, componentId);
+                if (page == null) return;
+                galleryManager.updateButtons(event.getMessage(), page.index(), page.count());
             });
-        }
+        });
     }
 }
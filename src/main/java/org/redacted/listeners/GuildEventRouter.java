@@ -0,0 +1,141 @@
+package org.redacted.listeners;
+
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+import org.redacted.util.LongObjectMap;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GuildEventRouter Class
+ * A single listener that hands message events to the handler registered for their channel.
+ * Deletions are routed here, while received messages reach the handlers through the MessagePipeline.
+ * Handlers are found by channel ID in a primitive map, so an event costs one lookup however many
+ * guilds have registered one, and channels without a handler are dropped at once. Each guild has
+ * at most one handler; registering again, for instance when its shard reconnects, replaces it.
+ * Handlers share one thread for work they need to delay.
+ *
+ * @author Derrick Eberlein
+ */
+public class GuildEventRouter extends ListenerAdapter {
+
+    private final LongObjectMap<ChannelHandler> channels = new LongObjectMap<>();
+    private final LongObjectMap<Route> guilds = new LongObjectMap<>();
+    private final ScheduledExecutorService delayed = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "guild-event-delayed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Route a guild's channel to a handler, replacing the guild's previous route.
+     *
+     * @param guildId the guild the channel belongs to.
+     * @param channelId the channel whose events are handled.
+     * @param handler the handler.
+     */
+    public synchronized void register(long guildId, long channelId, ChannelHandler handler) {
+        Route previous = guilds.put(guildId, new Route(channelId, handler));
+        if (previous != null && previous.channelId != channelId) {
+            channels.remove(previous.channelId);
+        }
+        channels.put(channelId, handler);
+    }
+
+    /**
+     * Stop routing a guild's channel.
+     *
+     * @param guildId the guild whose route is removed.
+     */
+    public synchronized void unregister(long guildId) {
+        Route previous = guilds.remove(guildId);
+        if (previous != null) {
+            channels.remove(previous.channelId);
+        }
+    }
+
+    /**
+     * Run a task after a delay on the thread shared by all handlers.
+     *
+     * @param task the task.
+     * @param delay the delay.
+     * @param unit the unit of the delay.
+     * @return the scheduled task.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return delayed.schedule(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.err.println("Delayed guild task failed: " + e.getMessage());
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Get the number of routed channels.
+     *
+     * @return the number of channels with a handler.
+     */
+    public int size() {
+        return channels.size();
+    }
+
+    /**
+     * Get the handler of a channel.
+     *
+     * @param channelId the channel.
+     * @return the channel's handler, or null if it is not routed.
+     */
+    public ChannelHandler handlerFor(long channelId) {
+        return channels.get(channelId);
+    }
+
+    @Override
+    public void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        ChannelHandler handler = channels.get(event.getChannel().getIdLong());
+        if (handler != null) {
+            handler.onMessageDelete(event);
+        }
+    }
+
+    /**
+     * Shut down the shared delayed-task thread.
+     */
+    public void shutdown() {
+        delayed.shutdown();
+    }
+
+    /**
+     * Handles the message events of a single routed channel.
+     */
+    public interface ChannelHandler {
+
+        /**
+         * Called for every message people send in the channel.
+         *
+         * @param event the message event.
+         */
+        default void onMessageReceived(@NotNull MessageReceivedEvent event) {
+        }
+
+        /**
+         * Called for every message deleted in the channel.
+         *
+         * @param event the deletion event.
+         */
+        default void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        }
+    }
+
+    /**
+     * The channel a guild is routed from.
+     */
+    private record Route(long channelId, ChannelHandler handler) {
+    }
+}
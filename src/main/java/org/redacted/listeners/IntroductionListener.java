@@ -4,41 +4,40 @@ import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
 import org.redacted.Handlers.IntroductionHandler;
 import org.redacted.Handlers.StickyMessageHandler;
 import org.redacted.Redacted;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static org.redacted.Handlers.IntroductionHandler.staffDeletedMessages;
 
 /**
  * IntroductionListener Class
- * This class listens for messages in the introduction channel and handles user introductions.
+ * This class handles the messages of a guild's introduction channel, routed to it by the
+ * GuildEventRouter, and handles user introductions.
  * It checks if the user has a valid role and manages sticky messages.
  *
  * @author Derrick Eberlein
  */
-public class IntroductionListener extends ListenerAdapter {
-    private final String introductionChannelId;
+public class IntroductionListener implements GuildEventRouter.ChannelHandler {
+    private final GuildEventRouter router;
     private final IntroductionHandler introductionHandler;
     private final StickyMessageHandler stickyMessageHandler;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1); // Create a scheduler
 
     /**
      * Constructs an IntroductionListener with the provided parameters.
      *
      * @param bot                  The Redacted bot instance.
+     * @param router               The router delivering the channel's events, whose thread delayed checks run on.
      * @param introductionChannelId The ID of the introduction channel.
      * @param staffChannelId       The ID of the staff channel.
      * @param memberRoleId         The ID of the member role.
      * @param flagRoleId           The ID of the flag role.
      * @param guild                The Guild instance for the server.
      */
-    public IntroductionListener(Redacted bot, String introductionChannelId, String staffChannelId, String memberRoleId, String flagRoleId, Guild guild) {
-        this.introductionChannelId = introductionChannelId;
+    public IntroductionListener(Redacted bot, GuildEventRouter router, String introductionChannelId, String staffChannelId, String memberRoleId, String flagRoleId, Guild guild) {
+        this.router = router;
         this.stickyMessageHandler = new StickyMessageHandler(bot);
         this.introductionHandler = new IntroductionHandler(bot, guild, introductionChannelId, staffChannelId, memberRoleId, flagRoleId);
     }
@@ -51,15 +50,15 @@ public class IntroductionListener extends ListenerAdapter {
      * @param event The MessageReceivedEvent containing the message and context.
      */
     @Override
-    public void onMessageReceived(MessageReceivedEvent event) {
-        if (event.getChannel().getId().equals(introductionChannelId) && !event.getAuthor().isBot()) {
+    public void onMessageReceived(@NotNull MessageReceivedEvent event) {
+        if (!event.getAuthor().isBot()) {
             introductionHandler.handleIntroduction(event);
             stickyMessageHandler.handleIntroStickyMessage(event.getChannel().asTextChannel());
 
             Member member = event.getMember();
             if (member != null && !hasValidRole(member)) {
                 // Schedule a delayed check to delete the message
-                scheduler.schedule(() -> {
+                router.schedule(() -> {
                     // Recheck the roles after a delay
                     if (!hasValidRole(member)) {
                         event.getMessage().delete().queue(); // Delete the message if no valid role
@@ -90,10 +89,8 @@ public class IntroductionListener extends ListenerAdapter {
      * @param event The MessageDeleteEvent containing the deletion details.
      */
     @Override
-    public void onMessageDelete(MessageDeleteEvent event) {
-        if (event.getChannel().getId().equals(introductionChannelId)) {
-            introductionHandler.handleIntroductionDeletion(event);
-        }
+    public void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        introductionHandler.handleIntroductionDeletion(event);
     }
 
     /**
@@ -105,13 +102,4 @@ public class IntroductionListener extends ListenerAdapter {
     public static void markAsStaffDeleted(String messageId) {
         staffDeletedMessages.put(messageId, true);
     }
-
-
-    /**
-     * Shuts down the scheduler used for delayed message deletion.
-     * This should be called when the bot is shutting down to clean up resources.
-     */
-    public void shutdown() {
-        scheduler.shutdown();
-    }
 }
\ No newline at end of file
@@ -2,10 +2,9 @@ package org.redacted.listeners;
 
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
 import org.redacted.Database.Data.GuildData;
 import org.redacted.Handlers.economy.EconomyHandler;
 import org.redacted.Redacted;
@@ -16,12 +15,12 @@ import java.util.Map;
 
 /**
  * MessageListener Class
- * This class listens for messages in a Discord server and rewards users with currency
- * for being active, while implementing a cooldown mechanism to prevent spam.
+ * This class receives every message people send in a Discord server from the MessagePipeline and
+ * rewards users with currency for being active, while implementing a cooldown mechanism to prevent spam.
  *
  * @author Derrick Eberlein
  */
-public class MessageListener extends ListenerAdapter {
+public class MessageListener implements MessagePipeline.Handler {
 
     private final Redacted bot;
     private final Map<Long, Long> userCooldowns;
@@ -39,30 +38,23 @@ public class MessageListener extends ListenerAdapter {
 
     /**
      * Handles incoming messages in the guild.
-     * If the message is from a user (not a bot), it rewards them with currency
-     * and implements a cooldown mechanism to prevent spam.
+     * The pipeline only passes on messages sent by users, so each one rewards its author
+     * with currency unless they are on cooldown.
      *
-     * @param event The MessageReceivedEvent containing the message and context.
+     * @param context The message as classified by the pipeline.
+     * @param event   The MessageReceivedEvent containing the message and context.
      */
     @Override
-    public void onMessageReceived(MessageReceivedEvent event) {
-
-        // Ignore messages that are not from a guild
-        if (!event.isFromGuild()) {
-            return;
-        }
-
+    public void handle(@NotNull MessagePipeline.MessageContext context, @NotNull MessageReceivedEvent event) {
         Guild guild = event.getGuild();
         Member member = event.getMember();
-        Message message = event.getMessage();
 
-        // Ignore messages from bots
-        if (member == null || member.getUser().isBot()) {
+        // Ignore messages without a member, such as those from users who just left
+        if (member == null) {
             return;
         }
 
         long userId = event.getAuthor().getIdLong();
-        long guildId = guild.getIdLong();
 
         // Get the current time
         long currentTime = System.currentTimeMillis();
@@ -76,20 +68,21 @@ public class MessageListener extends ListenerAdapter {
             }
         }
 
-        // Fetch GuildData and EconomyHandler
-        GuildData guildData = GuildData.get(guild, bot);
-        EconomyHandler economyHandler = guildData.getEconomyHandler();
+        // Update the user's last message time to now, before the reward is paid off this thread
+        userCooldowns.put(userId, currentTime);
 
-        // User is not on cooldown, reward them with currency
-        int rewardAmount = 10; // Example reward amount
-        economyHandler.addMoney(userId, rewardAmount);
+        // Fetch GuildData and EconomyHandler without holding up the gateway thread
+        GuildData.whenLoaded(guild, bot, guildData -> {
+            EconomyHandler economyHandler = guildData.getEconomyHandler();
 
-        // Send a message to a specific channel
-        //String rewardMessage = String.format("%s has been rewarded with %d %s for being active!", member.getAsMention(), rewardAmount, economyHandler.getCurrency());
-        //sendMessageToChannelByName(guild, rewardMessage);
+            // User is not on cooldown, reward them with currency
+            int rewardAmount = 10; // Example reward amount
+            economyHandler.addMoney(userId, rewardAmount);
 
-        // Update the user's last message time to now
-        userCooldowns.put(userId, currentTime);
+            // Send a message to a specific channel
+            //String rewardMessage = String.format("%s has been rewarded with %d %s for being active!", member.getAsMention(), rewardAmount, economyHandler.getCurrency());
+            //sendMessageToChannelByName(guild, rewardMessage);
+        });
     }
 
     /**
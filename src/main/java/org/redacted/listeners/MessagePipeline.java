@@ -0,0 +1,362 @@
+package org.redacted.listeners;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+import org.redacted.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MessagePipeline Class
+ * The one listener that receives every message. Each message is classified once, by where it was
+ * sent, who sent it and which command prefix it starts with, and then handed only to the handlers
+ * that registered interest in that kind of message:
+ * <ul>
+ *     <li>Messages outside guilds are dropped, as no handler wants them.</li>
+ *     <li>Messages from kinds of author no handler wants, such as bots, are dropped next.</li>
+ *     <li>Messages in a channel routed by the {@link GuildEventRouter} go to that channel's handler.</li>
+ *     <li>Messages starting with a registered prefix, such as "-ticket close", go to that prefix's
+ *     handlers. Prefixes are matched in a trie a character at a time, ignoring case, so a message
+ *     that is not a command is turned away at its first character without being split.</li>
+ *     <li>Handlers that want every message get it last.</li>
+ * </ul>
+ * Every handler is timed into its own latency histogram, and a handler that throws does not stop
+ * the others. The histograms are logged every {@value #REPORT_MINUTES} minutes.
+ *
+ * @author Derrick Eberlein
+ */
+public final class MessagePipeline extends ListenerAdapter {
+
+    /** Only messages sent by people. */
+    public static final Set<AuthorKind> USERS = EnumSet.of(AuthorKind.USER);
+
+    private static final long REPORT_MINUTES = 10;
+
+    private final GuildEventRouter router;
+    private final Stage routedChannels;
+    private final PrefixNode prefixes = new PrefixNode();
+    private final List<Stage> everyMessage = new CopyOnWriteArrayList<>();
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+    private volatile Set<AuthorKind> wantedAuthors = EnumSet.copyOf(USERS);
+
+    /**
+     * Constructs a MessagePipeline and starts logging its handlers' latencies.
+     *
+     * @param router the router whose channels are handled by their own handlers.
+     */
+    public MessagePipeline(GuildEventRouter router) {
+        this.router = router;
+        this.routedChannels = new Stage("routed-channel", USERS, null);
+        this.stages.add(routedChannels);
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-pipeline-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, REPORT_MINUTES, REPORT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Hand a handler the messages starting with a prefix, followed by whitespace or nothing.
+     * When several registered prefixes match, only the handlers of the longest one are called.
+     *
+     * @param name the name the handler's latency is reported under.
+     * @param prefix the prefix, such as "-ticket close". Case and repeated spaces are ignored.
+     * @param authors the kinds of author whose messages the handler wants.
+     * @param handler the handler.
+     */
+    public synchronized void onPrefix(String name, String prefix, Set<AuthorKind> authors, Handler handler) {
+        String normalized = prefix.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        if (normalized.isEmpty()) throw new IllegalArgumentException("Prefix must not be blank");
+
+        PrefixNode node = prefixes;
+        for (int i = 0; i < normalized.length(); i++) {
+            node = node.childOrCreate(normalized.charAt(i));
+        }
+        node.add(add(name, authors, handler));
+    }
+
+    /**
+     * Hand a handler every message.
+     *
+     * @param name the name the handler's latency is reported under.
+     * @param authors the kinds of author whose messages the handler wants.
+     * @param handler the handler.
+     */
+    public synchronized void onEveryMessage(String name, Set<AuthorKind> authors, Handler handler) {
+        everyMessage.add(add(name, authors, handler));
+    }
+
+    /**
+     * Get the latency and failures of every handler, the routed channels' handlers counted together.
+     *
+     * @return the statistics of each handler, in the order they were registered.
+     */
+    public List<HandlerStats> getStats() {
+        List<HandlerStats> stats = new ArrayList<>(stages.size());
+        for (Stage stage : stages) {
+            stats.add(new HandlerStats(stage.name, stage.failures.sum(), stage.latency.snapshot()));
+        }
+        return stats;
+    }
+
+    @Override
+    public void onMessageReceived(@NotNull MessageReceivedEvent event) {
+        if (!event.isFromGuild()) return;
+
+        AuthorKind author = AuthorKind.of(event);
+        if (!wantedAuthors.contains(author)) return;
+
+        dispatch(event.getGuild().getIdLong(), event.getChannel().getIdLong(), author, event.getMessage().getContentRaw(), event);
+    }
+
+    /**
+     * Hand a classified guild message to the handlers interested in it.
+     *
+     * @param guildId the guild it was sent in.
+     * @param channelId the channel it was sent in.
+     * @param author the kind of author who sent it.
+     * @param content the raw content.
+     * @param event the message event.
+     */
+    void dispatch(long guildId, long channelId, AuthorKind author, String content, MessageReceivedEvent event) {
+        // Handlers are timed back to back, each one's end being the next one's start
+        long now = System.nanoTime();
+        GuildEventRouter.ChannelHandler channelHandler = router.handlerFor(channelId);
+        if (channelHandler != null && routedChannels.authors.contains(author)) {
+            try {
+                channelHandler.onMessageReceived(event);
+            } catch (RuntimeException e) {
+                routedChannels.fail(e);
+            }
+            now = routedChannels.record(now);
+        }
+
+        PrefixNode matched = null;
+        int end = 0;
+        PrefixNode node = prefixes;
+        int length = content.length();
+        int i = 0;
+        while (true) {
+            if (node.stages.length > 0 && (i == length || Character.isWhitespace(content.charAt(i)))) {
+                matched = node;
+                end = i;
+            }
+            if (i == length) break;
+
+            char c = content.charAt(i);
+            if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(content.charAt(i))) i++;
+                node = node.child(' ');
+            } else {
+                node = node.child(Character.toLowerCase(c));
+                i++;
+            }
+            if (node == null) break;
+        }
+
+        MessageContext context = null;
+        if (matched != null) {
+            context = new MessageContext(guildId, channelId, author, content, end);
+            for (Stage stage : matched.stages) {
+                now = stage.handle(context, event, now);
+            }
+        }
+
+        for (Stage stage : everyMessage) {
+            if (context == null) context = new MessageContext(guildId, channelId, author, content, 0);
+            now = stage.handle(context, event, now);
+        }
+    }
+
+    private Stage add(String name, Set<AuthorKind> authors, Handler handler) {
+        Stage stage = new Stage(name, EnumSet.copyOf(authors), handler);
+        stages.add(stage);
+        Set<AuthorKind> wanted = EnumSet.copyOf(wantedAuthors);
+        wanted.addAll(authors);
+        wantedAuthors = wanted;
+        return stage;
+    }
+
+    private void report() {
+        for (HandlerStats stats : getStats()) {
+            if (stats.latency().count() > 0) {
+                System.out.println("Message handler " + stats);
+            }
+        }
+    }
+
+    /**
+     * The kinds of author a message can have.
+     */
+    public enum AuthorKind {
+        /** A person. */
+        USER,
+        /** A bot account, including this one. */
+        BOT,
+        /** A webhook. */
+        WEBHOOK,
+        /** Discord itself, such as join or boost notices. */
+        SYSTEM;
+
+        /**
+         * Classify the author of a message.
+         *
+         * @param event the message event.
+         * @return the kind of author.
+         */
+        public static AuthorKind of(MessageReceivedEvent event) {
+            if (event.isWebhookMessage()) return WEBHOOK;
+            if (event.getMessage().getType().isSystem()) return SYSTEM;
+            if (event.getAuthor().isBot()) return BOT;
+            return USER;
+        }
+    }
+
+    /**
+     * Handles the messages it registered interest in.
+     */
+    public interface Handler {
+
+        /**
+         * Called for every message the handler registered interest in.
+         *
+         * @param context the message as classified by the pipeline.
+         * @param event the message event.
+         */
+        void handle(@NotNull MessageContext context, @NotNull MessageReceivedEvent event);
+    }
+
+    /**
+     * A message as classified by the pipeline.
+     *
+     * @param guildId the guild it was sent in.
+     * @param channelId the channel it was sent in.
+     * @param author the kind of author who sent it.
+     * @param content the raw content.
+     * @param argumentsStart where the content after the matched prefix starts, or 0 if no prefix matched.
+     */
+    public record MessageContext(long guildId, long channelId, AuthorKind author, String content, int argumentsStart) {
+
+        /**
+         * Get the content after the matched prefix.
+         *
+         * @return the arguments, trimmed, or an empty string if there are none.
+         */
+        public String arguments() {
+            return content.substring(argumentsStart).trim();
+        }
+    }
+
+    /**
+     * The latency and failures of a handler.
+     *
+     * @param name the handler's name.
+     * @param failures the messages it threw on.
+     * @param latency its latency histogram.
+     */
+    public record HandlerStats(String name, long failures, LatencyHistogram.Snapshot latency) {
+
+        @Override
+        public String toString() {
+            return name + ": " + latency + ", failures=" + failures;
+        }
+    }
+
+    /**
+     * A registered handler, with the authors it wants and its latency.
+     */
+    private static final class Stage {
+        private final String name;
+        private final Set<AuthorKind> authors;
+        private final Handler handler;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+
+        private Stage(String name, Set<AuthorKind> authors, Handler handler) {
+            this.name = name;
+            this.authors = authors;
+            this.handler = handler;
+        }
+
+        /**
+         * Hand the handler a message if it wants its author.
+         *
+         * @param context the classified message.
+         * @param event the message event.
+         * @param start when the handler was reached, in nanoseconds.
+         * @return when the handler returned, or the start if it was skipped.
+         */
+        private long handle(MessageContext context, MessageReceivedEvent event, long start) {
+            if (!authors.contains(context.author())) return start;
+            try {
+                handler.handle(context, event);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+            return record(start);
+        }
+
+        private long record(long start) {
+            long end = System.nanoTime();
+            latency.record(end - start);
+            return end;
+        }
+
+        private void fail(RuntimeException e) {
+            failures.increment();
+            System.err.println("Message handler " + name + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A character of the prefix trie. Its children and stages are replaced as a whole when a
+     * prefix is registered, so messages can be matched while one is.
+     */
+    private static final class PrefixNode {
+        private volatile char[] keys = new char[0];
+        private volatile PrefixNode[] children = new PrefixNode[0];
+        private volatile Stage[] stages = new Stage[0];
+
+        private PrefixNode child(char key) {
+            char[] current = keys;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == key) return children[i];
+            }
+            return null;
+        }
+
+        private PrefixNode childOrCreate(char key) {
+            PrefixNode child = child(key);
+            if (child != null) return child;
+
+            child = new PrefixNode();
+            PrefixNode[] grownChildren = Arrays.copyOf(children, children.length + 1);
+            grownChildren[grownChildren.length - 1] = child;
+            char[] grownKeys = Arrays.copyOf(keys, keys.length + 1);
+            grownKeys[grownKeys.length - 1] = key;
+            // Publish the child before its key, so a reader that finds the key finds the child
+            children = grownChildren;
+            keys = grownKeys;
+            return child;
+        }
+
+        private void add(Stage stage) {
+            Stage[] grown = Arrays.copyOf(stages, stages.length + 1);
+            grown[grown.length - 1] = stage;
+            stages = grown;
+        }
+    }
+}
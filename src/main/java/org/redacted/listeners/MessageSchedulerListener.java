@@ -1,13 +1,14 @@
 package org.redacted.listeners;
 
+import com.mongodb.MongoException;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.bson.Document;
 import org.jetbrains.annotations.NotNull;
 import org.redacted.Database.Data.GuildData;
 import org.redacted.Database.Database;
+import org.redacted.Handlers.scheduler.MessageScheduler;
 import org.redacted.Redacted;
 
 import java.text.ParseException;
@@ -15,33 +16,28 @@ import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * MessageSchedulerListener Class
  * This class listens for messages in a Discord server and allows users to schedule messages
  * with a title, content, destination channel, repeat interval, and time.
- * It handles the scheduling and rescheduling of messages based on user input.
+ * Each user scheduling a message gets their own session keyed by channel and user, so several
+ * people can schedule at once, and the MessagePipeline hands each message people send to a single
+ * handler that routes it to its session with one map lookup. Sessions left idle are closed automatically.
  *
  * @author Derrick Eberlein
  */
-public class MessageSchedulerListener extends ListenerAdapter {
+public class MessageSchedulerListener implements MessagePipeline.Handler {
+
+    private static final long SESSION_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toMillis(30);
 
     private final Redacted bot;
-    private User user;
-    private final ScheduledExecutorService scheduler;
-    private String title;
-    private String content;
-    private TextChannel destination;
-    private long repeat = -1;
-    private LocalDateTime time;
-    private boolean awaitingTimeInput = false;
+    private final ConcurrentHashMap<SessionKey, Session> sessions = new ConcurrentHashMap<>();
 
     /**
      * Constructs a MessageSchedulerListener with the provided Redacted bot and database.
@@ -51,211 +47,116 @@ public class MessageSchedulerListener extends ListenerAdapter {
      */
     public MessageSchedulerListener(Redacted bot, Database database) {
         this.bot = bot;
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        bot.getScheduler().scheduleWithFixedDelay(this::expireSessions, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
         System.out.println("MessageSchedulerListener initialized");
-
-        // Load and execute any pending messages from the database
-        bot.getShardManager().getGuilds().forEach(guild -> {
-            GuildData guildData = GuildData.get(guild, bot);
-            loadAndRescheduleMessages(guildData);
-        });
     }
 
     /**
      * Starts listening for user input in the specified channel.
-     * This method sets the user and initiates the message scheduling process.
+     * This method opens a session for the user, replacing any they already had in the channel,
+     * and initiates the message scheduling process.
      *
      * @param channel The channel where the user will provide input.
      * @param user    The user who is scheduling the message.
      */
     public void startListening(TextChannel channel, User user) {
-        this.user = user;
         System.out.println("Start listening for user: " + user.getName() + " in channel: " + channel.getName());
+        sessions.put(new SessionKey(channel.getIdLong(), user.getIdLong()), new Session(user));
         askForTitle(channel);
-        bot.getShardManager().addEventListener(this);
     }
 
     /**
-     * Loads scheduled messages from the database for the specified guild and reschedules them.
-     * This method retrieves all scheduled messages, checks their scheduled time, and either runs them immediately
-     * or schedules them for future execution.
+     * Get the number of open scheduling sessions.
      *
-     * @param guildData The GuildData instance containing the scheduled messages collection.
+     * @return the number of sessions.
      */
-    public void loadAndRescheduleMessages(GuildData guildData) {
-        System.out.println("Loading and rescheduling messages from the database for guild: " + guildData.getGuildId());
-
-        List<Document> scheduledMessages = guildData.getScheduledMessagesCollection().find().into(new ArrayList<>());
-        for (Document messageDoc : scheduledMessages) {
-            String userId = messageDoc.getString("userId");
-            String channelId = messageDoc.getString("channelId");
-            String title = messageDoc.getString("title");
-            String content = messageDoc.getString("content");
-            String repeatStr = messageDoc.getString("repeat");
-            LocalDateTime time = LocalDateTime.parse(messageDoc.getString("time"));
-
-            long repeat;
-            try {
-                repeat = (repeatStr == null) ? 0 : Long.parseLong(repeatStr);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid repeat interval found in database for message with ID: " + messageDoc.getObjectId("_id").toHexString());
-                System.err.println("Setting repeat interval to 0 to prevent repetition.");
-                repeat = 0;
-            }
-
-            TextChannel destinationChannel = bot.getShardManager().getTextChannelById(channelId);
-            System.out.println("Destination Channel is: " + destinationChannel + " or " + channelId);
-
-            if (destinationChannel != null) {
-                long delay = Duration.between(LocalDateTime.now(), time).getSeconds();
-
-                if (delay <= 0) {
-                    System.out.println("Scheduled time for message with ID " + messageDoc.getObjectId("_id").toHexString() + " has passed. Running the message immediately.");
-                    // Run the message immediately
-                    destinationChannel.sendMessage(formatMessage(title, content)).queue();
-
-                    // If the message does not repeat, remove it from the database
-                    if (repeat == 0) {
-                        guildData.getScheduledMessagesCollection().deleteOne(new Document("_id", messageDoc.getObjectId("_id")));
-                    } else {
-                        // Schedule the next occurrence based on the repeat interval
-                        rescheduleMessage(destinationChannel, title, content, repeat, time.plusSeconds(repeat), messageDoc.getObjectId("_id").toHexString(), guildData);
-                    }
-                } else {
-                    // Schedule the message to be sent in the future
-                    rescheduleMessage(destinationChannel, title, content, repeat, time, messageDoc.getObjectId("_id").toHexString(), guildData);
-                }
-            } else {
-                System.out.println("Destination channel not found for message with ID: " + messageDoc.getObjectId("_id").toHexString());
-            }
-        }
+    public int getSessionCount() {
+        return sessions.size();
     }
 
     /**
-     * Formats the message with a title and content.
-     * If the title is null, it only returns the content.
+     * Loads scheduled messages from the database for the specified guild and hands them to the message scheduler.
+     * Messages whose time has passed are sent once right away and repeating ones resume at their next occurrence.
      *
-     * @param title   The title of the message.
-     * @param content The content of the message.
-     * @return The formatted message as a string.
+     * @param guildData The GuildData instance containing the scheduled messages collection.
      */
-    private String formatMessage(String title, String content) {
-        StringBuilder formattedMessage = new StringBuilder();
-        if (title != null) {
-            formattedMessage.append("**").append(title).append("**\n\n");
-        }
-        formattedMessage.append(content);
-        return formattedMessage.toString();
+    public void loadAndRescheduleMessages(GuildData guildData) {
+        System.out.println("Loading and rescheduling messages from the database for guild: " + guildData.getGuildId());
+        bot.getMessageScheduler().load(Long.parseLong(guildData.getGuildId()));
     }
 
     /**
-     * Reschedules a message to be sent at a specific time with a repeat interval.
-     * This method sends the message to the specified destination channel and handles repeating messages.
+     * Handles incoming messages from users.
+     * It processes the user's input to schedule a message with a title, content, destination channel,
+     * repeat interval, and time. It also handles cancellation of the scheduling process.
      *
-     * @param destination The channel where the message will be sent.
-     * @param title       The title of the message.
-     * @param content     The content of the message.
-     * @param repeat      The repeat interval in seconds (0 for no repeat).
-     * @param time        The time when the message should be sent.
-     * @param messageId   The ID of the message in the database for rescheduling purposes.
-     * @param guildData   The GuildData instance containing the scheduled messages collection.
+     * @param context The message as classified by the pipeline.
+     * @param event   The MessageReceivedEvent containing the message and context.
      */
-    private void rescheduleMessage(TextChannel destination, String title, String content, long repeat, LocalDateTime time, String messageId, GuildData guildData) {
-        StringBuilder formattedMessage = new StringBuilder();
-        if (title != null) {
-            formattedMessage.append("**").append(title).append("**\n\n");
-        }
-        formattedMessage.append(content);
-
-        long delay = Duration.between(LocalDateTime.now(), time).getSeconds();
-        if (delay <= 0) {
-            delay = 1;
-        }
+    @Override
+    public void handle(@NotNull MessagePipeline.MessageContext context, @NotNull MessageReceivedEvent event) {
+        if (sessions.isEmpty()) return;
 
-        scheduler.schedule(() -> {
-            destination.sendMessage(formattedMessage.toString()).queue();
-            if (repeat == 0) {
-                guildData.getScheduledMessagesCollection().deleteOne(new Document("_id", new org.bson.types.ObjectId(messageId)));
-            }
-        }, delay, TimeUnit.SECONDS);
+        SessionKey key = new SessionKey(context.channelId(), event.getAuthor().getIdLong());
+        Session session = sessions.get(key);
+        if (session == null) return;
 
-        if (repeat > 0) {
-            scheduler.scheduleAtFixedRate(() -> destination.sendMessage(formattedMessage.toString()).queue(), delay, repeat, TimeUnit.SECONDS);
+        synchronized (session) {
+            session.lastActivity = System.currentTimeMillis();
+            handleInput(key, session, event);
         }
     }
 
     /**
-     * Handles incoming messages from users.
-     * It processes the user's input to schedule a message with a title, content, destination channel,
-     * repeat interval, and time. It also handles cancellation of the scheduling process.
+     * Advances a session with the user's next answer.
      *
-     * @param event The MessageReceivedEvent containing the message and context.
+     * @param key     The key of the session.
+     * @param session The session the message belongs to.
+     * @param event   The MessageReceivedEvent containing the answer.
      */
-    @Override
-    public void onMessageReceived(@NotNull MessageReceivedEvent event) {
-        if (!event.getAuthor().equals(user)) {
-            System.out.println("Ignoring message from different user: " + event.getAuthor().getName());
-            return;
-        }
-
+    private void handleInput(SessionKey key, Session session, MessageReceivedEvent event) {
         String message = event.getMessage().getContentRaw().trim();
         TextChannel channel = event.getChannel().asTextChannel();
         System.out.println("Message received: " + message);
 
-        if (title == null) {
+        if (message.equalsIgnoreCase("cancel")) {
+            cancel(channel, key);
+            return;
+        }
+
+        if (!session.titleSet) {
             System.out.println("Awaiting title input...");
-            if (message.equalsIgnoreCase("cancel")) {
-                cancel(channel);
-                return;
-            }
-            title = message.equalsIgnoreCase("none") ? null : message;
-            System.out.println("Title set to: " + title);
+            session.title = message.equalsIgnoreCase("none") ? null : message;
+            session.titleSet = true;
+            System.out.println("Title set to: " + session.title);
             askForContent(channel);
-        } else if (content == null) {
+        } else if (session.content == null) {
             System.out.println("Awaiting content input...");
-            if (message.equalsIgnoreCase("cancel")) {
-                cancel(channel);
-                return;
-            }
-            content = message;
-            System.out.println("Content set to: " + content);
+            session.content = message;
+            System.out.println("Content set to: " + session.content);
             askForChannel(channel);
-        } else if (destination == null) {
+        } else if (session.destination == null) {
             System.out.println("Awaiting channel input...");
-            if (message.equalsIgnoreCase("cancel")) {
-                cancel(channel);
-                return;
-            }
-            destination = bot.getShardManager().getTextChannelById(message.replaceAll("[^0-9]", ""));
-            if (destination == null) {
+            session.destination = bot.getShardManager().getTextChannelById(message.replaceAll("[^0-9]", ""));
+            if (session.destination == null) {
                 System.out.println("Invalid channel entered: " + message);
                 channel.sendMessage("Invalid channel. Please try again.").queue();
                 return;
             }
-            System.out.println("Destination channel set to: " + destination.getName());
+            System.out.println("Destination channel set to: " + session.destination.getName());
             askForRepeat(channel);
-        } else if (repeat == -1) {
+        } else if (session.repeat == -1) {
             System.out.println("Awaiting repeat interval input...");
-            if (message.equalsIgnoreCase("cancel")) {
-                cancel(channel);
-                return;
-            }
             if (message.equalsIgnoreCase("none")) {
-                repeat = 0;
+                session.repeat = 0;
                 System.out.println("No repeat interval selected. Repeat set to 0.");
             } else {
-                repeat = parseRepeatInterval(message);
-                System.out.println("Repeat interval set to: " + repeat + " seconds.");
+                session.repeat = parseRepeatInterval(message);
+                System.out.println("Repeat interval set to: " + session.repeat + " seconds.");
             }
-            awaitingTimeInput = true;
             askForTime(channel);
-        } else if (awaitingTimeInput && time == null) {
+        } else if (session.time == null) {
             System.out.println("Awaiting time input...");
-            if (message.equalsIgnoreCase("cancel")) {
-                cancel(channel);
-                return;
-            }
-
             try {
                 SimpleDateFormat formatter = new SimpleDateFormat("MM/dd hh:mma", Locale.ENGLISH);
                 Date date = formatter.parse(message.toUpperCase().trim());
@@ -265,10 +166,10 @@ public class MessageSchedulerListener extends ListenerAdapter {
                     localDateTime = localDateTime.withYear(LocalDateTime.now().getYear());
                 }
 
-                time = localDateTime;
-                awaitingTimeInput = false;
-                System.out.println("Successfully parsed time: " + time);
-                scheduleMessage(channel);
+                session.time = localDateTime;
+                System.out.println("Successfully parsed time: " + session.time);
+                sessions.remove(key, session);
+                scheduleMessage(channel, session);
             } catch (ParseException e) {
                 System.out.println("Failed to parse time: " + message);
                 channel.sendMessage("Invalid time format. Please use MM/DD hh:mmam/pm").queue();
@@ -348,58 +249,56 @@ public class MessageSchedulerListener extends ListenerAdapter {
     /**
      * Schedules the message to be sent at the specified time.
      * This method formats the message and schedules it for sending, including handling repeat intervals.
+     * The message is stored on the bot's thread pool, so the message pipeline is not kept waiting on the database.
      *
      * @param schedulingChannel The channel where the scheduling confirmation will be sent.
+     * @param session           The completed session describing the message.
      */
-    private void scheduleMessage(TextChannel schedulingChannel) {
+    private void scheduleMessage(TextChannel schedulingChannel, Session session) {
         System.out.println("Scheduling message...");
 
-        StringBuilder formattedMessage = new StringBuilder();
-        if (title != null) {
-            formattedMessage.append("**").append(title).append("**\n\n");
-        }
-        formattedMessage.append(content);
-
-        long delay = Duration.between(LocalDateTime.now(), time).getSeconds();
-
-        if (delay <= 0) {
-            System.out.println("The scheduled time is in the past or right now. Setting delay to 1 second.");
-            delay = 1;
-        }
-
+        long delay = Math.max(1, Duration.between(LocalDateTime.now(), session.time).getSeconds());
         System.out.println("Message scheduled to send in: " + delay + " seconds");
 
-        GuildData guildData = GuildData.get(schedulingChannel.getGuild(), bot);
-        guildData.getScheduledMessagesCollection().insertOne(new Document("userId", user.getId())
-                .append("channelId", destination.getId())
-                .append("title", title)
-                .append("content", content)
-                .append("repeat", repeat == 0 ? null : String.valueOf(repeat))
-                .append("time", time.toString()));
+        Document messageDoc = new Document("userId", session.user.getId())
+                .append("channelId", session.destination.getId())
+                .append("title", session.title)
+                .append("content", session.content)
+                .append("repeat", session.repeat == 0 ? null : String.valueOf(session.repeat))
+                .append("time", session.time.toString());
+        GuildData.whenLoaded(schedulingChannel.getGuild(), bot, guildData -> {
+            try {
+                guildData.getScheduledMessagesCollection().insertOne(messageDoc);
+            } catch (MongoException e) {
+                System.err.println("Failed to save scheduled message: " + e.getMessage());
+                schedulingChannel.sendMessage("Failed to save the scheduled message. Please try again.").queue();
+                return;
+            }
+            System.out.println("Scheduled message saved to the database.");
+            confirm(schedulingChannel, session, messageDoc);
+        });
+    }
 
-        System.out.println("Scheduled message saved to the database.");
+    /**
+     * Confirms a stored message in the scheduling channel and hands it to the scheduler.
+     *
+     * @param schedulingChannel The channel where the scheduling confirmation will be sent.
+     * @param session           The completed session describing the message.
+     * @param messageDoc        The stored message.
+     */
+    private void confirm(TextChannel schedulingChannel, Session session, Document messageDoc) {
 
         String confirmationMessage = "**Message Scheduled**\n" +
-                "**Title:** " + (title != null ? title : "None") + "\n" +
-                "**Content:** " + content + "\n" +
-                "**Destination Channel:** " + destination.getAsMention() + "\n" +
-                "**First Message Time:** " + time.format(java.time.format.DateTimeFormatter.ofPattern("MM/dd HH:mma")) + "\n" +
-                "**Message Interval:** " + (repeat == 0 ? "not repeating" : "every " + repeat + " seconds") + "\n";
+                "**Title:** " + (session.title != null ? session.title : "None") + "\n" +
+                "**Content:** " + session.content + "\n" +
+                "**Destination Channel:** " + session.destination.getAsMention() + "\n" +
+                "**First Message Time:** " + session.time.format(java.time.format.DateTimeFormatter.ofPattern("MM/dd HH:mma")) + "\n" +
+                "**Message Interval:** " + (session.repeat == 0 ? "not repeating" : "every " + session.repeat + " seconds") + "\n";
 
         schedulingChannel.sendMessage(confirmationMessage).queue();
 
-        scheduler.schedule(() -> {
-            System.out.println("Sending scheduled message to channel: " + destination.getName());
-            destination.sendMessage(formattedMessage.toString()).queue();
-        }, delay, TimeUnit.SECONDS);
-
-        if (repeat > 0) {
-            System.out.println("Message will repeat every: " + repeat + " seconds");
-            scheduler.scheduleAtFixedRate(() -> {
-                System.out.println("Sending repeated message to channel: " + destination.getName());
-                destination.sendMessage(formattedMessage.toString()).queue();
-            }, delay, repeat, TimeUnit.SECONDS);
-        }
+        // Hand the stored message to the scheduler, which sends it and every repeat
+        bot.getMessageScheduler().schedule(MessageScheduler.ScheduledMessage.from(schedulingChannel.getGuild().getIdLong(), messageDoc));
     }
 
     /**
@@ -426,13 +325,52 @@ public class MessageSchedulerListener extends ListenerAdapter {
 
     /**
      * Cancels the message scheduling process.
-     * This method sends a cancellation message to the user and removes the listener.
+     * This method sends a cancellation message to the user and closes their session.
      *
      * @param channel The channel where the cancellation message will be sent.
+     * @param key     The key of the session to close.
      */
-    private void cancel(TextChannel channel) {
+    private void cancel(TextChannel channel, SessionKey key) {
         System.out.println("Cancelling message scheduling...");
+        sessions.remove(key);
         channel.sendMessage("Message scheduling has been canceled.").queue();
-        bot.getShardManager().removeEventListener(this);
+    }
+
+    /**
+     * Closes every session that has been idle for longer than the session timeout.
+     */
+    private void expireSessions() {
+        long cutoff = System.currentTimeMillis() - SESSION_TIMEOUT;
+        sessions.forEach((key, session) -> {
+            if (session.lastActivity < cutoff && sessions.remove(key, session)) {
+                TextChannel channel = bot.getShardManager().getTextChannelById(key.channelId());
+                if (channel != null) {
+                    channel.sendMessage(session.user.getAsMention() + " message scheduling timed out.").queue();
+                }
+            }
+        });
+    }
+
+    /**
+     * Identifies the session of one user in one channel.
+     */
+    private record SessionKey(long channelId, long userId) { }
+
+    /**
+     * The answers a user has given so far while scheduling a message.
+     */
+    private static final class Session {
+        private final User user;
+        private volatile long lastActivity = System.currentTimeMillis();
+        private boolean titleSet;
+        private String title;
+        private String content;
+        private TextChannel destination;
+        private long repeat = -1;
+        private LocalDateTime time;
+
+        private Session(User user) {
+            this.user = user;
+        }
     }
 }
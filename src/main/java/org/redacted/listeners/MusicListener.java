@@ -7,10 +7,14 @@ import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.NonAllocatingAudioFrameBuffer;
 import dev.lavalink.youtube.YoutubeAudioSourceManager;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.GuildVoiceState;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
+import net.dv8tion.jda.api.events.guild.voice.GuildVoiceUpdateEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.managers.AudioManager;
@@ -21,17 +25,25 @@ import org.redacted.Handlers.MusicHandler;
 import org.redacted.Redacted;
 import org.redacted.util.SecurityUtils;
 import org.redacted.util.embeds.EmbedUtils;
+import org.redacted.util.musicPlayer.AudioEngineProfile;
+import org.redacted.util.musicPlayer.QueueLog;
+import org.redacted.util.musicPlayer.TrackResolutionCache;
+import org.redacted.util.musicPlayer.VoiceCapacityGovernor;
 import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 import se.michaelthelin.spotify.model_objects.specification.Track;
 
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Module for music player backend and voice channel events.
@@ -41,6 +53,13 @@ import java.util.concurrent.TimeUnit;
 public class MusicListener extends ListenerAdapter {
     private final Redacted bot;
     private final @NotNull AudioPlayerManager playerManager;
+    private final TrackResolutionCache resolutionCache;
+    private final VoiceCapacityGovernor governor;
+
+    /** Spotify tracks resolved to YouTube at once while importing a playlist. */
+    private static final int RESOLVE_PARALLELISM = 4;
+    private static final int PLAYLIST_PAGE_SIZE = 100;
+    private static final int MAX_PLAYLIST_TRACKS = 500;
 
     /** Music executor for handling music-related tasks asynchronously.
      * Core pool size of 2, maximum pool size of 8, and a keep-alive time of 60 seconds.
@@ -56,12 +75,25 @@ public class MusicListener extends ListenerAdapter {
                         return t;
                     });
 
+    /** Resumes saved queues after a restart one guild at a time, apart from the executor /play uses. */
+    private static final ExecutorService RESUME_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "music-resume");
+        t.setDaemon(true);
+        return t;
+    });
+
     /**
      * Setup audio player manager.
      */
     public MusicListener(Redacted bot) {
         this.bot = bot;
         this.playerManager = new DefaultAudioPlayerManager();
+        AudioEngineProfile.fromConfig(bot.getConfig()).apply(playerManager);
+        this.governor = VoiceCapacityGovernor.fromConfig(bot.getConfig());
+
+        // Buffer decoded frames in a preallocated ring, so handlers can copy them into their own reused frame
+        playerManager.getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
+        this.resolutionCache = new TrackResolutionCache(bot.getDatabase().getSpotifyTrackCollection());
 
         // Add YouTube support
         playerManager.registerSourceManager(new YoutubeAudioSourceManager(true)); // true = allow search
@@ -111,11 +143,16 @@ public class MusicListener extends ListenerAdapter {
         AudioChannel channel = Objects.requireNonNull(event.getMember().getVoiceState()).getChannel();
         if (settings.musicHandler == null || !event.getGuild().getAudioManager().isConnected()) {
             assert channel != null;
+            if (!governor.tryAcquire(event.getGuild().getIdLong())) {
+                String text = "The music player is at capacity right now, please try again in a few minutes.";
+                event.replyEmbeds(EmbedUtils.createError(text)).setEphemeral(true).queue();
+                return null;
+            }
             joinChannel(settings, channel, event.getChannel().asTextChannel());
         }
         // Check if music is playing in this guild
         if (!skipQueueCheck) {
-            if (settings.musicHandler == null || settings.musicHandler.getQueue().isEmpty()) {
+            if (settings.musicHandler == null || settings.musicHandler.isQueueEmpty()) {
                 String text = ":sound: There are no songs in the queue!";
                 event.replyEmbeds(EmbedUtils.createDefault(text)).queue();
                 return null;
@@ -132,20 +169,161 @@ public class MusicListener extends ListenerAdapter {
 
     /**
      * Joins the specified voice channel and sets up the music handler.
+     * If the channel can't be joined, the guild's voice session is released before rethrowing.
      *
      * @param guildData The guild data for the current guild.
      * @param channel   The audio channel to join.
      * @param logChannel The text channel to log music events.
      */
     public void joinChannel(@NotNull GuildData guildData, @NotNull AudioChannel channel, TextChannel logChannel) {
-        AudioManager manager = channel.getGuild().getAudioManager();
-        if (guildData.musicHandler == null) {
-            guildData.musicHandler = new MusicHandler(playerManager.createPlayer());
+        long guildId = channel.getGuild().getIdLong();
+        try {
+            AudioManager manager = channel.getGuild().getAudioManager();
+            if (guildData.musicHandler == null) {
+                guildData.musicHandler = new MusicHandler(playerManager.createPlayer(), new QueueLog(bot.getDatabase(), guildId));
+            }
+            manager.setSendingHandler(guildData.musicHandler);
+            governor.attach(guildId, guildData.musicHandler);
+            if (guildData.musicHandler.getQueueLog() != null && logChannel != null) {
+                guildData.musicHandler.getQueueLog().setChannels(channel.getIdLong(), logChannel.getIdLong());
+            }
+            Objects.requireNonNull(guildData.musicHandler).setLogChannel(logChannel);
+            guildData.musicHandler.setPlayChannel(channel);
+            manager.openAudioConnection(channel);
+        } catch (RuntimeException e) {
+            governor.release(guildId);
+            throw e;
         }
-        manager.setSendingHandler(guildData.musicHandler);
-        Objects.requireNonNull(guildData.musicHandler).setLogChannel(logChannel);
-        guildData.musicHandler.setPlayChannel(channel);
-        manager.openAudioConnection(channel);
+    }
+
+    /**
+     * Joins the voice channel of the member who ran a command, without replying to it.
+     * Used once a session that had to wait for capacity has been admitted.
+     *
+     * @param event The slash command event containing command data.
+     * @return The music handler, or null if the member is no longer in a voice channel.
+     */
+    @Nullable
+    public MusicHandler join(@NotNull SlashCommandInteractionEvent event) {
+        GuildVoiceState voiceState = Objects.requireNonNull(event.getMember()).getVoiceState();
+        AudioChannel channel = voiceState == null ? null : voiceState.getChannel();
+        if (channel == null) return null;
+        GuildData settings = GuildData.get(event.getGuild(), bot);
+        joinChannel(settings, channel, event.getChannel().asTextChannel());
+        return settings.musicHandler;
+    }
+
+    /**
+     * Resumes the saved queues of the given guilds after a restart. The guilds with a saved queue
+     * are found first, so only those have their data loaded and their queue read.
+     *
+     * @param guilds The guilds the bot is in.
+     */
+    public void resumeSaved(@NotNull Collection<Guild> guilds) {
+        RESUME_EXECUTOR.execute(() -> {
+            Set<Long> saved;
+            try {
+                saved = QueueLog.findSaved(bot.getDatabase(), guilds.stream().map(Guild::getIdLong).toList());
+            } catch (RuntimeException e) {
+                System.err.println("Failed to find saved music queues: " + e.getMessage());
+                return;
+            }
+            System.out.println("Resuming saved music queues for " + saved.size() + " guilds");
+            for (Guild guild : guilds) {
+                if (!saved.contains(guild.getIdLong())) continue;
+                GuildData.load(guild, bot).thenAcceptAsync(guildData -> resume(guild, guildData), RESUME_EXECUTOR)
+                        .exceptionally(e -> {
+                            System.err.println("Failed to resume music for guild " + guild.getId() + ": " + e.getMessage());
+                            return null;
+                        });
+            }
+        });
+    }
+
+    /**
+     * Resumes the queue a guild was playing before a restart, from the position it was at.
+     * Nothing is resumed if its voice or text channel is gone or the node has no room, nor if
+     * music was started in the guild while the saved queue was loading.
+     *
+     * @param guild     The guild to resume.
+     * @param guildData The guild's data.
+     */
+    public void resume(@NotNull Guild guild, @NotNull GuildData guildData) {
+        QueueLog log = new QueueLog(bot.getDatabase(), guild.getIdLong());
+        QueueLog.SavedQueue saved = log.read();
+        if (saved == null) return;
+
+        AudioChannel channel = guild.getChannelById(AudioChannel.class, saved.voiceChannelId());
+        TextChannel logChannel = guild.getTextChannelById(saved.textChannelId());
+        if (channel == null || logChannel == null) {
+            log.clear();
+            return;
+        }
+        if (!governor.tryAcquire(guild.getIdLong())) {
+            System.out.println("No voice capacity to resume music for guild " + guild.getId());
+            return;
+        }
+
+        List<CompletableFuture<AudioTrack>> loads = new ArrayList<>(saved.tracks().size());
+        for (QueueLog.Entry entry : saved.tracks()) {
+            loads.add(load(entry.uri()).thenApply(track -> {
+                if (track != null) track.setUserData(entry.requester());
+                return track;
+            }));
+        }
+        CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            List<AudioTrack> tracks = loads.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+            if (tracks.isEmpty()) {
+                governor.release(guild.getIdLong());
+                log.clear();
+                return;
+            }
+            // Someone started a new queue while the saved one was loading, which replaced it
+            if (guildData.musicHandler != null && !guildData.musicHandler.isQueueEmpty()) {
+                System.out.println("Music was started in guild " + guild.getId() + " before its queue was resumed");
+                return;
+            }
+            if (loads.get(0).join() == tracks.get(0) && tracks.get(0).isSeekable()) {
+                tracks.get(0).setPosition(saved.position());
+            }
+            joinChannel(guildData, channel, logChannel);
+            if (!guildData.musicHandler.restore(tracks)) {
+                System.out.println("Music was started in guild " + guild.getId() + " before its queue was resumed");
+                return;
+            }
+            System.out.println("Resumed " + tracks.size() + " queued tracks for guild " + guild.getId());
+        }).exceptionally(e -> {
+            System.err.println("Failed to resume music for guild " + guild.getId() + ": " + e.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Releases a guild's voice session when the bot leaves its voice channel, however it left,
+     * and picks playback back up where it stopped when the bot is back in one.
+     *
+     * @param event The voice update event.
+     */
+    @Override
+    public void onGuildVoiceUpdate(@NotNull GuildVoiceUpdateEvent event) {
+        if (event.getMember().getIdLong() != event.getJDA().getSelfUser().getIdLong()) return;
+        if (event.getChannelLeft() != null && event.getChannelJoined() == null) {
+            governor.release(event.getGuild().getIdLong());
+        } else if (event.getChannelJoined() != null) {
+            GuildData.whenLoaded(event.getGuild(), bot, guildData -> {
+                MusicHandler music = guildData.getMusicHandler();
+                if (music != null) music.resume();
+            });
+        }
+    }
+
+    /**
+     * Get the governor admitting voice sessions on this node.
+     *
+     * @return the voice capacity governor.
+     */
+    public VoiceCapacityGovernor getGovernor() {
+        return governor;
     }
 
     /**
@@ -200,20 +378,20 @@ public class MusicListener extends ListenerAdapter {
                 }
 
                 if (url.contains("/track/")) {
-                    Track track = api.getTrack(id).build().execute(); // OK here (off-thread)
-                    url = "ytsearch:" + track.getName() + " " + track.getArtists()[0].getName();
-                    // fall through to loadItemOrdered below
+                    // A track that has been queued before is loaded straight from its video,
+                    // and searched for again if that video can no longer be loaded
+                    String identifier = resolutionCache.get(id);
+                    if (identifier != null) {
+                        enqueueQueryInOrder(event, music, videoUrl(identifier), userID, /*silent*/ false, id,
+                                () -> MUSIC_EXECUTOR.execute(() -> enqueueSpotifyTrack(event, api, music, id, userID)));
+                        return;
+                    }
+                    enqueueSpotifyTrack(event, api, music, id, userID);
+                    return;
                 } else if (url.contains("/playlist/")) {
-                    Playlist playlist = api.getPlaylist(id).build().execute();
+                    Playlist playlist = api.getPlaylist(id).fields("name").build().execute();
                     event.getHook().editOriginal(":notes: | Adding playlist `" + playlist.getName() + "`...").queue();
-
-                    // Add each track asynchronously but in-order per guild
-                    for (PlaylistTrack item : playlist.getTracks().getItems()) {
-                        Track st = (Track) item.getTrack();
-                        String ytQuery = "ytsearch:" + st.getName() + " " + st.getArtists()[0].getName();
-                        enqueueQueryInOrder(event, music, ytQuery, userID, /*silent*/ true);
-                    }
-                    event.getChannel().sendMessage(":white_check_mark: Playlist queued!").queue();
+                    importPlaylist(event, api, music, id, userID);
                     return;
                 } else {
                     event.getHook().editOriginal("Spotify link type not supported yet.").queue();
@@ -227,7 +405,160 @@ public class MusicListener extends ListenerAdapter {
         }
 
         // Normal path: URL or ytsearch
-        enqueueQueryInOrder(event, music, url, userID, /*silent*/ false);
+        enqueueQueryInOrder(event, music, url, userID, /*silent*/ false, null, null);
+    }
+
+    /**
+     * Searches YouTube for a Spotify track and enqueues the result.
+     * Runs on the music executor, since the Spotify lookup blocks.
+     *
+     * @param event     The slash command interaction event.
+     * @param api       The Spotify API client.
+     * @param music     The music handler to enqueue the track in.
+     * @param spotifyId The Spotify track ID.
+     * @param userID    The ID of the user that added the track.
+     */
+    private void enqueueSpotifyTrack(SlashCommandInteractionEvent event, SpotifyApi api, MusicHandler music,
+                                     String spotifyId, String userID) {
+        try {
+            Track track = api.getTrack(spotifyId).build().execute();
+            enqueueQueryInOrder(event, music, searchQuery(track), userID, /*silent*/ false, spotifyId, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            event.getHook().editOriginal("Failed to resolve Spotify link.").queue();
+        }
+    }
+
+    /**
+     * Imports every track of a Spotify playlist. The playlist is read page by page and its
+     * tracks are resolved to YouTube {@value #RESOLVE_PARALLELISM} at a time, tracks resolved
+     * before being loaded from their video without a search. Each track is enqueued once it and
+     * every track before it have been loaded, so the queue keeps the playlist's order.
+     * Runs on the music executor, which it holds while waiting for resolution permits.
+     *
+     * @param event      The slash command interaction event.
+     * @param api        The Spotify API client.
+     * @param music      The music handler to enqueue the tracks in.
+     * @param playlistId The Spotify playlist ID.
+     * @param userID     The ID of the user that added the playlist.
+     */
+    private void importPlaylist(SlashCommandInteractionEvent event, SpotifyApi api, MusicHandler music,
+                                String playlistId, String userID) throws Exception {
+        List<Track> tracks = new ArrayList<>();
+        Paging<PlaylistTrack> page = null;
+        do {
+            // Skipped items still take up offsets, so page on from where the last page ended
+            int offset = page == null ? 0 : page.getOffset() + page.getItems().length;
+            page = api.getPlaylistsItems(playlistId).offset(offset).limit(PLAYLIST_PAGE_SIZE).build().execute();
+            for (PlaylistTrack item : page.getItems()) {
+                // Episodes and unavailable tracks can't be searched for
+                if (item.getTrack() instanceof Track track && tracks.size() < MAX_PLAYLIST_TRACKS) {
+                    tracks.add(track);
+                }
+            }
+        } while (page.getNext() != null && page.getItems().length > 0 && tracks.size() < MAX_PLAYLIST_TRACKS);
+
+        Map<String, String> resolved = resolutionCache.getAll(tracks.stream()
+                .map(Track::getId).filter(Objects::nonNull).distinct().toList());
+
+        Semaphore permits = new Semaphore(RESOLVE_PARALLELISM);
+        AtomicInteger added = new AtomicInteger();
+        CompletableFuture<Void> inOrder = CompletableFuture.completedFuture(null);
+        for (Track track : tracks) {
+            permits.acquireUninterruptibly();
+            CompletableFuture<AudioTrack> loaded = resolve(track, track.getId() == null ? null : resolved.get(track.getId()));
+            loaded.whenComplete((audioTrack, error) -> permits.release());
+
+            inOrder = inOrder.thenCombine(loaded.exceptionally(error -> null), (ignored, audioTrack) -> {
+                if (audioTrack != null) {
+                    audioTrack.setUserData(userID);
+                    music.enqueue(audioTrack);
+                    added.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        inOrder.whenComplete((ignored, error) -> event.getChannel()
+                .sendMessage(":white_check_mark: Playlist queued! (`" + added.get() + "/" + tracks.size() + "` songs)").queue());
+    }
+
+    /**
+     * Loads the YouTube track for a Spotify track. A track resolved before is loaded from its
+     * video, falling back to a search if the video can no longer be loaded. A track found by
+     * searching is remembered for next time.
+     *
+     * @param track      The Spotify track.
+     * @param identifier The YouTube video the track was resolved to before, or null.
+     * @return A future completed with the loaded track, or null if none was found.
+     */
+    private CompletableFuture<AudioTrack> resolve(Track track, @Nullable String identifier) {
+        String spotifyId = track.getId();
+        if (identifier != null) {
+            return load(videoUrl(identifier)).thenCompose(audioTrack -> {
+                if (audioTrack != null) return CompletableFuture.completedFuture(audioTrack);
+                resolutionCache.remove(spotifyId);
+                return resolve(track, null);
+            });
+        }
+        return load(searchQuery(track)).thenApply(audioTrack -> {
+            if (audioTrack != null && spotifyId != null) remember(spotifyId, audioTrack);
+            return audioTrack;
+        });
+    }
+
+    /**
+     * Loads a single track without ordering it against other loads.
+     *
+     * @param query The search query or URL.
+     * @return A future completed with the first track found, or null if none was found.
+     */
+    private CompletableFuture<AudioTrack> load(String query) {
+        CompletableFuture<AudioTrack> future = new CompletableFuture<>();
+        playerManager.loadItem(query, new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(@NotNull AudioTrack audioTrack) {
+                future.complete(audioTrack);
+            }
+
+            @Override
+            public void playlistLoaded(@NotNull AudioPlaylist playlist) {
+                AudioTrack selected = playlist.getSelectedTrack();
+                future.complete(selected != null ? selected : playlist.getTracks().isEmpty() ? null : playlist.getTracks().get(0));
+            }
+
+            @Override
+            public void noMatches() {
+                future.complete(null);
+            }
+
+            @Override
+            public void loadFailed(FriendlyException e) {
+                System.err.println("Failed to load " + query + ": " + e.getMessage());
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Remembers the YouTube video a Spotify track was resolved to.
+     *
+     * @param spotifyId  The Spotify track ID.
+     * @param audioTrack The track the search found.
+     */
+    private void remember(String spotifyId, AudioTrack audioTrack) {
+        if (audioTrack.getSourceManager() != null && "youtube".equals(audioTrack.getSourceManager().getSourceName())) {
+            resolutionCache.put(spotifyId, audioTrack.getIdentifier());
+        }
+    }
+
+    private static String searchQuery(Track track) {
+        return "ytsearch:" + track.getName() + " " + track.getArtists()[0].getName();
+    }
+
+    private static String videoUrl(String identifier) {
+        return "https://www.youtube.com/watch?v=" + identifier;
     }
 
     /** Enqueues a query in order for the specified music handler.
@@ -237,15 +568,20 @@ public class MusicListener extends ListenerAdapter {
      * @param query   The search query or URL.
      * @param userID    The ID of the user that added this track.
      * @param silent  If true, suppresses user feedback messages.
+     * @param spotifyId The Spotify track the query is for, remembered once loaded and forgotten if it can't be, or null.
+     * @param onMiss    Run instead of reporting the failure if nothing could be loaded, or null.
      */
     private void enqueueQueryInOrder(SlashCommandInteractionEvent event,
                                      MusicHandler music,
                                      String query,
                                      String userID,
-                                     boolean silent) {
+                                     boolean silent,
+                                     @Nullable String spotifyId,
+                                     @Nullable Runnable onMiss) {
         playerManager.loadItemOrdered(music, query, new AudioLoadResultHandler() {
             @Override
             public void trackLoaded(@NotNull AudioTrack audioTrack) {
+                if (spotifyId != null) remember(spotifyId, audioTrack);
                 audioTrack.setUserData(userID);
                 music.enqueue(audioTrack);
                 if (!silent) {
@@ -281,7 +617,10 @@ public class MusicListener extends ListenerAdapter {
              */
             @Override
             public void noMatches() {
-                if (!silent) {
+                if (spotifyId != null) resolutionCache.remove(spotifyId);
+                if (onMiss != null) {
+                    onMiss.run();
+                } else if (!silent) {
                     event.getHook().setEphemeral(true).editOriginal("No results for that query.").queue();
                 }
             }
@@ -292,7 +631,10 @@ public class MusicListener extends ListenerAdapter {
              */
             @Override
             public void loadFailed(FriendlyException e) {
-                if (!silent) {
+                if (spotifyId != null) resolutionCache.remove(spotifyId);
+                if (onMiss != null) {
+                    onMiss.run();
+                } else if (!silent) {
                     event.getHook().setEphemeral(true).editOriginal("Load failed: " + e.getMessage()).queue();
                 }
             }
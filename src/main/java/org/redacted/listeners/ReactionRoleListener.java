@@ -1,6 +1,5 @@
 package org.redacted.listeners;
 
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.emoji.EmojiUnion;
@@ -11,6 +10,7 @@ import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.bson.conversions.Bson;
 import org.jetbrains.annotations.NotNull;
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Database.models.SavedEmbed;
 import org.redacted.Roles.getRolesByName;
 
@@ -76,7 +76,7 @@ public class ReactionRoleListener extends ListenerAdapter {
         System.out.println("Message ID: " + messageId);
         System.out.println("Emoji key: " + emojiKey);
 
-        MongoCollection<SavedEmbed> collection =
+        GuildCollection<SavedEmbed> collection =
                 GuildData.getDatabase().getSavedEmbedsCollection(guild.getIdLong());
 
         Bson filter = Filters.eq("messageId", messageId);
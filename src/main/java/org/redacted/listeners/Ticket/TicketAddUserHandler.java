@@ -4,32 +4,31 @@ import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.jetbrains.annotations.NotNull;
+import org.redacted.listeners.MessagePipeline;
 
 import java.util.EnumSet;
 
 /**
  * TicketAddUserHandler Class
  * This class handles the addition of users to ticket channels in a Discord server.
- * It listens for messages that start with "-ticket adduser" and adds the mentioned user to the ticket channel.
+ * It handles the "-ticket adduser" messages the MessagePipeline passes on and adds the mentioned user to the ticket channel.
  *
  * @author Derrick Eberlein
  */
-public class TicketAddUserHandler extends ListenerAdapter {
+public class TicketAddUserHandler implements MessagePipeline.Handler {
 
     /**
      * Handles incoming messages to check for the "-ticket adduser" command.
      * If the command is detected, it adds the mentioned user to the ticket channel.
      *
-     * @param event The MessageReceivedEvent containing the message and context.
+     * @param context The message as classified by the pipeline.
+     * @param event   The MessageReceivedEvent containing the message and context.
      */
     @Override
-    public void onMessageReceived(@NotNull MessageReceivedEvent event) {
-        String[] args = event.getMessage().getContentRaw().split(" ");
-        if (!args[0].equalsIgnoreCase("-ticket") || args.length < 3 || !args[1].equalsIgnoreCase("adduser")) return;
-
-        TextChannel channel = event.getChannel().asTextChannel();
+    public void handle(@NotNull MessagePipeline.MessageContext context, @NotNull MessageReceivedEvent event) {
+        if (context.arguments().isEmpty()) return;
+        if (!(event.getChannel() instanceof TextChannel channel)) return;
         String channelName = channel.getName();
         if (!channelName.matches("\\d+-.*")) {
             channel.sendMessage("❌ This doesn't look like a ticket channel.").queue();
@@ -1,13 +1,13 @@
 package org.redacted.listeners.Ticket;
 
-import com.mongodb.client.MongoCollection;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.utils.FileUpload;
 import org.bson.Document;
 import org.jetbrains.annotations.NotNull;
+import org.redacted.Database.GuildCollection;
+import org.redacted.listeners.MessagePipeline;
 import org.redacted.Database.Data.GuildData;
 import org.redacted.Database.models.Ticket;
 import org.redacted.Redacted;
@@ -23,12 +23,12 @@ import java.util.zip.ZipOutputStream;
 /**
  * TicketCloseHandler Class
  * This class handles the closing of ticket channels in a Discord server.
- * It listens for messages that start with "-ticket close" and processes the ticket closure,
+ * It handles the "-ticket close" messages the MessagePipeline passes on and processes the ticket closure,
  * including saving transcripts and media attachments.
  *
  * @author Derrick Eberlein
  */
-public class TicketCloseHandler extends ListenerAdapter {
+public class TicketCloseHandler implements MessagePipeline.Handler {
 
     private final Redacted bot;
 
@@ -46,18 +46,16 @@ public class TicketCloseHandler extends ListenerAdapter {
      * If the command is detected, it processes the ticket closure, saves transcripts,
      * and handles media attachments.
      *
-     * @param event The MessageReceivedEvent containing the message and context.
+     * @param context The message as classified by the pipeline.
+     * @param event   The MessageReceivedEvent containing the message and context.
      */
     @Override
-    public void onMessageReceived(@NotNull MessageReceivedEvent event) {
-        String[] args = event.getMessage().getContentRaw().split(" ", 3);
-        if (!args[0].equalsIgnoreCase("-ticket") || !args[1].equalsIgnoreCase("close")) return;
-
-        TextChannel channel = event.getChannel().asTextChannel();
+    public void handle(@NotNull MessagePipeline.MessageContext context, @NotNull MessageReceivedEvent event) {
+        if (!(event.getChannel() instanceof TextChannel channel)) return;
         Guild guild = event.getGuild();
         Member author = event.getMember();
 
-        String closeReason = args.length >= 3 ? args[2] : "No reason provided.";
+        String closeReason = context.arguments().isEmpty() ? "No reason provided." : context.arguments();
         String channelName = channel.getName();
         if (!channelName.matches("\\d+-.*")) {
             channel.sendMessage("❌ This doesn't look like a ticket channel.").queue();
@@ -67,7 +65,7 @@ public class TicketCloseHandler extends ListenerAdapter {
         String ticketNumber = channelName.split("-")[0];
 
         // Fetch ticket data
-        MongoCollection<Ticket> collection = GuildData.getDatabase().getTicketCollection(guild.getIdLong());
+        GuildCollection<Ticket> collection = GuildData.getDatabase().getTicketCollection(guild.getIdLong());
         Ticket ticket = collection.find(new Document("ticketNumber", Integer.parseInt(ticketNumber))).first();
 
         if (ticket == null) {
@@ -6,7 +6,6 @@ import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.concrete.Category;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.jetbrains.annotations.NotNull;
 import org.redacted.Database.Data.GuildData;
 import org.redacted.Database.models.Ticket;
@@ -15,19 +14,17 @@ import org.redacted.Redacted;
 import java.awt.*;
 import java.time.Instant;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * TicketListener Class
- * This class listens for messages in a specific channel to open tickets for user feedback or reporting.
+ * This class handles the "-ticket open" messages the MessagePipeline passes on, in a specific channel,
+ * to open tickets for user feedback or reporting.
  * It creates a private text channel for the user and admins to discuss the ticket.
  *
  * @author Derrick Eberlein
  */
-public class TicketListener extends ListenerAdapter {
+public class TicketListener implements MessagePipeline.Handler {
 
-    private static final Pattern TICKET_OPEN_PATTERN = Pattern.compile("^-ticket open (.+)$", Pattern.CASE_INSENSITIVE);
     private static final String SUBMIT_CHANNEL_NAME = "submit-ticket";
     private static final String CATEGORY_NAME = "Private Feedback / Reporting";
     private static final String ADMIN_ROLE_NAME = "Admin";
@@ -41,23 +38,19 @@ public class TicketListener extends ListenerAdapter {
     }
 
     /**
-     * Handles incoming messages to check for the "-ticket open" command.
-     * If the command is detected, it creates a new ticket channel for the user.
+     * Handles the "-ticket open" command.
+     * If it was sent in the submit channel with a reason, it creates a new ticket channel for the user.
      *
-     * @param event The MessageReceivedEvent containing the message and context.
+     * @param context The message as classified by the pipeline, whose arguments are the reason.
+     * @param event   The MessageReceivedEvent containing the message and context.
      */
     @Override
-    public void onMessageReceived(@NotNull MessageReceivedEvent event) {
-        if (event.getAuthor().isBot()) return;
-        if (!event.isFromGuild()) return;
-
-        TextChannel channel = event.getChannel().asTextChannel();
+    public void handle(@NotNull MessagePipeline.MessageContext context, @NotNull MessageReceivedEvent event) {
+        if (!(event.getChannel() instanceof TextChannel channel)) return;
         if (!channel.getName().equalsIgnoreCase(SUBMIT_CHANNEL_NAME)) return;
 
-        Matcher matcher = TICKET_OPEN_PATTERN.matcher(event.getMessage().getContentRaw());
-        if (!matcher.matches()) return;
-
-        String reasonRaw = matcher.group(1).trim();
+        String reasonRaw = context.arguments();
+        if (reasonRaw.isEmpty()) return;
         String sanitizedReason = reasonRaw.toLowerCase().replaceAll("[^a-z0-9\\s]", "").replaceAll("\\s+", "-");
 
         Guild guild = event.getGuild();
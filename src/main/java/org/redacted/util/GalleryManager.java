@@ -1,26 +1,95 @@
 package org.redacted.util;
 
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Updates;
+import io.github.cdimascio.dotenv.Dotenv;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.components.actionrow.ActionRow;
 import net.dv8tion.jda.api.components.buttons.Button;
+import org.bson.Document;
+import org.redacted.Database.Database;
 import org.redacted.util.embeds.EmbedColor;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages galleries of images for Discord messages.
  * Allows adding galleries, handling reactions to navigate through images,
  * and updating message buttons for pagination.
+ * <p>
+ * Galleries are held in a concurrent map and each one's current page is an atomic cursor,
+ * so button clicks from every shard can page at once without locking. A gallery nobody has
+ * paged through for {@value #IDLE_HOURS} hours is dropped, and once more than
+ * {@value #MAX_GALLERIES} are held the least recently used are dropped first. With
+ * GALLERY_PERSISTENCE enabled, galleries are also stored in the galleries collection, so a
+ * gallery that has been dropped or was posted before a restart is loaded back on its next click.
+ * Loading happens on the manager's own thread, never on the thread that asked. The statistics
+ * are logged every {@value #REPORT_MINUTES} minutes.
  *
  * @author Derrick Eberlein
  */
-public class GalleryManager {
-    public final Map<Long, List<String>> galleries = new HashMap<>();
-    public final Map<Long, Integer> currentPage = new HashMap<>();
+public final class GalleryManager {
+    private static final int MAX_GALLERIES = 5000;
+    private static final long IDLE_HOURS = 24;
+    private static final long IDLE_MILLIS = TimeUnit.HOURS.toMillis(IDLE_HOURS);
+    private static final long SWEEP_MINUTES = 5;
+    private static final long REPORT_MINUTES = 10;
+    // Rough per-gallery overhead of the map entry, gallery object, list and cursor
+    private static final long GALLERY_OVERHEAD_BYTES = 200;
+
+    private final ConcurrentHashMap<Long, Gallery> galleries = new ConcurrentHashMap<>();
+    private final MongoCollection<Document> store;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong estimatedBytes = new AtomicLong();
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+
+    /**
+     * Constructs a GalleryManager that keeps galleries in memory only.
+     */
+    public GalleryManager() {
+        this(null);
+    }
+
+    /**
+     * Constructs a GalleryManager.
+     *
+     * @param store the collection galleries are persisted to, or null to keep them in memory only.
+     */
+    public GalleryManager(MongoCollection<Document> store) {
+        this.store = store;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gallery-manager");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::sweep, SWEEP_MINUTES, SWEEP_MINUTES, TimeUnit.MINUTES);
+        this.executor.scheduleAtFixedRate(() -> System.out.println("Galleries " + getStats()), REPORT_MINUTES, REPORT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Creates a GalleryManager, persisting galleries if the GALLERY_PERSISTENCE variable is true.
+     *
+     * @param database the database holding the galleries collection.
+     * @param config the environment configuration.
+     * @return the gallery manager.
+     */
+    public static GalleryManager fromConfig(Database database, Dotenv config) {
+        boolean persist = Boolean.parseBoolean(config.get("GALLERY_PERSISTENCE"));
+        System.out.println("Gallery persistence " + (persist ? "enabled" : "disabled"));
+        return new GalleryManager(persist ? database.getGalleryCollection() : null);
+    }
 
     /**
      * Adds a gallery of images to a message.
@@ -29,18 +98,39 @@ public class GalleryManager {
      * @param urls      the list of image URLs in the gallery
      */
     public void addGallery(long messageId, List<String> urls) {
-        galleries.put(messageId, urls);
-        currentPage.put(messageId, 0);
+        Gallery gallery = new Gallery(List.copyOf(urls), 0);
+        put(messageId, gallery);
+
+        if (store != null) {
+            executor.execute(() -> {
+                try {
+                    store.replaceOne(Filters.eq("_id", messageId),
+                            new Document("_id", messageId)
+                                    .append("urls", gallery.urls)
+                                    .append("page", 0)
+                                    .append("expiresAt", new Date(System.currentTimeMillis() + IDLE_MILLIS)),
+                            new ReplaceOptions().upsert(true));
+                } catch (MongoException e) {
+                    System.err.println("Failed to store gallery " + messageId + ": " + e.getMessage());
+                }
+            });
+        }
     }
 
     /**
-     * Checks if a message has an associated gallery.
+     * Checks if a message has an associated gallery, loading it from the database if it is
+     * persisted but no longer held in memory. A gallery held in memory is answered at once,
+     * any other is looked up on the manager's thread.
      *
      * @param messageId the ID of the message to check
-     * @return true if the message has a gallery, false otherwise
+     * @return a future completed with true if the message has a gallery, false otherwise
      */
-    public boolean isGalleryMessage(long messageId) {
-        return galleries.containsKey(messageId);
+    public CompletableFuture<Boolean> isGalleryMessage(long messageId) {
+        Gallery gallery = galleries.get(messageId);
+        if (gallery != null || store == null) {
+            return CompletableFuture.completedFuture(gallery != null);
+        }
+        return CompletableFuture.supplyAsync(() -> find(messageId) != null, executor);
     }
 
     /**
@@ -49,18 +139,16 @@ public class GalleryManager {
      * @param channel     the message channel where the reaction was added
      * @param messageId   the ID of the message with the gallery
      * @param componentId the ID of the button clicked (prev or next)
+     * @return the page now shown, or null if the message has no gallery
      */
-    public void handleReaction(MessageChannel channel, long messageId, String componentId) {
-        List<String> urls = galleries.get(messageId);
-        int page = currentPage.get(messageId);
-
-        if (componentId.equals("prev")) {
-            page = (page - 1 + urls.size()) % urls.size();
-        } else if (componentId.equals("next")) {
-            page = (page + 1) % urls.size();
-        }
+    public Page handleReaction(MessageChannel channel, long messageId, String componentId) {
+        Gallery gallery = find(messageId);
+        if (gallery == null) return null;
 
-        currentPage.put(messageId, page);
+        List<String> urls = gallery.urls;
+        int step = componentId.equals("prev") ? -1 : componentId.equals("next") ? 1 : 0;
+        int page = gallery.page.updateAndGet(current -> Math.floorMod(current + step, urls.size()));
+        gallery.lastAccess = System.currentTimeMillis();
         String url = urls.get(page);
 
         EmbedBuilder embed = new EmbedBuilder()
@@ -70,6 +158,31 @@ public class GalleryManager {
                 .setFooter("Page " + (page + 1) + "/" + urls.size());
 
         channel.editMessageEmbedsById(messageId, embed.build()).queue();
+
+        if (store != null) {
+            executor.execute(() -> {
+                try {
+                    store.updateOne(Filters.eq("_id", messageId), Updates.combine(
+                            Updates.set("page", gallery.page.get()),
+                            Updates.set("expiresAt", new Date(System.currentTimeMillis() + IDLE_MILLIS))));
+                } catch (MongoException e) {
+                    System.err.println("Failed to store page of gallery " + messageId + ": " + e.getMessage());
+                }
+            });
+        }
+        return new Page(page, urls.size());
+    }
+
+    /**
+     * Gets the number of pages in a message's gallery, loading it from the database if it is
+     * persisted but no longer held in memory.
+     *
+     * @param messageId the ID of the message with the gallery
+     * @return the number of pages, or 0 if the message has no gallery
+     */
+    public int getPageCount(long messageId) {
+        Gallery gallery = find(messageId);
+        return gallery == null ? 0 : gallery.urls.size();
     }
 
     /**
@@ -109,4 +222,122 @@ public class GalleryManager {
 
         message.editMessageComponents(ActionRow.of(prevButton, Button.secondary("page", (currentPage + 1) + "/" + totalPages).asDisabled(), nextButton)).queue();
     }
+
+    /**
+     * Gets the number of galleries held, their estimated memory use and how many have been evicted.
+     *
+     * @return a snapshot of the gallery statistics
+     */
+    public GalleryStats getStats() {
+        return new GalleryStats(galleries.size(), estimatedBytes.get(), idleEvictions.sum(), sizeEvictions.sum(), restored.sum());
+    }
+
+    /**
+     * Get a gallery from memory, or from the database if it is persisted.
+     */
+    private Gallery find(long messageId) {
+        Gallery gallery = galleries.get(messageId);
+        if (gallery != null || store == null) return gallery;
+
+        try {
+            Document document = store.find(Filters.eq("_id", messageId)).first();
+            if (document == null) return null;
+            List<String> urls = document.getList("urls", String.class);
+            if (urls == null || urls.isEmpty()) return null;
+
+            Gallery loaded = new Gallery(List.copyOf(urls), Math.floorMod(document.getInteger("page", 0), urls.size()));
+            Gallery existing = galleries.putIfAbsent(messageId, loaded);
+            if (existing != null) return existing;
+            estimatedBytes.addAndGet(loaded.estimatedBytes);
+            restored.increment();
+            return loaded;
+        } catch (MongoException e) {
+            System.err.println("Failed to load gallery " + messageId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void put(long messageId, Gallery gallery) {
+        Gallery previous = galleries.put(messageId, gallery);
+        estimatedBytes.addAndGet(gallery.estimatedBytes - (previous == null ? 0 : previous.estimatedBytes));
+        if (galleries.size() > MAX_GALLERIES) {
+            executor.execute(this::sweep);
+        }
+    }
+
+    /**
+     * Drop idle galleries, then the least recently used ones while there are too many.
+     */
+    private void sweep() {
+        try {
+            long idleBefore = System.currentTimeMillis() - IDLE_MILLIS;
+            galleries.forEach((messageId, gallery) -> {
+                if (gallery.lastAccess < idleBefore && galleries.remove(messageId, gallery)) {
+                    estimatedBytes.addAndGet(-gallery.estimatedBytes);
+                    idleEvictions.increment();
+                }
+            });
+
+            int excess = galleries.size() - MAX_GALLERIES;
+            if (excess > 0) {
+                List<Map.Entry<Long, Gallery>> entries = new ArrayList<>(galleries.entrySet());
+                entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+                for (Map.Entry<Long, Gallery> entry : entries.subList(0, Math.min(excess, entries.size()))) {
+                    if (galleries.remove(entry.getKey(), entry.getValue())) {
+                        estimatedBytes.addAndGet(-entry.getValue().estimatedBytes);
+                        sizeEvictions.increment();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Gallery sweep failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A gallery's images and the page it is on.
+     */
+    private static final class Gallery {
+        private final List<String> urls;
+        private final AtomicInteger page;
+        private final long estimatedBytes;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Gallery(List<String> urls, int page) {
+            this.urls = urls;
+            this.page = new AtomicInteger(page);
+            long bytes = GALLERY_OVERHEAD_BYTES;
+            for (String url : urls) {
+                bytes += 40 + url.length();
+            }
+            this.estimatedBytes = bytes;
+        }
+    }
+
+    /**
+     * The page of a gallery shown after a click.
+     *
+     * @param index the page shown (0-based).
+     * @param count the number of pages in the gallery.
+     */
+    public record Page(int index, int count) {
+    }
+
+    /**
+     * A snapshot of the gallery statistics.
+     *
+     * @param size galleries held in memory.
+     * @param estimatedBytes approximate memory held by those galleries.
+     * @param idleEvictions galleries dropped for being idle.
+     * @param sizeEvictions galleries dropped to stay within the size bound.
+     * @param restored galleries loaded back from the database.
+     */
+    public record GalleryStats(int size, long estimatedBytes, long idleEvictions, long sizeEvictions, long restored) {
+
+        @Override
+        public String toString() {
+            return "size=" + size + ", memory~" + (estimatedBytes / 1024) + "KB, idleEvictions=" + idleEvictions
+                    + ", sizeEvictions=" + sizeEvictions + ", restored=" + restored;
+        }
+    }
 }
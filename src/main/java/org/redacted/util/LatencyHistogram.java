@@ -0,0 +1,117 @@
+package org.redacted.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram Class
+ * Records durations in nanoseconds into logarithmic buckets, so percentiles can be read at any
+ * time with a fixed amount of memory. Each power of two is split into {@value #SUB_BUCKETS}
+ * buckets, which keeps a percentile within about 12% of the true value. Recording never locks
+ * and never allocates, so it can sit on the path of every event.
+ *
+ * @author Derrick Eberlein
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(indexOf(nanos));
+        count.increment();
+        total.add(nanos);
+        if (nanos > max.get()) max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Get the number of recorded durations.
+     *
+     * @return the count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the duration below which a share of the recorded durations fall.
+     *
+     * @param quantile the share, between 0 and 1.
+     * @return the duration in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long percentile(double quantile) {
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            recorded += buckets.get(i);
+        }
+        if (recorded == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(quantile * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) return Math.min(highestValueOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Take a snapshot of the histogram.
+     *
+     * @return the count, mean, median, 99th percentile and maximum.
+     */
+    public Snapshot snapshot() {
+        long recorded = count.sum();
+        return new Snapshot(recorded, recorded == 0 ? 0 : total.sum() / recorded, percentile(0.5), percentile(0.99), max.get());
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * A snapshot of a histogram, in nanoseconds.
+     *
+     * @param count the number of recorded durations.
+     * @param mean the mean duration.
+     * @param p50 the median duration.
+     * @param p99 the 99th percentile duration.
+     * @param max the longest duration.
+     */
+    public record Snapshot(long count, long mean, long p50, long p99, long max) {
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + micros(mean) + ", p50=" + micros(p50)
+                    + ", p99=" + micros(p99) + ", max=" + micros(max);
+        }
+
+        private static String micros(long nanos) {
+            return nanos >= 10_000_000 ? nanos / 1_000_000 + "ms" : String.format("%.1fus", nanos / 1_000.0);
+        }
+    }
+}
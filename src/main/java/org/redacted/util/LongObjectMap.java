@@ -0,0 +1,148 @@
+package org.redacted.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * LongObjectMap Class
+ * A hash map from primitive long keys, such as Discord IDs, to values. Lookups never box the key,
+ * never lock and never allocate, so it suits tables read on every gateway event and written
+ * rarely. Writes are serialized on the map; readers may run at any time alongside them.
+ * <p>
+ * Keys are stored by open addressing with linear probing. A key, once inserted, keeps its slot
+ * until the table grows, and removing it only clears its value, so a reader probing a slot sees
+ * either no key, or a key whose value was published before it. Key 0 is reserved as the empty slot.
+ *
+ * @param <V> the value type.
+ * @author Derrick Eberlein
+ */
+public class LongObjectMap<V> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile Table<V> table = new Table<>(INITIAL_CAPACITY);
+    private int size;
+    private int used;
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key the key, never 0.
+     * @return the value, or null if the key has none.
+     */
+    public V get(long key) {
+        Table<V> current = table;
+        int mask = current.keys.length() - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long stored = current.keys.get(slot);
+            if (stored == key) return current.values.get(slot);
+            if (stored == 0) return null;
+        }
+    }
+
+    /**
+     * Set the value of a key.
+     *
+     * @param key the key, never 0.
+     * @param value the value, never null.
+     * @return the previous value, or null if the key had none.
+     */
+    public synchronized V put(long key, V value) {
+        if (key == 0) throw new IllegalArgumentException("Key 0 is reserved");
+        if (value == null) throw new NullPointerException("value");
+        if ((used + 1) * 4 > table.keys.length() * 3) {
+            resize();
+        }
+
+        Table<V> current = table;
+        int mask = current.keys.length() - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long stored = current.keys.get(slot);
+            if (stored == key) {
+                V previous = current.values.getAndSet(slot, value);
+                if (previous == null) size++;
+                return previous;
+            }
+            if (stored == 0) {
+                // Publish the value before the key, so a reader that finds the key finds its value
+                current.values.set(slot, value);
+                current.keys.set(slot, key);
+                size++;
+                used++;
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Remove the value of a key.
+     *
+     * @param key the key.
+     * @return the removed value, or null if the key had none.
+     */
+    public synchronized V remove(long key) {
+        Table<V> current = table;
+        int mask = current.keys.length() - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long stored = current.keys.get(slot);
+            if (stored == 0) return null;
+            if (stored == key) {
+                V previous = current.values.getAndSet(slot, null);
+                if (previous != null) size--;
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Get the number of keys with a value.
+     *
+     * @return the size of the map.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Rebuild the table without removed keys, doubling it if it is more than half full of live ones.
+     */
+    private void resize() {
+        Table<V> current = table;
+        int capacity = current.keys.length();
+        if (size * 2 > capacity) capacity *= 2;
+
+        Table<V> grown = new Table<>(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < current.keys.length(); i++) {
+            V value = current.values.get(i);
+            if (value == null) continue;
+            long key = current.keys.get(i);
+            int slot = mix(key) & mask;
+            while (grown.keys.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown.values.set(slot, value);
+            grown.keys.set(slot, key);
+        }
+        used = size;
+        table = grown;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * The slots of the map. Replaced as a whole when the map grows.
+     */
+    private static final class Table<V> {
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<V> values;
+
+        private Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+        }
+    }
+}
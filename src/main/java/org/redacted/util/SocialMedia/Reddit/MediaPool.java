@@ -0,0 +1,340 @@
+package org.redacted.util.SocialMedia.Reddit;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MediaPool Class
+ * Keeps a buffer of media that has already been fetched and validated for each subreddit,
+ * so commands take a post from memory instead of going to Reddit while the user waits.
+ * A pool is refilled asynchronously from a whole listing whenever it runs low, and
+ * entries are dropped once they are older than their time to live. Every channel remembers
+ * the media it has been sent recently and is never sent the same post twice in a row of
+ * {@value #CHANNEL_HISTORY} posts.
+ *
+ * @author Derrick Eberlein
+ */
+public class MediaPool {
+
+    private static final long ENTRY_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final int LOW_WATER = 10;
+    private static final int MAX_ENTRIES = 100;
+    private static final int CHANNEL_HISTORY = 500;
+    private static final int MAX_CHANNELS = 10000;
+    private static final String[] ENDPOINTS = {"hot", "new", "top"};
+
+    private final RedditClient redditClient;
+    private final ConcurrentHashMap<String, SubredditPool> pools = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> served = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Set<String>> eldest) {
+            return size() > MAX_CHANNELS;
+        }
+    };
+
+    /**
+     * Constructs a MediaPool. Refills run on the client's own request threads, so the pool
+     * needs no threads of its own and is bounded by the client's per-host limits.
+     *
+     * @param redditClient the client used to fetch listings and validate media.
+     */
+    public MediaPool(RedditClient redditClient) {
+        this.redditClient = redditClient;
+    }
+
+    /**
+     * Take a post from one of the given subreddits that the channel has not been sent recently.
+     * The first subreddit is preferred, but any of the others with media buffered is used
+     * rather than waiting. Only when none of them has anything does the future wait for a refill.
+     *
+     * @param subreddits the subreddits to take from, the preferred one first.
+     * @param channelId the channel the post is for.
+     * @param includeVideos whether videos may be taken.
+     * @return a future completed with the post, or failed if none could be found.
+     */
+    public CompletableFuture<Media> take(List<String> subreddits, long channelId, boolean includeVideos) {
+        Set<String> history = historyOf(channelId);
+        SubredditPool preferred = poolOf(subreddits.get(0));
+        preferred.refillIfLow();
+
+        for (String subreddit : subreddits) {
+            SubredditPool pool = poolOf(subreddit);
+            Media media = pool.poll(history, includeVideos);
+            if (media != null) {
+                pool.refillIfLow();
+                return CompletableFuture.completedFuture(media);
+            }
+        }
+        return preferred.await(history, includeVideos);
+    }
+
+    /**
+     * Get the number of posts buffered for a subreddit.
+     *
+     * @param subreddit the subreddit to check.
+     * @return the number of buffered posts, including any that have expired but not been dropped yet.
+     */
+    public int available(String subreddit) {
+        SubredditPool pool = pools.get(subreddit.toLowerCase(Locale.ROOT));
+        return pool == null ? 0 : pool.size();
+    }
+
+    private SubredditPool poolOf(String subreddit) {
+        return pools.computeIfAbsent(subreddit.toLowerCase(Locale.ROOT), name -> new SubredditPool(subreddit));
+    }
+
+    private Set<String> historyOf(long channelId) {
+        synchronized (served) {
+            return served.computeIfAbsent(channelId, id -> Collections.synchronizedSet(Collections.newSetFromMap(
+                    new LinkedHashMap<>() {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                            return size() > CHANNEL_HISTORY;
+                        }
+                    })));
+        }
+    }
+
+    /**
+     * Work out what kind of media a URL points to.
+     *
+     * @param url the media URL.
+     * @return the kind of media.
+     */
+    static Kind classify(String url) {
+        if (url.endsWith(".mp4") || url.contains("v.redd.it") || url.contains("redgifs.com/watch") || url.contains("www.youtube.com/")
+                || url.contains("youtu.be") || url.contains("xhamster") || url.contains("redtube") || url.contains("pornhub") || url.contains("video")) {
+            return Kind.VIDEO;
+        } else if (url.endsWith(".gif")) {
+            return Kind.GIF;
+        } else if (url.contains("reddit.com/gallery")) {
+            return Kind.GALLERY;
+        }
+        return Kind.IMAGE;
+    }
+
+    /**
+     * The kinds of media a post can hold.
+     */
+    public enum Kind {
+        IMAGE, GIF, VIDEO, GALLERY
+    }
+
+    /**
+     * A validated post ready to be sent.
+     *
+     * @param subreddit the subreddit the post came from.
+     * @param url the media URL.
+     * @param kind the kind of media.
+     * @param gallery the images of a gallery post, empty for any other kind.
+     * @param expiresAt the time in milliseconds after which the post is no longer served.
+     */
+    public record Media(String subreddit, String url, Kind kind, List<String> gallery, long expiresAt) {
+
+        /**
+         * Check whether the post has outlived its time to live.
+         *
+         * @param now the current time in milliseconds.
+         * @return true if the post has expired.
+         */
+        public boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * A request waiting for an empty pool to be refilled.
+     */
+    private record Waiter(Set<String> history, boolean includeVideos, CompletableFuture<Media> future) {
+    }
+
+    /**
+     * The buffered posts of a single subreddit. Videos are kept apart from everything else
+     * so a request that excludes them never has to search for a post it may take.
+     */
+    private final class SubredditPool {
+        private final String subreddit;
+        private final ArrayDeque<Media> images = new ArrayDeque<>();
+        private final ArrayDeque<Media> videos = new ArrayDeque<>();
+        private final Set<String> buffered = new HashSet<>();
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private int nextEndpoint = new Random().nextInt(ENDPOINTS.length);
+        private boolean refilling;
+
+        private SubredditPool(String subreddit) {
+            this.subreddit = subreddit;
+        }
+
+        private synchronized int size() {
+            return images.size() + videos.size();
+        }
+
+        /**
+         * Take a post the channel has not been sent, or null if there is none buffered.
+         */
+        private synchronized Media poll(Set<String> history, boolean includeVideos) {
+            long now = System.currentTimeMillis();
+            drop(images, now);
+            drop(videos, now);
+
+            boolean fromVideos = includeVideos && !videos.isEmpty()
+                    && ThreadLocalRandom.current().nextInt(images.size() + videos.size()) < videos.size();
+            Media media = pick(fromVideos ? videos : images, history, now);
+            if (media == null && includeVideos) {
+                media = pick(fromVideos ? images : videos, history, now);
+            }
+            return media;
+        }
+
+        /**
+         * Take the oldest post in the queue the channel has not been sent. Posts the channel has
+         * been sent go to the back of the queue for other channels, so each one is looked at once.
+         */
+        private Media pick(ArrayDeque<Media> queue, Set<String> history, long now) {
+            for (int remaining = queue.size(); remaining > 0; remaining--) {
+                Media media = queue.pollFirst();
+                if (media.isExpired(now)) {
+                    buffered.remove(media.url());
+                    continue;
+                }
+                if (history.add(media.url())) {
+                    buffered.remove(media.url());
+                    return media;
+                }
+                queue.addLast(media);
+            }
+            return null;
+        }
+
+        /**
+         * Drop the expired posts at the head of the queue. Posts go in oldest first, so this
+         * is usually all of them, any that were rotated behind newer ones are dropped by pick.
+         */
+        private void drop(ArrayDeque<Media> queue, long now) {
+            while (!queue.isEmpty() && queue.peekFirst().isExpired(now)) {
+                buffered.remove(queue.pollFirst().url());
+            }
+        }
+
+        /**
+         * Wait for the next refill to bring a post the channel has not been sent.
+         */
+        private synchronized CompletableFuture<Media> await(Set<String> history, boolean includeVideos) {
+            Media media = poll(history, includeVideos);
+            if (media != null) return CompletableFuture.completedFuture(media);
+
+            CompletableFuture<Media> future = new CompletableFuture<>();
+            waiters.addLast(new Waiter(history, includeVideos, future));
+            startRefill();
+            return future;
+        }
+
+        private synchronized void refillIfLow() {
+            if (size() < LOW_WATER) startRefill();
+        }
+
+        /**
+         * Start a refill unless one is already running. The listing is hedged across all
+         * endpoints, starting from a different one each time to vary the posts.
+         */
+        private void startRefill() {
+            if (refilling) return;
+            refilling = true;
+            List<String> endpoints = new ArrayList<>(ENDPOINTS.length);
+            for (int i = 0; i < ENDPOINTS.length; i++) {
+                endpoints.add(ENDPOINTS[(nextEndpoint + i) % ENDPOINTS.length]);
+            }
+            nextEndpoint = (nextEndpoint + 1) % ENDPOINTS.length;
+            redditClient.getMediaUrlsHedged(subreddit, endpoints)
+                    .thenCompose(this::fill)
+                    .whenComplete((ignored, error) -> finishRefill(error));
+        }
+
+        /**
+         * Validate each new post of a listing, all at once, adding posts as they pass
+         * so waiting requests are answered by the first one that suits them.
+         */
+        private CompletableFuture<Void> fill(List<String> urls) {
+            List<String> candidates = new ArrayList<>();
+            synchronized (this) {
+                int room = MAX_ENTRIES - size();
+                Set<String> seen = new HashSet<>(buffered);
+                for (String url : urls) {
+                    if (candidates.size() >= room) break;
+                    if (url.contains("redgifs.com/ifr")) {
+                        url = url.replace("ifr", "watch");
+                    }
+                    if (seen.add(url)) candidates.add(url);
+                }
+            }
+            Collections.shuffle(candidates);
+
+            LongAdder added = new LongAdder();
+            CompletableFuture<?>[] checks = candidates.stream()
+                    .map(url -> validate(url).thenAccept(media -> {
+                        if (media == null) return;
+                        offer(media);
+                        added.increment();
+                    }))
+                    .toArray(CompletableFuture[]::new);
+            return CompletableFuture.allOf(checks).thenRun(() ->
+                    System.out.println("Refilled media pool for r/" + subreddit + ": " + added.sum() + " of " + urls.size()
+                            + " posts added (validation " + redditClient.getValidationStats() + ")"));
+        }
+
+        private CompletableFuture<Media> validate(String url) {
+            Kind kind = classify(url);
+            long expiresAt = System.currentTimeMillis() + ENTRY_TTL_MILLIS;
+            if (kind == Kind.GALLERY) {
+                return redditClient.getGalleryImagesAsync(url).thenApply(gallery ->
+                        gallery.isEmpty() ? null : new Media(subreddit, url, kind, List.copyOf(gallery), expiresAt));
+            }
+            Media media = new Media(subreddit, url, kind, List.of(), expiresAt);
+            if (url.endsWith(".json")) {
+                return CompletableFuture.completedFuture(media);
+            }
+            return redditClient.isValidMediaUrlAsync(url, true)
+                    .exceptionally(error -> {
+                        System.err.println("Failed to validate " + url + ": " + error.getMessage());
+                        return false;
+                    })
+                    .thenApply(valid -> valid ? media : null);
+        }
+
+        /**
+         * Hand a new post to the first waiter it suits, or buffer it.
+         */
+        private synchronized void offer(Media media) {
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.future().isDone()) {
+                    iterator.remove();
+                } else if ((waiter.includeVideos() || media.kind() != Kind.VIDEO) && waiter.history().add(media.url())) {
+                    iterator.remove();
+                    waiter.future().complete(media);
+                    return;
+                }
+            }
+            buffered.add(media.url());
+            (media.kind() == Kind.VIDEO ? videos : images).addLast(media);
+        }
+
+        /**
+         * Fail whoever is still waiting once a refill has brought nothing that suits them.
+         */
+        private synchronized void finishRefill(Throwable error) {
+            refilling = false;
+            if (waiters.isEmpty()) return;
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            String reason = cause != null ? cause.getMessage() : "no new media found in r/" + subreddit;
+            for (Waiter waiter : waiters) {
+                waiter.future().completeExceptionally(new IOException(reason, cause));
+            }
+            waiters.clear();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.redacted.util.SocialMedia.Reddit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * MediaValidationCache Class
+ * Remembers which media URLs were found to be valid, so the same URL is probed once however
+ * many channels and loops come across it. Valid and invalid results are kept for different
+ * lengths of time, the cache holds a bounded number of URLs and drops the least recently used
+ * beyond that, and concurrent lookups of the same URL share one probe.
+ * <p>
+ * Hosts that keep failing are skipped for a while: after {@value #HOST_FAILURE_THRESHOLD}
+ * failures in a row a host's circuit opens and its URLs are treated as invalid without
+ * being probed, until a single trial probe after the cool-down succeeds.
+ *
+ * @author Derrick Eberlein
+ */
+public class MediaValidationCache {
+
+    private static final long VALID_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long INVALID_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_ENTRIES = 10000;
+    private static final int HOST_FAILURE_THRESHOLD = 5;
+    private static final long HOST_COOL_DOWN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final ConcurrentHashMap<String, CompletableFuture<Boolean>> probing = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HostCircuit> hosts = new ConcurrentHashMap<>();
+
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder probeTime = new LongAdder();
+    private final AtomicLong maxProbeTime = new AtomicLong();
+
+    /**
+     * Constructs an empty MediaValidationCache.
+     */
+    public MediaValidationCache() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs an empty MediaValidationCache that reads the time from the given clock.
+     *
+     * @param clock the current time in milliseconds.
+     */
+    MediaValidationCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Get whether a URL is valid, probing it only if there is no unexpired result for it.
+     *
+     * @param url the URL to check.
+     * @param host the URL's host, used for circuit breaking.
+     * @param probe sends the probe for a URL.
+     * @return a future completed with true if the URL is valid.
+     */
+    public CompletableFuture<Boolean> validate(String url, String host, Function<String, CompletableFuture<ProbeResult>> probe) {
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(url);
+            if (entry != null && entry.expiresAt() > now) {
+                hits.increment();
+                return CompletableFuture.completedFuture(entry.valid());
+            }
+        }
+
+        CompletableFuture<Boolean> inFlight = probing.get(url);
+        if (inFlight != null) {
+            hits.increment();
+            return inFlight;
+        }
+
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = probing.putIfAbsent(url, created);
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+
+        HostCircuit circuit = hosts.computeIfAbsent(host, name -> new HostCircuit());
+        if (!circuit.allowProbe(now)) {
+            // Not cached, so the URL is probed again once the host's circuit closes
+            skipped.increment();
+            probing.remove(url, created);
+            created.complete(false);
+            return created;
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        probe.apply(url).whenComplete((result, error) -> {
+            recordProbe(System.nanoTime() - start);
+            ProbeResult outcome = error != null ? ProbeResult.HOST_FAILURE : result;
+            circuit.record(outcome != ProbeResult.HOST_FAILURE, clock.getAsLong());
+
+            boolean valid = outcome == ProbeResult.VALID;
+            synchronized (entries) {
+                entries.put(url, new Entry(valid, clock.getAsLong() + (valid ? VALID_TTL_MILLIS : INVALID_TTL_MILLIS)));
+            }
+            probing.remove(url, created);
+            created.complete(valid);
+        });
+        return created;
+    }
+
+    /**
+     * Get the cache's hit rate and probe latency.
+     *
+     * @return a snapshot of the cache statistics.
+     */
+    public ValidationStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long probeCount = probes.sum();
+        long openHosts = hosts.values().stream().filter(circuit -> circuit.isOpen(clock.getAsLong())).count();
+        return new ValidationStats(
+                size,
+                hits.sum(),
+                misses.sum(),
+                skipped.sum(),
+                openHosts,
+                probeCount > 0 ? TimeUnit.NANOSECONDS.toMillis(probeTime.sum() / probeCount) : 0,
+                TimeUnit.NANOSECONDS.toMillis(maxProbeTime.get())
+        );
+    }
+
+    private void recordProbe(long nanos) {
+        probes.increment();
+        probeTime.add(nanos);
+        maxProbeTime.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * The outcome of probing a URL.
+     */
+    public enum ProbeResult {
+        /** The URL serves media. */
+        VALID,
+        /** The host answered, but the URL does not serve media. */
+        INVALID,
+        /** The host could not be reached or failed to answer. */
+        HOST_FAILURE
+    }
+
+    /**
+     * A cached result.
+     *
+     * @param valid whether the URL was valid.
+     * @param expiresAt the time in milliseconds after which the URL is probed again.
+     */
+    private record Entry(boolean valid, long expiresAt) {
+    }
+
+    /**
+     * The circuit breaker of a single host.
+     */
+    private static final class HostCircuit {
+        private int failures;
+        private long openUntil;
+        private boolean trialRunning;
+
+        /**
+         * Check whether a probe may be sent to the host. While the circuit is open nothing is
+         * sent; once the cool-down is over a single trial probe is let through.
+         */
+        private synchronized boolean allowProbe(long now) {
+            if (failures < HOST_FAILURE_THRESHOLD) return true;
+            if (now < openUntil || trialRunning) return false;
+            trialRunning = true;
+            return true;
+        }
+
+        private synchronized void record(boolean success, long now) {
+            trialRunning = false;
+            if (success) {
+                failures = 0;
+                return;
+            }
+            failures++;
+            if (failures >= HOST_FAILURE_THRESHOLD) {
+                openUntil = now + HOST_COOL_DOWN_MILLIS;
+            }
+        }
+
+        private synchronized boolean isOpen(long now) {
+            return failures >= HOST_FAILURE_THRESHOLD && now < openUntil;
+        }
+    }
+
+    /**
+     * A snapshot of the cache statistics.
+     *
+     * @param size URLs currently cached.
+     * @param hits lookups answered from the cache or by a probe already running.
+     * @param misses lookups that sent a probe.
+     * @param skipped lookups answered as invalid because the host's circuit was open.
+     * @param openHosts hosts whose circuit is currently open.
+     * @param averageProbeMillis average time a probe took.
+     * @param maxProbeMillis longest time a probe took.
+     */
+    public record ValidationStats(int size, long hits, long misses, long skipped, long openHosts,
+                                  long averageProbeMillis, long maxProbeMillis) {
+
+        /**
+         * Get the share of lookups that did not need a probe.
+         *
+         * @return the hit rate between 0 and 1.
+         */
+        public double hitRate() {
+            long lookups = hits + misses + skipped;
+            return lookups > 0 ? (double) (hits + skipped) / lookups : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + ", hitRate=" + String.format("%.2f", hitRate()) + ", hits=" + hits + ", misses=" + misses
+                    + ", skipped=" + skipped + ", openHosts=" + openHosts + ", avgProbe=" + averageProbeMillis + "ms, maxProbe=" + maxProbeMillis + "ms";
+        }
+    }
+}
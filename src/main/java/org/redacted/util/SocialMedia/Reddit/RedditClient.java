@@ -1,128 +1,80 @@
 package org.redacted.util.SocialMedia.Reddit;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.stream.JsonReader;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.redacted.util.SocialMedia.Reddit.MediaValidationCache.ProbeResult;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * Client for interacting with the Reddit API to fetch random images from subreddits.
  * Supports both NSFW and SFW content, with fallback mechanisms for better reliability.
- * Uses OkHttp for HTTP requests and Gson for JSON parsing.
+ * Uses OkHttp for HTTP requests and reads responses with the streaming RedditListingParser.
+ * <p>
+ * Every request is sent asynchronously and completes a {@link CompletableFuture}, the blocking
+ * methods simply wait on them. Requests go through a dispatcher of their own that caps how many
+ * run against each host, Reddit's X-Ratelimit-* headers are followed by holding back requests
+ * to the API until the window resets, and listings are hedged across the hot, new and top
+ * endpoints so a slow endpoint never holds up a command. A listing request that fails in transit,
+ * with a 5xx or with a 429 is tried again, up to {@value #MAX_ATTEMPTS} times in all; any other
+ * 4xx, such as the 403 or 404 of a private or banned subreddit, fails the listing at once.
+ * Media URLs are validated through a {@link MediaValidationCache}, so each one is probed at
+ * most once in a while.
  *
  * @author Derrick Eberlein
  */
 public class RedditClient {
+    private static final String API_HOST = "oauth.reddit.com";
+    private static final String[] ENDPOINTS = {"hot", "new", "top"};
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    private static final long HEDGE_DELAY_MILLIS = 750;
+    private static final int MAX_ATTEMPTS = 3;
+    // Keep a few requests of each rate limit window in reserve rather than running it down to 0
+    private static final double RATE_LIMIT_RESERVE = 5;
+    private static final long DEFAULT_RATE_LIMIT_PAUSE_MILLIS = 60000;
+
     private final OkHttpClient httpClient;
     private final RedditTokenManager tokenProvider;
+    private final ScheduledExecutorService timer;
+    private final MediaValidationCache validationCache = new MediaValidationCache();
+    private volatile long pausedUntil;
 
     /**
      * Constructs a RedditClient with the specified OkHttpClient and RedditTokenManager.
+     * The client shares the given client's connection pool but has a dispatcher of its own.
      *
      * @param httpClient the OkHttpClient to use for HTTP requests
      * @param tokenProvider the RedditTokenManager to manage OAuth tokens
      */
     public RedditClient(OkHttpClient httpClient, RedditTokenManager tokenProvider) {
-        this.httpClient = httpClient;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        this.httpClient = httpClient.newBuilder().dispatcher(dispatcher).build();
         this.tokenProvider = tokenProvider;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reddit-client-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
      * Fetch a random NSFW image from the specified subreddit.
      * This method is specifically designed for NSFW content and will fall back to a default subreddit if the main one fails.
      *
-     * * @param subreddit the subreddit to fetch images from
-     * @return a URL of a random NSFW image
-     */
-    public String getRandomImageNSFW(String subreddit) throws IOException {
-        return getRandomImageWithFallbackNSFW(subreddit, "porn");
-    }
-
-    /**
-     * Fetches a random image from the specified subreddit, with a fallback to a default subreddit if the main one fails.
-     * This method is specifically designed for NSFW content.
-     *
      * @param subreddit the subreddit to fetch images from
-     * @param fallbackSubreddit the subreddit to fall back to if the main one fails
-     * @return a URL of a random image from the subreddit
+     * @return a URL of a random NSFW image
      * @throws IOException if an error occurs while fetching images
      */
-    private String getRandomImageWithFallbackNSFW(String subreddit, String fallbackSubreddit) throws IOException {
-        String[] endpoints = {"hot", "new", "top"};
-        List<String> endpointPool = new ArrayList<>(List.of(endpoints));
-        Collections.shuffle(endpointPool); // Randomize to vary traffic
-
-        IOException lastException = null;
-
-        // Try the main subreddit first
-        for (String endpoint : endpointPool) {
-            String url = "https://oauth.reddit.com/r/" + subreddit + "/" + endpoint + ".json?limit=50";
-            System.out.println("Trying URL: " + url);
-
-            for (int attempt = 0; attempt < 3; attempt++) {
-                String token = tokenProvider.getValidToken();
-                if (token == null) throw new IOException("Token fetch failed during retry");
-
-                Request request = new Request.Builder()
-                        .url(url)
-                        .header("Authorization", "Bearer " + token)
-                        .header("User-Agent", "YourAppName")
-                        .build();
-
-                try (Response response = httpClient.newCall(request).execute()) {
-                    if (!response.isSuccessful()) {
-                        System.out.println("Reddit request failed: " + response);
-                        continue;
-                    }
-
-                    String responseData = Objects.requireNonNull(response.body()).string();
-                    JsonReader reader = new JsonReader(new StringReader(responseData));
-                    reader.setLenient(true);
-
-                    JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-                    JsonArray children = jsonObject.getAsJsonObject("data").getAsJsonArray("children");
-
-                    List<String> mediaUrls = new ArrayList<>();
-                    for (int i = 0; i < children.size(); i++) {
-                        JsonObject postData = children.get(i).getAsJsonObject().getAsJsonObject("data");
-                        String mediaUrl = extractMediaUrl(postData);
-                        if (mediaUrl != null) {
-                            mediaUrls.add(mediaUrl);
-                        }
-                    }
-
-                    if (!mediaUrls.isEmpty()) {
-                        Collections.shuffle(mediaUrls);
-                        return mediaUrls.get(0);
-                    } else {
-                        throw new IOException("No valid media URLs found.");
-                    }
-                } catch (IOException ex) {
-                    System.out.println("Retrying fetch (attempt " + (attempt + 1) + ") for " + endpoint + ": " + ex.getMessage());
-                    lastException = ex;
-                    httpClient.connectionPool().evictAll();
-                }
-            }
-
-            System.out.println("All 3 attempts failed for endpoint: " + endpoint + ", trying next one.");
-        }
-
-        // If all endpoints fail, try fallback subreddit
-        if (!subreddit.equalsIgnoreCase(fallbackSubreddit)) {
-            System.out.println("All subreddit attempts failed. Falling back to: " + fallbackSubreddit);
-            return getRandomImageWithFallback(fallbackSubreddit, fallbackSubreddit); // Avoid infinite loop
-        }
-
-        throw new IOException("Failed to fetch Reddit image after trying all endpoints and fallback.", lastException);
+    public String getRandomImageNSFW(String subreddit) throws IOException {
+        return await(getRandomImageAsync(subreddit, "porn"));
     }
 
     /**
@@ -134,104 +86,78 @@ public class RedditClient {
      * @throws IOException if an error occurs while fetching images
      */
     public String getRandomImage(String subreddit) throws IOException {
-        return getRandomImageWithFallback(subreddit, "MoeBlushing");
+        return await(getRandomImageAsync(subreddit, "MoeBlushing"));
     }
 
     /**
      * Fetches a random image from the specified subreddit, with a fallback to a default subreddit if the main one fails.
-     * This method is specifically designed for SFW content.
      *
      * @param subreddit the subreddit to fetch images from
      * @param fallbackSubreddit the subreddit to fall back to if the main one fails
-     * @return a URL of a random image from the subreddit
-     * @throws IOException if an error occurs while fetching images
+     * @return a future completed with the URL of a random image from the subreddit
      */
-    private String getRandomImageWithFallback(String subreddit, String fallbackSubreddit) throws IOException {
-        String[] endpoints = {"hot", "new", "top"};
-        List<String> endpointPool = new ArrayList<>(List.of(endpoints));
-        Collections.shuffle(endpointPool); // Randomize to vary traffic
-
-        IOException lastException = null;
-
-        // Try the main subreddit first
-        for (String endpoint : endpointPool) {
-            String url = "https://oauth.reddit.com/r/" + subreddit + "/" + endpoint + ".json?limit=50";
-            System.out.println("Trying URL: " + url);
-
-            for (int attempt = 0; attempt < 3; attempt++) {
-                String token = tokenProvider.getValidToken();
-                if (token == null) throw new IOException("Token fetch failed during retry");
-
-                Request request = new Request.Builder()
-                        .url(url)
-                        .header("Authorization", "Bearer " + token)
-                        .header("User-Agent", "YourAppName")
-                        .build();
-
-                try (Response response = httpClient.newCall(request).execute()) {
-                    if (!response.isSuccessful()) {
-                        System.out.println("Reddit request failed: " + response);
-                        continue;
+    public CompletableFuture<String> getRandomImageAsync(String subreddit, String fallbackSubreddit) {
+        List<String> endpoints = new ArrayList<>(List.of(ENDPOINTS));
+        Collections.shuffle(endpoints); // Randomize to vary traffic
+
+        return getMediaUrlsHedged(subreddit, endpoints)
+                .thenApply(mediaUrls -> mediaUrls.get(ThreadLocalRandom.current().nextInt(mediaUrls.size())))
+                .exceptionallyCompose(error -> {
+                    // If all endpoints fail, try fallback subreddit
+                    if (subreddit.equalsIgnoreCase(fallbackSubreddit)) {
+                        return CompletableFuture.failedFuture(new IOException("Failed to fetch Reddit image after trying all endpoints and fallback.", unwrap(error)));
                     }
+                    System.out.println("All subreddit attempts failed. Falling back to: " + fallbackSubreddit);
+                    return getRandomImageAsync(fallbackSubreddit, fallbackSubreddit); // Avoid infinite loop
+                });
+    }
 
-                    String responseData = Objects.requireNonNull(response.body()).string();
-                    JsonReader reader = new JsonReader(new StringReader(responseData));
-                    reader.setLenient(true);
-
-                    JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-                    JsonArray children = jsonObject.getAsJsonObject("data").getAsJsonArray("children");
+    /**
+     * Fetches one listing of a subreddit and returns the media URL of every post in it.
+     *
+     * @param subreddit the subreddit to fetch
+     * @param endpoint the listing to fetch: hot, new or top
+     * @return the media URLs in listing order, possibly empty
+     * @throws IOException if the token cannot be fetched or the request fails
+     */
+    public List<String> getMediaUrls(String subreddit, String endpoint) throws IOException {
+        return await(getMediaUrlsAsync(subreddit, endpoint));
+    }
 
-                    List<String> mediaUrls = new ArrayList<>();
-                    for (int i = 0; i < children.size(); i++) {
-                        JsonObject postData = children.get(i).getAsJsonObject().getAsJsonObject("data");
-                        String mediaUrl = extractMediaUrl(postData);
-                        if (mediaUrl != null) {
-                            mediaUrls.add(mediaUrl);
-                        }
-                    }
+    /**
+     * Fetches one listing of a subreddit and returns the media URL of every post in it.
+     *
+     * @param subreddit the subreddit to fetch
+     * @param endpoint the listing to fetch: hot, new or top
+     * @return a future completed with the media URLs in listing order, possibly empty
+     */
+    public CompletableFuture<List<String>> getMediaUrlsAsync(String subreddit, String endpoint) {
+        String url = "https://" + API_HOST + "/r/" + subreddit + "/" + endpoint + ".json?limit=50";
+        System.out.println("Trying URL: " + url);
 
-                    if (!mediaUrls.isEmpty()) {
-                        Collections.shuffle(mediaUrls);
-                        return mediaUrls.get(0);
-                    } else {
-                        throw new IOException("No valid media URLs found.");
-                    }
-                } catch (IOException ex) {
-                    System.out.println("Retrying fetch (attempt " + (attempt + 1) + ") for " + endpoint + ": " + ex.getMessage());
-                    lastException = ex;
-                    httpClient.connectionPool().evictAll();
-                }
+        return withRetries(endpoint, () -> send(url, "YourAppName", response -> {
+            if (!response.isSuccessful()) {
+                throw new StatusException(response.code(), "Reddit request failed: " + response);
             }
-
-            System.out.println("All 3 attempts failed for endpoint: " + endpoint + ", trying next one.");
-        }
-
-        // If all endpoints fail, try fallback subreddit
-        if (!subreddit.equalsIgnoreCase(fallbackSubreddit)) {
-            System.out.println("All subreddit attempts failed. Falling back to: " + fallbackSubreddit);
-            return getRandomImageWithFallback(fallbackSubreddit, fallbackSubreddit); // Avoid infinite loop
-        }
-
-        throw new IOException("Failed to fetch Reddit image after trying all endpoints and fallback.", lastException);
+            // Read the URLs straight off the response stream instead of building the whole document
+            return RedditListingParser.readMediaUrls(Objects.requireNonNull(response.body()).charStream());
+        }));
     }
 
     /**
-     * Extracts the media URL from a Reddit post's JSON data.
-     * Handles both image and video formats.
+     * Fetches a listing of a subreddit from whichever of the given endpoints answers first with media.
+     * The first endpoint is asked straight away and each of the others is asked in turn if
+     * no answer has come after a short delay, or as soon as an earlier one fails. Once one
+     * answers, the requests still running are cancelled.
      *
-     * @param mediaData the JSON object containing media data
-     * @return the extracted media URL, or null if not found
+     * @param subreddit the subreddit to fetch
+     * @param endpoints the listings to try, the preferred one first
+     * @return a future completed with the media URLs of the winning listing, never empty
      */
-    private String extractMediaUrl(JsonObject mediaData) {
-        if (mediaData.has("url")) {
-            return mediaData.get("url").getAsString();
-        } else if (mediaData.has("media")) {
-            JsonObject media = mediaData.getAsJsonObject("media");
-            if (media.has("reddit_video")) {
-                return media.getAsJsonObject("reddit_video").get("fallback_url").getAsString();
-            }
-        }
-        return null;
+    public CompletableFuture<List<String>> getMediaUrlsHedged(String subreddit, List<String> endpoints) {
+        Hedge hedge = new Hedge(subreddit, endpoints);
+        hedge.launchNext();
+        return hedge.winner;
     }
 
     /**
@@ -244,6 +170,18 @@ public class RedditClient {
      * @throws IOException if an error occurs while checking the URL
      */
     public boolean isValidMediaUrl(String url, boolean includeVideos) throws IOException {
+        return await(isValidMediaUrlAsync(url, includeVideos));
+    }
+
+    /**
+     * Validates a media URL by checking its accessibility and content type.
+     * Skips known non-media URLs and Reddit HTML posts without sending a request.
+     *
+     * @param url the URL to validate
+     * @param includeVideos whether to include video URLs in validation
+     * @return a future completed with true if the URL is valid media, false otherwise
+     */
+    public CompletableFuture<Boolean> isValidMediaUrlAsync(String url, boolean includeVideos) {
         // Basic skip: known non-media or unwanted domains
         if (!includeVideos && (
                 url.endsWith(".mp4") ||
@@ -253,36 +191,62 @@ public class RedditClient {
                         url.contains("youtube"))
         ) {
             System.out.println("Skipping video: " + url);
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
         if (url.contains("imgur.com") || url.contains("patreon.com")) {
             System.out.println("Skipping unsupported domain: " + url);
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
         // Skip Reddit post HTML (but allow Reddit API .json endpoints)
         if (url.matches("https://(www\\.)?reddit\\.com/r/[^/]+/comments/[^/]+.*") && !url.endsWith(".json")) {
             System.out.println("Skipping Reddit HTML post: " + url);
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
-        // Check HTTP response
+        // Check HTTP response, unless the URL or its host has been checked recently
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return validationCache.validate(url, httpUrl.host(), this::probe);
+    }
+
+    /**
+     * Get the validation cache's hit rate and probe latency.
+     *
+     * @return a snapshot of the validation statistics
+     */
+    public MediaValidationCache.ValidationStats getValidationStats() {
+        return validationCache.getStats();
+    }
+
+    /**
+     * Check that a URL serves something without downloading it: a HEAD request, or a GET of
+     * its first byte for servers that do not accept HEAD.
+     */
+    private CompletableFuture<ProbeResult> probe(String url) {
         System.out.println("Checking if URL is valid: " + url);
-        String accessToken = tokenProvider.getValidToken();
-        Request request = new Request.Builder()
-                .url(url)
-                .header("Authorization", "Bearer " + accessToken)
-                .header("User-Agent", "EyaBot/1.0 by /u/JonTronsCareer")
-                .build();
-
-        try (Response response = httpClient.newCall(request).execute()) {
-            boolean isOk = response.isSuccessful();
-            if (!isOk) {
-                System.out.println("Request failed: " + response.code());
-            }
-            return isOk;
+        return send(url, "EyaBot/1.0 by /u/JonTronsCareer", builder -> builder.head(), this::readProbe)
+                .thenCompose(result -> result != null ? CompletableFuture.completedFuture(result)
+                        : send(url, "EyaBot/1.0 by /u/JonTronsCareer", builder -> builder.header("Range", "bytes=0-0"), this::readProbe)
+                        .thenApply(rangeResult -> rangeResult != null ? rangeResult : ProbeResult.INVALID));
+    }
+
+    /**
+     * Read a probe's response, or null if the server does not support the probe's method.
+     */
+    private ProbeResult readProbe(Response response) {
+        int code = response.code();
+        if (response.isSuccessful()) {
+            return ProbeResult.VALID;
         }
+        if (code == 405 || code == 501) {
+            return null;
+        }
+        System.out.println("Request failed: " + code);
+        return code >= 500 || code == 429 ? ProbeResult.HOST_FAILURE : ProbeResult.INVALID;
     }
 
     /**
@@ -293,56 +257,269 @@ public class RedditClient {
      * @return a list of image URLs from the gallery
      */
     public List<String> getGalleryImages(String galleryUrl) {
-        List<String> imageUrls = new ArrayList<>();
-        try {
-            String accessToken = tokenProvider.getValidToken();
-            String postId = galleryUrl.replaceAll(".*/(\\w+)$", "$1"); // Extract post ID
-            String apiUrl = "https://oauth.reddit.com/comments/" + postId + ".json";
-
-            System.out.println("Fetching gallery images from: " + apiUrl);
-
-            Request request = new Request.Builder()
-                    .url(apiUrl)
-                    .header("Authorization", "Bearer " + accessToken)
-                    .header("User-Agent", "EyaBot/1.0 by /u/JonTronsCareer") // Make it Reddit-compliant
-                    .build();
-
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    System.out.println("Request failed: " + response.code());
-                    return imageUrls;
-                }
+        return getGalleryImagesAsync(galleryUrl).join();
+    }
 
-                assert response.body() != null;
-                String body = response.body().string();
-                JSONArray root = new JSONArray(body);
-                JSONObject postData = root.getJSONObject(0)
-                        .getJSONObject("data")
-                        .getJSONArray("children")
-                        .getJSONObject(0)
-                        .getJSONObject("data");
-
-                if (!postData.has("gallery_data") || !postData.has("media_metadata")) {
-                    System.out.println("Not a gallery post.");
-                    return imageUrls;
-                }
+    /**
+     * Fetches gallery images from a Reddit post URL.
+     *
+     * @param galleryUrl the Reddit post URL containing the gallery
+     * @return a future completed with the gallery's image URLs, empty if there are none or the request fails
+     */
+    public CompletableFuture<List<String>> getGalleryImagesAsync(String galleryUrl) {
+        String postId = galleryUrl.replaceAll(".*/(\\w+)$", "$1"); // Extract post ID
+        String apiUrl = "https://" + API_HOST + "/comments/" + postId + ".json";
+
+        System.out.println("Fetching gallery images from: " + apiUrl);
 
-                JSONArray items = postData.getJSONObject("gallery_data").getJSONArray("items");
-                JSONObject metadata = postData.getJSONObject("media_metadata");
+        return send(apiUrl, "EyaBot/1.0 by /u/JonTronsCareer", response -> {
+            if (!response.isSuccessful()) {
+                System.out.println("Request failed: " + response.code());
+                return List.<String>of();
+            }
+            List<String> imageUrls = RedditListingParser.readGalleryImages(Objects.requireNonNull(response.body()).charStream());
+            if (imageUrls.isEmpty()) {
+                System.out.println("Not a gallery post.");
+            }
+            return imageUrls;
+        }).exceptionally(error -> {
+            System.err.println("Failed to fetch gallery images from " + apiUrl + ": " + unwrap(error).getMessage());
+            return List.of();
+        });
+    }
+
+    /**
+     * Make a request up to {@value #MAX_ATTEMPTS} times until it succeeds, or until it fails with
+     * a status that asking again would not change. A retry is sent straight away, unless the
+     * failure paused requests to the API, such as a 429, in which case it waits out the pause
+     * like any other request. Cancelling the returned future
+     * cancels the attempt in flight and stops any further ones.
+     */
+    private <T> CompletableFuture<T> withRetries(String what, Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(what, request, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(String what, Supplier<CompletableFuture<T>> request, int attempt, CompletableFuture<T> result) {
+        if (result.isDone()) return;
+        CompletableFuture<T> call = request.get();
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) call.cancel(true);
+        });
+        call.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (attempt >= MAX_ATTEMPTS || result.isDone() || isPermanent(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            System.out.println("Retrying fetch (attempt " + (attempt + 1) + ") for " + what + ": " + cause.getMessage());
+            attempt(what, request, attempt + 1, result);
+        });
+    }
 
-                for (int i = 0; i < items.length(); i++) {
-                    String mediaId = items.getJSONObject(i).getString("media_id");
-                    String imageUrl = metadata.getJSONObject(mediaId)
-                            .getJSONObject("s")
-                            .getString("u")
-                            .replaceAll("&amp;", "&");
-                    imageUrls.add(imageUrl);
+    /**
+     * Send a GET request and read its response.
+     */
+    private <T> CompletableFuture<T> send(String url, String userAgent, ResponseReader<T> reader) {
+        return send(url, userAgent, builder -> builder, reader);
+    }
+
+    /**
+     * Send a request and read its response on OkHttp's dispatcher thread. Only requests to the
+     * Reddit API carry the OAuth token, and they wait out any rate limit pause before they are sent.
+     * Cancelling the returned future cancels the call.
+     */
+    private <T> CompletableFuture<T> send(String url, String userAgent, UnaryOperator<Request.Builder> customizer, ResponseReader<T> reader) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            result.completeExceptionally(new IOException("Invalid URL: " + url));
+            return result;
+        }
+        boolean api = httpUrl.host().equals(API_HOST);
+        Request.Builder builder = customizer.apply(new Request.Builder()
+                .url(httpUrl)
+                .header("User-Agent", userAgent));
+        if (!api) {
+            enqueue(builder.build(), false, reader, result);
+            return result;
+        }
+
+        tokenProvider.getValidTokenAsync().whenComplete((token, error) -> {
+            if (error != null || token == null) {
+                result.completeExceptionally(new IOException("Token fetch failed during retry", error != null ? unwrap(error) : null));
+                return;
+            }
+            Request request = builder.header("Authorization", "Bearer " + token).build();
+
+            long wait = pausedUntil - System.currentTimeMillis();
+            if (wait > 0) {
+                timer.schedule(() -> enqueue(request, true, reader, result), wait, TimeUnit.MILLISECONDS);
+            } else {
+                enqueue(request, true, reader, result);
+            }
+        });
+        return result;
+    }
+
+    private <T> void enqueue(Request request, boolean api, ResponseReader<T> reader, CompletableFuture<T> result) {
+        if (result.isDone()) return;
+        Call call = httpClient.newCall(request);
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) call.cancel();
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                // Drop connections to the API that may have gone stale before the next attempt
+                if (api) httpClient.connectionPool().evictAll();
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    if (api) recordRateLimit(response);
+                    result.complete(reader.read(response));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
                 }
+            }
+        });
+    }
 
+    /**
+     * Pause requests to the Reddit API until the current window resets once it is nearly used up,
+     * or for as long as Reddit asks when it answers 429.
+     */
+    private void recordRateLimit(Response response) {
+        String remaining = response.header("X-Ratelimit-Remaining");
+        String reset = response.header("X-Ratelimit-Reset");
+        try {
+            boolean exhausted = response.code() == 429 || (remaining != null && Double.parseDouble(remaining.trim()) < RATE_LIMIT_RESERVE);
+            if (!exhausted) return;
+
+            long pause = reset != null ? (long) (Double.parseDouble(reset.trim()) * 1000) : DEFAULT_RATE_LIMIT_PAUSE_MILLIS;
+            long until = System.currentTimeMillis() + pause;
+            if (until > pausedUntil) {
+                pausedUntil = until;
+                System.out.println("Reddit rate limit nearly used up (" + remaining + " left), pausing API requests for " + pause + "ms");
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Unreadable Reddit rate limit headers: remaining=" + remaining + ", reset=" + reset);
+        }
+    }
+
+    /**
+     * Wait for a future, rethrowing its failure as an IOException.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Reads the result of a request from its response.
+     *
+     * @param <T> the type of result.
+     */
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Response response) throws IOException;
+    }
+
+    /**
+     * Tell whether a request failed with a status that asking again would not change: a 4xx
+     * other than 429. Transport failures, 5xx and 429 are worth another attempt.
+     */
+    private static boolean isPermanent(Throwable error) {
+        if (!(error instanceof StatusException status)) return false;
+        return status.code >= 400 && status.code < 500 && status.code != 429;
+    }
+
+    /**
+     * A request that got a response with an unsuccessful status.
+     */
+    private static final class StatusException extends IOException {
+        private final int code;
+
+        private StatusException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    /**
+     * A listing request hedged across several endpoints.
+     */
+    private final class Hedge {
+        private final String subreddit;
+        private final List<String> endpoints;
+        private final CompletableFuture<List<String>> winner = new CompletableFuture<>();
+        private final List<CompletableFuture<List<String>>> attempts = new CopyOnWriteArrayList<>();
+        private final AtomicInteger launched = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile Throwable lastError;
+
+        private Hedge(String subreddit, List<String> endpoints) {
+            this.subreddit = subreddit;
+            this.endpoints = endpoints;
+            winner.whenComplete((urls, error) -> attempts.forEach(attempt -> attempt.cancel(true)));
+        }
+
+        /**
+         * Ask the next endpoint, unless there is a winner or every endpoint has been asked,
+         * and arm the timer that asks the one after it.
+         */
+        private void launchNext() {
+            if (winner.isDone()) return;
+            int index = launched.getAndIncrement();
+            if (index >= endpoints.size()) return;
+
+            String endpoint = endpoints.get(index);
+            CompletableFuture<List<String>> attempt = getMediaUrlsAsync(subreddit, endpoint);
+            attempts.add(attempt);
+            // The winner may have been decided while this attempt was being launched, after the
+            // attempts were cancelled, so it would otherwise run to the end for nothing
+            if (winner.isDone()) {
+                attempt.cancel(true);
+                return;
+            }
+            attempt.whenComplete((urls, error) -> {
+                if (error == null && !urls.isEmpty()) {
+                    winner.complete(urls);
+                    return;
+                }
+                if (winner.isDone()) return;
+
+                lastError = error != null ? unwrap(error) : new IOException("No valid media URLs found.");
+                System.out.println("Fetch failed for " + endpoint + ": " + lastError.getMessage());
+                // A subreddit that is private, banned or missing is so on every endpoint
+                if (isPermanent(lastError)) {
+                    winner.completeExceptionally(new IOException("Listing refused for r/" + subreddit, lastError));
+                } else if (failed.incrementAndGet() == endpoints.size()) {
+                    winner.completeExceptionally(new IOException("All endpoints failed for r/" + subreddit, lastError));
+                } else {
+                    launchNext();
+                }
+            });
+            if (index + 1 < endpoints.size()) {
+                timer.schedule(this::launchNext, HEDGE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return imageUrls;
     }
 }
@@ -0,0 +1,272 @@
+package org.redacted.util.SocialMedia.Reddit;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Pulls media URLs out of Reddit API responses while they are read, without building a tree
+ * of the whole document. Only the few fields that matter are read, every other value is
+ * skipped as it streams past, so a listing costs little more than the URLs it holds.
+ *
+ * @author Derrick Eberlein
+ */
+public final class RedditListingParser {
+
+    private RedditListingParser() {
+    }
+
+    /**
+     * Reads a subreddit listing and hands each post's media URL to the consumer, in listing order.
+     * A post's "url" is used if it has one, otherwise the fallback URL of its Reddit-hosted video.
+     *
+     * @param reader the listing's JSON
+     * @param consumer receives each media URL as soon as its post has been read
+     * @throws IOException if the JSON cannot be read
+     */
+    public static void readMediaUrls(Reader reader, Consumer<String> consumer) throws IOException {
+        JsonReader json = newReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!json.nextName().equals("data") || json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!json.nextName().equals("children") || json.peek() != JsonToken.BEGIN_ARRAY) {
+                    json.skipValue();
+                    continue;
+                }
+                json.beginArray();
+                while (json.hasNext()) {
+                    String mediaUrl = readChild(json);
+                    if (mediaUrl != null) {
+                        consumer.accept(mediaUrl);
+                    }
+                }
+                json.endArray();
+            }
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Reads a subreddit listing into a list of its media URLs.
+     *
+     * @param reader the listing's JSON
+     * @return the media URLs in listing order
+     * @throws IOException if the JSON cannot be read
+     */
+    public static List<String> readMediaUrls(Reader reader) throws IOException {
+        List<String> mediaUrls = new ArrayList<>();
+        readMediaUrls(reader, mediaUrls::add);
+        return mediaUrls;
+    }
+
+    /**
+     * Reads the image URLs of a gallery post from the response of the comments endpoint,
+     * in gallery order. Reading stops once the post itself has been read, the comments that
+     * follow it are never parsed.
+     *
+     * @param reader the comments endpoint's JSON
+     * @return the gallery's image URLs, empty if the post is not a gallery
+     * @throws IOException if the JSON cannot be read
+     */
+    public static List<String> readGalleryImages(Reader reader) throws IOException {
+        List<String> order = new ArrayList<>();
+        Map<String, String> images = new HashMap<>();
+
+        JsonReader json = newReader(reader);
+        json.beginArray();
+        if (json.hasNext()) {
+            // [ { data: { children: [ { data: <post> } ] } }, <comments> ]
+            if (enter(json, "data") && enter(json, "children") && json.peek() == JsonToken.BEGIN_ARRAY) {
+                json.beginArray();
+                if (json.hasNext() && enter(json, "data") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        String name = json.nextName();
+                        if (name.equals("gallery_data") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                            readGalleryOrder(json, order);
+                        } else if (name.equals("media_metadata") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                            readMediaMetadata(json, images);
+                        } else {
+                            json.skipValue();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<String> imageUrls = new ArrayList<>(order.size());
+        for (String mediaId : order) {
+            String imageUrl = images.get(mediaId);
+            if (imageUrl != null) {
+                imageUrls.add(imageUrl);
+            }
+        }
+        return imageUrls;
+    }
+
+    /**
+     * Reads one listing child, { kind, data: { url, media, ... } }, and returns its media URL.
+     */
+    private static String readChild(JsonReader json) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return null;
+        }
+
+        String url = null;
+        String videoUrl = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!json.nextName().equals("data") || json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("url")) {
+                    url = nextStringOrNull(json);
+                } else if (name.equals("media") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                    videoUrl = readVideoFallback(json);
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+        json.endObject();
+        return url != null ? url : videoUrl;
+    }
+
+    /**
+     * Reads { reddit_video: { fallback_url } } and returns the fallback URL, if any.
+     */
+    private static String readVideoFallback(JsonReader json) throws IOException {
+        String fallbackUrl = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!json.nextName().equals("reddit_video") || json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                if (json.nextName().equals("fallback_url")) {
+                    fallbackUrl = nextStringOrNull(json);
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+        json.endObject();
+        return fallbackUrl;
+    }
+
+    /**
+     * Reads { items: [ { media_id }, ... ] } into the list of media IDs.
+     */
+    private static void readGalleryOrder(JsonReader json, List<String> order) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!json.nextName().equals("items") || json.peek() != JsonToken.BEGIN_ARRAY) {
+                json.skipValue();
+                continue;
+            }
+            json.beginArray();
+            while (json.hasNext()) {
+                if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                    json.skipValue();
+                    continue;
+                }
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals("media_id")) {
+                        String mediaId = nextStringOrNull(json);
+                        if (mediaId != null) order.add(mediaId);
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Reads { <media_id>: { s: { u } }, ... } into a map of media ID to image URL.
+     */
+    private static void readMediaMetadata(JsonReader json, Map<String, String> images) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String mediaId = json.nextName();
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!json.nextName().equals("s") || json.peek() != JsonToken.BEGIN_OBJECT) {
+                    json.skipValue();
+                    continue;
+                }
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals("u")) {
+                        String imageUrl = nextStringOrNull(json);
+                        if (imageUrl != null) images.put(mediaId, imageUrl.replace("&amp;", "&"));
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            }
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Step into the object about to be read and move to the value of one of its fields,
+     * skipping the fields before it.
+     *
+     * @return true if the field was found, with the reader positioned at its value
+     */
+    private static boolean enter(JsonReader json, String field) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) return false;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals(field)) {
+                return true;
+            }
+            json.skipValue();
+        }
+        return false;
+    }
+
+    private static String nextStringOrNull(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.STRING) {
+            return json.nextString();
+        }
+        json.skipValue();
+        return null;
+    }
+
+    private static JsonReader newReader(Reader reader) {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        return json;
+    }
+}
@@ -3,21 +3,38 @@ package org.redacted.util.SocialMedia.Reddit;
 import org.bson.Document;
 import org.redacted.Database.Database;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.*;
 
 /**
  * Manages Reddit OAuth tokens, checking for validity and refreshing them as needed.
- * Uses a Database instance to store and retrieve tokens.
+ * The current token is held in memory, so handing it out costs nothing. The database is
+ * read once, on first use, to pick up a token stored by an earlier run, and written only
+ * when a new token is fetched. A single refresh runs at a time however many callers find
+ * the token expired, and the token is refreshed in the background shortly before it
+ * expires, so callers normally never wait for one.
+ * <p>
+ * One instance is shared by every command that talks to Reddit, see {@link org.redacted.Redacted#getRedditTokenManager()}.
  *
  * @author Derrick Eberlein
  */
 public class RedditTokenManager {
+    private static final Duration TOKEN_LIFETIME = Duration.ofHours(1);
+    private static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
     private final Database database;
     private final RedditOAuth redditOAuth;
     private final String clientId;
     private final String clientSecret;
     private final String username;
     private final String password;
+    private final ScheduledExecutorService refresher;
+
+    private volatile CachedToken current;
+    private boolean loaded;
+    private CompletableFuture<CachedToken> refresh;
 
     /**
      * Constructs a RedditTokenManager with the provided database and RedditOAuth instance.
@@ -36,39 +53,132 @@ public class RedditTokenManager {
         this.clientSecret = clientSecret;
         this.username = username;
         this.password = password;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reddit-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
      * Retrieves a valid Reddit OAuth token, refreshing it if necessary.
+     * Only waits when there is no unexpired token, otherwise returns at once.
      *
      * @return the valid token as a String, or null if unable to fetch a new token
      */
     public String getValidToken() {
-        Document tokenDoc = database.getRedditToken();
-        if (tokenDoc != null) {
-            // Check if the token is still valid
-            Instant expiration = tokenDoc.getDate("expiration").toInstant();
-            System.out.println("Current token expires at: " + expiration);
-            System.out.println("Time Now: " + Instant.now());
-            if (Instant.now().isBefore(expiration)) {
-                return tokenDoc.getString("token");
+        try {
+            return getValidTokenAsync().join();
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves a valid Reddit OAuth token without blocking, for callers that must not wait on a refresh.
+     *
+     * @return a future completed with the valid token, or failed if unable to fetch a new token
+     */
+    public CompletableFuture<String> getValidTokenAsync() {
+        CachedToken token = current;
+        Instant now = Instant.now();
+        if (token != null && now.isBefore(token.expiration())) {
+            if (now.isAfter(token.expiration().minus(REFRESH_MARGIN))) {
+                refreshAsync();
+            }
+            return CompletableFuture.completedFuture(token.token());
+        }
+        return refreshAsync().thenApply(CachedToken::token);
+    }
+
+    /**
+     * Start a refresh unless one is already running.
+     *
+     * @return a future completed with the refreshed token
+     */
+    private synchronized CompletableFuture<CachedToken> refreshAsync() {
+        if (refresh == null || refresh.isDone()) {
+            refresh = CompletableFuture.supplyAsync(this::refresh, refresher);
+        }
+        return refresh;
+    }
+
+    /**
+     * Refresh the token if it is missing or about to expire. A scheduled refresh that an
+     * earlier one has already made unnecessary does nothing.
+     */
+    private void refreshIfDue() {
+        CachedToken token = current;
+        if (token == null || Instant.now().isAfter(token.expiration().minus(REFRESH_MARGIN))) {
+            refreshAsync();
+        }
+    }
+
+    /**
+     * Use the stored token if an earlier run left one that is still good, otherwise fetch a new
+     * one and store it. Runs on the refresher thread only.
+     */
+    private CachedToken refresh() {
+        if (!loaded) {
+            loaded = true;
+            CachedToken stored = loadStoredToken();
+            if (stored != null && Instant.now().isBefore(stored.expiration().minus(REFRESH_MARGIN))) {
+                System.out.println("Loaded stored Reddit token, expires at: " + stored.expiration());
+                return use(stored);
             }
-            else {
-                System.out.println("Token expired, fetching a new one.");
-                try {
-                    String token = redditOAuth.authenticate(clientId, clientSecret, username, password);
-                    Instant newExpiration = Instant.now().plusSeconds(3600); // 1 hour
-                    System.out.println("New token expires at: " + newExpiration);
-                    database.clearRedditToken();
-                    database.storeRedditToken(token, newExpiration);
-                    return token;
-                } catch (Exception e) {
-                    System.err.println("[RedditTokenManager] Failed to fetch new token: " + e.getMessage());
-                    return null;
-                }
+        }
+
+        try {
+            String token = redditOAuth.authenticate(clientId, clientSecret, username, password);
+            CachedToken fresh = new CachedToken(token, Instant.now().plus(TOKEN_LIFETIME));
+            System.out.println("New token expires at: " + fresh.expiration());
+            try {
+                database.storeRedditToken(fresh.token(), fresh.expiration());
+            } catch (Exception e) {
+                // The token still works for this run, it just won't survive a restart
+                System.err.println("[RedditTokenManager] Failed to store new token: " + e.getMessage());
+            }
+            return use(fresh);
+        } catch (Exception e) {
+            System.err.println("[RedditTokenManager] Failed to fetch new token: " + e.getMessage());
+            CachedToken token = current;
+            if (token != null && Instant.now().isBefore(token.expiration())) {
+                // Keep the old token and try again before it runs out
+                refresher.schedule(this::refreshIfDue, RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Make a token current and schedule its refresh shortly before it expires.
+     */
+    private CachedToken use(CachedToken token) {
+        current = token;
+        long delay = Duration.between(Instant.now(), token.expiration().minus(REFRESH_MARGIN)).toMillis();
+        refresher.schedule(this::refreshIfDue, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        return token;
+    }
+
+    private CachedToken loadStoredToken() {
+        try {
+            Document tokenDoc = database.getRedditToken();
+            if (tokenDoc == null || tokenDoc.getString("token") == null || tokenDoc.getDate("expiration") == null) {
+                return null;
             }
+            return new CachedToken(tokenDoc.getString("token"), tokenDoc.getDate("expiration").toInstant());
+        } catch (Exception e) {
+            System.err.println("[RedditTokenManager] Failed to load stored token: " + e.getMessage());
+            return null;
         }
+    }
 
-        return null;
+    /**
+     * A token and the time it expires.
+     *
+     * @param token the access token
+     * @param expiration the time the token expires
+     */
+    private record CachedToken(String token, Instant expiration) {
     }
-}
\ No newline at end of file
+}
@@ -2,12 +2,12 @@ package org.redacted.util.googleCalendar;
 
 import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.EventDateTime;
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.ScheduledEvent;
 import org.bson.Document;
+import org.redacted.Database.GuildCollection;
 import org.redacted.Redacted;
 
 import java.time.ZoneId;
@@ -37,7 +37,7 @@ public class CalendarSyncUtil {
                 long guildId = guild.getIdLong();
                 List<ScheduledEvent> events = guild.getScheduledEvents(); // synchronous call
 
-                MongoCollection<Document> collection = bot.getDatabase().getCalendarEventCollection(guildId);
+                GuildCollection<Document> collection = bot.getDatabase().getCalendarEventCollection(guildId);
 
                 for (ScheduledEvent event : events) {
                     long discordEventId = event.getIdLong();
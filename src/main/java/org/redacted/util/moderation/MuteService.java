@@ -1,7 +1,6 @@
 package org.redacted.util.moderation;
 
 import com.mongodb.client.FindIterable;
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
@@ -16,6 +15,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.redacted.Database.Data.GuildData;
+import org.redacted.Database.GuildCollection;
 
 /**
  * Service for managing user mutes in a Discord guild.
@@ -85,7 +85,7 @@ public class MuteService {
      * @param muteRole The mute role to remove from the user.
      */
     public void unmute(Guild guild, String userId, Role muteRole) {
-        MongoCollection<Document> muteCollection = guildData.getMuteCollection(guild.getIdLong());
+        GuildCollection<Document> muteCollection = guildData.getMuteCollection(guild.getIdLong());
         Document doc = muteCollection.find(Filters.eq("userId", userId)).first();
         if (doc == null) return;
 
@@ -122,7 +122,7 @@ public class MuteService {
      * @param guild The guild in which to recover scheduled unmutes.
      */
     public void recoverScheduledUnmutes(Guild guild) {
-        MongoCollection<Document> muteCollection = guildData.getMuteCollection(guild.getIdLong());
+        GuildCollection<Document> muteCollection = guildData.getMuteCollection(guild.getIdLong());
         Instant now = Instant.now();
 
         FindIterable<Document> mutes = muteCollection.find();
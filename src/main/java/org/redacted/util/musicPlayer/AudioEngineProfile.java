@@ -0,0 +1,117 @@
+package org.redacted.util.musicPlayer;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration;
+import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration.ResamplingQuality;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.util.Locale;
+
+/**
+ * The settings the audio player manager is tuned with. A profile starts from one of the presets
+ * named by the AUDIO_PROFILE variable and any of its settings can be overridden on its own:
+ * <ul>
+ *     <li>AUDIO_FRAME_BUFFER_MS - how much decoded audio is buffered ahead of each player.</li>
+ *     <li>AUDIO_OPUS_QUALITY - the Opus encoder's quality from 0 to 10, lower costs less CPU.</li>
+ *     <li>AUDIO_RESAMPLING_QUALITY - LOW, MEDIUM or HIGH, higher costs more CPU.</li>
+ *     <li>AUDIO_LOADER_THREADS - the threads that load tracks and run searches.</li>
+ * </ul>
+ *
+ * @param name the preset the profile started from.
+ * @param frameBufferMillis the frame buffer duration in milliseconds.
+ * @param opusQuality the Opus encoding quality.
+ * @param resamplingQuality the resampling quality.
+ * @param loaderThreads the item loader thread pool size.
+ * @author Derrick Eberlein
+ */
+public record AudioEngineProfile(String name, int frameBufferMillis, int opusQuality,
+                                 ResamplingQuality resamplingQuality, int loaderThreads) {
+
+    /** The best sound, for nodes with few streams. */
+    public static final AudioEngineProfile HIGH_QUALITY = new AudioEngineProfile("high_quality", 5000, 10, ResamplingQuality.HIGH, 10);
+
+    /**
+     * What LavaPlayer uses when it is not tuned: a 5 second frame buffer, Opus quality 10, low
+     * resampling and 10 loader threads. The encoder settings are read from a fresh
+     * {@link AudioConfiguration}, the buffer and thread count are private to LavaPlayer's
+     * player manager, so they are copied from it.
+     */
+    public static final AudioEngineProfile BALANCED = defaults();
+
+    /** The least CPU and memory per stream, for nodes with many streams. */
+    public static final AudioEngineProfile EFFICIENT = new AudioEngineProfile("efficient", 2000, 6, ResamplingQuality.LOW, 4);
+
+    /**
+     * Creates the profile named by the AUDIO_PROFILE variable, with any settings overridden by
+     * their own variables. Unknown or invalid values fall back to the preset.
+     *
+     * @param config the environment configuration.
+     * @return the profile.
+     */
+    public static AudioEngineProfile fromConfig(Dotenv config) {
+        AudioEngineProfile preset = switch (value(config, "AUDIO_PROFILE", BALANCED.name).toLowerCase(Locale.ROOT)) {
+            case "high_quality" -> HIGH_QUALITY;
+            case "efficient" -> EFFICIENT;
+            default -> BALANCED;
+        };
+
+        ResamplingQuality resampling = preset.resamplingQuality;
+        String resamplingValue = value(config, "AUDIO_RESAMPLING_QUALITY", null);
+        if (resamplingValue != null) {
+            try {
+                resampling = ResamplingQuality.valueOf(resamplingValue.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid AUDIO_RESAMPLING_QUALITY '" + resamplingValue + "', using " + resampling);
+            }
+        }
+
+        return new AudioEngineProfile(
+                preset.name,
+                number(config, "AUDIO_FRAME_BUFFER_MS", preset.frameBufferMillis, 200, 60000),
+                number(config, "AUDIO_OPUS_QUALITY", preset.opusQuality, 0, 10),
+                resampling,
+                number(config, "AUDIO_LOADER_THREADS", preset.loaderThreads, 1, 64)
+        );
+    }
+
+    private static AudioEngineProfile defaults() {
+        AudioConfiguration configuration = new AudioConfiguration();
+        return new AudioEngineProfile("balanced", 5000, configuration.getOpusEncodingQuality(),
+                configuration.getResamplingQuality(), 10);
+    }
+
+    /**
+     * Tunes a player manager with this profile. Must be called before any players are created.
+     *
+     * @param playerManager the player manager to tune.
+     */
+    public void apply(AudioPlayerManager playerManager) {
+        playerManager.setFrameBufferDuration(frameBufferMillis);
+        playerManager.setItemLoaderThreadPoolSize(loaderThreads);
+        playerManager.getConfiguration().setOpusEncodingQuality(opusQuality);
+        playerManager.getConfiguration().setResamplingQuality(resamplingQuality);
+        System.out.println("Audio engine profile " + this);
+    }
+
+    private static String value(Dotenv config, String key, String fallback) {
+        String value = config.get(key);
+        return value == null || value.isBlank() ? fallback : value.trim();
+    }
+
+    private static int number(Dotenv config, String key, int fallback, int min, int max) {
+        String value = value(config, key, null);
+        if (value == null) return fallback;
+        try {
+            return Math.max(min, Math.min(max, Integer.parseInt(value)));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + key + " '" + value + "', using " + fallback);
+            return fallback;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (frameBuffer=" + frameBufferMillis + "ms, opusQuality=" + opusQuality
+                + ", resampling=" + resamplingQuality + ", loaderThreads=" + loaderThreads + ")";
+    }
+}
@@ -0,0 +1,220 @@
+package org.redacted.util.musicPlayer;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.redacted.Database.Database;
+import org.redacted.Database.GuildCollection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a guild's music queue in its music_queue collection, so playback can resume where it
+ * left off after a restart. The queue is a single small document holding each track's URI and
+ * requester, the position in the playing track and the channels it plays in. It is updated
+ * incrementally as the queue changes: a queued track is pushed onto the end, a finished one is
+ * popped off the front, and the position is saved every {@value #POSITION_SECONDS} seconds.
+ * <p>
+ * Writes for every guild go through one thread in the order they were made, so the stored queue
+ * never runs ahead of or behind the one in memory by more than the writes still waiting.
+ *
+ * @author Derrick Eberlein
+ */
+public class QueueLog {
+
+    private static final String COLLECTION = "music_queue";
+    private static final Bson QUEUE = Filters.eq("type", "queue");
+    private static final long POSITION_SECONDS = 15;
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "music-queue-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final GuildCollection<Document> collection;
+    private final long guildId;
+    private LongSupplier position;
+    private ScheduledFuture<?> positionTask;
+
+    /**
+     * Constructs the QueueLog of a guild.
+     *
+     * @param database the database holding the guild's collections.
+     * @param guildId the guild whose queue is logged.
+     */
+    public QueueLog(Database database, long guildId) {
+        this.collection = database.getGuildCollection(guildId, COLLECTION);
+        this.guildId = guildId;
+    }
+
+    /**
+     * Record the channels the queue plays in.
+     *
+     * @param voiceChannelId the voice channel.
+     * @param textChannelId the channel now playing messages are sent to.
+     */
+    public void setChannels(long voiceChannelId, long textChannelId) {
+        write(Updates.combine(Updates.set("voiceChannelId", voiceChannelId), Updates.set("textChannelId", textChannelId)));
+    }
+
+    /**
+     * Record a track queued at the end.
+     *
+     * @param track the track.
+     */
+    public void append(AudioTrack track) {
+        write(Updates.push("tracks", entry(track)));
+        arm();
+    }
+
+    /**
+     * Record that the track at the front finished, so the next one plays from its start.
+     */
+    public void removeFirst() {
+        write(Updates.combine(Updates.popFirst("tracks"), Updates.set("position", 0L)));
+    }
+
+    /**
+     * Replace the recorded tracks, after the queue changed other than at its ends.
+     *
+     * @param tracks the tracks now queued, the playing one first.
+     */
+    public void rewrite(Collection<AudioTrack> tracks) {
+        List<Document> entries = new ArrayList<>(tracks.size());
+        for (AudioTrack track : tracks) {
+            entries.add(entry(track));
+        }
+        write(Updates.set("tracks", entries));
+        if (!entries.isEmpty()) arm();
+    }
+
+    /**
+     * Start saving the position in the playing track periodically. Saving stops when the queue
+     * is cleared and starts again once a track is queued.
+     *
+     * @param position supplies the position in milliseconds, or a negative value when nothing is playing.
+     */
+    public synchronized void track(LongSupplier position) {
+        this.position = position;
+        arm();
+    }
+
+    private synchronized void arm() {
+        if (positionTask != null || position == null) return;
+        LongSupplier supplier = position;
+        positionTask = WRITER.scheduleAtFixedRate(() -> {
+            long millis = supplier.getAsLong();
+            if (millis >= 0) update(Updates.set("position", millis));
+        }, POSITION_SECONDS, POSITION_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Forget the queue, once it has been stopped on purpose. The position is no longer saved
+     * until a track is queued again.
+     */
+    public synchronized void clear() {
+        if (positionTask != null) {
+            positionTask.cancel(false);
+            positionTask = null;
+        }
+        WRITER.execute(() -> {
+            try {
+                collection.deleteOne(QUEUE);
+            } catch (MongoException e) {
+                System.err.println("Failed to clear music queue for guild " + guildId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Read the stored queue. Blocks until the writes made before it have been stored.
+     *
+     * @return the stored queue, or null if there is none.
+     */
+    public SavedQueue read() {
+        try {
+            return WRITER.submit(() -> {
+                Document document = collection.find(QUEUE).first();
+                if (document == null) return null;
+                List<Entry> entries = new ArrayList<>();
+                for (Document track : document.getList("tracks", Document.class, List.of())) {
+                    String uri = track.getString("uri");
+                    if (uri != null) entries.add(new Entry(uri, track.getString("requester")));
+                }
+                if (entries.isEmpty()) return null;
+                return new SavedQueue(entries, number(document, "position"),
+                        number(document, "voiceChannelId"), number(document, "textChannelId"));
+            }).get();
+        } catch (Exception e) {
+            System.err.println("Failed to read music queue for guild " + guildId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Find which of the given guilds have a stored queue with tracks in it.
+     *
+     * @param database the database holding the guilds' collections.
+     * @param guildIds the guilds to check.
+     * @return the guilds with a queue to resume.
+     */
+    public static Set<Long> findSaved(Database database, Collection<Long> guildIds) {
+        return database.findGuildsMatching(COLLECTION, Filters.and(QUEUE, Filters.exists("tracks.0")), guildIds);
+    }
+
+    private void write(Bson update) {
+        WRITER.execute(() -> update(update));
+    }
+
+    private void update(Bson update) {
+        try {
+            collection.updateOne(QUEUE, Updates.combine(update, Updates.set("updatedAt", new Date())), new UpdateOptions().upsert(true));
+        } catch (MongoException e) {
+            System.err.println("Failed to log music queue for guild " + guildId + ": " + e.getMessage());
+        }
+    }
+
+    private static Document entry(AudioTrack track) {
+        String uri = track.getInfo().uri != null ? track.getInfo().uri : track.getIdentifier();
+        return new Document("uri", uri).append("requester", track.getUserData(String.class));
+    }
+
+    private static long number(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    /**
+     * A stored track.
+     *
+     * @param uri the URI the track is loaded from.
+     * @param requester the ID of the user who queued it.
+     */
+    public record Entry(String uri, String requester) {
+    }
+
+    /**
+     * A stored queue.
+     *
+     * @param tracks the queued tracks, the one that was playing first.
+     * @param position the position in the playing track in milliseconds.
+     * @param voiceChannelId the voice channel it played in.
+     * @param textChannelId the channel now playing messages were sent to.
+     */
+    public record SavedQueue(List<Entry> tracks, long position, long voiceChannelId, long textChannelId) {
+    }
+}
@@ -0,0 +1,152 @@
+package org.redacted.util.musicPlayer;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers which YouTube video each Spotify track was resolved to, so a track that has been
+ * queued before is loaded straight from its video instead of being searched for again.
+ * The most recently used tracks are kept in memory and every resolution is stored in the
+ * spotify_tracks collection, so the cache survives a restart and is shared by all guilds.
+ *
+ * @author Derrick Eberlein
+ */
+public class TrackResolutionCache {
+
+    private static final int MAX_ENTRIES = 5000;
+
+    private final MongoCollection<Document> collection;
+    private final ExecutorService writer;
+    private final Map<String, String> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a TrackResolutionCache.
+     *
+     * @param collection the collection resolutions are stored in.
+     */
+    public TrackResolutionCache(MongoCollection<Document> collection) {
+        this.collection = collection;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "track-resolution-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the YouTube video a Spotify track was resolved to.
+     *
+     * @param spotifyId the Spotify track ID.
+     * @return the YouTube video identifier, or null if the track has not been resolved.
+     */
+    public String get(String spotifyId) {
+        return getAll(List.of(spotifyId)).get(spotifyId);
+    }
+
+    /**
+     * Get the YouTube videos a number of Spotify tracks were resolved to. Tracks not held in
+     * memory are looked up in the database with a single query.
+     *
+     * @param spotifyIds the Spotify track IDs.
+     * @return the YouTube video identifier of every track that has been resolved, by Spotify ID.
+     */
+    public Map<String, String> getAll(Collection<String> spotifyIds) {
+        Map<String, String> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (entries) {
+            for (String spotifyId : spotifyIds) {
+                String identifier = entries.get(spotifyId);
+                if (identifier != null) {
+                    found.put(spotifyId, identifier);
+                } else {
+                    missing.add(spotifyId);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            try {
+                Map<String, String> loaded = new HashMap<>();
+                for (Document document : collection.find(Filters.in("_id", missing))) {
+                    String identifier = document.getString("identifier");
+                    if (identifier != null) loaded.put(document.getString("_id"), identifier);
+                }
+                synchronized (entries) {
+                    entries.putAll(loaded);
+                }
+                found.putAll(loaded);
+            } catch (MongoException e) {
+                System.err.println("Failed to load resolved Spotify tracks: " + e.getMessage());
+            }
+        }
+
+        hits.add(found.size());
+        misses.add(spotifyIds.size() - found.size());
+        return found;
+    }
+
+    /**
+     * Remember the YouTube video a Spotify track was resolved to.
+     *
+     * @param spotifyId the Spotify track ID.
+     * @param identifier the YouTube video identifier.
+     */
+    public void put(String spotifyId, String identifier) {
+        synchronized (entries) {
+            if (identifier.equals(entries.put(spotifyId, identifier))) return;
+        }
+        writer.execute(() -> {
+            try {
+                collection.replaceOne(Filters.eq("_id", spotifyId),
+                        new Document("_id", spotifyId).append("identifier", identifier).append("resolvedAt", new Date()),
+                        new ReplaceOptions().upsert(true));
+            } catch (MongoException e) {
+                System.err.println("Failed to store resolved Spotify track " + spotifyId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Forget a resolution, for instance because its video could no longer be loaded.
+     *
+     * @param spotifyId the Spotify track ID.
+     */
+    public void remove(String spotifyId) {
+        synchronized (entries) {
+            entries.remove(spotifyId);
+        }
+        writer.execute(() -> {
+            try {
+                collection.deleteOne(Filters.eq("_id", spotifyId));
+            } catch (MongoException e) {
+                System.err.println("Failed to delete resolved Spotify track " + spotifyId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Get the share of lookups that were answered without a search.
+     *
+     * @return the hit rate between 0 and 1.
+     */
+    public double hitRate() {
+        long lookups = hits.sum() + misses.sum();
+        return lookups > 0 ? (double) hits.sum() / lookups : 0;
+    }
+}
@@ -0,0 +1,335 @@
+package org.redacted.util.musicPlayer;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import org.redacted.Handlers.MusicHandler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the number of voice sessions on this node within what it can stream. A guild holds a
+ * session from the moment the bot joins a voice channel for it until it leaves. A new session
+ * is admitted while there are fewer than MUSIC_MAX_STREAMS and the process' CPU load, plus the
+ * measured marginal cost of one more stream, stays under MUSIC_MAX_CPU. Otherwise it waits in line for
+ * up to {@value #WAIT_SECONDS} seconds, or is rejected at once if MUSIC_MAX_WAITING are
+ * already waiting.
+ *
+ * @author Derrick Eberlein
+ */
+public final class VoiceCapacityGovernor {
+
+    private static final int DEFAULT_MAX_STREAMS = 50;
+    private static final double DEFAULT_MAX_CPU = 0.85;
+    private static final int DEFAULT_MAX_WAITING = 10;
+    private static final long WAIT_SECONDS = 120;
+    private static final long SAMPLE_SECONDS = 10;
+    private static final long REPORT_MINUTES = 10;
+
+    private final int maxStreams;
+    private final double maxCpu;
+    private final int maxWaiting;
+
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+    private final ScheduledExecutorService sampler;
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final StreamCostModel costModel = new StreamCostModel();
+    private volatile double cpuLoad;
+    private volatile double cpuPerStream;
+
+    /**
+     * Constructs a VoiceCapacityGovernor and starts sampling CPU load.
+     *
+     * @param maxStreams the most sessions at once, 0 for no limit.
+     * @param maxCpu the process CPU load, between 0 and 1, above which no session is admitted.
+     * @param maxWaiting the most sessions waiting in line.
+     */
+    public VoiceCapacityGovernor(int maxStreams, double maxCpu, int maxWaiting) {
+        this.maxStreams = maxStreams;
+        this.maxCpu = maxCpu;
+        this.maxWaiting = maxWaiting;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "voice-capacity-governor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sampler.scheduleAtFixedRate(this::sample, SAMPLE_SECONDS, SAMPLE_SECONDS, TimeUnit.SECONDS);
+        this.sampler.scheduleAtFixedRate(this::report, REPORT_MINUTES, REPORT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Creates a VoiceCapacityGovernor from the MUSIC_MAX_STREAMS, MUSIC_MAX_CPU and MUSIC_MAX_WAITING variables.
+     *
+     * @param config the environment configuration.
+     * @return the governor.
+     */
+    public static VoiceCapacityGovernor fromConfig(Dotenv config) {
+        int maxStreams = DEFAULT_MAX_STREAMS;
+        double maxCpu = DEFAULT_MAX_CPU;
+        int maxWaiting = DEFAULT_MAX_WAITING;
+        try {
+            String value = config.get("MUSIC_MAX_STREAMS");
+            if (value != null && !value.isBlank()) maxStreams = Integer.parseInt(value.trim());
+            value = config.get("MUSIC_MAX_CPU");
+            if (value != null && !value.isBlank()) maxCpu = Double.parseDouble(value.trim());
+            value = config.get("MUSIC_MAX_WAITING");
+            if (value != null && !value.isBlank()) maxWaiting = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid voice capacity setting, using defaults for the rest: " + e.getMessage());
+        }
+        return new VoiceCapacityGovernor(maxStreams, maxCpu, maxWaiting);
+    }
+
+    /**
+     * Check whether a guild holds a session.
+     *
+     * @param guildId the guild to check.
+     * @return true if the guild holds a session.
+     */
+    public boolean isActive(long guildId) {
+        return sessions.containsKey(guildId);
+    }
+
+    /**
+     * Take a session for a guild if the node has room for one now. A guild that already holds
+     * a session always gets it.
+     *
+     * @param guildId the guild the session is for.
+     * @return true if the guild holds a session.
+     */
+    public synchronized boolean tryAcquire(long guildId) {
+        if (sessions.containsKey(guildId)) return true;
+        if (!waiting.isEmpty() || !hasRoom()) return false;
+        sessions.put(guildId, new Session());
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Take a session for a guild, waiting in line if the node is saturated.
+     *
+     * @param guildId the guild the session is for.
+     * @return a future completed with true once the guild holds a session, or false if the line
+     * is full or the wait timed out.
+     */
+    public synchronized CompletableFuture<Boolean> acquire(long guildId) {
+        if (tryAcquire(guildId)) return CompletableFuture.completedFuture(true);
+        for (Waiter waiter : waiting) {
+            if (waiter.guildId == guildId) return waiter.future;
+        }
+        if (waiting.size() >= maxWaiting) {
+            rejected.increment();
+            return CompletableFuture.completedFuture(false);
+        }
+
+        Waiter waiter = new Waiter(guildId, new CompletableFuture<>());
+        waiting.addLast(waiter);
+        queued.increment();
+        sampler.schedule(() -> expire(waiter), WAIT_SECONDS, TimeUnit.SECONDS);
+        return waiter.future;
+    }
+
+    /**
+     * Get a guild's place in line.
+     *
+     * @param guildId the guild to check.
+     * @return the guild's 1-based place in line, or 0 if it is not waiting.
+     */
+    public synchronized int positionOf(long guildId) {
+        int position = 1;
+        for (Waiter waiter : waiting) {
+            if (waiter.guildId == guildId) return position;
+            position++;
+        }
+        return 0;
+    }
+
+    /**
+     * Attach the music handler streaming a guild's session, so its frames are counted.
+     *
+     * @param guildId the guild holding the session.
+     * @param handler the guild's music handler.
+     */
+    public void attach(long guildId, MusicHandler handler) {
+        Session session = sessions.get(guildId);
+        if (session != null) session.handler = handler;
+    }
+
+    /**
+     * Release a guild's session and hand its slot to the first guild waiting in line.
+     *
+     * @param guildId the guild leaving voice.
+     */
+    public synchronized void release(long guildId) {
+        if (sessions.remove(guildId) == null) return;
+        admitWaiting();
+    }
+
+    /**
+     * Get the number of sessions, how many are streaming and how the node is coping.
+     *
+     * @return a snapshot of the governor statistics.
+     */
+    public CapacityStats getStats() {
+        int streaming = 0;
+        long underruns = 0;
+        for (Session session : sessions.values()) {
+            MusicHandler handler = session.handler;
+            if (handler == null) continue;
+            if (handler.getAudioPlayer().getPlayingTrack() != null) streaming++;
+            underruns += handler.getUnderruns().sum();
+        }
+        int waitingCount;
+        synchronized (this) {
+            waitingCount = waiting.size();
+        }
+        return new CapacityStats(sessions.size(), streaming, waitingCount, admitted.sum(), queued.sum(),
+                rejected.sum(), underruns, cpuLoad, cpuPerStream);
+    }
+
+    private boolean hasRoom() {
+        if (maxStreams > 0 && sessions.size() >= maxStreams) return false;
+        return cpuLoad + cpuPerStream < maxCpu;
+    }
+
+    private synchronized void admitWaiting() {
+        while (!waiting.isEmpty() && hasRoom()) {
+            Waiter waiter = waiting.pollFirst();
+            if (waiter.future.isDone()) continue;
+            sessions.put(waiter.guildId, new Session());
+            admitted.increment();
+            waiter.future.complete(true);
+        }
+    }
+
+    private synchronized void expire(Waiter waiter) {
+        if (waiting.remove(waiter)) {
+            rejected.increment();
+            waiter.future.complete(false);
+        }
+    }
+
+    /**
+     * Sample the process' CPU load and work out the marginal cost of a stream from it, then admit
+     * whoever is waiting if the load has dropped.
+     */
+    private void sample() {
+        try {
+            double load = os.getProcessCpuLoad();
+            if (load < 0) return;
+            cpuLoad = load;
+
+            int streaming = 0;
+            for (Session session : sessions.values()) {
+                MusicHandler handler = session.handler;
+                if (handler != null && handler.getAudioPlayer().getPlayingTrack() != null) streaming++;
+            }
+            costModel.add(streaming, load);
+            cpuPerStream = costModel.perStream();
+            admitWaiting();
+        } catch (Exception e) {
+            System.err.println("Voice capacity sample failed: " + e.getMessage());
+        }
+    }
+
+    private void report() {
+        if (sessions.isEmpty() && rejected.sum() == 0) return;
+        System.out.println("Voice capacity: " + getStats());
+    }
+
+    /**
+     * Estimates what one more stream adds to the CPU load by fitting a line through recent
+     * samples of the load against the number of streams. The slope leaves out the load the bot
+     * carries with no streams at all, which dividing the load by the streams would charge to
+     * each of them. Older samples count for less, so the estimate follows the node as it changes.
+     * Until the stream count has varied enough to fit a line, the average load per stream is
+     * used instead, which overestimates the cost and so errs on the side of admitting fewer.
+     */
+    static final class StreamCostModel {
+
+        private static final double DECAY = 0.95;
+        private static final double MIN_VARIANCE = 0.25;
+
+        private double weight;
+        private double sumStreams;
+        private double sumLoad;
+        private double sumStreamsSquared;
+        private double sumStreamsLoad;
+
+        /**
+         * Add a sample.
+         *
+         * @param streams the number of streams playing.
+         * @param load the process CPU load between 0 and 1.
+         */
+        synchronized void add(int streams, double load) {
+            weight = weight * DECAY + 1;
+            sumStreams = sumStreams * DECAY + streams;
+            sumLoad = sumLoad * DECAY + load;
+            sumStreamsSquared = sumStreamsSquared * DECAY + (double) streams * streams;
+            sumStreamsLoad = sumStreamsLoad * DECAY + streams * load;
+        }
+
+        /**
+         * Get the estimated CPU load of one more stream.
+         *
+         * @return the load a stream adds, or 0 before any stream has been sampled.
+         */
+        synchronized double perStream() {
+            if (weight == 0) return 0;
+            double meanStreams = sumStreams / weight;
+            double meanLoad = sumLoad / weight;
+            double variance = sumStreamsSquared / weight - meanStreams * meanStreams;
+            if (variance >= MIN_VARIANCE) {
+                double covariance = sumStreamsLoad / weight - meanStreams * meanLoad;
+                return Math.max(0, covariance / variance);
+            }
+            return meanStreams > 0 ? meanLoad / meanStreams : 0;
+        }
+    }
+
+    /**
+     * A guild's voice session.
+     */
+    private static final class Session {
+        private volatile MusicHandler handler;
+    }
+
+    /**
+     * A guild waiting in line for a session.
+     */
+    private record Waiter(long guildId, CompletableFuture<Boolean> future) {
+    }
+
+    /**
+     * A snapshot of the governor statistics.
+     *
+     * @param sessions guilds holding a session.
+     * @param streaming sessions playing a track.
+     * @param waiting guilds waiting in line.
+     * @param admitted sessions admitted since startup.
+     * @param queued sessions that had to wait in line.
+     * @param rejected sessions turned away because the line was full or the wait timed out.
+     * @param underruns frames a playing track had not decoded in time, across current sessions.
+     * @param cpuLoad the process CPU load between 0 and 1.
+     * @param cpuPerStream the estimated CPU load one more stream adds.
+     */
+    public record CapacityStats(int sessions, int streaming, int waiting, long admitted, long queued, long rejected,
+                                long underruns, double cpuLoad, double cpuPerStream) {
+
+        @Override
+        public String toString() {
+            return "sessions=" + sessions + ", streaming=" + streaming + ", waiting=" + waiting + ", admitted=" + admitted
+                    + ", queued=" + queued + ", rejected=" + rejected + ", underruns=" + underruns
+                    + ", cpu=" + String.format("%.2f", cpuLoad) + ", cpuPerStream=" + String.format("%.3f", cpuPerStream);
+        }
+    }
+}
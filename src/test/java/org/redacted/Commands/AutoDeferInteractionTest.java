@@ -0,0 +1,99 @@
+package org.redacted.Commands;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AutoDeferInteractionTest {
+
+    private final RecordingInteraction recording = new RecordingInteraction();
+    private final AutoDeferInteraction autoDefer = new AutoDeferInteraction(recording.interaction);
+    private final SlashCommandInteractionEvent event = autoDefer.wrap(recording.event());
+
+    @Test
+    void quickRepliesAreSentAsUsual() {
+        event.replyEmbeds(embed("Now playing")).queue();
+        autoDefer.deferIfSilent();
+
+        assertEquals(List.of("reply: Now playing"), recording.calls);
+    }
+
+    @Test
+    void embedRepliesToADeferredInteractionEditTheDeferredMessage() {
+        autoDefer.deferIfSilent();
+        event.replyEmbeds(embed("Now playing")).queue();
+
+        assertEquals(List.of("defer", "edit: Now playing"), recording.calls);
+    }
+
+    @Test
+    void repliesMadeThroughTheInteractionAreCoveredToo() {
+        autoDefer.deferIfSilent();
+        event.getInteraction().replyEmbeds(embed("Now playing")).queue();
+
+        assertEquals(List.of("defer", "edit: Now playing"), recording.calls);
+    }
+
+    @Test
+    void textRepliesToADeferredInteractionEditTheDeferredMessage() {
+        autoDefer.deferIfSilent();
+        event.reply("Done").queue();
+        event.replyFormat("%d songs queued", 3).queue();
+
+        assertEquals(List.of("defer", "edit: Done", "follow-up: 3 songs queued"), recording.calls);
+    }
+
+    @Test
+    void preparedRepliesToADeferredInteractionEditTheDeferredMessage() {
+        autoDefer.deferIfSilent();
+        event.getInteraction().reply(MessageCreateData.fromEmbeds(embed("Prepared"))).queue();
+
+        assertEquals(List.of("defer", "edit: Prepared"), recording.calls);
+    }
+
+    @Test
+    void preparedRepliesThroughTheEventToADeferredInteractionEditTheDeferredMessage() {
+        autoDefer.deferIfSilent();
+        event.reply(MessageCreateData.fromEmbeds(embed("Prepared"))).queue();
+
+        assertEquals(List.of("defer", "edit: Prepared"), recording.calls);
+    }
+
+    @Test
+    void plainDeferralsOfADeferredInteractionCompleteWithTheHook() {
+        autoDefer.deferIfSilent();
+        List<InteractionHook> hooks = new ArrayList<>();
+        event.deferReply().queue(hooks::add);
+
+        assertEquals(List.of("defer"), recording.calls);
+        assertEquals(1, hooks.size());
+    }
+
+    @Test
+    void ephemeralRepliesToADeferredInteractionAreSentAsFollowUps() {
+        autoDefer.deferIfSilent();
+        event.replyEmbeds(embed("Only you")).setEphemeral(true).queue();
+
+        assertEquals(List.of("defer", "follow-up: Only you"), recording.calls);
+    }
+
+    @Test
+    void failuresBeforeAnyReplyAreSentAsTheReply() {
+        autoDefer.fail(embed("Something went wrong"));
+        autoDefer.deferIfSilent();
+
+        assertEquals(List.of("reply: Something went wrong"), recording.calls);
+    }
+
+    private static MessageEmbed embed(String title) {
+        return new EmbedBuilder().setTitle(title).build();
+    }
+}
@@ -0,0 +1,133 @@
+package org.redacted.Commands;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandEngineTest {
+
+    private CommandEngine engine;
+
+    @AfterEach
+    void shutdown() {
+        if (engine != null) engine.shutdown();
+    }
+
+    @Test
+    void runsBeyondTheCapAreTurnedAway() {
+        engine = new CommandEngine(0, 0, 30, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Command busy = command("busy", 0, event -> await(release));
+
+        engine.submit(busy, new RecordingInteraction().event());
+        RecordingInteraction turnedAway = new RecordingInteraction();
+        engine.submit(busy, turnedAway.event());
+        release.countDown();
+
+        assertEquals(1, turnedAway.calls.size());
+        assertTrue(turnedAway.calls.get(0).startsWith("reply: "), turnedAway.calls.toString());
+        assertEquals(1, stats("busy").rejected());
+    }
+
+    @Test
+    void runsThatTimeOutWhileQueuedGiveTheirSlotBack() throws InterruptedException {
+        // One thread, held by a command that outlasts the queued one's timeout
+        engine = new CommandEngine(1, 0, 30, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        engine.submit(command("hog", 0, event -> awaitUninterruptibly(release)), new RecordingInteraction().event());
+
+        AtomicInteger runs = new AtomicInteger();
+        Command queued = command("queued", 1, event -> runs.incrementAndGet());
+        RecordingInteraction timedOut = new RecordingInteraction();
+        engine.submit(queued, timedOut.event());
+        waitFor(() -> !timedOut.calls.isEmpty());
+        assertEquals(1, stats("queued").timeouts());
+
+        // Its slot is free again even though the thread it was waiting for never came
+        RecordingInteraction next = new RecordingInteraction();
+        engine.submit(queued, next.event());
+        assertEquals(0, stats("queued").rejected());
+        assertTrue(timedOut.calls.get(0).contains("took too long"), timedOut.calls.toString());
+
+        release.countDown();
+        waitFor(() -> runs.get() == 1);
+        Thread.sleep(100);
+        assertEquals(1, runs.get(), "the timed out run was started anyway");
+    }
+
+    @Test
+    void slowCommandsAreDeferredAndTheirReplyEditsTheDeferredMessage() {
+        engine = new CommandEngine(0, 50, 30, 1);
+        Command slow = command("slow", 0, event -> {
+            sleep(300);
+            event.replyEmbeds(new EmbedBuilder().setTitle("Finally").build()).queue();
+        });
+
+        RecordingInteraction recording = new RecordingInteraction();
+        engine.submit(slow, recording.event());
+
+        waitFor(() -> recording.calls.size() == 2);
+        assertEquals(List.of("defer", "edit: Finally"), recording.calls);
+    }
+
+    private CommandEngine.CommandStats stats(String name) {
+        return engine.getStats().stream().filter(stats -> stats.name().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static Command command(String name, long timeoutSeconds, Consumer<SlashCommandInteractionEvent> body) {
+        Command command = new Command(null) {
+            @Override
+            public void execute(SlashCommandInteractionEvent event) {
+                body.accept(event);
+            }
+        };
+        command.name = name;
+        command.timeoutSeconds = timeoutSeconds;
+        return command;
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting");
+            sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (latch.getCount() > 0 && System.nanoTime() < deadline) {
+            try {
+                latch.await(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+                // Keeps the thread, as a command stuck in a blocking call would
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
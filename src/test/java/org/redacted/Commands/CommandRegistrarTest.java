@@ -0,0 +1,203 @@
+package org.redacted.Commands;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.requests.restaction.CommandListUpdateAction;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.redacted.testing.Fakes;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandRegistrarTest {
+
+    private static final long GUILD = 42;
+
+    private final List<Document> stored = new ArrayList<>();
+    private final List<String> deleted = new ArrayList<>();
+    private final List<List<CommandData>> uploads = new ArrayList<>();
+    private boolean uploadsFail;
+
+    @Test
+    void equalCommandsBuiltSeparatelyHashTheSame() {
+        CommandData first = Commands.slash("play", "Plays a song").addOption(OptionType.STRING, "song", "The song", true);
+        CommandData second = Commands.slash("play", "Plays a song").addOption(OptionType.STRING, "song", "The song", true);
+
+        assertEquals(CommandRegistrar.hash(List.of(first)), CommandRegistrar.hash(List.of(second)));
+    }
+
+    @Test
+    void hashChangesWithAnyCommand() {
+        String hash = CommandRegistrar.hash(commands());
+
+        assertNotEquals(hash, CommandRegistrar.hash(List.of(Commands.slash("play", "Plays a track"))));
+        assertNotEquals(hash, CommandRegistrar.hash(List.of(Commands.slash("play", "Plays a song").addOption(OptionType.INTEGER, "song", "The song"))));
+        assertNotEquals(hash, CommandRegistrar.hash(List.of()));
+        assertEquals(64, hash.length());
+    }
+
+    @Test
+    void unchangedCommandsAreNotUploaded() {
+        stored.add(new Document("scope", "guild:" + GUILD).append("hash", CommandRegistrar.hash(commands())));
+        CommandRegistrar registrar = registrar(CommandRegistrar.Mode.GUILD);
+
+        registrar.registerForGuild(guild());
+
+        assertTrue(uploads.isEmpty());
+        assertEquals(new CommandRegistrar.RegistrationStats(CommandRegistrar.Mode.GUILD, 0, 1), registrar.getStats());
+    }
+
+    @Test
+    void changedCommandsAreUploadedAndTheirHashStored() {
+        stored.add(new Document("scope", "guild:" + GUILD).append("hash", "stale"));
+        CommandRegistrar registrar = registrar(CommandRegistrar.Mode.GUILD);
+
+        registrar.registerForGuild(guild());
+        registrar.registerForGuild(guild());
+
+        assertEquals(1, uploads.size());
+        assertEquals(CommandRegistrar.hash(commands()), CommandRegistrar.hash(uploads.get(0)));
+        assertEquals(CommandRegistrar.hash(commands()), stored.get(stored.size() - 1).getString("hash"));
+        assertEquals(new CommandRegistrar.RegistrationStats(CommandRegistrar.Mode.GUILD, 1, 1), registrar.getStats());
+    }
+
+    @Test
+    void leftGuildsGetTheirCommandsAgainWhenTheyRejoin() {
+        stored.add(new Document("scope", "guild:" + GUILD).append("hash", CommandRegistrar.hash(commands())));
+        CommandRegistrar registrar = registrar(CommandRegistrar.Mode.GUILD);
+        registrar.registerForGuild(guild());
+
+        registrar.forgetGuild(GUILD);
+        registrar.registerForGuild(guild());
+
+        assertEquals(List.of("guild:" + GUILD), deleted);
+        assertEquals(1, uploads.size());
+    }
+
+    @Test
+    void databaseWorkRunsOnTheStorageExecutor() {
+        stored.add(new Document("scope", "guild:" + GUILD).append("hash", "stale"));
+        Queue<Runnable> storage = new ArrayDeque<>();
+        List<CommandData> commands = commands();
+        CommandRegistrar registrar = new CommandRegistrar(collection(), CommandRegistrar.Mode.GUILD, () -> commands, storage::add);
+
+        // Nothing is uploaded until the stored hashes have been loaded on the storage executor
+        registrar.registerForGuild(guild());
+        assertTrue(uploads.isEmpty());
+        storage.remove().run();
+        assertEquals(1, uploads.size());
+
+        // The new hash is stored there too, not in the upload's callback
+        assertEquals(1, stored.size());
+        storage.remove().run();
+        assertEquals(2, stored.size());
+
+        registrar.forgetGuild(GUILD);
+        assertTrue(deleted.isEmpty());
+        storage.remove().run();
+        assertEquals(List.of("guild:" + GUILD), deleted);
+    }
+
+    @Test
+    void globalModeClearsGuildCommands() {
+        stored.add(new Document("scope", "guild:" + GUILD).append("hash", CommandRegistrar.hash(commands())));
+        CommandRegistrar registrar = registrar(CommandRegistrar.Mode.GLOBAL);
+
+        registrar.registerForGuild(guild());
+
+        assertEquals(List.of(List.of()), uploads);
+    }
+
+    @Test
+    void failedGlobalUploadsAreRetriedByTheNextShard() {
+        CommandRegistrar registrar = registrar(CommandRegistrar.Mode.GLOBAL);
+        uploadsFail = true;
+        registrar.registerGlobal(shard());
+        uploadsFail = false;
+
+        registrar.registerGlobal(shard());
+        registrar.registerGlobal(shard());
+
+        assertEquals(2, uploads.size());
+        assertEquals(new CommandRegistrar.RegistrationStats(CommandRegistrar.Mode.GLOBAL, 1, 0), registrar.getStats());
+    }
+
+    private static List<CommandData> commands() {
+        return List.of(Commands.slash("play", "Plays a song").addOption(OptionType.STRING, "song", "The song", true));
+    }
+
+    private CommandRegistrar registrar(CommandRegistrar.Mode mode) {
+        List<CommandData> commands = commands();
+        return new CommandRegistrar(collection(), mode, () -> commands, Runnable::run);
+    }
+
+    private Guild guild() {
+        return Fakes.of(Guild.class)
+                .on("getIdLong", args -> GUILD)
+                .on("getName", args -> "Test")
+                .on("updateCommands", args -> update())
+                .build();
+    }
+
+    private JDA shard() {
+        return Fakes.of(JDA.class).on("updateCommands", args -> update()).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private CommandListUpdateAction update() {
+        List<CommandData> added = new ArrayList<>();
+        CommandListUpdateAction[] action = new CommandListUpdateAction[1];
+        action[0] = Fakes.of(CommandListUpdateAction.class)
+                .on("addCommands", args -> {
+                    added.addAll((List<CommandData>) args[0]);
+                    return action[0];
+                })
+                .on("queue", args -> {
+                    uploads.add(added);
+                    if (uploadsFail) {
+                        ((Consumer<Throwable>) args[1]).accept(new IllegalStateException("rate limited"));
+                    } else {
+                        ((Consumer<Object>) args[0]).accept(List.of());
+                    }
+                    return null;
+                })
+                .build();
+        return action[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> collection() {
+        FindIterable<Document> found = Fakes.of((Class<FindIterable<Document>>) (Class<?>) FindIterable.class)
+                .on("iterator", args -> cursor(List.copyOf(stored).iterator()))
+                .build();
+        return Fakes.of((Class<MongoCollection<Document>>) (Class<?>) MongoCollection.class)
+                .on("find", args -> found)
+                .on("replaceOne", args -> {
+                    stored.add((Document) args[1]);
+                    return null;
+                })
+                .on("deleteOne", args -> {
+                    deleted.add("guild:" + GUILD);
+                    return null;
+                })
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCursor<Document> cursor(Iterator<Document> documents) {
+        return Fakes.of((Class<MongoCursor<Document>>) (Class<?>) MongoCursor.class)
+                .on("hasNext", args -> documents.hasNext())
+                .on("next", args -> documents.next())
+                .on("close", args -> null)
+                .build();
+    }
+}
@@ -0,0 +1,113 @@
+package org.redacted.Commands;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.interactions.commands.SlashCommandInteraction;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.WebhookMessageCreateAction;
+import net.dv8tion.jda.api.requests.restaction.WebhookMessageEditAction;
+import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
+import org.redacted.testing.Fakes;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * RecordingInteraction Class
+ * A slash command interaction that records what is sent through it, in order, such as
+ * "defer", "reply: Title" or "edit: Title", where the title is that of the first embed, its
+ * description if it has none, or the content when there is no embed. Like JDA, it builds every reply on {@code deferReply()}.
+ *
+ * @author Derrick Eberlein
+ */
+final class RecordingInteraction {
+
+    final List<String> calls = new CopyOnWriteArrayList<>();
+    private volatile boolean acknowledged;
+
+    final SlashCommandInteraction interaction = Fakes.of(SlashCommandInteraction.class)
+            .on("getName", args -> "test")
+            .on("isAcknowledged", args -> acknowledged)
+            .on("deferReply", args -> reply())
+            .on("getHook", args -> hook())
+            .build();
+
+    /**
+     * Create the event JDA would fire for the interaction.
+     *
+     * @return the event.
+     */
+    SlashCommandInteractionEvent event() {
+        return new SlashCommandInteractionEvent(Fakes.of(JDA.class).build(), 0, interaction);
+    }
+
+    private ReplyCallbackAction reply() {
+        StringBuilder shown = new StringBuilder();
+        ReplyCallbackAction[] action = new ReplyCallbackAction[1];
+        action[0] = Fakes.of(ReplyCallbackAction.class)
+                .on("addEmbeds", args -> {
+                    if (shown.isEmpty()) shown.append(titleOf(((MessageEmbed[]) args[0])[0]));
+                    return action[0];
+                })
+                .on("setContent", args -> {
+                    if (shown.isEmpty()) shown.append((String) args[0]);
+                    return action[0];
+                })
+                .on("setEphemeral", args -> action[0])
+                .on("queue", args -> {
+                    acknowledged = true;
+                    calls.add(shown.isEmpty() ? "defer" : "reply: " + shown);
+                    return null;
+                })
+                .build();
+        return action[0];
+    }
+
+    private InteractionHook hook() {
+        InteractionHook[] hook = new InteractionHook[1];
+        hook[0] = Fakes.of(InteractionHook.class)
+                .on("editOriginal", args -> {
+                    MessageEditData data = (MessageEditData) args[0];
+                    return Fakes.of(WebhookMessageEditAction.class)
+                            .on("map", mapped -> sent("edit: " + shownIn(data.getEmbeds(), data.getContent()), hook[0]))
+                            .build();
+                })
+                .on("sendMessage", args -> {
+                    MessageCreateData data = (MessageCreateData) args[0];
+                    WebhookMessageCreateAction<?>[] action = new WebhookMessageCreateAction<?>[1];
+                    action[0] = Fakes.of(WebhookMessageCreateAction.class)
+                            .on("setEphemeral", ephemeral -> action[0])
+                            .on("onSuccess", then -> action[0])
+                            .on("map", mapped -> sent("follow-up: " + shownIn(data.getEmbeds(), data.getContent()), hook[0]))
+                            .build();
+                    return action[0];
+                })
+                .build();
+        return hook[0];
+    }
+
+    private RestAction<?> sent(String call, InteractionHook hook) {
+        return Fakes.of(RestAction.class)
+                .on("queue", args -> {
+                    calls.add(call);
+                    return null;
+                })
+                .on("complete", args -> {
+                    calls.add(call);
+                    return hook;
+                })
+                .build();
+    }
+
+    private static String titleOf(MessageEmbed embed) {
+        return embed.getTitle() != null ? embed.getTitle() : embed.getDescription();
+    }
+
+    private static String shownIn(List<MessageEmbed> embeds, String content) {
+        return embeds.isEmpty() ? content : titleOf(embeds.get(0));
+    }
+}
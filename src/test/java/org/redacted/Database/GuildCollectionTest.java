@@ -0,0 +1,174 @@
+package org.redacted.Database;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.redacted.Database.cache.Economy;
+import org.redacted.testing.Fakes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuildCollectionTest {
+
+    private static final long GUILD = 42;
+    private static final CodecRegistry CODECS = fromRegistries(MongoClientSettings.getDefaultCodecRegistry(),
+            fromProviders(PojoCodecProvider.builder().automatic(true).build()));
+    private static final BsonDocument SCOPE = render(Filters.eq(Database.GUILD_SCOPE_FIELD, GUILD));
+
+    /** What the fake collection was asked to do, as rendered BSON */
+    private final List<BsonDocument> filters = new ArrayList<>();
+    private final List<BsonDocument> inserted = new ArrayList<>();
+    private final List<WriteModel<?>> bulk = new ArrayList<>();
+
+    @Test
+    void filtersAreNarrowedToTheGuild() {
+        GuildCollection<Document> scoped = GuildCollection.shared(collection(Document.class), GUILD);
+
+        scoped.updateOne(Filters.eq("user", 7L), Updates.inc("balance", 5));
+        scoped.deleteMany(Filters.eq("user", 8L));
+        scoped.countDocuments();
+
+        assertEquals(render(Filters.and(Filters.eq(Database.GUILD_SCOPE_FIELD, GUILD), Filters.eq("user", 7L))), filters.get(0));
+        assertEquals(render(Filters.and(Filters.eq(Database.GUILD_SCOPE_FIELD, GUILD), Filters.eq("user", 8L))), filters.get(1));
+        assertEquals(SCOPE, filters.get(2));
+    }
+
+    @Test
+    void ownCollectionsAreLeftAlone() {
+        GuildCollection<Document> own = GuildCollection.of(collection(Document.class));
+
+        own.updateOne(Filters.eq("user", 7L), Updates.inc("balance", 5));
+        own.insertOne(new Document("user", 7L));
+
+        assertEquals(render(Filters.eq("user", 7L)), filters.get(0));
+        assertTrue(inserted.isEmpty());
+    }
+
+    @Test
+    void onlyWritesThatMayCreateADocumentRunTheCreateHook() {
+        int[] creates = new int[1];
+        GuildCollection<Document> own = GuildCollection.of(collection(Document.class), () -> creates[0]++);
+
+        own.updateOne(Filters.eq("user", 7L), Updates.inc("balance", 5));
+        own.updateOne(Filters.eq("user", 7L), Updates.inc("balance", 5), new UpdateOptions());
+        own.deleteMany(Filters.eq("user", 7L));
+        assertEquals(0, creates[0]);
+
+        own.insertOne(new Document("user", 7L));
+        own.updateOne(Filters.eq("user", 7L), Updates.inc("balance", 5), new UpdateOptions().upsert(true));
+        assertEquals(2, creates[0]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aggregationsStartWithTheGuild() {
+        List<Bson> seen = new ArrayList<>();
+        MongoCollection<Document> base = Fakes.of(documents(Document.class))
+                .on("aggregate", args -> {
+                    seen.addAll((List<? extends Bson>) args[0]);
+                    return null;
+                })
+                .build();
+
+        GuildCollection.shared(base, GUILD).aggregate(List.of(Aggregates.sort(Sorts.descending("balance"))));
+
+        assertEquals(2, seen.size());
+        assertEquals(render(Aggregates.match(Filters.eq(Database.GUILD_SCOPE_FIELD, GUILD))), render(seen.get(0)));
+    }
+
+    @Test
+    void insertedDocumentsAreTagged() {
+        GuildCollection<Document> scoped = GuildCollection.shared(collection(Document.class), GUILD);
+
+        Document document = new Document("user", 7L);
+        scoped.insertOne(document);
+
+        assertEquals(1, inserted.size());
+        assertEquals(new BsonInt64(GUILD), inserted.get(0).get(Database.GUILD_SCOPE_FIELD));
+        assertEquals(7L, inserted.get(0).getInt64("user").getValue());
+        // The caller's document carries the ID it was stored under, as with the driver's own inserts
+        assertNotNull(document.get("_id"));
+        assertEquals(document.getObjectId("_id"), inserted.get(0).getObjectId("_id").getValue());
+    }
+
+    @Test
+    void pojoInsertsAreTagged() {
+        GuildCollection<Economy> scoped = GuildCollection.shared(collection(Economy.class), GUILD);
+
+        Economy economy = new Economy(GUILD);
+        economy.setUser(2L);
+        scoped.insertOne(economy);
+
+        assertEquals(1, inserted.size());
+        assertEquals(new BsonInt64(GUILD), inserted.get(0).get(Database.GUILD_SCOPE_FIELD));
+        assertEquals(2L, inserted.get(0).getInt64("user").getValue());
+    }
+
+    @Test
+    void bulkUpdatesAreNarrowedToTheGuild() {
+        GuildCollection<Economy> scoped = GuildCollection.shared(collection(Economy.class), GUILD);
+
+        scoped.bulkWrite(List.of(
+                new UpdateOneModel<>(Filters.eq("user", 1L), Updates.inc("bank", 1), new UpdateOptions().upsert(true)),
+                new UpdateOneModel<>(Filters.eq("user", 2L), List.of(Updates.set("bank", 0)))), new BulkWriteOptions());
+
+        assertEquals(2, bulk.size());
+        UpdateOneModel<?> update = (UpdateOneModel<?>) bulk.get(0);
+        assertEquals(render(Filters.and(Filters.eq(Database.GUILD_SCOPE_FIELD, GUILD), Filters.eq("user", 1L))), render(update.getFilter()));
+        assertTrue(update.getOptions().isUpsert());
+        UpdateOneModel<?> pipeline = (UpdateOneModel<?>) bulk.get(1);
+        assertNotNull(pipeline.getUpdatePipeline());
+        assertEquals(render(Filters.and(Filters.eq(Database.GUILD_SCOPE_FIELD, GUILD), Filters.eq("user", 2L))), render(pipeline.getFilter()));
+    }
+
+    /**
+     * A fake consolidated collection that records the filters, inserts and bulk writes it is given.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> MongoCollection<T> collection(Class<T> type) {
+        return Fakes.of(documents(type))
+                .on("getCodecRegistry", args -> CODECS)
+                .on("withDocumentClass", args -> collection((Class<?>) args[0]))
+                .on("updateOne", args -> record(args[0]))
+                .on("deleteMany", args -> record(args[0]))
+                .on("countDocuments", args -> {
+                    record(args.length > 0 ? (Bson) args[0] : new Document());
+                    return 0L;
+                })
+                .on("insertOne", args -> {
+                    if (args[0] instanceof BsonDocument document) inserted.add(document);
+                    return null;
+                })
+                .on("bulkWrite", args -> {
+                    bulk.addAll((List<? extends WriteModel<?>>) args[0]);
+                    return null;
+                })
+                .build();
+    }
+
+    private Object record(Object filter) {
+        filters.add(render((Bson) filter));
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<MongoCollection<T>> documents(Class<T> type) {
+        return (Class<MongoCollection<T>>) (Class<?>) MongoCollection.class;
+    }
+
+    private static BsonDocument render(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, CODECS);
+    }
+}
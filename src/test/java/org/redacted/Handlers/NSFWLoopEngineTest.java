@@ -0,0 +1,72 @@
+package org.redacted.Handlers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NSFWLoopEngineTest {
+
+    @Test
+    void budgetStartsWithASecondsWorthOfPosts() {
+        NSFWLoopEngine.PostBudget budget = new NSFWLoopEngine.PostBudget(3, 0);
+
+        assertEquals(3, spend(budget));
+    }
+
+    @Test
+    void budgetRefillsAtTheConfiguredRate() {
+        NSFWLoopEngine.PostBudget budget = new NSFWLoopEngine.PostBudget(2, 0);
+        spend(budget);
+
+        budget.refill(250);
+        assertFalse(budget.hasPost());
+        budget.refill(500);
+        assertEquals(1, spend(budget));
+        budget.refill(1000);
+        assertEquals(1, spend(budget));
+    }
+
+    @Test
+    void budgetNeverHoldsMoreThanASecondsWorth() {
+        NSFWLoopEngine.PostBudget budget = new NSFWLoopEngine.PostBudget(2, 0);
+
+        budget.refill(60_000);
+        assertEquals(2, spend(budget));
+    }
+
+    @Test
+    void slowRatesStillAllowOnePostAtATime() {
+        NSFWLoopEngine.PostBudget budget = new NSFWLoopEngine.PostBudget(0.2, 0);
+        assertEquals(1, spend(budget));
+
+        budget.refill(4_000);
+        assertFalse(budget.hasPost());
+        budget.refill(5_000);
+        assertEquals(1, spend(budget));
+
+        budget.refill(60_000);
+        assertEquals(1, spend(budget));
+    }
+
+    @Test
+    void partialRefillsAddUp() {
+        NSFWLoopEngine.PostBudget budget = new NSFWLoopEngine.PostBudget(1, 0);
+        spend(budget);
+
+        for (long now = 100; now < 1000; now += 100) {
+            budget.refill(now);
+            assertFalse(budget.hasPost(), "post allowed early at " + now);
+        }
+        budget.refill(1000);
+        assertTrue(budget.hasPost());
+    }
+
+    private static int spend(NSFWLoopEngine.PostBudget budget) {
+        int posts = 0;
+        while (budget.hasPost()) {
+            budget.take();
+            posts++;
+        }
+        return posts;
+    }
+}
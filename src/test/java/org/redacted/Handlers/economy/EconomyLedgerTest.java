@@ -0,0 +1,314 @@
+package org.redacted.Handlers.economy;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.redacted.Database.GuildCollection;
+import org.redacted.Database.cache.Economy;
+import org.redacted.testing.Fakes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EconomyLedgerTest {
+
+    private static final long GUILD = 1;
+
+    /** Balances by user, as the fake collection holds them */
+    private final Map<Long, Long> balances = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private final List<Boolean> orderedFlags = new ArrayList<>();
+    /** Users whose updates the fake collection rejects */
+    private final Set<Long> rejected = ConcurrentHashMap.newKeySet();
+    private volatile boolean unavailable;
+    /** When set, guarded debits signal the first latch and wait for the second before applying */
+    private volatile CountDownLatch debitStarted;
+    private volatile CountDownLatch debitRelease;
+    private EconomyLedger ledger;
+
+    @AfterEach
+    void tearDown() {
+        unavailable = false;
+        rejected.clear();
+        if (ledger != null) ledger.shutdown();
+    }
+
+    @Test
+    void flushWritesOneMergedUpdatePerUser() {
+        ledger = newLedger();
+        ledger.record(GUILD, 10, 5, 0);
+        ledger.record(GUILD, 10, 7, 0);
+        ledger.record(GUILD, 11, -3, 0);
+
+        ledger.flush();
+
+        assertEquals(List.of(2), batchSizes);
+        assertEquals(12L, balances.get(10L));
+        assertEquals(-3L, balances.get(11L));
+        assertEquals(0, ledger.getStats().pendingUsers());
+        assertEquals(0, ledger.getStats().retryingUsers());
+    }
+
+    @Test
+    void bulkWritesAreUnordered() {
+        ledger = newLedger();
+        ledger.record(GUILD, 10, 1, 0);
+        ledger.flush();
+
+        assertEquals(List.of(false), orderedFlags);
+    }
+
+    @Test
+    void readMergesUnflushedDeltas() {
+        ledger = newLedger();
+        balances.put(10L, 100L);
+        ledger.record(GUILD, 10, 25, 0);
+
+        Economy profile = ledger.read(GUILD, 10, () -> load(10));
+
+        assertEquals(125L, profile.getBalance());
+    }
+
+    @Test
+    void rejectedDeltaIsDroppedWithoutBlockingOthers() {
+        ledger = newLedger();
+        rejected.add(10L);
+        ledger.record(GUILD, 10, 5, 0);
+        ledger.record(GUILD, 11, 6, 0);
+        ledger.record(GUILD, 12, 7, 0);
+
+        ledger.flush();
+
+        assertNull(balances.get(10L));
+        assertEquals(6L, balances.get(11L));
+        assertEquals(7L, balances.get(12L));
+        EconomyLedger.LedgerStats stats = ledger.getStats();
+        assertEquals(1, stats.droppedDeltas());
+        assertEquals(0, stats.retryingUsers());
+
+        // The dropped delta is not retried
+        rejected.clear();
+        ledger.flush();
+        assertEquals(1, batchSizes.size());
+        assertNull(balances.get(10L));
+    }
+
+    @Test
+    void failedWriteIsRetriedAndStillVisibleToReads() {
+        ledger = newLedger();
+        balances.put(10L, 100L);
+        ledger.record(GUILD, 10, 5, 0);
+        unavailable = true;
+
+        ledger.flush();
+
+        assertEquals(1, ledger.getStats().retryingUsers());
+        assertEquals(105L, ledger.read(GUILD, 10, () -> load(10)).getBalance());
+
+        unavailable = false;
+        ledger.flush();
+        assertEquals(105L, balances.get(10L));
+        assertEquals(0, ledger.getStats().retryingUsers());
+        assertEquals(105L, ledger.read(GUILD, 10, () -> load(10)).getBalance());
+    }
+
+    @Test
+    void flushDoesNotWaitForSlowRead() throws Exception {
+        ledger = newLedger();
+        balances.put(10L, 100L);
+        ledger.record(GUILD, 10, 5, 0);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Economy> read = reader.submit(() -> ledger.read(GUILD, 10, () -> {
+                Economy profile = load(10);
+                if (loads.getAndIncrement() == 0) {
+                    loading.countDown();
+                    await(release);
+                }
+                return profile;
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // The read is stuck inside its load, the flush must still go through
+            ExecutorService flusher = Executors.newSingleThreadExecutor();
+            try {
+                flusher.submit(() -> ledger.flush()).get(5, TimeUnit.SECONDS);
+            } finally {
+                flusher.shutdownNow();
+            }
+            assertEquals(105L, balances.get(10L));
+
+            // The stale load raced the flush, so the read loads again rather than count the delta twice
+            release.countDown();
+            assertEquals(105L, read.get(5, TimeUnit.SECONDS).getBalance());
+            assertEquals(2, loads.get());
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    void flushDoesNotWaitForSlowDebit() throws Exception {
+        ledger = newLedger();
+        balances.put(10L, 100L);
+        ledger.record(GUILD, 11, 5, 0);
+        debitStarted = new CountDownLatch(1);
+        debitRelease = new CountDownLatch(1);
+
+        ExecutorService debtor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Economy> debit = debtor.submit(() -> ledger.debit(GUILD, 10, "balance", 30, -30, 0, null));
+            assertTrue(debitStarted.await(5, TimeUnit.SECONDS));
+
+            // The debit is waiting on the database, flushes and reads of other users must still go through
+            ExecutorService flusher = Executors.newSingleThreadExecutor();
+            try {
+                flusher.submit(() -> ledger.flush()).get(5, TimeUnit.SECONDS);
+                assertEquals(5L, flusher.submit(() -> ledger.read(GUILD, 11, () -> load(11))).get(5, TimeUnit.SECONDS).getBalance());
+            } finally {
+                flusher.shutdownNow();
+            }
+            assertEquals(5L, balances.get(11L));
+
+            debitRelease.countDown();
+            assertEquals(70L, debit.get(5, TimeUnit.SECONDS).getBalance());
+        } finally {
+            debtor.shutdownNow();
+        }
+    }
+
+    @Test
+    void debitFailsWhenTheGuardDoes() {
+        ledger = newLedger();
+        balances.put(10L, 100L);
+        ledger.record(GUILD, 10, -80, 0);
+
+        // The buffered change is written first, so the guard sees 20 rather than 100
+        assertNull(ledger.debit(GUILD, 10, "balance", 30, -30, 0, null));
+        assertEquals(20L, balances.get(10L));
+    }
+
+    private EconomyLedger newLedger() {
+        GuildCollection<Economy> collection = GuildCollection.of(Fakes.of(collectionType())
+                .on("bulkWrite", args -> bulkWrite(args[0], (BulkWriteOptions) args[1]))
+                .on("findOneAndUpdate", args -> findOneAndUpdate((Bson) args[0], (Bson) args[1]))
+                .build());
+        return new EconomyLedger(guildID -> collection, TimeUnit.HOURS.toMillis(1), 10_000);
+    }
+
+    private synchronized Object bulkWrite(Object argument, BulkWriteOptions options) {
+        if (unavailable) throw new MongoException("not available");
+        List<?> models = (List<?>) argument;
+        batchSizes.add(models.size());
+        orderedFlags.add(options.isOrdered());
+
+        List<BulkWriteError> errors = new ArrayList<>();
+        for (int i = 0; i < models.size(); i++) {
+            UpdateOneModel<?> model = (UpdateOneModel<?>) models.get(i);
+            long user = find(render(model.getFilter()), "user").asNumber().longValue();
+            if (rejected.contains(user)) {
+                errors.add(new BulkWriteError(121, "Document failed validation", new BsonDocument(), i));
+                continue;
+            }
+            BsonValue inc = render(model.getUpdate()).getDocument("$inc").get("balance");
+            if (inc != null) balances.merge(user, inc.asNumber().longValue(), Long::sum);
+        }
+        if (!errors.isEmpty()) {
+            throw new MongoBulkWriteException(BulkWriteResult.unacknowledged(), errors, null, new ServerAddress(), Set.of());
+        }
+        return BulkWriteResult.unacknowledged();
+    }
+
+    /**
+     * A guarded debit: applies the balance change only if the guard on the balance holds.
+     */
+    private Economy findOneAndUpdate(Bson filter, Bson update) {
+        if (debitStarted != null) {
+            debitStarted.countDown();
+            await(debitRelease);
+        }
+        if (unavailable) throw new MongoException("not available");
+        long user = find(render(filter), "user").asNumber().longValue();
+        long minimum = find(render(filter), "balance").asDocument().get("$gte").asNumber().longValue();
+        long change = render(update).getDocument("$inc").get("balance").asNumber().longValue();
+        synchronized (this) {
+            Long balance = balances.get(user);
+            if (balance == null || balance < minimum) return null;
+            balances.put(user, balance + change);
+        }
+        return load(user);
+    }
+
+    private Economy load(long user) {
+        Long balance = balances.get(user);
+        if (balance == null) return null;
+        Economy profile = new Economy(GUILD);
+        profile.setUser(user);
+        profile.setBalance(balance);
+        return profile;
+    }
+
+    private static BsonDocument render(Bson bson) {
+        return bson.toBsonDocument(Document.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+
+    /**
+     * Find a field anywhere in a rendered filter, which may be nested in an $and.
+     */
+    private static BsonValue find(BsonValue value, String field) {
+        if (value instanceof BsonDocument document) {
+            if (document.containsKey(field)) return document.get(field);
+            for (BsonValue nested : document.values()) {
+                BsonValue found = find(nested, field);
+                if (found != null) return found;
+            }
+        } else if (value instanceof BsonArray array) {
+            for (BsonValue nested : array) {
+                BsonValue found = find(nested, field);
+                if (found != null) return found;
+            }
+        }
+        return null;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<MongoCollection<Economy>> collectionType() {
+        return (Class<MongoCollection<Economy>>) (Class<?>) MongoCollection.class;
+    }
+}
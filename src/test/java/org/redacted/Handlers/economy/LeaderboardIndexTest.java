@@ -0,0 +1,167 @@
+package org.redacted.Handlers.economy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.redacted.Database.cache.Economy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardIndexTest {
+
+    private final List<Economy> stored = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private volatile CountDownLatch gate;
+    private LeaderboardIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) index.close();
+    }
+
+    @Test
+    void ranksByNetWorthThenUser() {
+        store(1, 100, 0);
+        store(2, 50, 100);
+        store(3, 120, 0);
+        store(4, 10, 0);
+        store(5, 150, 0);
+        index = newIndex();
+
+        // Users 2 and 5 tie, the lower ID ranks first
+        assertEquals(1, index.rank(2));
+        assertEquals(2, index.rank(5));
+        assertEquals(3, index.rank(3));
+        assertEquals(4, index.rank(1));
+        assertEquals(5, index.rank(4));
+        assertEquals(-1, index.rank(99));
+        assertEquals(List.of(new LeaderboardIndex.Entry(1, 100), new LeaderboardIndex.Entry(4, 10)), index.page(3, 5));
+    }
+
+    @Test
+    void countsAppliedChanges() {
+        store(1, 100, 0);
+        store(2, 200, 0);
+        index = newIndex();
+        index.entries();
+
+        index.apply(1, 150, () -> { });
+        assertFalse(index.applyIf(2, 1000, () -> false));
+        index.apply(3, 5, () -> { });
+
+        assertEquals(List.of(new LeaderboardIndex.Entry(1, 250), new LeaderboardIndex.Entry(2, 200),
+                new LeaderboardIndex.Entry(3, 5)), index.entries());
+    }
+
+    @Test
+    void readsAndWritesDoNotWaitForSlowLoad() throws Exception {
+        store(1, 100, 0);
+        index = newIndex();
+        index.entries();
+
+        gate = new CountDownLatch(1);
+        CompletableFuture<Integer> verify = CompletableFuture.supplyAsync(() -> index.verify());
+        waitForLoads(2);
+
+        // The verify is stuck in its load, the index still answers at once
+        CompletableFuture<Integer> rank = CompletableFuture.supplyAsync(() -> {
+            index.apply(1, 10, () -> { });
+            return index.rank(1);
+        });
+        assertEquals(1, rank.get(2, TimeUnit.SECONDS));
+
+        gate.countDown();
+        // The change made during the load is not held against the load's result
+        assertEquals(0, verify.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(new LeaderboardIndex.Entry(1, 110)), index.entries());
+    }
+
+    @Test
+    void verifyRepairsDrift() {
+        store(1, 100, 0);
+        store(2, 200, 0);
+        index = newIndex();
+        index.entries();
+
+        synchronized (stored) {
+            stored.clear();
+        }
+        store(1, 300, 0);
+
+        assertEquals(2, index.verify());
+        assertEquals(List.of(new LeaderboardIndex.Entry(1, 300)), index.entries());
+        assertEquals(0, index.verify());
+    }
+
+    @Test
+    void changesDuringFirstBuildAreSettledByASecondBuild() throws Exception {
+        store(1, 100, 0);
+        gate = new CountDownLatch(1);
+        index = newIndex();
+        waitForLoads(1);
+
+        // The write lands while the first load runs, so the load may or may not see it
+        index.apply(1, 50, () -> {
+            synchronized (stored) {
+                stored.get(0).setBalance(150L);
+            }
+        });
+        gate.countDown();
+
+        waitForLoads(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (index.rank(1) != 1 || index.entries().get(0).networth() != 150) {
+            assertTrue(System.currentTimeMillis() < deadline, "index did not settle: " + index.entries());
+            Thread.sleep(10);
+        }
+    }
+
+    private LeaderboardIndex newIndex() {
+        return new LeaderboardIndex(1, () -> {
+            loads.incrementAndGet();
+            CountDownLatch current = gate;
+            if (current != null) {
+                try {
+                    current.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (stored) {
+                List<Economy> copy = new ArrayList<>();
+                for (Economy profile : stored) {
+                    Economy clone = new Economy(1);
+                    clone.setUser(profile.getUser());
+                    clone.setBalance(profile.getBalance());
+                    clone.setBank(profile.getBank());
+                    copy.add(clone);
+                }
+                return copy;
+            }
+        });
+    }
+
+    private void store(long user, long balance, long bank) {
+        Economy profile = new Economy(1);
+        profile.setUser(user);
+        profile.setBalance(balance);
+        profile.setBank(bank);
+        synchronized (stored) {
+            stored.add(profile);
+        }
+    }
+
+    private void waitForLoads(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loads.get() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "loader was not called");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.redacted.Handlers.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long TICK = 1000;
+
+    @Test
+    void tasksFireOnTheTickTheyAreDue() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("late", 5000);
+        wheel.schedule("early", 2000);
+
+        assertEquals(List.of(), wheel.advance(1999));
+        assertEquals(List.of("early"), wheel.advance(2000));
+        assertEquals(List.of(), wheel.advance(4999));
+        assertEquals(List.of("late"), wheel.advance(5000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlinesBetweenTicksRoundUp() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("task", 1500);
+
+        assertEquals(List.of(), wheel.advance(1999));
+        assertEquals(List.of("task"), wheel.advance(2000));
+    }
+
+    @Test
+    void passedDeadlinesFireOnTheNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 10_000);
+        wheel.schedule("overdue", 3000);
+
+        assertEquals(List.of("overdue"), wheel.advance(11_000));
+    }
+
+    @Test
+    void tasksComeOutInDeadlineThenSchedulingOrder() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("c", 3000);
+        wheel.schedule("a1", 1000);
+        wheel.schedule("b", 2000);
+        wheel.schedule("a2", 1000);
+
+        assertEquals(List.of("a1", "a2", "b", "c"), wheel.advance(10_000));
+    }
+
+    @Test
+    void cancelledTasksDoNotFire() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 2000);
+        wheel.schedule("kept", 2000);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("kept"), wheel.advance(2000));
+    }
+
+    @Test
+    void tasksCascadeDownFromCoarserLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+        // One deadline per level: within the first turn, then past 64, 64^2, 64^3 and 64^4 ticks
+        long[] ticks = {10, 64 * 3 + 5, 64L * 64 * 2 + 7, 64L * 64 * 64 + 1, 64L * 64 * 64 * 64 * 3 + 11};
+        for (long tick : ticks) {
+            wheel.schedule(tick, tick * TICK);
+        }
+
+        for (long tick : ticks) {
+            assertEquals(List.of(), wheel.advance((tick - 1) * TICK), "fired before tick " + tick);
+            assertEquals(List.of(tick), wheel.advance(tick * TICK), "did not fire on tick " + tick);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void farFutureTasksWaitInTheOverflow() {
+        // Start just before the end of the wheel's first full turn, with a deadline in the next one
+        long fullTurn = 1L << 30;
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, (fullTurn - 10) * TICK);
+        wheel.schedule("overflow", (fullTurn + 42) * TICK);
+
+        assertEquals(List.of(), wheel.advance((fullTurn + 41) * TICK));
+        assertEquals(List.of("overflow"), wheel.advance((fullTurn + 42) * TICK));
+    }
+
+    @Test
+    void randomDeadlinesMatchASortedSchedule() {
+        Random random = new Random(7);
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long tick = 1 + random.nextInt(300_000);
+            deadlines.add(tick);
+            wheel.schedule(tick, tick * TICK);
+        }
+        deadlines.sort(null);
+
+        List<Long> fired = new ArrayList<>();
+        long now = 0;
+        while (fired.size() < deadlines.size()) {
+            now += random.nextInt(5000) * TICK;
+            for (long tick : wheel.advance(now)) {
+                assertTrue(tick * TICK <= now, "tick " + tick + " fired early at " + now);
+                fired.add(tick);
+            }
+        }
+        assertEquals(deadlines, fired);
+    }
+}
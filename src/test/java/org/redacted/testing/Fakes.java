@@ -0,0 +1,98 @@
+package org.redacted.testing;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fakes Class
+ * Builds stand-ins for interfaces the tests cannot construct for real, such as Mongo collections
+ * and JDA interactions. A fake answers only the methods it is given answers for, by name, and
+ * fails any other call, so a test notices when the code under test starts relying on more.
+ *
+ * @author Derrick Eberlein
+ */
+public final class Fakes {
+
+    private Fakes() {
+    }
+
+    /**
+     * Start building a fake of an interface.
+     *
+     * @param type the interface.
+     * @param <T> the interface type.
+     * @return a builder for the fake.
+     */
+    public static <T> Builder<T> of(Class<T> type) {
+        return new Builder<>(type);
+    }
+
+    /**
+     * Answers a call to a faked method.
+     */
+    @FunctionalInterface
+    public interface Answer {
+
+        /**
+         * Answer a call.
+         *
+         * @param args the call's arguments, never null.
+         * @return the value the call returns.
+         * @throws Throwable to make the call throw.
+         */
+        Object answer(Object[] args) throws Throwable;
+    }
+
+    /**
+     * Builds a fake, method by method.
+     *
+     * @param <T> the faked interface.
+     */
+    public static final class Builder<T> {
+        private final Class<T> type;
+        private final Map<String, Answer> answers = new HashMap<>();
+
+        private Builder(Class<T> type) {
+            this.type = type;
+        }
+
+        /**
+         * Answer every call to the methods with a name.
+         *
+         * @param method the method name.
+         * @param answer the answer.
+         * @return this builder.
+         */
+        public Builder<T> on(String method, Answer answer) {
+            answers.put(method, answer);
+            return this;
+        }
+
+        /**
+         * Build the fake. Default methods without an answer run their default body.
+         *
+         * @return the fake.
+         */
+        public T build() {
+            InvocationHandler handler = (proxy, method, args) -> {
+                Answer answer = answers.get(method.getName());
+                if (answer != null) return answer.answer(args == null ? new Object[0] : args);
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Fake(" + type.getSimpleName() + ")";
+                    default:
+                        break;
+                }
+                if (method.isDefault()) return InvocationHandler.invokeDefault(proxy, method, args);
+                throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName() + " is not faked");
+            };
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.redacted.util;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.requests.restaction.MessageEditAction;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.redacted.testing.Fakes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GalleryManagerTest {
+
+    private static final long MESSAGE = 99;
+    private static final List<String> URLS = List.of("https://i.redd.it/1.jpg", "https://i.redd.it/2.jpg", "https://i.redd.it/3.jpg");
+
+    private final List<String> shown = new ArrayList<>();
+    private final MessageChannel channel = Fakes.of(MessageChannel.class)
+            .on("editMessageEmbedsById", args -> {
+                shown.add(((MessageEmbed[]) args[1])[0].getImage().getUrl());
+                return Fakes.of(MessageEditAction.class).on("queue", queued -> null).build();
+            })
+            .build();
+
+    @Test
+    void pagesWrapAroundTheGallery() {
+        GalleryManager manager = new GalleryManager();
+        manager.addGallery(MESSAGE, URLS);
+
+        assertTrue(manager.isGalleryMessage(MESSAGE).join());
+        assertEquals(new GalleryManager.Page(1, 3), manager.handleReaction(channel, MESSAGE, "next"));
+        assertEquals(new GalleryManager.Page(0, 3), manager.handleReaction(channel, MESSAGE, "prev"));
+        assertEquals(new GalleryManager.Page(2, 3), manager.handleReaction(channel, MESSAGE, "prev"));
+        assertEquals(List.of(URLS.get(1), URLS.get(0), URLS.get(2)), shown);
+    }
+
+    @Test
+    void messagesWithoutAGalleryAreIgnored() {
+        GalleryManager manager = new GalleryManager();
+
+        assertFalse(manager.isGalleryMessage(MESSAGE).join());
+        assertNull(manager.handleReaction(channel, MESSAGE, "next"));
+        assertEquals(0, manager.getPageCount(MESSAGE));
+        assertTrue(shown.isEmpty());
+    }
+
+    @Test
+    void storedGalleriesAreLoadedOffTheCallingThread() {
+        AtomicReference<Thread> loadedOn = new AtomicReference<>();
+        GalleryManager manager = new GalleryManager(store(new Document("_id", MESSAGE).append("urls", URLS).append("page", 1), loadedOn));
+
+        assertTrue(manager.isGalleryMessage(MESSAGE).join());
+        assertNotSame(Thread.currentThread(), loadedOn.get());
+        assertEquals(1, manager.getStats().restored());
+    }
+
+    @Test
+    void storedGalleriesReportTheirPagesWhenNotInMemory() {
+        GalleryManager manager = new GalleryManager(store(new Document("_id", MESSAGE).append("urls", URLS).append("page", 1), new AtomicReference<>()));
+
+        // Never loaded into memory, as after an eviction or a restart
+        assertEquals(3, manager.getPageCount(MESSAGE));
+        assertEquals(new GalleryManager.Page(2, 3), manager.handleReaction(channel, MESSAGE, "next"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<Document> store(Document stored, AtomicReference<Thread> loadedOn) {
+        FindIterable<Document> found = Fakes.of((Class<FindIterable<Document>>) (Class<?>) FindIterable.class)
+                .on("first", args -> {
+                    loadedOn.set(Thread.currentThread());
+                    return stored;
+                })
+                .build();
+        return Fakes.of((Class<MongoCollection<Document>>) (Class<?>) MongoCollection.class)
+                .on("find", args -> found)
+                .on("updateOne", args -> null)
+                .build();
+    }
+}
@@ -0,0 +1,99 @@
+package org.redacted.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(new LatencyHistogram.Snapshot(0, 0, 0, 0, 0), histogram.snapshot());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 0; nanos < 8; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(3, histogram.percentile(0.5));
+        assertEquals(7, histogram.percentile(1));
+    }
+
+    @Test
+    void percentilesStayWithinTheBucketError() {
+        Random random = new Random(3);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Spread over six orders of magnitude, as handler latencies are
+            values[i] = (long) Math.pow(10, 3 + random.nextDouble() * 6);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : new double[]{0.1, 0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            long estimate = histogram.percentile(quantile);
+            assertTrue(estimate >= exact, "p" + quantile + " " + estimate + " below " + exact);
+            assertTrue(estimate <= exact * 1.125 + 1, "p" + quantile + " " + estimate + " too far above " + exact);
+        }
+    }
+
+    @Test
+    void percentilesNeverExceedTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_001);
+
+        assertEquals(1_000_001, histogram.percentile(0.99));
+        assertEquals(1_000_001, histogram.snapshot().max());
+    }
+
+    @Test
+    void snapshotReportsTheMeanAndExtremes() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+        histogram.record(3_000);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 4);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(4, snapshot.count());
+        assertEquals((4_000 + Long.MAX_VALUE / 4) / 4, snapshot.mean());
+        assertEquals(Long.MAX_VALUE / 4, snapshot.max());
+        assertEquals(Long.MAX_VALUE / 4, histogram.percentile(1));
+        // The negative duration counts as 0
+        assertEquals(0, histogram.percentile(0.25));
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 1; i <= 25_000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(25_000, histogram.snapshot().max());
+        assertEquals(12_500, histogram.snapshot().mean());
+    }
+}
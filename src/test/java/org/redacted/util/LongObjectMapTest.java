@@ -0,0 +1,133 @@
+package org.redacted.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongObjectMapTest {
+
+    @Test
+    void valuesAreStoredReplacedAndRemoved() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+
+        assertNull(map.put(42, "a"));
+        assertNull(map.put(-7, "b"));
+        assertEquals("a", map.put(42, "c"));
+        assertEquals("c", map.get(42));
+        assertEquals("b", map.get(-7));
+        assertNull(map.get(43));
+        assertEquals(2, map.size());
+
+        assertEquals("c", map.remove(42));
+        assertNull(map.remove(42));
+        assertNull(map.get(42));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void removedKeysCanBeSetAgain() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(1, "a");
+        map.remove(1);
+
+        assertNull(map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void keyZeroAndNullValuesAreRejected() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "a"));
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+        assertNull(map.get(0));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void mapGrowsPastItsInitialCapacity() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        // Snowflake-like keys, which share their low bits
+        for (long i = 1; i <= 10_000; i++) {
+            map.put(i << 22, i);
+        }
+
+        assertEquals(10_000, map.size());
+        for (long i = 1; i <= 10_000; i++) {
+            assertEquals(i, map.get(i << 22));
+        }
+    }
+
+    @Test
+    void churnDoesNotLoseKeys() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        map.put(Long.MAX_VALUE, 0L);
+        // Far more keys pass through than are ever held at once, so removed slots must be reclaimed
+        for (long i = 1; i <= 100_000; i++) {
+            map.put(i, i);
+            if (i > 10) assertEquals(i - 10, map.remove(i - 10));
+        }
+
+        assertEquals(11, map.size());
+        assertEquals(0L, map.get(Long.MAX_VALUE));
+        for (long i = 99_991; i <= 100_000; i++) {
+            assertEquals(i, map.get(i));
+        }
+        assertNull(map.get(99_990));
+    }
+
+    @Test
+    void randomOperationsMatchAHashMap() {
+        Random random = new Random(11);
+        LongObjectMap<Integer> map = new LongObjectMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            long key = 1 + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 2000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    void readersSeeKeptKeysWhileTheMapGrows() throws InterruptedException {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        for (long key = 1; key <= 100; key++) {
+            map.put(key, key);
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (writing.get() && failure.get() == null) {
+                for (long key = 1; key <= 100; key++) {
+                    Long value = map.get(key);
+                    if (value == null || value != key) failure.set("key " + key + " read as " + value);
+                }
+            }
+        });
+        reader.start();
+        for (long key = 101; key <= 200_000; key++) {
+            map.put(key, key);
+            if (key % 3 == 0) map.remove(key);
+        }
+        writing.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+    }
+}
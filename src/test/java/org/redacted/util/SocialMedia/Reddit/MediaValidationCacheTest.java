@@ -0,0 +1,168 @@
+package org.redacted.util.SocialMedia.Reddit;
+
+import org.junit.jupiter.api.Test;
+import org.redacted.util.SocialMedia.Reddit.MediaValidationCache.ProbeResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaValidationCacheTest {
+
+    private static final String HOST = "i.example.com";
+    private static final int THRESHOLD = 5;
+    private static final long COOL_DOWN = TimeUnit.MINUTES.toMillis(5);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final MediaValidationCache cache = new MediaValidationCache(now::get);
+    private final List<String> probed = new ArrayList<>();
+
+    @Test
+    void resultsAreCachedUntilTheyExpire() {
+        Function<String, CompletableFuture<ProbeResult>> valid = answering(ProbeResult.VALID);
+
+        assertTrue(cache.validate(url(1), HOST, valid).join());
+        assertTrue(cache.validate(url(1), HOST, valid).join());
+        assertEquals(1, probed.size());
+
+        now.addAndGet(TimeUnit.HOURS.toMillis(1) + 1);
+        assertTrue(cache.validate(url(1), HOST, valid).join());
+        assertEquals(2, probed.size());
+    }
+
+    @Test
+    void concurrentLookupsShareOneProbe() {
+        CompletableFuture<ProbeResult> pending = new CompletableFuture<>();
+        Function<String, CompletableFuture<ProbeResult>> probe = url -> {
+            probed.add(url);
+            return pending;
+        };
+
+        CompletableFuture<Boolean> first = cache.validate(url(1), HOST, probe);
+        CompletableFuture<Boolean> second = cache.validate(url(1), HOST, probe);
+        pending.complete(ProbeResult.VALID);
+
+        assertTrue(first.join());
+        assertTrue(second.join());
+        assertEquals(1, probed.size());
+    }
+
+    @Test
+    void circuitOpensAfterRepeatedHostFailures() {
+        failHost(THRESHOLD);
+
+        assertFalse(cache.validate(url(100), HOST, answering(ProbeResult.VALID)).join());
+        assertEquals(THRESHOLD, probed.size(), "a URL was probed while the circuit was open");
+        assertEquals(1, cache.getStats().skipped());
+        assertEquals(1, cache.getStats().openHosts());
+    }
+
+    @Test
+    void invalidUrlsDoNotCountAsHostFailures() {
+        Function<String, CompletableFuture<ProbeResult>> invalid = answering(ProbeResult.INVALID);
+        for (int i = 0; i < THRESHOLD * 2; i++) {
+            assertFalse(cache.validate(url(i), HOST, invalid).join());
+        }
+
+        assertTrue(cache.validate(url(100), HOST, answering(ProbeResult.VALID)).join());
+        assertEquals(0, cache.getStats().openHosts());
+    }
+
+    @Test
+    void failedProbesCountAsHostFailures() {
+        Function<String, CompletableFuture<ProbeResult>> throwing = url -> {
+            probed.add(url);
+            return CompletableFuture.failedFuture(new IOException("connection reset"));
+        };
+        for (int i = 0; i < THRESHOLD; i++) {
+            assertFalse(cache.validate(url(i), HOST, throwing).join());
+        }
+
+        assertEquals(1, cache.getStats().openHosts());
+    }
+
+    @Test
+    void successBeforeTheThresholdResetsTheCount() {
+        failHost(THRESHOLD - 1);
+        assertTrue(cache.validate(url(50), HOST, answering(ProbeResult.VALID)).join());
+        failHost(THRESHOLD - 1);
+
+        assertEquals(0, cache.getStats().openHosts());
+    }
+
+    @Test
+    void otherHostsAreNotAffected() {
+        failHost(THRESHOLD);
+
+        assertTrue(cache.validate("https://other.example.com/a.png", "other.example.com", answering(ProbeResult.VALID)).join());
+    }
+
+    @Test
+    void oneTrialProbeIsLetThroughAfterTheCoolDown() {
+        failHost(THRESHOLD);
+        now.addAndGet(COOL_DOWN);
+
+        CompletableFuture<ProbeResult> trial = new CompletableFuture<>();
+        CompletableFuture<Boolean> trialResult = cache.validate(url(100), HOST, url -> {
+            probed.add(url);
+            return trial;
+        });
+        // While the trial is running, other URLs of the host are still skipped
+        assertFalse(cache.validate(url(101), HOST, answering(ProbeResult.VALID)).join());
+        assertEquals(List.of(url(100)), probed.subList(THRESHOLD, probed.size()));
+
+        trial.complete(ProbeResult.VALID);
+        assertTrue(trialResult.join());
+        assertEquals(0, cache.getStats().openHosts());
+        assertTrue(cache.validate(url(102), HOST, answering(ProbeResult.VALID)).join());
+    }
+
+    @Test
+    void failedTrialReopensTheCircuit() {
+        failHost(THRESHOLD);
+        now.addAndGet(COOL_DOWN);
+
+        assertFalse(cache.validate(url(100), HOST, answering(ProbeResult.HOST_FAILURE)).join());
+        assertEquals(1, cache.getStats().openHosts());
+        assertFalse(cache.validate(url(101), HOST, answering(ProbeResult.VALID)).join());
+        assertEquals(THRESHOLD + 1, probed.size());
+
+        now.addAndGet(COOL_DOWN);
+        assertTrue(cache.validate(url(102), HOST, answering(ProbeResult.VALID)).join());
+    }
+
+    @Test
+    void skippedUrlsAreNotCached() {
+        failHost(THRESHOLD);
+        assertFalse(cache.validate(url(100), HOST, answering(ProbeResult.VALID)).join());
+        now.addAndGet(COOL_DOWN);
+
+        // Probed as soon as the circuit lets it, rather than remembered as invalid
+        assertTrue(cache.validate(url(100), HOST, answering(ProbeResult.VALID)).join());
+    }
+
+    private void failHost(int times) {
+        Function<String, CompletableFuture<ProbeResult>> failing = answering(ProbeResult.HOST_FAILURE);
+        int start = probed.size();
+        for (int i = 0; i < times; i++) {
+            assertFalse(cache.validate(url(start + i), HOST, failing).join());
+        }
+    }
+
+    private Function<String, CompletableFuture<ProbeResult>> answering(ProbeResult result) {
+        return url -> {
+            probed.add(url);
+            return CompletableFuture.completedFuture(result);
+        };
+    }
+
+    private static String url(int index) {
+        return "https://" + HOST + "/" + index + ".jpg";
+    }
+}
@@ -0,0 +1,115 @@
+package org.redacted.util.SocialMedia.Reddit;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedditListingParserTest {
+
+    @Test
+    void listingYieldsEachPostsMediaUrlInOrder() throws IOException {
+        List<String> urls;
+        try (Reader reader = fixture("listing.json")) {
+            urls = RedditListingParser.readMediaUrls(reader);
+        }
+
+        assertEquals(List.of(
+                "https://i.redd.it/abc123.jpeg",
+                // No url, so the Reddit-hosted video's fallback is used
+                "https://v.redd.it/x9y8z7/DASH_720.mp4?source=fallback",
+                "https://www.reddit.com/gallery/1g2h3c3",
+                "https://www.reddit.com/r/EarthPorn/comments/1g2h3d4/which_lens/"), urls);
+    }
+
+    @Test
+    void listingUrlsAreHandedOverBeforeTheRestIsRead() throws IOException {
+        String listing;
+        try (Reader reader = fixture("listing.json")) {
+            listing = readAll(reader);
+        }
+        // Cut the listing off inside its second post
+        String truncated = listing.substring(0, listing.indexOf("\"Waves at sunset\""));
+
+        List<String> urls = new ArrayList<>();
+        assertThrows(IOException.class, () -> RedditListingParser.readMediaUrls(new StringReader(truncated), urls::add));
+        assertEquals(List.of("https://i.redd.it/abc123.jpeg"), urls);
+    }
+
+    @Test
+    void galleryImagesFollowTheGalleryOrder() throws IOException {
+        List<String> images;
+        try (Reader reader = fixture("gallery.json")) {
+            images = RedditListingParser.readGalleryImages(reader);
+        }
+
+        // m4 failed to process and has no source image, so it is left out
+        assertEquals(List.of(
+                "https://preview.redd.it/m2.png?width=3000&format=png&s=bb",
+                "https://preview.redd.it/m1.jpg?width=4000&format=pjpg&s=aa",
+                "https://preview.redd.it/m3.jpg?width=4000&format=pjpg&s=cc"), images);
+    }
+
+    @Test
+    void galleryItemsThatAreNotObjectsAreSkipped() throws IOException {
+        String json = """
+                [{"data": {"children": [{"data": {
+                    "gallery_data": {"items": ["m1", null, {"media_id": "m2"}]},
+                    "media_metadata": {"m1": {"s": {"u": "https://i.redd.it/1.jpg"}}, "m2": {"s": {"u": "https://i.redd.it/2.jpg"}}}
+                }}]}}]
+                """;
+
+        assertEquals(List.of("https://i.redd.it/2.jpg"), RedditListingParser.readGalleryImages(new StringReader(json)));
+    }
+
+    @Test
+    void postsThatAreNotGalleriesHaveNoImages() throws IOException {
+        String json = """
+                [{"kind": "Listing", "data": {"children": [{"kind": "t3", "data": {"url": "https://i.redd.it/1.jpg", "media": null}}]}}, {"data": {"children": []}}]
+                """;
+
+        assertEquals(List.of(), RedditListingParser.readGalleryImages(new StringReader(json)));
+    }
+
+    @Test
+    void unexpectedShapesAreSkipped() throws IOException {
+        String json = """
+                {"kind": "Listing", "data": {"children": [
+                    "not a post",
+                    {"kind": "t3", "data": null},
+                    {"kind": "t3", "data": {"url": 42, "media": {"reddit_video": "gone"}}},
+                    {"kind": "t3", "data": {"url": "https://i.redd.it/ok.png"}}
+                ]}}
+                """;
+
+        assertEquals(List.of("https://i.redd.it/ok.png"), RedditListingParser.readMediaUrls(new StringReader(json)));
+    }
+
+    private static Reader fixture(String name) {
+        InputStream stream = RedditListingParserTest.class.getResourceAsStream("/reddit/" + name);
+        assertNotNull(stream, "missing fixture " + name);
+        return new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    private static String readAll(Reader reader) {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[4096];
+        try {
+            for (int read; (read = reader.read(buffer)) != -1; ) {
+                builder.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+}
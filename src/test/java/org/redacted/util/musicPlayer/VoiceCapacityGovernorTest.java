@@ -0,0 +1,58 @@
+package org.redacted.util.musicPlayer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoiceCapacityGovernorTest {
+
+    private static final double IDLE = 0.30;
+    private static final double PER_STREAM = 0.02;
+
+    @Test
+    void costLeavesOutTheIdleLoad() {
+        VoiceCapacityGovernor.StreamCostModel model = new VoiceCapacityGovernor.StreamCostModel();
+        for (int i = 0; i < 40; i++) {
+            int streams = i % 10;
+            model.add(streams, IDLE + PER_STREAM * streams);
+        }
+
+        assertEquals(PER_STREAM, model.perStream(), 1e-9);
+    }
+
+    @Test
+    void averageCostIsUsedUntilTheStreamCountVaries() {
+        VoiceCapacityGovernor.StreamCostModel model = new VoiceCapacityGovernor.StreamCostModel();
+        assertEquals(0, model.perStream());
+
+        for (int i = 0; i < 10; i++) {
+            model.add(5, IDLE + PER_STREAM * 5);
+        }
+
+        assertEquals((IDLE + PER_STREAM * 5) / 5, model.perStream(), 1e-9);
+    }
+
+    @Test
+    void recentSamplesOutweighOldOnes() {
+        VoiceCapacityGovernor.StreamCostModel model = new VoiceCapacityGovernor.StreamCostModel();
+        for (int i = 0; i < 40; i++) {
+            model.add(i % 10, IDLE + 0.05 * (i % 10));
+        }
+        for (int i = 0; i < 200; i++) {
+            model.add(i % 10, IDLE + PER_STREAM * (i % 10));
+        }
+
+        assertEquals(PER_STREAM, model.perStream(), 1e-3);
+    }
+
+    @Test
+    void costIsNeverNegative() {
+        VoiceCapacityGovernor.StreamCostModel model = new VoiceCapacityGovernor.StreamCostModel();
+        for (int i = 0; i < 20; i++) {
+            // Load fell while streams were added, e.g. a backup finishing
+            model.add(i % 5, 0.6 - 0.05 * (i % 5));
+        }
+
+        assertEquals(0, model.perStream());
+    }
+}